@@ -0,0 +1,51 @@
+package ml.echelon133.microblog.post;
+
+import ml.echelon133.microblog.post.model.ContentEntity;
+import ml.echelon133.microblog.post.service.ContentTokenizer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+    Compares the single pass tokenizer with two regular expressions which used to be matched
+    against the content of every post.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ContentTokenizerBenchmark {
+
+    private static final Pattern HASHTAG_PATTERN = Pattern.compile("#([a-zA-Z0-9]{2,20})");
+    private static final Pattern USERNAME_PATTERN = Pattern.compile("@([A-Za-z0-9]{1,30})");
+
+    @Param({
+            "Just a post without any entities, which is what most posts look like.",
+            "Hey @mateusz, have you seen #java #spring and #neo4j today? https://example.com/some/article",
+            "@a @b @c @d @e @f @g @h @i @j #one #two #three #four #five #six #seven #eight #nine #ten"
+    })
+    public String content;
+
+    @Benchmark
+    public void regularExpressions(Blackhole blackhole) {
+        Matcher hashtags = HASHTAG_PATTERN.matcher(content);
+        while (hashtags.find()) {
+            blackhole.consume(hashtags.group(1));
+        }
+        Matcher mentions = USERNAME_PATTERN.matcher(content);
+        while (mentions.find()) {
+            blackhole.consume(mentions.group(1));
+        }
+    }
+
+    @Benchmark
+    public void tokenizer(Blackhole blackhole) {
+        List<ContentEntity> entities = ContentTokenizer.tokenize(content);
+        for (ContentEntity entity : entities) {
+            blackhole.consume(content.substring(entity.getStart() + 1, entity.getEnd()));
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package ml.echelon133.microblog;
 
+import ml.echelon133.microblog.feed.model.PopularFeedSnapshot;
+import ml.echelon133.microblog.pagination.PostCursor;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.cors.CorsConfiguration;
@@ -13,6 +19,7 @@ import java.util.Arrays;
 import java.util.Collections;
 
 @SpringBootApplication
+@EnableScheduling
 public class MicroblogApplication {
 
 	@Bean
@@ -26,12 +33,22 @@ public class MicroblogApplication {
 		configuration.setAllowedHeaders(Collections.singletonList("*"));
 		configuration.setAllowedOrigins(Collections.singletonList("*"));
 		configuration.setAllowedMethods(Arrays.asList("GET", "OPTIONS", "POST", "PUT", "DELETE"));
+		configuration.setExposedHeaders(Arrays.asList(
+				PostCursor.NEXT_CURSOR_HEADER, PopularFeedSnapshot.VERSION_HEADER, HttpHeaders.ETAG));
 		configuration.setAllowCredentials(true);
 		UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
 		source.registerCorsConfiguration("/**", configuration);
 		return source;
 	}
 
+	// delivers messages published to redis channels (e.g. events of the stream of updates)
+	@Bean
+	RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+		RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+		container.setConnectionFactory(connectionFactory);
+		return container;
+	}
+
 	public static void main(String[] args) {
 		SpringApplication.run(MicroblogApplication.class, args);
 	}
@@ -1,53 +1,121 @@
 package ml.echelon133.microblog.feed.controller;
 
+import ml.echelon133.microblog.feed.model.PopularFeedSnapshot;
+import ml.echelon133.microblog.feed.service.IPopularFeedService;
+import ml.echelon133.microblog.pagination.PostCursor;
 import ml.echelon133.microblog.post.service.IPostService;
 import ml.echelon133.microblog.user.model.UserPost;
 import ml.echelon133.microblog.user.model.UserPrincipal;
+import ml.echelon133.microblog.user.service.IUserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/feed")
 public class FeedController {
 
     private IPostService postService;
+    private IPopularFeedService popularFeedService;
+    private IUserService userService;
 
     @Autowired
-    public FeedController(IPostService postService) {
+    public FeedController(IPostService postService,
+                          IPopularFeedService popularFeedService,
+                          IUserService userService) {
         this.postService = postService;
+        this.popularFeedService = popularFeedService;
+        this.userService = userService;
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .anyMatch(tag -> tag.equals(etag) || tag.equals("*"));
     }
 
     @GetMapping
     public ResponseEntity<List<UserPost>> getUserFeed(@RequestParam(defaultValue = "0") Long skip,
-                                                      @RequestParam(defaultValue = "20") Long limit) throws Exception {
+                                                      @RequestParam(defaultValue = "20") Long limit,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(required = false) String since,
+                                                      @RequestParam(defaultValue = "false") boolean viewerState,
+                                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                              String ifNoneMatch) throws Exception {
+        if (cursor != null && since != null) {
+            throw new IllegalArgumentException("Parameters cursor and since mustn't be combined");
+        }
         UserPrincipal loggedUser = (UserPrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        List<UserPost> feed = postService.getFeedForUser(loggedUser, skip, limit);
-        return new ResponseEntity<>(feed, HttpStatus.OK);
+
+        // the version has to be read before the feed, so that it can only be older than the content it describes.
+        // likes of the viewer are not a part of the version, so responses which contain them are never conditional
+        Optional<String> etag = Optional.empty();
+        if (!viewerState) {
+            etag = postService.getFeedVersion(loggedUser).map(version -> "\"" + version + "\"");
+        }
+        if (etag.isPresent() && etagMatches(ifNoneMatch, etag.get())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag.get()).build();
+        }
+
+        List<UserPost> feed;
+        if (since != null) {
+            feed = postService.getFeedForUserSince(loggedUser, UUID.fromString(since), limit);
+        } else if (cursor != null) {
+            feed = postService.getFeedForUser(loggedUser, PostCursor.decode(cursor), limit);
+        } else {
+            feed = postService.getFeedForUser(loggedUser, skip, limit);
+        }
+        if (viewerState) {
+            userService.applyViewerStateToPosts(loggedUser, feed);
+        }
+        HttpHeaders headers = PostCursor.nextPageHeaders(feed, limit, UserPost::getDate, UserPost::getUuid);
+        etag.ifPresent(headers::setETag);
+        return new ResponseEntity<>(feed, headers, HttpStatus.OK);
     }
 
     @GetMapping("/popular")
     public ResponseEntity<List<UserPost>> getUserFeedPopular(@RequestParam(defaultValue = "0") Long skip,
-                                                             @RequestParam(defaultValue = "20") Long limit) throws Exception {
-        List<UserPost> feed;
+                                                             @RequestParam(defaultValue = "20") Long limit,
+                                                             @RequestParam(required = false) Long version,
+                                                             @RequestParam(defaultValue = "false") boolean viewerState) throws Exception {
+        List<UserPost> feed = null;
+        HttpHeaders headers = new HttpHeaders();
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
 
         if (auth == null || auth instanceof AnonymousAuthenticationToken) {
-            feed = postService.getFeedForAnonymousUser(skip, limit);
+            // logged-out users get pages of the precomputed snapshot whenever it holds the requested page
+            Optional<PopularFeedSnapshot> snapshot = popularFeedService.getSnapshot(version);
+            if (snapshot.isPresent()) {
+                Optional<List<UserPost>> page = snapshot.get().getPage(skip, limit);
+                if (page.isPresent()) {
+                    feed = page.get();
+                    headers.set(PopularFeedSnapshot.VERSION_HEADER, String.valueOf(snapshot.get().getVersion()));
+                }
+            }
+            if (feed == null) {
+                feed = postService.getFeedForAnonymousUser(skip, limit);
+            }
         } else {
             UserPrincipal loggedUser = (UserPrincipal) auth.getPrincipal();
             feed = postService.getFeedForUser_Popular(loggedUser, skip, limit);
+            if (viewerState) {
+                userService.applyViewerStateToPosts(loggedUser, feed);
+            }
         }
 
-        return new ResponseEntity<>(feed, HttpStatus.OK);
+        return new ResponseEntity<>(feed, headers, HttpStatus.OK);
     }
 }
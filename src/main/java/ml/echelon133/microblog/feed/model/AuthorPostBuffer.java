@@ -0,0 +1,173 @@
+package ml.echelon133.microblog.feed.model;
+
+import java.util.UUID;
+
+/*
+    Bounded ring buffer of the most recent posts of a single author.
+
+    Entries are stored in primitive arrays (creation timestamp and both halves of the post uuid), ordered
+    from the oldest to the newest, so that keeping thousands of buffers in memory doesn't create millions of objects.
+    When the buffer is full, adding a post evicts the oldest one and the buffer becomes truncated,
+    which means that it no longer holds every post of its author.
+ */
+public class AuthorPostBuffer {
+
+    private final long[] timestamps;
+    private final long[] mostSigBits;
+    private final long[] leastSigBits;
+    private final long loadedAt;
+    private int start;
+    private int size;
+    private boolean truncated;
+
+    public AuthorPostBuffer(int capacity, long loadedAt, boolean truncated) {
+        this.timestamps = new long[capacity];
+        this.mostSigBits = new long[capacity];
+        this.leastSigBits = new long[capacity];
+        this.loadedAt = loadedAt;
+        this.truncated = truncated;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    private int physical(int logicalIndex) {
+        return (start + logicalIndex) % timestamps.length;
+    }
+
+    private void copy(int fromLogical, int toLogical) {
+        int from = physical(fromLogical);
+        int to = physical(toLogical);
+        timestamps[to] = timestamps[from];
+        mostSigBits[to] = mostSigBits[from];
+        leastSigBits[to] = leastSigBits[from];
+    }
+
+    private int compareAt(int logicalIndex, long timestamp, UUID uuid) {
+        int i = physical(logicalIndex);
+        return compare(timestamps[i], mostSigBits[i], leastSigBits[i],
+                timestamp, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /*
+        Orders entries by their timestamps and then by their uuids. Comparing uuid halves as unsigned numbers
+        gives the same order as comparing uuid strings, which is how both the graph queries and redis
+        order posts that have been created at the same millisecond.
+     */
+    public static int compare(long timestamp1, long most1, long least1, long timestamp2, long most2, long least2) {
+        int result = Long.compare(timestamp1, timestamp2);
+        if (result == 0) {
+            result = Long.compareUnsigned(most1, most2);
+        }
+        if (result == 0) {
+            result = Long.compareUnsigned(least1, least2);
+        }
+        return result;
+    }
+
+    public synchronized void add(UUID uuid, long timestamp) {
+        int capacity = timestamps.length;
+        if (capacity == 0) {
+            truncated = true;
+            return;
+        }
+
+        if (size == capacity) {
+            // a post older than every buffered one would be evicted right away
+            if (compareAt(0, timestamp, uuid) > 0) {
+                truncated = true;
+                return;
+            }
+            // evict the oldest entry
+            start = (start + 1) % capacity;
+            size--;
+            truncated = true;
+        }
+
+        // posts almost always arrive in order, so this loop rarely moves anything
+        int position = size;
+        while (position > 0 && compareAt(position - 1, timestamp, uuid) > 0) {
+            copy(position - 1, position);
+            position--;
+        }
+
+        int i = physical(position);
+        timestamps[i] = timestamp;
+        mostSigBits[i] = uuid.getMostSignificantBits();
+        leastSigBits[i] = uuid.getLeastSignificantBits();
+        size++;
+    }
+
+    public synchronized void remove(UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        for (int position = 0; position < size; position++) {
+            int i = physical(position);
+            if (mostSigBits[i] == most && leastSigBits[i] == least) {
+                for (int next = position + 1; next < size; next++) {
+                    copy(next, next - 1);
+                }
+                size--;
+                return;
+            }
+        }
+    }
+
+    // copies entries of the buffer, so that they can be merged without holding the lock
+    public synchronized Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot(size, truncated);
+        for (int position = 0; position < size; position++) {
+            // snapshots are ordered from the newest entry to the oldest one
+            int i = physical(size - 1 - position);
+            snapshot.timestamps[position] = timestamps[i];
+            snapshot.mostSigBits[position] = mostSigBits[i];
+            snapshot.leastSigBits[position] = leastSigBits[i];
+        }
+        return snapshot;
+    }
+
+    public static class Snapshot {
+        private final long[] timestamps;
+        private final long[] mostSigBits;
+        private final long[] leastSigBits;
+        private final boolean truncated;
+
+        public Snapshot(int size, boolean truncated) {
+            this.timestamps = new long[size];
+            this.mostSigBits = new long[size];
+            this.leastSigBits = new long[size];
+            this.truncated = truncated;
+        }
+
+        public void set(int position, long timestamp, UUID uuid) {
+            timestamps[position] = timestamp;
+            mostSigBits[position] = uuid.getMostSignificantBits();
+            leastSigBits[position] = uuid.getLeastSignificantBits();
+        }
+
+        public int size() {
+            return timestamps.length;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        public long getTimestamp(int position) {
+            return timestamps[position];
+        }
+
+        public long getMostSigBits(int position) {
+            return mostSigBits[position];
+        }
+
+        public long getLeastSigBits(int position) {
+            return leastSigBits[position];
+        }
+
+        public UUID getUuid(int position) {
+            return new UUID(mostSigBits[position], leastSigBits[position]);
+        }
+    }
+}
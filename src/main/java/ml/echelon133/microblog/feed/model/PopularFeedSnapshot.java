@@ -0,0 +1,55 @@
+package ml.echelon133.microblog.feed.model;
+
+import ml.echelon133.microblog.user.model.UserPost;
+
+import java.util.List;
+import java.util.Optional;
+
+/*
+    Ranked list of the most liked posts of the last day, computed at a single point in time.
+
+    Every snapshot has a version, which is sent to clients with every page, so that they can ask for
+    the next pages of the same snapshot even after a newer one has been computed.
+ */
+public class PopularFeedSnapshot {
+
+    public static final String VERSION_HEADER = "X-Feed-Version";
+
+    private long version;
+    private List<UserPost> posts;
+    private boolean complete;
+
+    public PopularFeedSnapshot(long version, List<UserPost> posts, boolean complete) {
+        this.version = version;
+        this.posts = List.copyOf(posts);
+        this.complete = complete;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<UserPost> getPosts() {
+        return posts;
+    }
+
+    // snapshot is complete if it holds every post that the ranking query would have returned
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public Optional<List<UserPost>> getPage(Long skip, Long limit) throws IllegalArgumentException {
+        if (limit < 0 || skip < 0) {
+            throw new IllegalArgumentException("Invalid skip and/or limit values.");
+        }
+
+        // pages which go past the end of an incomplete snapshot have to be read from the graph
+        if (!complete && skip + limit > posts.size()) {
+            return Optional.empty();
+        }
+
+        int from = (int) Math.min(skip, posts.size());
+        int to = (int) Math.min(skip + limit, posts.size());
+        return Optional.of(posts.subList(from, to));
+    }
+}
@@ -0,0 +1,48 @@
+package ml.echelon133.microblog.feed.model;
+
+import org.neo4j.ogm.annotation.typeconversion.Convert;
+import org.neo4j.ogm.typeconversion.UuidStringConverter;
+import org.springframework.data.neo4j.annotation.QueryResult;
+
+import java.util.Date;
+import java.util.UUID;
+
+@QueryResult
+public class TimelineEntry {
+    @Convert(value = UuidStringConverter.class)
+    private UUID uuid;
+    private Date date;
+    @Convert(value = UuidStringConverter.class)
+    private UUID author;
+
+    public TimelineEntry() {}
+
+    public TimelineEntry(UUID uuid, Date date) {
+        this.uuid = uuid;
+        this.date = date;
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(UUID uuid) {
+        this.uuid = uuid;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    public UUID getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(UUID author) {
+        this.author = author;
+    }
+}
@@ -0,0 +1,237 @@
+package ml.echelon133.microblog.feed.service;
+
+import ml.echelon133.microblog.feed.model.AuthorPostBuffer;
+import ml.echelon133.microblog.feed.model.TimelineEntry;
+import ml.echelon133.microblog.post.model.Post;
+import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.user.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/*
+    Posts of authors who have a very large number of followers (celebrities) are not copied into timelines
+    of their followers. Instead, this service keeps a bounded buffer of the most recent posts of every celebrity
+    and merges buffers of celebrities followed by the user with the user's timeline when the feed is read.
+
+    Buffers are filled with posts that are created on this node as soon as they are saved.
+    Since posts of the same author can also be created through other nodes, buffers are reloaded from the graph
+    (all stale buffers of a single feed with one query) after BUFFER_FRESHNESS_MILLIS.
+ */
+@Service
+public class FeedMergeService implements IFeedMergeService {
+
+    public static final int BUFFER_CAPACITY = 256;
+    public static final int MAX_BUFFERED_AUTHORS = 5000;
+    public static final long BUFFER_FRESHNESS_MILLIS = 30_000L;
+
+    private static final long CELEBRITIES_CACHE_MILLIS = 30_000L;
+    private static final String CELEBRITIES_KEY = "feed:celebrities";
+
+    private Clock clock = Clock.systemDefaultZone();
+    private StringRedisTemplate redisTemplate;
+    private PostRepository postRepository;
+    private UserRepository userRepository;
+
+    // least recently read buffers are evicted first
+    private final Map<UUID, AuthorPostBuffer> buffers = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, AuthorPostBuffer> eldest) {
+            return size() > MAX_BUFFERED_AUTHORS;
+        }
+    };
+
+    private volatile Set<String> celebrities = Set.of();
+    private volatile long celebritiesReadAt;
+    private volatile boolean celebritiesRead;
+
+    @Autowired
+    public FeedMergeService(StringRedisTemplate redisTemplate,
+                            PostRepository postRepository,
+                            UserRepository userRepository) {
+        this.redisTemplate = redisTemplate;
+        this.postRepository = postRepository;
+        this.userRepository = userRepository;
+    }
+
+    private Set<String> getCelebrities() {
+        long now = clock.millis();
+        if (!celebritiesRead || now - celebritiesReadAt > CELEBRITIES_CACHE_MILLIS) {
+            try {
+                Set<String> members = redisTemplate.opsForSet().members(CELEBRITIES_KEY);
+                celebrities = members == null ? Set.of() : Set.copyOf(members);
+            } catch (DataAccessException ignore) {
+                // keep using the last known set until redis is available again
+            }
+            celebritiesReadAt = now;
+            celebritiesRead = true;
+        }
+        return celebrities;
+    }
+
+    private AuthorPostBuffer getBuffer(UUID authorUuid) {
+        synchronized (buffers) {
+            return buffers.get(authorUuid);
+        }
+    }
+
+    @Override
+    public boolean isCelebrity(UUID authorUuid) {
+        return getCelebrities().contains(authorUuid.toString());
+    }
+
+    @Override
+    public void markAsCelebrity(UUID authorUuid) {
+        try {
+            redisTemplate.opsForSet().add(CELEBRITIES_KEY, authorUuid.toString());
+        } catch (DataAccessException ignore) {
+        }
+        Set<String> updated = new HashSet<>(celebrities);
+        updated.add(authorUuid.toString());
+        celebrities = Set.copyOf(updated);
+    }
+
+    @Override
+    public List<UUID> findFollowedCelebrities(UUID userUuid) {
+        Set<String> all = getCelebrities();
+        if (all.isEmpty()) {
+            return List.of();
+        }
+        return userRepository.findFollowedUuidsAmong(userUuid, new ArrayList<>(all))
+                .stream()
+                .map(UUID::fromString)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void recordPost(Post post) {
+        // buffers are only created for authors whose posts are merged into feeds,
+        // posts of other authors are never buffered
+        AuthorPostBuffer buffer = getBuffer(post.getAuthor().getUuid());
+        if (buffer != null) {
+            buffer.add(post.getUuid(), post.getCreationDate().getTime());
+        }
+    }
+
+    @Override
+    public void removePost(UUID authorUuid, UUID postUuid) {
+        AuthorPostBuffer buffer = getBuffer(authorUuid);
+        if (buffer != null) {
+            buffer.remove(postUuid);
+        }
+    }
+
+    private Map<UUID, AuthorPostBuffer> loadBuffers(List<UUID> authorUuids, long now) {
+        List<String> stringUuids = authorUuids.stream().map(UUID::toString).collect(Collectors.toList());
+        List<TimelineEntry> entries = postRepository
+                .getTimelineEntriesOfUsersWithUuids(stringUuids, (long) BUFFER_CAPACITY);
+
+        Map<UUID, List<TimelineEntry>> entriesOfAuthors = new HashMap<>();
+        for (UUID authorUuid : authorUuids) {
+            entriesOfAuthors.put(authorUuid, new ArrayList<>());
+        }
+        for (TimelineEntry entry : entries) {
+            entriesOfAuthors.computeIfAbsent(entry.getAuthor(), k -> new ArrayList<>()).add(entry);
+        }
+
+        Map<UUID, AuthorPostBuffer> loaded = new HashMap<>();
+        entriesOfAuthors.forEach((authorUuid, authorEntries) -> {
+            // if the query returned as many posts as it could, the author might have older posts
+            boolean truncated = authorEntries.size() >= BUFFER_CAPACITY;
+            AuthorPostBuffer buffer = new AuthorPostBuffer(BUFFER_CAPACITY, now, truncated);
+            // entries are added from the oldest, so that none of them have to be moved
+            for (int i = authorEntries.size() - 1; i >= 0; i--) {
+                TimelineEntry entry = authorEntries.get(i);
+                buffer.add(entry.getUuid(), entry.getDate().getTime());
+            }
+            loaded.put(authorUuid, buffer);
+        });
+
+        synchronized (buffers) {
+            buffers.putAll(loaded);
+        }
+        return loaded;
+    }
+
+    private static AuthorPostBuffer.Snapshot toSnapshot(List<TimelineEntry> timeline, boolean truncated) {
+        AuthorPostBuffer.Snapshot snapshot = new AuthorPostBuffer.Snapshot(timeline.size(), truncated);
+        for (int i = 0; i < timeline.size(); i++) {
+            TimelineEntry entry = timeline.get(i);
+            snapshot.set(i, entry.getDate().getTime(), entry.getUuid());
+        }
+        return snapshot;
+    }
+
+    @Override
+    public Optional<List<UUID>> mergeWithBuffers(List<UUID> authorUuids, List<TimelineEntry> timeline,
+                                                 Long skip, Long limit) {
+        long needed = skip + limit;
+        long now = clock.millis();
+
+        List<AuthorPostBuffer.Snapshot> sources = new ArrayList<>();
+        List<UUID> stale = new ArrayList<>();
+        for (UUID authorUuid : authorUuids) {
+            AuthorPostBuffer buffer = getBuffer(authorUuid);
+            if (buffer == null || now - buffer.getLoadedAt() > BUFFER_FRESHNESS_MILLIS) {
+                stale.add(authorUuid);
+            } else {
+                sources.add(buffer.snapshot());
+            }
+        }
+        if (!stale.isEmpty()) {
+            loadBuffers(stale, now).values().forEach(b -> sources.add(b.snapshot()));
+        }
+        // timeline entries only contain the first 'needed' posts of the timeline, if there are that many
+        sources.add(toSnapshot(timeline, timeline.size() >= needed));
+
+        int[] positions = new int[sources.size()];
+        // heap of sources ordered by their current entries, the newest entry first
+        PriorityQueue<Integer> heap = new PriorityQueue<>((a, b) -> {
+            AuthorPostBuffer.Snapshot s1 = sources.get(a);
+            AuthorPostBuffer.Snapshot s2 = sources.get(b);
+            int p1 = positions[a];
+            int p2 = positions[b];
+            return AuthorPostBuffer.compare(
+                    s2.getTimestamp(p2), s2.getMostSigBits(p2), s2.getLeastSigBits(p2),
+                    s1.getTimestamp(p1), s1.getMostSigBits(p1), s1.getLeastSigBits(p1));
+        });
+        for (int i = 0; i < sources.size(); i++) {
+            if (sources.get(i).size() > 0) {
+                heap.add(i);
+            }
+        }
+
+        // followed celebrities' posts might have been put in the timeline before they became celebrities
+        Set<UUID> seen = new HashSet<>();
+        List<UUID> merged = new ArrayList<>();
+        while (merged.size() < needed && !heap.isEmpty()) {
+            int source = heap.poll();
+            AuthorPostBuffer.Snapshot snapshot = sources.get(source);
+            UUID uuid = snapshot.getUuid(positions[source]);
+            if (seen.add(uuid)) {
+                merged.add(uuid);
+            }
+
+            positions[source]++;
+            if (positions[source] < snapshot.size()) {
+                heap.add(source);
+            } else if (snapshot.isTruncated() && merged.size() < needed) {
+                // source ran out of entries, but there might be older posts which are not in it,
+                // so the remaining part of the page can't be merged correctly
+                return Optional.empty();
+            }
+        }
+
+        int from = (int) Math.min(skip, merged.size());
+        return Optional.of(new ArrayList<>(merged.subList(from, merged.size())));
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
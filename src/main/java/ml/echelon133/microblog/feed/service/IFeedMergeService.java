@@ -0,0 +1,17 @@
+package ml.echelon133.microblog.feed.service;
+
+import ml.echelon133.microblog.feed.model.TimelineEntry;
+import ml.echelon133.microblog.post.model.Post;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface IFeedMergeService {
+    boolean isCelebrity(UUID authorUuid);
+    void markAsCelebrity(UUID authorUuid);
+    List<UUID> findFollowedCelebrities(UUID userUuid);
+    void recordPost(Post post);
+    void removePost(UUID authorUuid, UUID postUuid);
+    Optional<List<UUID>> mergeWithBuffers(List<UUID> authorUuids, List<TimelineEntry> timeline, Long skip, Long limit);
+}
@@ -0,0 +1,10 @@
+package ml.echelon133.microblog.feed.service;
+
+import ml.echelon133.microblog.feed.model.PopularFeedSnapshot;
+
+import java.util.Optional;
+
+public interface IPopularFeedService {
+    Optional<PopularFeedSnapshot> getSnapshot(Long version);
+    void refreshSnapshot();
+}
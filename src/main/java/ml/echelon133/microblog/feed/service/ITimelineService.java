@@ -0,0 +1,19 @@
+package ml.echelon133.microblog.feed.service;
+
+import ml.echelon133.microblog.pagination.PostCursor;
+import ml.echelon133.microblog.post.model.Post;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface ITimelineService {
+    Optional<List<UUID>> getTimelinePage(UUID userUuid, Long skip, Long limit);
+    Optional<List<UUID>> getTimelinePage(UUID userUuid, PostCursor cursor, Long limit);
+    Optional<List<UUID>> getTimelinePageSince(UUID userUuid, UUID sinceUuid, Long limit);
+    Optional<String> getFeedVersion(UUID userUuid);
+    void pushPost(Post post);
+    void backfillTimeline(UUID followerUuid, UUID followedUuid);
+    void pruneTimeline(UUID followerUuid, UUID unfollowedUuid);
+    void removePost(UUID authorUuid, UUID postUuid);
+}
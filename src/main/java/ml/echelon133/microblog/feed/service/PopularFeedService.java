@@ -0,0 +1,189 @@
+package ml.echelon133.microblog.feed.service;
+
+import ml.echelon133.microblog.feed.model.PopularFeedSnapshot;
+import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.user.model.UserPost;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static java.time.temporal.ChronoUnit.DAYS;
+
+/*
+    The popular feed of logged-out users is the same for everyone, so instead of ranking posts
+    on every request, it's ranked periodically and pages are sliced from the latest snapshot.
+
+    Only one node computes each snapshot (whichever takes the lock first) and publishes uuids of ranked posts
+    in redis, under the version of the snapshot. Other nodes load these uuids and read posts that they point at,
+    which is much cheaper than counting likes of every post of the last day.
+    Older snapshots are kept for a while, so that clients which have started paging through one of them
+    can finish. If redis is unavailable, every node computes its own snapshots.
+ */
+@Service
+public class PopularFeedService implements IPopularFeedService {
+
+    public static final long REFRESH_INTERVAL_MILLIS = 30_000L;
+
+    // how many of the top ranked posts are held in a snapshot
+    public static final long SNAPSHOT_SIZE = 500L;
+
+    // how long clients can page through a snapshot after it has been replaced
+    public static final long SNAPSHOT_TTL_SECONDS = 10 * 60L;
+
+    private static final int RETAINED_SNAPSHOTS = 5;
+    private static final String LATEST_VERSION_KEY = "feed:popular:latest";
+    private static final String SNAPSHOT_KEY_PREFIX = "feed:popular:snapshot:";
+    private static final String LOCK_KEY = "feed:popular:lock";
+    private static final String SEPARATOR = ",";
+
+    private Clock clock = Clock.systemDefaultZone();
+    private StringRedisTemplate redisTemplate;
+    private PostRepository postRepository;
+
+    private volatile PopularFeedSnapshot current;
+
+    // most recent snapshots by their versions
+    private final Map<Long, PopularFeedSnapshot> snapshots = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, PopularFeedSnapshot> eldest) {
+            return size() > RETAINED_SNAPSHOTS;
+        }
+    };
+
+    @Autowired
+    public PopularFeedService(StringRedisTemplate redisTemplate,
+                              PostRepository postRepository) {
+        this.redisTemplate = redisTemplate;
+        this.postRepository = postRepository;
+    }
+
+    private static String snapshotKey(long version) {
+        return SNAPSHOT_KEY_PREFIX + version;
+    }
+
+    private void retain(PopularFeedSnapshot snapshot) {
+        synchronized (snapshots) {
+            snapshots.put(snapshot.getVersion(), snapshot);
+        }
+    }
+
+    private void setCurrent(PopularFeedSnapshot snapshot) {
+        retain(snapshot);
+        current = snapshot;
+    }
+
+    private PopularFeedSnapshot computeSnapshot() {
+        // only rank posts that had been posted after this date
+        Date dayAgo = Date.from(Instant.now(clock).minus(1, DAYS));
+        List<UserPost> ranked = postRepository.getFeedForAnonymousUser_Popular(dayAgo, 0L, SNAPSHOT_SIZE);
+        return new PopularFeedSnapshot(clock.millis(), ranked, ranked.size() < SNAPSHOT_SIZE);
+    }
+
+    private void publishSnapshot(PopularFeedSnapshot snapshot) {
+        String uuids = snapshot.getPosts()
+                .stream()
+                .map(p -> p.getUuid().toString())
+                .collect(Collectors.joining(SEPARATOR));
+        redisTemplate.opsForValue()
+                .set(snapshotKey(snapshot.getVersion()), uuids, SNAPSHOT_TTL_SECONDS, TimeUnit.SECONDS);
+        redisTemplate.opsForValue()
+                .set(LATEST_VERSION_KEY, String.valueOf(snapshot.getVersion()), SNAPSHOT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private Optional<PopularFeedSnapshot> loadSnapshot(long version) {
+        String value = redisTemplate.opsForValue().get(snapshotKey(version));
+        if (value == null) {
+            return Optional.empty();
+        }
+        List<String> uuids = value.isEmpty() ? List.of() : Arrays.asList(value.split(SEPARATOR));
+
+        // posts which have been deleted since the snapshot had been computed are not returned
+        Map<UUID, UserPost> posts = postRepository.getPostsWithUuids(uuids)
+                .stream()
+                .collect(Collectors.toMap(UserPost::getUuid, Function.identity(), (a, b) -> a));
+        List<UserPost> ordered = uuids
+                .stream()
+                .map(uuid -> posts.get(UUID.fromString(uuid)))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        PopularFeedSnapshot snapshot = new PopularFeedSnapshot(version, ordered, uuids.size() < SNAPSHOT_SIZE);
+        retain(snapshot);
+        return Optional.of(snapshot);
+    }
+
+    @Override
+    public Optional<PopularFeedSnapshot> getSnapshot(Long version) {
+        PopularFeedSnapshot latest = current;
+        if (version == null || (latest != null && latest.getVersion() == version)) {
+            return Optional.ofNullable(latest);
+        }
+
+        PopularFeedSnapshot retained;
+        synchronized (snapshots) {
+            retained = snapshots.get(version);
+        }
+        if (retained != null) {
+            return Optional.of(retained);
+        }
+
+        // snapshot might have been computed by another node
+        try {
+            Optional<PopularFeedSnapshot> loaded = loadSnapshot(version);
+            if (loaded.isPresent()) {
+                return loaded;
+            }
+        } catch (DataAccessException ignore) {
+        }
+        // snapshot has expired, so the client has to continue with the latest one
+        return Optional.ofNullable(latest);
+    }
+
+    private void followLatestSnapshot() {
+        String latestVersion = redisTemplate.opsForValue().get(LATEST_VERSION_KEY);
+        if (latestVersion == null) {
+            return;
+        }
+        long version = Long.parseLong(latestVersion);
+        PopularFeedSnapshot latest = current;
+        if (latest == null || latest.getVersion() != version) {
+            loadSnapshot(version).ifPresent(this::setCurrent);
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelay = REFRESH_INTERVAL_MILLIS)
+    public void refreshSnapshot() {
+        try {
+            Boolean locked = redisTemplate.opsForValue()
+                    .setIfAbsent(LOCK_KEY, "locked", REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            if (!Boolean.TRUE.equals(locked)) {
+                // another node is responsible for computing this snapshot
+                followLatestSnapshot();
+                return;
+            }
+        } catch (DataAccessException ignore) {
+            // without redis every node computes its own snapshots
+        }
+
+        PopularFeedSnapshot snapshot = computeSnapshot();
+        setCurrent(snapshot);
+        try {
+            publishSnapshot(snapshot);
+        } catch (DataAccessException ignore) {
+        }
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
@@ -0,0 +1,443 @@
+package ml.echelon133.microblog.feed.service;
+
+import ml.echelon133.microblog.feed.model.TimelineEntry;
+import ml.echelon133.microblog.pagination.PostCursor;
+import ml.echelon133.microblog.post.model.Post;
+import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.user.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+    Every user's home timeline is precomputed and kept in a redis sorted set, in which
+    members are uuids of posts and scores are their creation timestamps.
+
+    Posts are pushed into timelines of all followers of their author when they are created (fan-out on write),
+    so reading a page of a feed is a single range read instead of a traversal of every followed user's posts.
+
+    Only timelines which already exist get updated. A timeline that doesn't exist (because it expired or
+    has never been read) is rebuilt from the graph the first time it's needed. If redis is unavailable,
+    or the requested page is older than what timelines hold, the caller should fall back to querying the graph.
+
+    Authors with more than CELEBRITY_FOLLOWER_THRESHOLD followers are not fanned out, because a single post
+    would have to be written into too many timelines. Their posts are merged into feeds when they are read
+    (see FeedMergeService).
+
+    Every timeline has a version, which is incremented whenever the content of the timeline changes.
+    Every celebrity has a version of their posts as well. A version of the timeline, together with versions
+    of celebrities followed by the user (if there are any), identifies the state of a feed, so clients
+    which poll their feed can be answered without reading any posts if nothing has changed. Posts of celebrities
+    only change versions of feeds of their followers.
+    Versions are only meaningful while their timeline exists, because posts that are pushed while
+    a timeline is cold don't update anything.
+
+    Timelines are updated by scripts which check that the timeline exists and update it in a single step.
+    Otherwise a timeline which expired between the check and the update would be recreated with only
+    the updated posts in it, and then served as if it was complete.
+ */
+@Service
+public class TimelineService implements ITimelineService {
+
+    // how many of the most recent posts are kept in a single timeline
+    public static final long TIMELINE_CAPACITY = 800L;
+
+    // timelines of users who don't read their feed are not worth keeping up to date
+    public static final long TIMELINE_TTL_SECONDS = 3 * 24 * 60 * 60L;
+
+    // authors with more followers than this have their posts merged into feeds on read
+    public static final long CELEBRITY_FOLLOWER_THRESHOLD = 10_000L;
+
+    private static final String TIMELINE_KEY_PREFIX = "timeline:";
+    private static final String TIMELINE_VERSION_KEY_PREFIX = "timeline:version:";
+    private static final String CELEBRITY_POSTS_VERSION_KEY_PREFIX = "feed:celebrity:version:";
+
+    // KEYS: timeline, version of the timeline
+    // ARGV: current time (which seeds a version that had expired), ttl of the version, scores and members to add
+    private static final String ADD_TO_EXISTING_TIMELINE_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+            "for i = 3, #ARGV, 2 do redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -" + (TIMELINE_CAPACITY + 1) + ") " +
+            "redis.call('SETNX', KEYS[2], ARGV[1]) " +
+            "redis.call('INCR', KEYS[2]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[2]) " +
+            "return 1";
+
+    // KEYS: timeline, version of the timeline
+    // ARGV: current time, ttl of the version, members to remove
+    private static final String REMOVE_FROM_EXISTING_TIMELINE_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+            "for i = 3, #ARGV do redis.call('ZREM', KEYS[1], ARGV[i]) end " +
+            "redis.call('SETNX', KEYS[2], ARGV[1]) " +
+            "redis.call('INCR', KEYS[2]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[2]) " +
+            "return 1";
+
+    private StringRedisTemplate redisTemplate;
+    private PostRepository postRepository;
+    private UserRepository userRepository;
+    private IFeedMergeService feedMergeService;
+
+    @Autowired
+    public TimelineService(StringRedisTemplate redisTemplate,
+                           PostRepository postRepository,
+                           UserRepository userRepository,
+                           IFeedMergeService feedMergeService) {
+        this.redisTemplate = redisTemplate;
+        this.postRepository = postRepository;
+        this.userRepository = userRepository;
+        this.feedMergeService = feedMergeService;
+    }
+
+    private static String timelineKey(Object userUuid) {
+        return TIMELINE_KEY_PREFIX + userUuid.toString();
+    }
+
+    private static String timelineVersionKey(Object userUuid) {
+        return TIMELINE_VERSION_KEY_PREFIX + userUuid.toString();
+    }
+
+    private static String celebrityPostsVersionKey(UUID authorUuid) {
+        return CELEBRITY_POSTS_VERSION_KEY_PREFIX + authorUuid.toString();
+    }
+
+    // runs one of the scripts above against the timeline of the user, returns 1 if the timeline exists
+    private static Long updateExistingTimeline(StringRedisConnection conn, String script,
+                                               Object userUuid, List<String> args) {
+        String[] keysAndArgs = new String[args.size() + 4];
+        keysAndArgs[0] = timelineKey(userUuid);
+        keysAndArgs[1] = timelineVersionKey(userUuid);
+        // versions are seeded just like below, so that a version which had expired never restarts from 1
+        keysAndArgs[2] = String.valueOf(System.currentTimeMillis());
+        keysAndArgs[3] = String.valueOf(TIMELINE_TTL_SECONDS);
+        for (int i = 0; i < args.size(); i++) {
+            keysAndArgs[i + 4] = args.get(i);
+        }
+        return conn.eval(script, ReturnType.INTEGER, 2, keysAndArgs);
+    }
+
+    private void updateExistingTimeline(String script, UUID userUuid, List<String> args) {
+        redisTemplate.execute((RedisCallback<Long>) connection ->
+                updateExistingTimeline((StringRedisConnection) connection, script, userUuid, args));
+    }
+
+    private void bumpVersion(UUID userUuid) {
+        String key = timelineVersionKey(userUuid);
+        // a version that had expired starts from the current time, so that it never repeats
+        // a value which clients could have seen before
+        redisTemplate.opsForValue().setIfAbsent(key, String.valueOf(System.currentTimeMillis()));
+        redisTemplate.opsForValue().increment(key);
+        redisTemplate.expire(key, TIMELINE_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void bumpCelebrityPostsVersion(UUID authorUuid) {
+        String key = celebrityPostsVersionKey(authorUuid);
+        try {
+            // seeded just like versions of timelines, so that versions of feeds (which add up versions
+            // of followed celebrities) change when the user starts or stops following a celebrity
+            redisTemplate.opsForValue().setIfAbsent(key, String.valueOf(System.currentTimeMillis()));
+            redisTemplate.opsForValue().increment(key);
+        } catch (DataAccessException ignore) {
+        }
+    }
+
+    private static List<UUID> toUuids(Collection<String> members) {
+        return members.stream().map(UUID::fromString).collect(Collectors.toList());
+    }
+
+    private static List<TimelineEntry> toEntries(Collection<ZSetOperations.TypedTuple<String>> tuples) {
+        List<TimelineEntry> entries = new ArrayList<>(tuples.size());
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            double score = tuple.getScore() == null ? 0 : tuple.getScore();
+            entries.add(new TimelineEntry(UUID.fromString(tuple.getValue()), new Date((long) score)));
+        }
+        return entries;
+    }
+
+    private static Set<ZSetOperations.TypedTuple<String>> toTuples(List<TimelineEntry> entries) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        for (TimelineEntry entry : entries) {
+            tuples.add(new DefaultTypedTuple<>(entry.getUuid().toString(), (double) entry.getDate().getTime()));
+        }
+        return tuples;
+    }
+
+    private boolean timelineExists(UUID userUuid) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(timelineKey(userUuid)));
+    }
+
+    private void addToTimeline(String key, List<TimelineEntry> entries) {
+        redisTemplate.opsForZSet().add(key, toTuples(entries));
+        // only keep TIMELINE_CAPACITY entries with the highest scores
+        redisTemplate.opsForZSet().removeRange(key, 0, -(TIMELINE_CAPACITY + 1));
+        redisTemplate.expire(key, TIMELINE_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void dropTimeline(UUID userUuid) {
+        try {
+            redisTemplate.delete(timelineKey(userUuid));
+        } catch (DataAccessException ignore) {
+        }
+    }
+
+    private Optional<List<TimelineEntry>> readTimelineEntries(UUID userUuid, Long skip, Long limit) {
+        String key = timelineKey(userUuid);
+        try {
+            if (timelineExists(userUuid)) {
+                Set<ZSetOperations.TypedTuple<String>> page = redisTemplate.opsForZSet()
+                        .reverseRangeWithScores(key, skip, skip + limit - 1);
+                redisTemplate.expire(key, TIMELINE_TTL_SECONDS, TimeUnit.SECONDS);
+                // the version must not expire before its timeline
+                redisTemplate.expire(timelineVersionKey(userUuid), TIMELINE_TTL_SECONDS, TimeUnit.SECONDS);
+                return Optional.of(toEntries(page == null ? Set.of() : page));
+            }
+        } catch (DataAccessException ex) {
+            return Optional.empty();
+        }
+
+        // timeline is cold, rebuild it with a query that only reads uuids and dates of posts
+        List<TimelineEntry> entries = postRepository
+                .getFeedTimelineEntriesForUserWithUuid(userUuid, TIMELINE_CAPACITY);
+        if (!entries.isEmpty()) {
+            try {
+                addToTimeline(key, entries);
+                // posts could have been pushed or removed while the timeline was cold
+                bumpVersion(userUuid);
+            } catch (DataAccessException ignore) {
+                // the page can still be served from entries that had already been read
+            }
+        }
+
+        return Optional.of(entries
+                .stream()
+                .skip(skip)
+                .limit(limit)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Optional<List<UUID>> getTimelinePage(UUID userUuid, Long skip, Long limit) {
+        // pages older than what timelines hold have to be read from the graph
+        if (skip + limit > TIMELINE_CAPACITY) {
+            return Optional.empty();
+        }
+
+        if (limit == 0) {
+            return Optional.of(List.of());
+        }
+
+        // posts of followed celebrities are not in the timeline, so everything up to the end
+        // of the requested page has to be read and merged with their buffered posts
+        List<UUID> followedCelebrities = feedMergeService.findFollowedCelebrities(userUuid);
+        if (!followedCelebrities.isEmpty()) {
+            return readTimelineEntries(userUuid, 0L, skip + limit)
+                    .flatMap(entries -> feedMergeService.mergeWithBuffers(followedCelebrities, entries, skip, limit));
+        }
+
+        return readTimelineEntries(userUuid, skip, limit)
+                .map(entries -> entries
+                        .stream()
+                        .map(TimelineEntry::getUuid)
+                        .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Optional<List<UUID>> getTimelinePage(UUID userUuid, PostCursor cursor, Long limit) {
+        try {
+            // cold timelines are only rebuilt when the first pages are read
+            if (!timelineExists(userUuid)) {
+                return Optional.empty();
+            }
+            // the rank of the cursor post in the timeline says nothing about its position
+            // in a feed that is merged with posts of celebrities
+            if (!feedMergeService.findFollowedCelebrities(userUuid).isEmpty()) {
+                return Optional.empty();
+            }
+            // posts with equal scores are ordered by their uuids, just like in the query
+            // which serves cursors when the timeline can't be used, so the page can start right
+            // after the position of the post that the cursor points at
+            Long rank = redisTemplate.opsForZSet().reverseRank(timelineKey(userUuid), cursor.getUuid().toString());
+            if (rank == null) {
+                return Optional.empty();
+            }
+            return getTimelinePage(userUuid, rank + 1, limit);
+        } catch (DataAccessException ex) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<List<UUID>> getTimelinePageSince(UUID userUuid, UUID sinceUuid, Long limit) {
+        try {
+            if (!timelineExists(userUuid)) {
+                return Optional.empty();
+            }
+            if (!feedMergeService.findFollowedCelebrities(userUuid).isEmpty()) {
+                return Optional.empty();
+            }
+            // the rank of the post is the number of posts in the timeline that are newer than it
+            Long rank = redisTemplate.opsForZSet().reverseRank(timelineKey(userUuid), sinceUuid.toString());
+            if (rank == null) {
+                return Optional.empty();
+            }
+            // if there are more new posts than requested, only the most recent ones are returned
+            return getTimelinePage(userUuid, 0L, Math.min(rank, limit));
+        } catch (DataAccessException ex) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<String> getFeedVersion(UUID userUuid) {
+        List<UUID> followedCelebrities;
+        List<Object> results;
+        try {
+            followedCelebrities = feedMergeService.findFollowedCelebrities(userUuid);
+            results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.exists(timelineKey(userUuid));
+                conn.get(timelineVersionKey(userUuid));
+                for (UUID celebrity : followedCelebrities) {
+                    conn.get(celebrityPostsVersionKey(celebrity));
+                }
+                return null;
+            });
+        } catch (DataAccessException ex) {
+            return Optional.empty();
+        }
+
+        // a version of a cold timeline doesn't describe anything
+        if (!Boolean.TRUE.equals(results.get(0)) || results.get(1) == null) {
+            return Optional.empty();
+        }
+        // feeds of users who don't follow any celebrity only change with their timelines
+        if (followedCelebrities.isEmpty()) {
+            return Optional.of(results.get(1).toString());
+        }
+        long celebrityPostsVersion = 0;
+        for (Object version : results.subList(2, results.size())) {
+            if (version != null) {
+                celebrityPostsVersion += Long.parseLong(version.toString());
+            }
+        }
+        return Optional.of(results.get(1) + "." + celebrityPostsVersion);
+    }
+
+    private void pushCelebrityPost(Post post) {
+        feedMergeService.recordPost(post);
+        bumpCelebrityPostsVersion(post.getAuthor().getUuid());
+    }
+
+    @Override
+    public void pushPost(Post post) {
+        UUID authorUuid = post.getAuthor().getUuid();
+        if (feedMergeService.isCelebrity(authorUuid)) {
+            pushCelebrityPost(post);
+            return;
+        }
+
+        // followers are counted first, so that uuids of followers of an author who has just become
+        // a celebrity are never read
+        if (userRepository.countFollowersOfUserWithUuid(authorUuid) > CELEBRITY_FOLLOWER_THRESHOLD) {
+            // older posts of the author stay in timelines, newer ones (starting with this one) are merged on read
+            feedMergeService.markAsCelebrity(authorUuid);
+            pushCelebrityPost(post);
+            return;
+        }
+        // every user follows themselves, so the author's timeline is updated as well
+        List<String> followers = userRepository.findAllFollowerUuidsOfUserWithUuid(authorUuid);
+        List<String> entry = List.of(String.valueOf(post.getCreationDate().getTime()), post.getUuid().toString());
+
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String follower : followers) {
+                    updateExistingTimeline(conn, ADD_TO_EXISTING_TIMELINE_SCRIPT, follower, entry);
+                }
+                return null;
+            });
+        } catch (DataAccessException ignore) {
+            // timelines that missed this post will catch up after they expire and get rebuilt
+        }
+    }
+
+    @Override
+    public void backfillTimeline(UUID followerUuid, UUID followedUuid) {
+        try {
+            // cold timelines will contain posts of the followed user after they are rebuilt
+            if (!timelineExists(followerUuid)) {
+                return;
+            }
+            // posts of celebrities are merged with the timeline on read
+            if (feedMergeService.isCelebrity(followedUuid)) {
+                return;
+            }
+            List<TimelineEntry> entries = postRepository
+                    .getTimelineEntriesOfUserWithUuid(followedUuid, TIMELINE_CAPACITY);
+            if (!entries.isEmpty()) {
+                List<String> args = new ArrayList<>(entries.size() * 2);
+                for (TimelineEntry entry : entries) {
+                    args.add(String.valueOf(entry.getDate().getTime()));
+                    args.add(entry.getUuid().toString());
+                }
+                updateExistingTimeline(ADD_TO_EXISTING_TIMELINE_SCRIPT, followerUuid, args);
+            }
+        } catch (DataAccessException ex) {
+            // a timeline that couldn't be backfilled is incomplete, so it's better to drop it
+            dropTimeline(followerUuid);
+        }
+    }
+
+    @Override
+    public void pruneTimeline(UUID followerUuid, UUID unfollowedUuid) {
+        try {
+            if (!timelineExists(followerUuid)) {
+                return;
+            }
+            // timelines only hold TIMELINE_CAPACITY most recent posts, so there can't be any older
+            // posts of the unfollowed user in them
+            List<TimelineEntry> entries = postRepository
+                    .getTimelineEntriesOfUserWithUuid(unfollowedUuid, TIMELINE_CAPACITY);
+            if (!entries.isEmpty()) {
+                List<String> members = entries.stream().map(e -> e.getUuid().toString()).collect(Collectors.toList());
+                updateExistingTimeline(REMOVE_FROM_EXISTING_TIMELINE_SCRIPT, followerUuid, members);
+            }
+        } catch (DataAccessException ex) {
+            dropTimeline(followerUuid);
+        }
+    }
+
+    @Override
+    public void removePost(UUID authorUuid, UUID postUuid) {
+        // posts of celebrities are only kept in buffers, they have never been pushed into timelines
+        if (feedMergeService.isCelebrity(authorUuid)) {
+            feedMergeService.removePost(authorUuid, postUuid);
+            bumpCelebrityPostsVersion(authorUuid);
+            return;
+        }
+        List<String> followers = userRepository.findAllFollowerUuidsOfUserWithUuid(authorUuid);
+        List<String> member = List.of(postUuid.toString());
+
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String follower : followers) {
+                    updateExistingTimeline(conn, REMOVE_FROM_EXISTING_TIMELINE_SCRIPT, follower, member);
+                }
+                return null;
+            });
+        } catch (DataAccessException ignore) {
+            // posts that are marked as deleted are filtered out when timelines are read
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ml.echelon133.microblog.notification.model;
+
+import org.neo4j.ogm.annotation.typeconversion.Convert;
+import org.neo4j.ogm.typeconversion.UuidStringConverter;
+import org.springframework.data.neo4j.annotation.QueryResult;
+
+import java.util.UUID;
+
+// how many unread notifications the user has
+@QueryResult
+public class UnreadCount {
+
+    @Convert(value = UuidStringConverter.class)
+    private UUID userUuid;
+    private long count;
+
+    public UnreadCount() {}
+
+    public UnreadCount(UUID userUuid, long count) {
+        this.userUuid = userUuid;
+        this.count = count;
+    }
+
+    public UUID getUserUuid() {
+        return userUuid;
+    }
+
+    public void setUserUuid(UUID userUuid) {
+        this.userUuid = userUuid;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+}
@@ -2,36 +2,95 @@ package ml.echelon133.microblog.notification.repository;
 
 import ml.echelon133.microblog.notification.model.NotificationResult;
 import ml.echelon133.microblog.notification.model.Notification;
+import ml.echelon133.microblog.notification.model.UnreadCount;
 import org.springframework.data.neo4j.annotation.Query;
 import org.springframework.data.neo4j.repository.Neo4jRepository;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
+/*
+    Reading all notifications of a user doesn't update every unread relationship, because users with thousands
+    of unread notifications would cause huge write transactions. Instead, the user node has a 'notificationsReadUpTo'
+    property, and every notification created at or before that date is read. Notifications that are read one by one
+    are still marked with 'read = true', so a notification is read if either of these is true.
+
+    The property is deliberately not mapped in the User entity, so that saving a user that had been loaded before
+    their notifications were read can never move it back.
+ */
 public interface NotificationRepository extends Neo4jRepository<Notification, UUID> {
 
-    @Query( "MATCH (a:User)-[:POSTS]->(p:Post)-[notif:NOTIFIES]->(u:User) " +
+    // notifying posts are matched without a label, so that notifications about posts marked as deleted are listed too
+    @Query( "MATCH (a:User)-[:POSTS]->(p)-[notif:NOTIFIES]->(u:User) " +
             "WHERE u.uuid = $userUuid " +
-            "RETURN notif.uuid AS uuid, a.username AS notifiedBy, notif.read AS read, " +
+            "RETURN notif.uuid AS uuid, a.username AS notifiedBy, " +
+            "notif.read OR coalesce(datetime(notif.creationDate) <= datetime(u.notificationsReadUpTo), false) AS read, " +
             "notif.type AS type, p.uuid AS notificationPost " +
             "ORDER BY datetime(notif.creationDate) DESC SKIP $skip LIMIT $limit ")
     List<NotificationResult> findAllNotificationsOfUser(UUID userUuid, Long skip, Long limit);
 
-    @Query( "MATCH (:Post)-[notif:NOTIFIES]->(u:User) " +
+    @Query( "MATCH ()-[notif:NOTIFIES]->(u:User) " +
             "WHERE u.uuid = $userUuid " +
             "AND notif.read = false " +
+            "AND (u.notificationsReadUpTo IS NULL OR datetime(notif.creationDate) > datetime(u.notificationsReadUpTo)) " +
             "RETURN COUNT(notif)")
     Long countUnreadNotificationsOfUser(UUID userUuid);
 
-    @Query( "MATCH (:Post)-[notif:NOTIFIES]->(u:User) " +
-            "WHERE u.uuid = $userUuid AND notif.read = false " +
-            "SET notif.read = true " +
-            "RETURN COUNT(notif)")
-    Long readAllNotificationsOfUser(UUID userUuid);
+    // users who don't exist are skipped
+    @Query( "UNWIND $userUuids AS userUuid " +
+            "MATCH (u:User) " +
+            "WHERE u.uuid = userUuid " +
+            "OPTIONAL MATCH ()-[notif:NOTIFIES]->(u) " +
+            "WHERE notif.read = false " +
+            "AND (u.notificationsReadUpTo IS NULL OR datetime(notif.creationDate) > datetime(u.notificationsReadUpTo)) " +
+            "RETURN u.uuid AS userUuid, COUNT(notif) AS count")
+    List<UnreadCount> countUnreadNotificationsOfUsers(List<String> userUuids);
 
-    @Query( "MATCH (:Post)-[notif:NOTIFIES]->(u:User) " +
+    // counts notifications that become read and moves the date up to which notifications are read,
+    // which never moves back, even if requests of the user are handled by nodes with clocks that differ
+    @Query( "MATCH (u:User) " +
+            "WHERE u.uuid = $userUuid " +
+            "OPTIONAL MATCH ()-[notif:NOTIFIES]->(u) " +
+            "WHERE notif.read = false " +
+            "AND (u.notificationsReadUpTo IS NULL OR datetime(notif.creationDate) > datetime(u.notificationsReadUpTo)) " +
+            "AND datetime(notif.creationDate) <= datetime($readUpTo) " +
+            "WITH u, COUNT(notif) AS read " +
+            "SET u.notificationsReadUpTo = CASE " +
+            "WHEN u.notificationsReadUpTo IS NULL OR datetime(u.notificationsReadUpTo) < datetime($readUpTo) " +
+            "THEN $readUpTo ELSE u.notificationsReadUpTo END " +
+            "RETURN read")
+    Long readAllNotificationsOfUser(UUID userUuid, Date readUpTo);
+
+    @Query( "MATCH ()-[notif:NOTIFIES]->(u:User) " +
             "WHERE u.uuid = $userUuid AND notif.uuid = $notificationUuid AND notif.read = false " +
+            "AND (u.notificationsReadUpTo IS NULL OR datetime(notif.creationDate) > datetime(u.notificationsReadUpTo)) " +
             "SET notif.read = true " +
             "RETURN COUNT(notif) = 1")
     boolean readSingleNotificationOfUser(UUID userUuid, UUID notificationUuid);
+
+    // notifies all existing users with given usernames (except for the author of the post) about being mentioned,
+    // properties of created relationships are the same as properties of a saved MentionNotification.
+    // users who have already been notified about the post are not notified again, so the query can be retried
+    @Query( "MATCH (author:User)-[:POSTS]->(p:Post) " +
+            "WHERE p.uuid = $postUuid " +
+            "UNWIND $usernames AS username " +
+            "MATCH (u:User) " +
+            "WHERE u.username = username AND u <> author " +
+            "MERGE (p)-[notif:NOTIFIES {type: 'mention'}]->(u) " +
+            "ON CREATE SET notif.uuid = randomUUID(), notif.read = false, notif.creationDate = $creationDate " +
+            "RETURN u.uuid")
+    List<String> notifyUsersWithUsernamesAboutMention(UUID postUuid, List<String> usernames, Date creationDate);
+
+    // notifies the author of the post which is responded to/quoted by the post with given uuid, unless
+    // they are the author of both posts. Properties of the created relationship are the same as properties
+    // of a saved ResponseNotification/QuoteNotification and the query can be retried like the one above
+    @Query( "MATCH (author:User)-[:POSTS]->(p:Post)-[r:RESPONDS|QUOTES]->(:Post)<-[:POSTS]-(u:User) " +
+            "WHERE p.uuid = $postUuid AND u <> author " +
+            "WITH p, u, CASE type(r) WHEN 'RESPONDS' THEN 'response' ELSE 'quote' END AS notificationType " +
+            "MERGE (p)-[notif:NOTIFIES {type: notificationType}]->(u) " +
+            "ON CREATE SET notif.uuid = randomUUID(), notif.read = false, notif.creationDate = $creationDate " +
+            "RETURN u.uuid")
+    Optional<String> notifyAuthorOfParentOfPost(UUID postUuid, Date creationDate);
 }
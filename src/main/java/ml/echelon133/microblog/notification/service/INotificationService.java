@@ -2,12 +2,10 @@ package ml.echelon133.microblog.notification.service;
 
 import ml.echelon133.microblog.notification.model.NotificationResult;
 import ml.echelon133.microblog.post.model.Post;
-import ml.echelon133.microblog.post.model.QuotePost;
-import ml.echelon133.microblog.post.model.ResponsePost;
-import ml.echelon133.microblog.user.model.User;
 import ml.echelon133.microblog.user.model.UserPrincipal;
 
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public interface INotificationService {
@@ -15,7 +13,6 @@ public interface INotificationService {
     Long countUnreadNotificationsOfUser(UserPrincipal user);
     Long readAllNotificationsOfUser(UserPrincipal user);
     boolean readSingleNotificationOfUser(UserPrincipal user, UUID notificationUuid);
-    boolean notifyAboutResponse(ResponsePost notifyAbout, User notifiedUser);
-    boolean notifyAboutQuote(QuotePost notifyAbout, User notifiedUser);
-    Long notifyAboutMention(Post notifyAbout, List<User> notifiedUsers);
+    boolean notifyAuthorOfParentPost(Post responseOrQuote);
+    Long notifyAboutMention(Post notifyAbout, Set<String> mentionedUsernames);
 }
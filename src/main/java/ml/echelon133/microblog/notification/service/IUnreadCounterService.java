@@ -0,0 +1,12 @@
+package ml.echelon133.microblog.notification.service;
+
+import java.util.Collection;
+import java.util.UUID;
+
+public interface IUnreadCounterService {
+    Long getUnreadCount(UUID userUuid);
+    void increment(Collection<UUID> userUuids);
+    void decrement(UUID userUuid);
+    void reset(UUID userUuid);
+    void reconcile();
+}
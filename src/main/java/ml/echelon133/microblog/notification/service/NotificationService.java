@@ -3,24 +3,27 @@ package ml.echelon133.microblog.notification.service;
 import ml.echelon133.microblog.notification.model.*;
 import ml.echelon133.microblog.notification.repository.NotificationRepository;
 import ml.echelon133.microblog.post.model.Post;
-import ml.echelon133.microblog.post.model.QuotePost;
-import ml.echelon133.microblog.post.model.ResponsePost;
-import ml.echelon133.microblog.user.model.User;
+import ml.echelon133.microblog.stream.service.IStreamService;
 import ml.echelon133.microblog.user.model.UserPrincipal;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 
 @Service
 public class NotificationService implements INotificationService {
 
     private NotificationRepository notificationRepository;
+    private IStreamService streamService;
+    private IUnreadCounterService unreadCounterService;
 
     @Autowired
-    public NotificationService(NotificationRepository notificationRepository) {
+    public NotificationService(NotificationRepository notificationRepository,
+                               IStreamService streamService,
+                               IUnreadCounterService unreadCounterService) {
         this.notificationRepository = notificationRepository;
+        this.streamService = streamService;
+        this.unreadCounterService = unreadCounterService;
     }
 
     @Override
@@ -33,58 +36,56 @@ public class NotificationService implements INotificationService {
 
     @Override
     public Long countUnreadNotificationsOfUser(UserPrincipal user) {
-        return notificationRepository.countUnreadNotificationsOfUser(user.getUuid());
+        return unreadCounterService.getUnreadCount(user.getUuid());
     }
 
     @Override
     public Long readAllNotificationsOfUser(UserPrincipal user) {
-        return notificationRepository.readAllNotificationsOfUser(user.getUuid());
+        // notifications created after this date stay unread
+        Long read = notificationRepository.readAllNotificationsOfUser(user.getUuid(), new Date());
+        unreadCounterService.reset(user.getUuid());
+        return read;
     }
 
     @Override
     public boolean readSingleNotificationOfUser(UserPrincipal user, UUID notificationUuid) {
-        return notificationRepository.readSingleNotificationOfUser(user.getUuid(), notificationUuid);
-    }
-
-    @Override
-    public boolean notifyAboutResponse(ResponsePost notifyAbout, User notifiedUser) {
-        UUID notifiedUserUuid = notifiedUser.getUuid();
-        UUID responseAuthorUuid = notifyAbout.getAuthor().getUuid();
-        // don't notify the user about them responding to their own posts
-        if (!notifiedUserUuid.equals(responseAuthorUuid)) {
-            Notification rNotif = new ResponseNotification(notifyAbout, notifiedUser);
-            notificationRepository.save(rNotif);
-            return true;
+        boolean read = notificationRepository.readSingleNotificationOfUser(user.getUuid(), notificationUuid);
+        // notifications which had already been read are not counted
+        if (read) {
+            unreadCounterService.decrement(user.getUuid());
         }
-        return false;
+        return read;
     }
 
     @Override
-    public boolean notifyAboutQuote(QuotePost notifyAbout, User notifiedUser) {
-        UUID notifiedUserUuid = notifiedUser.getUuid();
-        UUID responseAuthorUuid = notifyAbout.getAuthor().getUuid();
-        // don't notify the user about them quoting their own posts
-        if (!notifiedUserUuid.equals(responseAuthorUuid)) {
-            Notification qNotif = new QuoteNotification(notifyAbout, notifiedUser);
-            notificationRepository.save(qNotif);
-            return true;
-        }
-        return false;
+    public boolean notifyAuthorOfParentPost(Post responseOrQuote) {
+        // the query doesn't notify users about them responding to/quoting their own posts
+        Optional<String> notifiedUserUuid = notificationRepository.notifyAuthorOfParentOfPost(
+                responseOrQuote.getUuid(), new Date());
+        notifiedUserUuid.ifPresent(uuid -> {
+            unreadCounterService.increment(List.of(UUID.fromString(uuid)));
+            streamService.publishNotification(UUID.fromString(uuid), responseOrQuote.getUuid());
+        });
+        return notifiedUserUuid.isPresent();
     }
 
     @Override
-    public Long notifyAboutMention(Post notifyAbout, List<User> notifiedUsers) {
-        Long notifiedUsersCounter = 0L;
-        for (User mentioned : notifiedUsers) {
-            UUID notifiedUserUuid = mentioned.getUuid();
-            UUID postAuthorUuid = notifyAbout.getAuthor().getUuid();
-            // don't notify the user about a post in which they mention themselves
-            if (!notifiedUserUuid.equals(postAuthorUuid)) {
-                Notification mNotif = new MentionNotification(notifyAbout, mentioned);
-                notificationRepository.save(mNotif);
-                notifiedUsersCounter++;
-            }
+    public Long notifyAboutMention(Post notifyAbout, Set<String> mentionedUsernames) {
+        if (mentionedUsernames.isEmpty()) {
+            return 0L;
+        }
+        // usernames which don't belong to anyone are skipped and the author of the post
+        // is not notified about a post in which they mention themselves
+        List<String> notifiedUserUuids = notificationRepository.notifyUsersWithUsernamesAboutMention(
+                notifyAbout.getUuid(), new ArrayList<>(mentionedUsernames), new Date());
+        List<UUID> notified = new ArrayList<>(notifiedUserUuids.size());
+        for (String notifiedUserUuid : notifiedUserUuids) {
+            notified.add(UUID.fromString(notifiedUserUuid));
+        }
+        unreadCounterService.increment(notified);
+        for (UUID notifiedUserUuid : notified) {
+            streamService.publishNotification(notifiedUserUuid, notifyAbout.getUuid());
         }
-        return notifiedUsersCounter;
+        return (long) notifiedUserUuids.size();
     }
 }
@@ -0,0 +1,225 @@
+package ml.echelon133.microblog.notification.service;
+
+import ml.echelon133.microblog.notification.model.UnreadCount;
+import ml.echelon133.microblog.notification.repository.NotificationRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Clients poll the number of unread notifications much more often than anything else, so instead of counting
+    unread relationships of the user in the graph on every request, every user's count is kept in a redis counter.
+
+    Counters are incremented when users are notified and decremented or reset when they read their notifications.
+    Only counters which already exist get updated. A counter that doesn't exist (because it expired or has never
+    been read) is initialized with a count from the graph the first time it's needed, and if redis is unavailable,
+    unread notifications are counted in the graph.
+
+    Updates of counters are not atomic with writes to the graph, so counters can drift (e.g. when a notification is
+    created while all notifications of the user are being read, or when a notifying query is retried). Because of
+    that, all existing counters are periodically recounted in the graph, which bounds how long a wrong count can be shown.
+ */
+@Service
+public class UnreadCounterService implements IUnreadCounterService {
+
+    // counters of users who don't check their notifications are not worth keeping up to date
+    public static final long COUNTER_TTL_SECONDS = 24 * 60 * 60L;
+
+    public static final long RECONCILE_INTERVAL_MILLIS = 10 * 60 * 1000L;
+
+    // how many counters are recounted with a single query
+    public static final int RECONCILE_BATCH_SIZE = 500;
+
+    private static final String COUNTER_KEY_PREFIX = "notifications:unread:";
+    private static final String RECONCILE_LOCK_KEY = "notifications:unread:reconcile:lock";
+
+    // KEYS: counter, ARGV: delta
+    // the counter is checked and updated in a single step, because incrementing a counter that expired
+    // in the meantime would recreate it without a ttl, holding only the delta instead of the whole count
+    private static final String ADD_TO_EXISTING_COUNTER_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+            "redis.call('INCRBY', KEYS[1], ARGV[1]) " +
+            "return 1";
+
+    private StringRedisTemplate redisTemplate;
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    public UnreadCounterService(StringRedisTemplate redisTemplate,
+                                NotificationRepository notificationRepository) {
+        this.redisTemplate = redisTemplate;
+        this.notificationRepository = notificationRepository;
+    }
+
+    private static String counterKey(Object userUuid) {
+        return COUNTER_KEY_PREFIX + userUuid.toString();
+    }
+
+    private void dropCounters(Collection<String> keys) {
+        try {
+            redisTemplate.delete(keys);
+        } catch (DataAccessException ignore) {
+        }
+    }
+
+    // adds 'delta' to counters which already exist, counters which can't be updated are dropped
+    // so that they are counted from scratch the next time they are read
+    private void addToCounters(List<String> keys, long delta) {
+        String value = String.valueOf(delta);
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String key : keys) {
+                    conn.eval(ADD_TO_EXISTING_COUNTER_SCRIPT, ReturnType.INTEGER, 1, key, value);
+                }
+                return null;
+            });
+        } catch (DataAccessException ex) {
+            dropCounters(keys);
+        }
+    }
+
+    @Override
+    public Long getUnreadCount(UUID userUuid) {
+        String key = counterKey(userUuid);
+        try {
+            String value = redisTemplate.opsForValue().get(key);
+            if (value != null) {
+                redisTemplate.expire(key, COUNTER_TTL_SECONDS, TimeUnit.SECONDS);
+                // a decrement that raced with a reset could have pushed the counter below zero
+                return Math.max(0L, Long.parseLong(value));
+            }
+        } catch (DataAccessException ex) {
+            return notificationRepository.countUnreadNotificationsOfUser(userUuid);
+        }
+
+        // counter is cold, initialize it with the count from the graph
+        Long count = notificationRepository.countUnreadNotificationsOfUser(userUuid);
+        try {
+            // if the user has been notified in the meantime, some other request has already initialized the counter
+            redisTemplate.opsForValue()
+                    .setIfAbsent(key, String.valueOf(count), COUNTER_TTL_SECONDS, TimeUnit.SECONDS);
+        } catch (DataAccessException ignore) {
+        }
+        return count;
+    }
+
+    @Override
+    public void increment(Collection<UUID> userUuids) {
+        if (userUuids.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(userUuids.size());
+        for (UUID userUuid : userUuids) {
+            keys.add(counterKey(userUuid));
+        }
+        addToCounters(keys, 1L);
+    }
+
+    @Override
+    public void decrement(UUID userUuid) {
+        addToCounters(List.of(counterKey(userUuid)), -1L);
+    }
+
+    @Override
+    public void reset(UUID userUuid) {
+        String key = counterKey(userUuid);
+        try {
+            redisTemplate.opsForValue().set(key, "0", COUNTER_TTL_SECONDS, TimeUnit.SECONDS);
+        } catch (DataAccessException ex) {
+            dropCounters(List.of(key));
+        }
+    }
+
+    private List<String> scanCounterKeys() {
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(COUNTER_KEY_PREFIX + "*")
+                .count(RECONCILE_BATCH_SIZE)
+                .build();
+        return redisTemplate.execute((RedisCallback<List<String>>) connection -> {
+            List<String> keys = new ArrayList<>();
+            try (Cursor<byte[]> cursor = connection.scan(options)) {
+                while (cursor.hasNext()) {
+                    String key = new String(cursor.next(), StandardCharsets.UTF_8);
+                    // the lock matches the pattern too
+                    if (!key.equals(RECONCILE_LOCK_KEY)) {
+                        keys.add(key);
+                    }
+                }
+            } catch (IOException ignore) {
+                // closing the cursor only releases the connection, every key has already been read
+            }
+            return keys;
+        });
+    }
+
+    private void reconcileBatch(List<String> keys) {
+        List<String> userUuids = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            userUuids.add(key.substring(COUNTER_KEY_PREFIX.length()));
+        }
+        // counters of users who no longer exist are not returned and are left to expire
+        List<UnreadCount> counts = notificationRepository.countUnreadNotificationsOfUsers(userUuids);
+        List<String> countedKeys = new ArrayList<>(counts.size());
+        for (UnreadCount count : counts) {
+            countedKeys.add(counterKey(count.getUserUuid()));
+        }
+
+        // reconciling a counter must not keep it from expiring, so every counter keeps its remaining ttl
+        List<Object> ttls = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String key : countedKeys) {
+                conn.ttl(key);
+            }
+            return null;
+        });
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < counts.size(); i++) {
+                Object ttl = ttls.get(i);
+                // counters which have expired since they were scanned are not recreated
+                if (ttl instanceof Long && (Long) ttl > 0) {
+                    conn.set(countedKeys.get(i), String.valueOf(counts.get(i).getCount()),
+                            Expiration.seconds((Long) ttl), SetOption.SET_IF_PRESENT);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    @Scheduled(initialDelay = RECONCILE_INTERVAL_MILLIS, fixedDelay = RECONCILE_INTERVAL_MILLIS)
+    public void reconcile() {
+        try {
+            // only one node has to recount counters
+            Boolean locked = redisTemplate.opsForValue()
+                    .setIfAbsent(RECONCILE_LOCK_KEY, "locked", RECONCILE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            if (!Boolean.TRUE.equals(locked)) {
+                return;
+            }
+            List<String> keys = scanCounterKeys();
+            if (keys == null) {
+                return;
+            }
+            for (int i = 0; i < keys.size(); i += RECONCILE_BATCH_SIZE) {
+                reconcileBatch(keys.subList(i, Math.min(i + RECONCILE_BATCH_SIZE, keys.size())));
+            }
+        } catch (DataAccessException ignore) {
+            // counters are recounted again in the next interval
+        }
+    }
+}
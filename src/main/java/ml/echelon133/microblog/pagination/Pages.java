@@ -0,0 +1,23 @@
+package ml.echelon133.microblog.pagination;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/*
+    Pages of posts/users which belong to a post, a user or a tag (its owner) are read with a single query.
+    Only an empty page doesn't tell whether the owner exists, so that's the only case in which the existence
+    of the owner has to be checked separately.
+ */
+public final class Pages {
+
+    private Pages() {}
+
+    public static <T, E extends Exception> List<T> throwIfEmptyAndOwnerDoesntExist(
+            List<T> page, BooleanSupplier ownerExists, Supplier<E> ownerDoesntExist) throws E {
+        if (page.isEmpty() && !ownerExists.getAsBoolean()) {
+            throw ownerDoesntExist.get();
+        }
+        return page;
+    }
+}
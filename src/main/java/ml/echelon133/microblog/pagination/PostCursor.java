@@ -0,0 +1,86 @@
+package ml.echelon133.microblog.pagination;
+
+import org.springframework.http.HttpHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+
+/*
+    Opaque cursor which points at a single post in a listing ordered by (creationDate, uuid).
+
+    Listings which accept a cursor start right after the post that the cursor points at, instead of
+    skipping a number of posts, so pages don't shift when new posts appear and deep pages don't cost more
+    than the first one.
+ */
+public class PostCursor {
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final String SEPARATOR = ":";
+
+    private Date date;
+    private UUID uuid;
+
+    public PostCursor(Date date, UUID uuid) {
+        this.date = date;
+        this.uuid = uuid;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PostCursor that = (PostCursor) o;
+        return Objects.equals(date, that.date) && Objects.equals(uuid, that.uuid);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(date, uuid);
+    }
+
+    public String encode() {
+        String raw = date.getTime() + SEPARATOR + uuid.toString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PostCursor decode(String cursor) throws IllegalArgumentException {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException();
+            }
+            return new PostCursor(new Date(Long.parseLong(parts[0])), UUID.fromString(parts[1]));
+        } catch (IllegalArgumentException ex) {
+            // NumberFormatException is also an IllegalArgumentException
+            throw new IllegalArgumentException("Invalid cursor value.");
+        }
+    }
+
+    // only full pages get a cursor pointing at the next page, because a page
+    // that is shorter than the limit is the last one
+    public static <T> HttpHeaders nextPageHeaders(List<T> page, Long limit,
+                                                  Function<T, Date> dateOf,
+                                                  Function<T, UUID> uuidOf) {
+        HttpHeaders headers = new HttpHeaders();
+        if (!page.isEmpty() && page.size() >= limit) {
+            T last = page.get(page.size() - 1);
+            headers.set(NEXT_CURSOR_HEADER, new PostCursor(dateOf.apply(last), uuidOf.apply(last)).encode());
+        }
+        return headers;
+    }
+}
@@ -1,11 +1,14 @@
 package ml.echelon133.microblog.post.controller;
 
+import ml.echelon133.microblog.pagination.PostCursor;
 import ml.echelon133.microblog.post.exception.InvalidPostContentException;
 import ml.echelon133.microblog.post.model.*;
+import ml.echelon133.microblog.post.service.IPostPipelineService;
 import ml.echelon133.microblog.post.service.IPostService;
+import ml.echelon133.microblog.post.service.PostService;
+import ml.echelon133.microblog.security.CurrentUser;
 import ml.echelon133.microblog.user.model.UserPost;
 import ml.echelon133.microblog.user.service.IUserService;
-import ml.echelon133.microblog.user.model.User;
 import ml.echelon133.microblog.user.model.UserPrincipal;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -15,9 +18,11 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 
 @RestController
@@ -26,11 +31,39 @@ public class PostController {
 
     private IPostService postService;
     private IUserService userService;
+    private IPostPipelineService pipelineService;
 
     @Autowired
-    public PostController(IPostService postService, IUserService userService) {
+    public PostController(IPostService postService,
+                          IUserService userService,
+                          IPostPipelineService pipelineService) {
         this.postService = postService;
         this.userService = userService;
+        this.pipelineService = pipelineService;
+    }
+
+    private void applyViewerStateToPosts(boolean viewerState, List<UserPost> posts) {
+        if (viewerState) {
+            CurrentUser.find().ifPresent(viewer -> userService.applyViewerStateToPosts(viewer, posts));
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<List<PostWithInfo>> getPostsWithUuids(@RequestParam List<String> uuids) throws Exception {
+        // oversized lists are rejected before any of their uuids is parsed
+        if (uuids.stream().distinct().count() > PostService.MAX_POSTS_PER_MULTI_GET) {
+            throw new IllegalArgumentException(
+                    String.format("At most %d posts can be requested at once.", PostService.MAX_POSTS_PER_MULTI_GET));
+        }
+        List<UUID> parsedUuids = uuids.stream().map(UUID::fromString).collect(Collectors.toList());
+        return new ResponseEntity<>(
+                postService.getAllWithInfoByUuids(parsedUuids),
+                HttpStatus.OK);
+    }
+
+    @GetMapping("/pipeline")
+    public ResponseEntity<PipelineStats> getPipelineStats() {
+        return new ResponseEntity<>(pipelineService.getStats(), HttpStatus.OK);
     }
 
     @GetMapping("/{uuid}")
@@ -51,18 +84,51 @@ public class PostController {
     @GetMapping("/{uuid}/responses")
     public ResponseEntity<List<UserPost>> getResponsesToPost(@PathVariable String uuid,
                                                              @RequestParam(defaultValue = "0") Long skip,
-                                                             @RequestParam(defaultValue = "5") Long limit) throws Exception {
+                                                             @RequestParam(defaultValue = "5") Long limit,
+                                                             @RequestParam(required = false) String cursor,
+                                                             @RequestParam(defaultValue = "false") boolean viewerState) throws Exception {
+        List<UserPost> responses;
+        if (cursor != null) {
+            responses = postService.getAllResponsesTo(UUID.fromString(uuid), PostCursor.decode(cursor), limit);
+        } else {
+            responses = postService.getAllResponsesTo(UUID.fromString(uuid), skip, limit);
+        }
+        applyViewerStateToPosts(viewerState, responses);
         return new ResponseEntity<>(
-                postService.getAllResponsesTo(UUID.fromString(uuid), skip, limit),
+                responses,
+                PostCursor.nextPageHeaders(responses, limit, UserPost::getDate, UserPost::getUuid),
                 HttpStatus.OK);
     }
 
+    @GetMapping("/{uuid}/thread")
+    public ResponseEntity<PostThread> getThreadOfPost(@PathVariable String uuid,
+                                                      @RequestParam(defaultValue = "0") Long skip,
+                                                      @RequestParam(defaultValue = "20") Long limit,
+                                                      @RequestParam(defaultValue = "false") boolean viewerState) throws Exception {
+        PostThread thread = postService.getThread(UUID.fromString(uuid), skip, limit);
+        List<UserPost> posts = new ArrayList<>(thread.getAncestors());
+        posts.add(thread.getPost());
+        posts.addAll(thread.getDescendants());
+        applyViewerStateToPosts(viewerState, posts);
+        return new ResponseEntity<>(thread, HttpStatus.OK);
+    }
+
     @GetMapping("/{uuid}/quotes")
     public ResponseEntity<List<UserPost>> getQuotesOfPost(@PathVariable String uuid,
                                                           @RequestParam(defaultValue = "0") Long skip,
-                                                          @RequestParam(defaultValue = "5") Long limit) throws Exception {
+                                                          @RequestParam(defaultValue = "5") Long limit,
+                                                          @RequestParam(required = false) String cursor,
+                                                          @RequestParam(defaultValue = "false") boolean viewerState) throws Exception {
+        List<UserPost> quotes;
+        if (cursor != null) {
+            quotes = postService.getAllQuotesOf(UUID.fromString(uuid), PostCursor.decode(cursor), limit);
+        } else {
+            quotes = postService.getAllQuotesOf(UUID.fromString(uuid), skip, limit);
+        }
+        applyViewerStateToPosts(viewerState, quotes);
         return new ResponseEntity<>(
-                postService.getAllQuotesOf(UUID.fromString(uuid), skip, limit),
+                quotes,
+                PostCursor.nextPageHeaders(quotes, limit, UserPost::getDate, UserPost::getUuid),
                 HttpStatus.OK);
     }
 
@@ -104,8 +170,7 @@ public class PostController {
         }
 
         UserPrincipal loggedUser = (UserPrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        User user = userService.findByUsername(loggedUser.getUsername());
-        Post savedPost = postService.postPost(user, postDto.getContent());
+        Post savedPost = postService.postPost(loggedUser, postDto.getContent());
 
         return new ResponseEntity<>(
                 Map.of("uuid", savedPost.getUuid().toString()),
@@ -126,8 +191,7 @@ public class PostController {
         }
 
         UserPrincipal loggedUser = (UserPrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        User user = userService.findByUsername(loggedUser.getUsername());
-        Post savedResponse = postService.postResponse(user, responseDto.getContent(), UUID.fromString(uuid));
+        Post savedResponse = postService.postResponse(loggedUser, responseDto.getContent(), UUID.fromString(uuid));
 
         return new ResponseEntity<>(
                 Map.of("uuid", savedResponse.getUuid().toString()),
@@ -148,8 +212,7 @@ public class PostController {
         }
 
         UserPrincipal loggedUser = (UserPrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        User user = userService.findByUsername(loggedUser.getUsername());
-        Post savedQuote = postService.postQuote(user, quotePostDto.getContent(), UUID.fromString(uuid));
+        Post savedQuote = postService.postQuote(loggedUser, quotePostDto.getContent(), UUID.fromString(uuid));
 
         return new ResponseEntity<>(
                 Map.of("uuid", savedQuote.getUuid().toString()),
@@ -160,8 +223,7 @@ public class PostController {
     @DeleteMapping("/{uuid}")
     public ResponseEntity<Map<String, Boolean>> deletePost(@PathVariable String uuid) throws Exception {
         UserPrincipal loggedUser = (UserPrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        User user = userService.findByUsername(loggedUser.getUsername());
-        boolean deleted = postService.markPostAsDeleted(user, UUID.fromString(uuid));
+        boolean deleted = postService.markPostAsDeleted(loggedUser, UUID.fromString(uuid));
 
         return new ResponseEntity<>(
                 Map.of("deleted", deleted),
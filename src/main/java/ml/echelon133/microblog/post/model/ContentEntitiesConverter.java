@@ -0,0 +1,44 @@
+package ml.echelon133.microblog.post.model;
+
+import org.neo4j.ogm.typeconversion.AttributeConverter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Entities of a post are stored in a single property of the post node, e.g. 'hashtag:0:5,url:6:30',
+    because properties can't hold lists of maps.
+ */
+public class ContentEntitiesConverter implements AttributeConverter<List<ContentEntity>, String> {
+
+    @Override
+    public String toGraphProperty(List<ContentEntity> entities) {
+        if (entities == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(entities.size() * 16);
+        for (ContentEntity entity : entities) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(entity.getType()).append(':').append(entity.getStart()).append(':').append(entity.getEnd());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public List<ContentEntity> toEntityAttribute(String value) {
+        if (value == null) {
+            return null;
+        }
+        List<ContentEntity> entities = new ArrayList<>();
+        if (value.isEmpty()) {
+            return entities;
+        }
+        for (String encoded : value.split(",")) {
+            String[] parts = encoded.split(":");
+            entities.add(new ContentEntity(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2])));
+        }
+        return entities;
+    }
+}
@@ -0,0 +1,55 @@
+package ml.echelon133.microblog.post.model;
+
+import java.util.Objects;
+
+/*
+    Hashtag, mention or url found in the content of a post.
+
+    Offsets are indexes of characters (UTF-16 code units, just like in javascript strings) of the content,
+    'start' is inclusive and 'end' is exclusive. Text of hashtags and mentions starts with '#' and '@'.
+ */
+public class ContentEntity {
+
+    public static final String HASHTAG = "hashtag";
+    public static final String MENTION = "mention";
+    public static final String URL = "url";
+
+    private String type;
+    private int start;
+    private int end;
+
+    public ContentEntity(String type, int start, int end) {
+        this.type = type;
+        this.start = start;
+        this.end = end;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public String textIn(String content) {
+        return content.substring(start, end);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ContentEntity that = (ContentEntity) o;
+        return start == that.start && end == that.end && type.equals(that.type);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, start, end);
+    }
+}
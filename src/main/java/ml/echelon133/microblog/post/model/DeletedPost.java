@@ -0,0 +1,26 @@
+package ml.echelon133.microblog.post.model;
+
+import org.neo4j.ogm.annotation.Id;
+import org.neo4j.ogm.annotation.NodeEntity;
+import org.neo4j.ogm.annotation.typeconversion.Convert;
+import org.neo4j.ogm.typeconversion.UuidStringConverter;
+
+import java.util.UUID;
+
+/*
+    Posts marked as deleted have their 'Post' label swapped for 'DeletedPost', so that queries which traverse posts
+    skip them structurally. Such nodes are only ever written by queries, this entity exists so that uuids
+    of deleted posts are indexed just like uuids of posts (the constraint is created by PostMigrationService).
+ */
+@NodeEntity
+public class DeletedPost {
+    @Id
+    @Convert(UuidStringConverter.class)
+    private UUID uuid;
+
+    public DeletedPost() {}
+
+    public UUID getUuid() {
+        return uuid;
+    }
+}
@@ -0,0 +1,47 @@
+package ml.echelon133.microblog.post.model;
+
+public class PipelineStats {
+    // how many tasks are waiting for a worker
+    private int queueDepth;
+    // how long the oldest waiting task has been waiting
+    private long oldestQueuedMillis;
+    // how long the most recently started task had been waiting before it was started
+    private long lastLagMillis;
+    private long completedTasks;
+    private long retriedAttempts;
+    private long deadLetteredTasks;
+
+    public PipelineStats(int queueDepth, long oldestQueuedMillis, long lastLagMillis,
+                         long completedTasks, long retriedAttempts, long deadLetteredTasks) {
+        this.queueDepth = queueDepth;
+        this.oldestQueuedMillis = oldestQueuedMillis;
+        this.lastLagMillis = lastLagMillis;
+        this.completedTasks = completedTasks;
+        this.retriedAttempts = retriedAttempts;
+        this.deadLetteredTasks = deadLetteredTasks;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getOldestQueuedMillis() {
+        return oldestQueuedMillis;
+    }
+
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    public long getRetriedAttempts() {
+        return retriedAttempts;
+    }
+
+    public long getDeadLetteredTasks() {
+        return deadLetteredTasks;
+    }
+}
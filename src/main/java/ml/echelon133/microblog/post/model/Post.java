@@ -12,6 +12,7 @@ import org.neo4j.ogm.typeconversion.UuidStringConverter;
 
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
@@ -22,9 +23,15 @@ public class Post {
     @Convert(UuidStringConverter.class)
     private UUID uuid;
     private String content;
+    // hashtags, mentions and urls found in the content, so that nobody has to parse it again
+    @Convert(ContentEntitiesConverter.class)
+    private List<ContentEntity> entities;
     private Date creationDate;
     private boolean deleted;
 
+    // counters of likes, responses and quotes are stored on post nodes but deliberately not mapped,
+    // so that saving a post entity never overwrites them with stale values
+
     @Relationship(value = "POSTS", direction = Relationship.INCOMING)
     private User author;
 
@@ -50,6 +57,14 @@ public class Post {
         return content;
     }
 
+    public List<ContentEntity> getEntities() {
+        return entities;
+    }
+
+    public void setEntities(List<ContentEntity> entities) {
+        this.entities = entities;
+    }
+
     public Date getCreationDate() {
         return creationDate;
     }
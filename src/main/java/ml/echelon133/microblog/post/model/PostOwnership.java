@@ -0,0 +1,74 @@
+package ml.echelon133.microblog.post.model;
+
+import ml.echelon133.microblog.tag.model.Tag;
+import org.neo4j.ogm.annotation.typeconversion.Convert;
+import org.neo4j.ogm.typeconversion.UuidStringConverter;
+import org.springframework.data.neo4j.annotation.QueryResult;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/*
+    Everything that has to be known about a post to check whether someone can delete or report it,
+    read without mapping the post, its author, the roles of the author and its tags.
+ */
+@QueryResult
+public class PostOwnership {
+
+    @Convert(value = UuidStringConverter.class)
+    private UUID uuid;
+    @Convert(value = UuidStringConverter.class)
+    private UUID authorUuid;
+    private boolean deleted;
+    // only read when the post gets marked as deleted, so that usages of its tags can be decremented
+    private Date creationDate;
+    private List<Tag> tags;
+
+    public PostOwnership() {}
+    public PostOwnership(UUID uuid, UUID authorUuid, boolean deleted) {
+        this.uuid = uuid;
+        this.authorUuid = authorUuid;
+        this.deleted = deleted;
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(UUID uuid) {
+        this.uuid = uuid;
+    }
+
+    public UUID getAuthorUuid() {
+        return authorUuid;
+    }
+
+    public void setAuthorUuid(UUID authorUuid) {
+        this.authorUuid = authorUuid;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    public Date getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(Date creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    public List<Tag> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<Tag> tags) {
+        this.tags = tags;
+    }
+}
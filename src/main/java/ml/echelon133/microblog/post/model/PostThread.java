@@ -0,0 +1,46 @@
+package ml.echelon133.microblog.post.model;
+
+import ml.echelon133.microblog.user.model.UserPost;
+
+import java.util.List;
+
+public class PostThread {
+
+    // posts that the post responds to, starting with the first post of the conversation
+    private List<UserPost> ancestors;
+    private UserPost post;
+    // responses to the post and to its responses, oldest first
+    private List<UserPost> descendants;
+
+    public PostThread() {}
+
+    public PostThread(List<UserPost> ancestors, UserPost post, List<UserPost> descendants) {
+        this.ancestors = ancestors;
+        this.post = post;
+        this.descendants = descendants;
+    }
+
+    public List<UserPost> getAncestors() {
+        return ancestors;
+    }
+
+    public void setAncestors(List<UserPost> ancestors) {
+        this.ancestors = ancestors;
+    }
+
+    public UserPost getPost() {
+        return post;
+    }
+
+    public void setPost(UserPost post) {
+        this.post = post;
+    }
+
+    public List<UserPost> getDescendants() {
+        return descendants;
+    }
+
+    public void setDescendants(List<UserPost> descendants) {
+        this.descendants = descendants;
+    }
+}
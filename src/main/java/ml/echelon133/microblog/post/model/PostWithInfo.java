@@ -0,0 +1,32 @@
+package ml.echelon133.microblog.post.model;
+
+import ml.echelon133.microblog.user.model.UserPost;
+
+public class PostWithInfo {
+
+    private UserPost post;
+    private PostInfo info;
+
+    public PostWithInfo() {}
+
+    public PostWithInfo(UserPost post, PostInfo info) {
+        this.post = post;
+        this.info = info;
+    }
+
+    public UserPost getPost() {
+        return post;
+    }
+
+    public void setPost(UserPost post) {
+        this.post = post;
+    }
+
+    public PostInfo getInfo() {
+        return info;
+    }
+
+    public void setInfo(PostInfo info) {
+        this.info = info;
+    }
+}
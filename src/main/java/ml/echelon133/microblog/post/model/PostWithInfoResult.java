@@ -0,0 +1,142 @@
+package ml.echelon133.microblog.post.model;
+
+import ml.echelon133.microblog.user.model.User;
+import ml.echelon133.microblog.user.model.UserPost;
+import org.neo4j.ogm.annotation.typeconversion.Convert;
+import org.neo4j.ogm.typeconversion.UuidStringConverter;
+import org.springframework.data.neo4j.annotation.QueryResult;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/*
+    Flat row which holds both a post and its counters, because query results can't be mapped into nested objects.
+    Counter columns have a suffix, since 'quotes' already holds the uuid of the quoted post.
+ */
+@QueryResult
+public class PostWithInfoResult {
+    @Convert(value = UuidStringConverter.class)
+    private UUID uuid;
+    private String content;
+    @Convert(value = ContentEntitiesConverter.class)
+    private List<ContentEntity> entities;
+    private Date date;
+    private User author;
+    @Convert(value = UuidStringConverter.class)
+    private UUID quotes;
+    @Convert(value = UuidStringConverter.class)
+    private UUID respondsTo;
+    private String respondsToUsername;
+    private Long responsesCount;
+    private Long likesCount;
+    private Long quotesCount;
+
+    public PostWithInfoResult() {}
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(UUID uuid) {
+        this.uuid = uuid;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public List<ContentEntity> getEntities() {
+        return entities;
+    }
+
+    public void setEntities(List<ContentEntity> entities) {
+        this.entities = entities;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    public User getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(User author) {
+        this.author = author;
+    }
+
+    public UUID getQuotes() {
+        return quotes;
+    }
+
+    public void setQuotes(UUID quotes) {
+        this.quotes = quotes;
+    }
+
+    public UUID getRespondsTo() {
+        return respondsTo;
+    }
+
+    public void setRespondsTo(UUID respondsTo) {
+        this.respondsTo = respondsTo;
+    }
+
+    public String getRespondsToUsername() {
+        return respondsToUsername;
+    }
+
+    public void setRespondsToUsername(String respondsToUsername) {
+        this.respondsToUsername = respondsToUsername;
+    }
+
+    public Long getResponsesCount() {
+        return responsesCount;
+    }
+
+    public void setResponsesCount(Long responsesCount) {
+        this.responsesCount = responsesCount;
+    }
+
+    public Long getLikesCount() {
+        return likesCount;
+    }
+
+    public void setLikesCount(Long likesCount) {
+        this.likesCount = likesCount;
+    }
+
+    public Long getQuotesCount() {
+        return quotesCount;
+    }
+
+    public void setQuotesCount(Long quotesCount) {
+        this.quotesCount = quotesCount;
+    }
+
+    public PostWithInfo toPostWithInfo() {
+        UserPost post = new UserPost();
+        post.setUuid(uuid);
+        post.setContent(content);
+        post.setEntities(entities);
+        post.setDate(date);
+        post.setAuthor(author);
+        post.setQuotes(quotes);
+        post.setRespondsTo(respondsTo);
+        post.setRespondsToUsername(respondsToUsername);
+
+        PostInfo info = new PostInfo();
+        info.setResponses(responsesCount);
+        info.setLikes(likesCount);
+        info.setQuotes(quotesCount);
+        return new PostWithInfo(post, info);
+    }
+}
@@ -14,4 +14,8 @@ public class QuotePost extends Post {
         super(author, content);
         this.quotes = quotes;
     }
+
+    public Post getQuotes() {
+        return quotes;
+    }
 }
@@ -1,8 +1,13 @@
 package ml.echelon133.microblog.post.model;
 
 import ml.echelon133.microblog.user.model.User;
+import org.neo4j.ogm.annotation.Index;
 import org.neo4j.ogm.annotation.NodeEntity;
 import org.neo4j.ogm.annotation.Relationship;
+import org.neo4j.ogm.annotation.typeconversion.Convert;
+import org.neo4j.ogm.typeconversion.UuidStringConverter;
+
+import java.util.UUID;
 
 @NodeEntity
 public class ResponsePost extends Post {
@@ -10,8 +15,28 @@ public class ResponsePost extends Post {
     @Relationship(type = "RESPONDS")
     private Post respondsTo;
 
+    // uuid of the first post of the conversation and the number of responses between it and this post,
+    // both are set by the query which creates the response, from the stored values of the post it responds to
+    // (the index is created by PostMigrationService)
+    @Index
+    @Convert(UuidStringConverter.class)
+    private UUID rootUuid;
+    private Integer depth;
+
     public ResponsePost(User author, String content, Post respondsTo) {
         super(author, content);
         this.respondsTo = respondsTo;
     }
+
+    public Post getRespondsTo() {
+        return respondsTo;
+    }
+
+    public UUID getRootUuid() {
+        return rootUuid;
+    }
+
+    public Integer getDepth() {
+        return depth;
+    }
 }
@@ -1,18 +1,32 @@
 package ml.echelon133.microblog.post.repository;
 
+import ml.echelon133.microblog.feed.model.TimelineEntry;
 import ml.echelon133.microblog.post.model.Post;
 import ml.echelon133.microblog.post.model.PostInfo;
+import ml.echelon133.microblog.post.model.PostOwnership;
+import ml.echelon133.microblog.post.model.PostWithInfoResult;
 import ml.echelon133.microblog.user.model.UserPost;
 import org.springframework.data.neo4j.annotation.Query;
 import org.springframework.data.neo4j.repository.Neo4jRepository;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface PostRepository extends Neo4jRepository<Post, UUID> {
 
+    /*
+        Finds the post with the uuid held by 'postUuid' and binds it to 'post', whether it's marked as deleted or not
+        (rows of posts which don't exist are dropped). Posts marked as deleted have the 'DeletedPost' label instead
+        of 'Post', and both labels have an index on uuids, so the post is looked up with two index seeks.
+     */
+    String MATCH_POST_OR_DELETED_POST =
+            "OPTIONAL MATCH (live:Post) WHERE live.uuid = postUuid " +
+            "OPTIONAL MATCH (removed:DeletedPost) WHERE removed.uuid = postUuid " +
+            "WITH *, coalesce(live, removed) AS post WHERE post IS NOT NULL ";
+
     /*
         User's feed consists of most recent posts/quotes/responses that have been posted
         either by themselves or users that they follow.
@@ -22,83 +36,417 @@ public interface PostRepository extends Neo4jRepository<Post, UUID> {
         results.
      */
     @Query( "MATCH (u:User)-[:FOLLOWS]->(poster:User)-[:POSTS]->(posts:Post) " +
-            "WHERE u.uuid = $uuid AND posts.deleted <> true " +
-            "OPTIONAL MATCH (posts:Post)-[:RESPONDS]->(respondsTo:Post)<-[:POSTS]-(respondsToUser:User) " +
-            "OPTIONAL MATCH (posts:Post)-[:QUOTES]->(quotes:Post) " +
-            "RETURN posts.uuid AS uuid, posts.content AS content, posts.creationDate AS date, poster AS author, " +
+            "WHERE u.uuid = $uuid " +
+            "OPTIONAL MATCH (posts:Post)-[:RESPONDS]->(respondsTo)<-[:POSTS]-(respondsToUser:User) " +
+            "OPTIONAL MATCH (posts:Post)-[:QUOTES]->(quotes) " +
+            "RETURN posts.uuid AS uuid, posts.content AS content, posts.entities AS entities, " +
+            "posts.creationDate AS date, poster AS author, " +
             "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo, respondsToUser.username AS respondsToUsername " +
-            "ORDER BY datetime(posts.creationDate) DESC SKIP $skip LIMIT $limit ")
+            "ORDER BY datetime(posts.creationDate) DESC, posts.uuid DESC SKIP $skip LIMIT $limit ")
     List<UserPost> getFeedForUserWithUuid(UUID uuid, Long skip, Long limit);
 
+    // keyset variant of the query above, it starts right after the post with given date and uuid
+    @Query( "MATCH (u:User)-[:FOLLOWS]->(poster:User)-[:POSTS]->(posts:Post) " +
+            "WHERE u.uuid = $uuid " +
+            "AND (datetime(posts.creationDate) < datetime($beforeDate) OR " +
+            "(datetime(posts.creationDate) = datetime($beforeDate) AND posts.uuid < $beforeUuid)) " +
+            "OPTIONAL MATCH (posts:Post)-[:RESPONDS]->(respondsTo)<-[:POSTS]-(respondsToUser:User) " +
+            "OPTIONAL MATCH (posts:Post)-[:QUOTES]->(quotes) " +
+            "RETURN posts.uuid AS uuid, posts.content AS content, posts.entities AS entities, " +
+            "posts.creationDate AS date, poster AS author, " +
+            "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo, respondsToUser.username AS respondsToUsername " +
+            "ORDER BY datetime(posts.creationDate) DESC, posts.uuid DESC LIMIT $limit ")
+    List<UserPost> getFeedForUserWithUuid_Before(UUID uuid, Date beforeDate, UUID beforeUuid, Long limit);
+
+    // most recent posts of the feed that are newer than the post with given uuid (which can be marked as deleted,
+    // because clients poll for posts newer than the newest one they have seen)
+    @Query( "WITH $sinceUuid AS postUuid " +
+            MATCH_POST_OR_DELETED_POST +
+            "WITH post AS since " +
+            "MATCH (u:User)-[:FOLLOWS]->(poster:User)-[:POSTS]->(posts:Post) " +
+            "WHERE u.uuid = $uuid " +
+            "AND (datetime(posts.creationDate) > datetime(since.creationDate) OR " +
+            "(datetime(posts.creationDate) = datetime(since.creationDate) AND posts.uuid > since.uuid)) " +
+            "OPTIONAL MATCH (posts:Post)-[:RESPONDS]->(respondsTo)<-[:POSTS]-(respondsToUser:User) " +
+            "OPTIONAL MATCH (posts:Post)-[:QUOTES]->(quotes) " +
+            "RETURN posts.uuid AS uuid, posts.content AS content, posts.entities AS entities, " +
+            "posts.creationDate AS date, poster AS author, " +
+            "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo, respondsToUser.username AS respondsToUsername " +
+            "ORDER BY datetime(posts.creationDate) DESC, posts.uuid DESC LIMIT $limit ")
+    List<UserPost> getFeedForUserWithUuid_Since(UUID uuid, UUID sinceUuid, Long limit);
+
+    // only reads what's needed to rebuild a precomputed timeline of the user
+    @Query( "MATCH (u:User)-[:FOLLOWS]->(:User)-[:POSTS]->(posts:Post) " +
+            "WHERE u.uuid = $uuid " +
+            "RETURN posts.uuid AS uuid, posts.creationDate AS date " +
+            "ORDER BY datetime(posts.creationDate) DESC, posts.uuid DESC LIMIT $limit ")
+    List<TimelineEntry> getFeedTimelineEntriesForUserWithUuid(UUID uuid, Long limit);
+
+    @Query( "MATCH (u:User)-[:POSTS]->(posts:Post) " +
+            "WHERE u.uuid = $uuid " +
+            "RETURN posts.uuid AS uuid, posts.creationDate AS date " +
+            "ORDER BY datetime(posts.creationDate) DESC, posts.uuid DESC LIMIT $limit ")
+    List<TimelineEntry> getTimelineEntriesOfUserWithUuid(UUID uuid, Long limit);
+
+    // reads at most $perUserLimit most recent posts of every user, so that buffers of posts
+    // of multiple authors can be loaded at once
+    @Query( "MATCH (u:User)-[:POSTS]->(posts:Post) " +
+            "WHERE u.uuid IN $uuids " +
+            "WITH u, posts ORDER BY datetime(posts.creationDate) DESC, posts.uuid DESC " +
+            "WITH u, collect(posts)[0..$perUserLimit] AS recent " +
+            "UNWIND recent AS p " +
+            "RETURN u.uuid AS author, p.uuid AS uuid, p.creationDate AS date ")
+    List<TimelineEntry> getTimelineEntriesOfUsersWithUuids(List<String> uuids, Long perUserLimit);
+
+    // results are not ordered, callers know the order in which they want these posts
+    @Query( "MATCH (poster:User)-[:POSTS]->(posts:Post) " +
+            "WHERE posts.uuid IN $uuids " +
+            "OPTIONAL MATCH (posts:Post)-[:RESPONDS]->(respondsTo)<-[:POSTS]-(respondsToUser:User) " +
+            "OPTIONAL MATCH (posts:Post)-[:QUOTES]->(quotes) " +
+            "RETURN posts.uuid AS uuid, posts.content AS content, posts.entities AS entities, " +
+            "posts.creationDate AS date, poster AS author, " +
+            "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo, respondsToUser.username AS respondsToUsername ")
+    List<UserPost> getPostsWithUuids(List<String> uuids);
+
     @Query( "MATCH (u:User)-[:FOLLOWS]->(poster:User)-[:POSTS]->(posts:Post) " +
-            "WHERE u.uuid = $uuid AND posts.deleted <> true AND posts.creationDate >= $oldestDateAllowed " +
-            "OPTIONAL MATCH (posts:Post)-[:RESPONDS]->(respondsTo:Post)<-[:POSTS]-(respondsToUser:User) " +
-            "OPTIONAL MATCH (posts:Post)-[:QUOTES]->(quotes:Post) " +
+            "WHERE u.uuid = $uuid AND posts.creationDate >= $oldestDateAllowed " +
+            "OPTIONAL MATCH (posts:Post)-[:RESPONDS]->(respondsTo)<-[:POSTS]-(respondsToUser:User) " +
+            "OPTIONAL MATCH (posts:Post)-[:QUOTES]->(quotes) " +
             "OPTIONAL MATCH (:User)-[l:LIKES]->(posts) " +
             "WITH posts, quotes, respondsTo, poster, count(l) as numberOfLikes, respondsToUser " +
-            "RETURN posts.uuid AS uuid, posts.content AS content, posts.creationDate AS date, poster AS author, " +
+            "RETURN posts.uuid AS uuid, posts.content AS content, posts.entities AS entities, " +
+            "posts.creationDate AS date, poster AS author, " +
             "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo, respondsToUser.username AS respondsToUsername  " +
             "ORDER BY numberOfLikes DESC, datetime(posts.creationDate) DESC SKIP $skip LIMIT $limit ")
     List<UserPost> getFeedForUserWithUuid_Popular(UUID uuid, Date oldestDateAllowed, Long skip, Long limit);
 
     @Query( "MATCH (poster:User)-[:POSTS]->(posts:Post) " +
-            "WHERE posts.deleted <> true AND posts.creationDate >= $oldestDateAllowed " +
-            "OPTIONAL MATCH (posts:Post)-[:RESPONDS]->(respondsTo:Post)<-[:POSTS]-(respondsToUser:User) " +
-            "OPTIONAL MATCH (posts:Post)-[:QUOTES]->(quotes:Post) " +
+            "WHERE posts.creationDate >= $oldestDateAllowed " +
+            "OPTIONAL MATCH (posts:Post)-[:RESPONDS]->(respondsTo)<-[:POSTS]-(respondsToUser:User) " +
+            "OPTIONAL MATCH (posts:Post)-[:QUOTES]->(quotes) " +
             "OPTIONAL MATCH (:User)-[l:LIKES]->(posts) " +
             "WITH posts, quotes, respondsTo, poster, count(l) as numberOfLikes, respondsToUser " +
-            "RETURN posts.uuid AS uuid, posts.content AS content, posts.creationDate AS date, poster AS author, " +
+            "RETURN posts.uuid AS uuid, posts.content AS content, posts.entities AS entities, " +
+            "posts.creationDate AS date, poster AS author, " +
             "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo, respondsToUser.username AS respondsToUsername  " +
             "ORDER BY numberOfLikes DESC, datetime(posts.creationDate) DESC SKIP $skip LIMIT $limit ")
     List<UserPost> getFeedForAnonymousUser_Popular(Date oldestDateAllowed, Long skip, Long limit);
 
-    @Query( "MATCH (u:User)-[:POSTS]->(post:Post) WHERE post.uuid = $uuid AND post.deleted <> true " +
-            "OPTIONAL MATCH (post:Post)-[:RESPONDS]->(respondsTo:Post)<-[:POSTS]-(respondsToUser:User) " +
-            "OPTIONAL MATCH (post:Post)-[:QUOTES]->(quotes:Post) " +
-            "RETURN post.uuid AS uuid, post.content AS content, post.creationDate AS date, u AS author, " +
+    @Query( "MATCH (u:User)-[:POSTS]->(post:Post) WHERE post.uuid = $uuid " +
+            "OPTIONAL MATCH (post:Post)-[:RESPONDS]->(respondsTo)<-[:POSTS]-(respondsToUser:User) " +
+            "OPTIONAL MATCH (post:Post)-[:QUOTES]->(quotes) " +
+            "RETURN post.uuid AS uuid, post.content AS content, post.entities AS entities, " +
+            "post.creationDate AS date, u AS author, " +
             "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo, respondsToUser.username AS respondsToUsername ")
     Optional<UserPost> getPostWithUuid(UUID uuid);
 
-    @Query( "MATCH (post:Post) WHERE post.uuid = $uuid AND post.deleted <> true " +
-            "OPTIONAL MATCH (:User)-[likes:LIKES]->(post:Post) " +
-            "OPTIONAL MATCH (res:ResponsePost)-[responses:RESPONDS]->(post) WHERE res.deleted <> true " +
-            "OPTIONAL MATCH (q:QuotePost)-[quotes:QUOTES]->(post) WHERE q.deleted <> true " +
-            "RETURN count(distinct(responses)) AS responses, count(distinct(likes)) AS likes, " +
-            "count(distinct(quotes)) AS quotes")
+    /*
+        Counters are kept on post nodes, because counting relationships of a viral post on every read is slow.
+        They are updated by the queries which create and delete likes, responses and quotes, and any drift
+        is repaired by reconcileCountersOfPosts_After. Posts which have not been reconciled yet have no counters.
+     */
+    @Query( "MATCH (post:Post) WHERE post.uuid = $uuid " +
+            "RETURN coalesce(post.responses, 0) AS responses, coalesce(post.likes, 0) AS likes, " +
+            "coalesce(post.quotes, 0) AS quotes")
     Optional<PostInfo> getInfoAboutPostWithUuid(UUID uuid);
 
-    @Query( "MATCH (u:User) WHERE u.uuid = $uuidOfUser " +
-            "MATCH (p:Post) WHERE p.uuid = $uuidOfPost AND p.deleted <> true " +
-            "CREATE (u)-[l:LIKES]->(p) " +
-            "RETURN id(l)")
-    Optional<Long> likePostWithUuid(UUID uuidOfUser, UUID uuidOfPost);
+    // posts are returned in the order of given uuids, posts which don't exist or are deleted are skipped
+    @Query( "UNWIND range(0, size($uuids) - 1) AS position " +
+            "MATCH (poster:User)-[:POSTS]->(post:Post) " +
+            "WHERE post.uuid = $uuids[position] " +
+            "OPTIONAL MATCH (post)-[:RESPONDS]->(respondsTo)<-[:POSTS]-(respondsToUser:User) " +
+            "OPTIONAL MATCH (post)-[:QUOTES]->(quotes) " +
+            "RETURN post.uuid AS uuid, post.content AS content, post.entities AS entities, " +
+            "post.creationDate AS date, poster AS author, " +
+            "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo, respondsToUser.username AS respondsToUsername, " +
+            "coalesce(post.responses, 0) AS responsesCount, coalesce(post.likes, 0) AS likesCount, " +
+            "coalesce(post.quotes, 0) AS quotesCount " +
+            "ORDER BY position")
+    List<PostWithInfoResult> getPostsWithInfoWithUuids(List<String> uuids);
+
+    /*
+        Posts marked as deleted have their 'Post' label swapped for 'DeletedPost', so that every query which
+        traverses posts skips them without reading any of their properties. Queries which have to tell
+        a deleted post apart from a post that doesn't exist look the post up with MATCH_POST_OR_DELETED_POST.
+
+        MERGE never creates a second 'likes' relationship between the same user and post, and the counter
+        is only incremented when the relationship is created. Empty result means that the post doesn't exist,
+        false means that the post is marked as deleted and cannot be liked.
+     */
+    @Query( "WITH $uuidOfPost AS postUuid " +
+            MATCH_POST_OR_DELETED_POST +
+            "MATCH (u:User) WHERE u.uuid = $uuidOfUser " +
+            "FOREACH (_ IN CASE WHEN post:Post THEN [1] ELSE [] END | " +
+            "MERGE (u)-[:LIKES]->(post) ON CREATE SET post.likes = coalesce(post.likes, 0) + 1) " +
+            "RETURN post:Post")
+    Optional<Boolean> likePostWithUuid(UUID uuidOfUser, UUID uuidOfPost);
 
     @Query( "MATCH (u:User)-[l:LIKES]->(p:Post)" +
-            "WHERE u.uuid = $uuidOfUser AND p.uuid = $uuidOfPost AND p.deleted <> true " +
+            "WHERE u.uuid = $uuidOfUser AND p.uuid = $uuidOfPost " +
             "RETURN id(l)")
     Optional<Long> checkIfUserWithUuidLikes(UUID uuidOfUser, UUID uuidOfPost);
 
-    @Query( "MATCH (u:User)-[l:LIKES]->(p:Post) " +
-            "WHERE u.uuid = $uuidOfUser AND p.uuid = $uuidOfPost " +
-            "DELETE l")
-    void unlikePostWithUuid(UUID uuidOfUser, UUID uuidOfPost);
+    // empty result means that the post doesn't exist, posts marked as deleted are not liked by anyone
+    @Query( "WITH $uuidOfPost AS postUuid " +
+            MATCH_POST_OR_DELETED_POST +
+            "OPTIONAL MATCH (u:User)-[l:LIKES]->(post) WHERE u.uuid = $uuidOfUser AND post:Post " +
+            "WITH post, count(l) AS likes " +
+            "RETURN likes > 0")
+    Optional<Boolean> checkIfUserWithUuidLikesExistingPost(UUID uuidOfUser, UUID uuidOfPost);
+
+    // returns how many 'likes' relationships were removed, empty result means that the post doesn't exist
+    @Query( "WITH $uuidOfPost AS postUuid " +
+            MATCH_POST_OR_DELETED_POST +
+            "OPTIONAL MATCH (u:User)-[l:LIKES]->(post) WHERE u.uuid = $uuidOfUser " +
+            "WITH post, collect(l) AS likes " +
+            "WITH post, likes, size(likes) AS unliked " +
+            "FOREACH (l IN likes | DELETE l) " +
+            "SET post.likes = CASE WHEN coalesce(post.likes, 0) > unliked THEN post.likes - unliked ELSE 0 END " +
+            "RETURN unliked")
+    Optional<Long> unlikePostWithUuid(UUID uuidOfUser, UUID uuidOfPost);
+
+    /*
+        Every element of 'likes' is a map {post: uuid, users: [uuid, ...]} with a distinct post.
+        Counter of every post is updated once per batch, no matter how many users like it.
+        Just like when a single post is liked, only relationships which are created by MERGE are counted, so
+        'added' is marked on them by ON CREATE and removed after it has been read.
+        Returns uuids of posts which exist and are not marked as deleted (posts marked as deleted don't have
+        the 'Post' label).
+     */
+    @Query( "UNWIND $likes AS event " +
+            "MATCH (p:Post) WHERE p.uuid = event.post " +
+            "UNWIND event.users AS userUuid " +
+            "WITH DISTINCT p, userUuid " +
+            "MATCH (u:User) WHERE u.uuid = userUuid " +
+            "MERGE (u)-[l:LIKES]->(p) ON CREATE SET l.added = true " +
+            "WITH p, l, coalesce(l.added, false) AS isNew " +
+            "REMOVE l.added " +
+            "WITH p, sum(CASE WHEN isNew THEN 1 ELSE 0 END) AS added " +
+            "SET p.likes = coalesce(p.likes, 0) + added " +
+            "RETURN p.uuid")
+    List<String> likePostsInBatch(List<Map<String, Object>> likes);
+
+    /*
+        Every element of 'unlikes' is a map {post: uuid, users: [uuid, ...]} with a distinct post.
+        Returns uuids of posts which exist, including the ones marked as deleted.
+     */
+    @Query( "UNWIND $unlikes AS event " +
+            "WITH event, event.post AS postUuid " +
+            MATCH_POST_OR_DELETED_POST +
+            "OPTIONAL MATCH (u:User)-[l:LIKES]->(post) WHERE u.uuid IN event.users " +
+            "WITH post, collect(l) AS likes " +
+            "WITH post, likes, size(likes) AS unliked " +
+            "FOREACH (l IN likes | DELETE l) " +
+            "SET post.likes = CASE WHEN coalesce(post.likes, 0) > unliked THEN post.likes - unliked ELSE 0 END " +
+            "RETURN post.uuid")
+    List<String> unlikePostsInBatch(List<Map<String, Object>> unlikes);
+
+    @Query( "MATCH (p:Post) WHERE p.uuid = $uuid " +
+            "SET p.responses = coalesce(p.responses, 0) + 1")
+    void incrementResponsesOfPostWithUuid(UUID uuid);
+
+    @Query( "MATCH (p:Post) WHERE p.uuid = $uuid " +
+            "SET p.quotes = coalesce(p.quotes, 0) + 1")
+    void incrementQuotesOfPostWithUuid(UUID uuid);
+
+    /*
+        Creates the post together with all its relationships, without loading any of the nodes it's connected to.
+        Properties and labels of created nodes are the same as the ones of a saved Post/ResponsePost/QuotePost.
+
+        At most one of respondsToUuid and quotedUuid is expected to be set. Empty result means that the author
+        doesn't exist or that the post which is responded to/quoted either doesn't exist or is marked as deleted.
+
+        Responses get the uuid of the first post of their conversation and their depth in it from the post
+        they respond to, so that a whole thread can be found with an index lookup. If the post they respond to
+        is a response that doesn't know its conversation yet (it's waiting for the migration, or it's been created
+        by a node which runs an older version), the conversation is found by walking up the chain of parents.
+     */
+    @Query( "MATCH (author:User) WHERE author.uuid = $authorUuid " +
+            "OPTIONAL MATCH (parent:Post) " +
+            "WHERE parent.uuid IN [$respondsToUuid, $quotedUuid] " +
+            "WITH author, parent " +
+            "WHERE ($respondsToUuid IS NULL AND $quotedUuid IS NULL) OR parent IS NOT NULL " +
+            "OPTIONAL MATCH rootPath = (parent)-[:RESPONDS*]->(root) " +
+            "WHERE $respondsToUuid IS NOT NULL AND parent.rootUuid IS NULL AND NOT (root)-[:RESPONDS]->() " +
+            "WITH author, parent, root.uuid AS rootUuid, length(rootPath) AS parentDepth " +
+            "CREATE (author)-[:POSTS]->(p:Post {uuid: $uuid, content: $content, entities: $entities, " +
+            "creationDate: $creationDate, deleted: false}) " +
+            "FOREACH (_ IN CASE WHEN $respondsToUuid IS NULL THEN [] ELSE [1] END | " +
+            "SET p:ResponsePost, p.rootUuid = coalesce(parent.rootUuid, rootUuid, parent.uuid), " +
+            "p.depth = coalesce(parent.depth, parentDepth, 0) + 1 " +
+            "CREATE (p)-[:RESPONDS]->(parent)) " +
+            "FOREACH (_ IN CASE WHEN $quotedUuid IS NULL THEN [] ELSE [1] END | " +
+            "SET p:QuotePost CREATE (p)-[:QUOTES]->(parent)) " +
+            "WITH p " +
+            "OPTIONAL MATCH (t:Tag) WHERE t.uuid IN $tagUuids " +
+            "WITH p, collect(t) AS tags " +
+            "FOREACH (t IN tags | CREATE (t)-[:TAGS]->(p)) " +
+            "RETURN p.uuid")
+    Optional<String> createPost(UUID uuid, UUID authorUuid, String content, String entities, Date creationDate,
+                                List<String> tagUuids, UUID respondsToUuid, UUID quotedUuid);
+
+    // unlike existsById, also finds posts which are marked as deleted
+    @Query( "WITH $uuid AS postUuid " +
+            MATCH_POST_OR_DELETED_POST +
+            "RETURN count(post) > 0")
+    boolean postWithUuidExists(UUID uuid);
+
+    @Query( "WITH $uuid AS postUuid " +
+            MATCH_POST_OR_DELETED_POST +
+            "MATCH (author:User)-[:POSTS]->(post) " +
+            "RETURN post.uuid AS uuid, author.uuid AS authorUuid, " +
+            "post:DeletedPost OR coalesce(post.deleted, false) AS deleted")
+    Optional<PostOwnership> getOwnershipOfPostWithUuid(UUID uuid);
+
+    // the post is only marked as deleted if it's been posted by the user with given uuid,
+    // returned 'deleted' holds the state of the post from before the query (tags and creation date are returned
+    // as well, because usages of tags are decremented when the post gets deleted).
+    // 'deleted' property is kept in sync with the label, because reports show it
+    @Query( "WITH $uuid AS postUuid " +
+            MATCH_POST_OR_DELETED_POST +
+            "MATCH (author:User)-[:POSTS]->(post) " +
+            "WITH post, author, post:DeletedPost OR coalesce(post.deleted, false) AS wasDeleted " +
+            "FOREACH (_ IN CASE WHEN author.uuid = $userUuid THEN [1] ELSE [] END | " +
+            "REMOVE post:Post SET post:DeletedPost, post.deleted = true) " +
+            "WITH post, author, wasDeleted " +
+            "OPTIONAL MATCH (t:Tag)-[:TAGS]->(post) " +
+            "RETURN post.uuid AS uuid, author.uuid AS authorUuid, wasDeleted AS deleted, " +
+            "post.creationDate AS creationDate, collect(t) AS tags")
+    Optional<PostOwnership> markPostWithUuidAsDeletedByUserWithUuid(UUID uuid, UUID userUuid);
+
+    // posts which had been marked as deleted before they got the 'DeletedPost' label are relabeled in batches,
+    // returns how many posts have been relabeled (with the index on 'deleted', posts which are not deleted are not read)
+    @Query( "MATCH (p:Post) WHERE p.deleted = true " +
+            "WITH p LIMIT $batchSize " +
+            "REMOVE p:Post SET p:DeletedPost " +
+            "RETURN count(p)")
+    Long relabelDeletedPosts(Long batchSize);
+
+    // creating an index or a constraint which already exists does nothing
+    @Query("CREATE INDEX ON :Post(deleted)")
+    void createIndexOnDeletedFlags();
+
+    @Query("CREATE INDEX ON :ResponsePost(rootUuid)")
+    void createIndexOnConversationsOfResponses();
+
+    @Query("CREATE CONSTRAINT ON (p:DeletedPost) ASSERT p.uuid IS UNIQUE")
+    void createUniqueConstraintOnUuidsOfDeletedPosts();
+
+    // responses which had been created before responses stored their conversation get the uuid of its first post
+    // and their depth in it, returns how many responses have been updated
+    @Query( "MATCH (r:ResponsePost) WHERE r.rootUuid IS NULL " +
+            "WITH r LIMIT $batchSize " +
+            "MATCH path = (r)-[:RESPONDS*]->(root) WHERE NOT (root)-[:RESPONDS]->() " +
+            "SET r.rootUuid = root.uuid, r.depth = length(path) " +
+            "RETURN count(r)")
+    Long storeConversationsOfResponses(Long batchSize);
+
+    // deleted responses and quotes are not counted, so counters of posts
+    // that the deleted post responds to or quotes have to be decremented
+    // (setting properties of a null node does nothing)
+    @Query( "MATCH (post:DeletedPost) WHERE post.uuid = $uuid " +
+            "OPTIONAL MATCH (post)-[:RESPONDS]->(respondsTo) " +
+            "SET respondsTo.responses = " +
+            "CASE WHEN coalesce(respondsTo.responses, 0) > 0 THEN respondsTo.responses - 1 ELSE 0 END " +
+            "WITH post " +
+            "OPTIONAL MATCH (post)-[:QUOTES]->(quoted:Post) " +
+            "SET quoted.quotes = CASE WHEN coalesce(quoted.quotes, 0) > 0 THEN quoted.quotes - 1 ELSE 0 END")
+    void decrementCountersOfParentsOfPostWithUuid(UUID uuid);
+
+    /*
+        Recounts likes, responses and quotes of a batch of posts (ordered by their uuids, starting right after
+        afterUuid) and overwrites counters that have drifted. Counters which are correct are not written.
+        Returns uuids of all posts of the batch, so that the caller knows where the next batch starts.
+     */
+    @Query( "MATCH (post:Post) WHERE post.uuid > $afterUuid " +
+            "WITH post ORDER BY post.uuid LIMIT $batchSize " +
+            "OPTIONAL MATCH (:User)-[l:LIKES]->(post) " +
+            "WITH post, count(l) AS likes " +
+            "OPTIONAL MATCH (res:Post)-[:RESPONDS]->(post) " +
+            "WITH post, likes, count(res) AS responses " +
+            "OPTIONAL MATCH (q:Post)-[:QUOTES]->(post) " +
+            "WITH post, likes, responses, count(q) AS quotes " +
+            "FOREACH (_ IN CASE WHEN post.likes IS NULL OR post.likes <> likes OR " +
+            "post.responses IS NULL OR post.responses <> responses OR " +
+            "post.quotes IS NULL OR post.quotes <> quotes THEN [1] ELSE [] END | " +
+            "SET post.likes = likes, post.responses = responses, post.quotes = quotes) " +
+            "RETURN post.uuid")
+    List<String> reconcileCountersOfPosts_After(String afterUuid, Long batchSize);
 
     // allow listing responses to posts marked as deleted
     // but dont list responses that are marked as deleted
-    @Query( "MATCH (post:Post) WHERE post.uuid = $uuid " +
-            "MATCH (u:User)-[:POSTS]->(response:ResponsePost)-[:RESPONDS]->(post)<-[:POSTS]-(respondsToUser:User) " +
-            "WHERE response.deleted <> true " +
-            "RETURN response.uuid AS uuid, response.content AS content, response.creationDate AS date, u AS author, " +
+    @Query( "WITH $uuid AS postUuid " +
+            MATCH_POST_OR_DELETED_POST +
+            "MATCH (u:User)-[:POSTS]->(response:Post)-[:RESPONDS]->(post)<-[:POSTS]-(respondsToUser:User) " +
+            "RETURN response.uuid AS uuid, response.content AS content, response.entities AS entities, " +
+            "response.creationDate AS date, u AS author, " +
             "NULL AS quotes, post.uuid AS respondsTo, respondsToUser.username AS respondsToUsername " +
-            "ORDER BY date ASC SKIP $skip LIMIT $limit")
+            "ORDER BY date ASC, uuid ASC SKIP $skip LIMIT $limit")
     List<UserPost> getAllResponsesToPostWithUuid(UUID uuid, Long skip, Long limit);
 
+    @Query( "WITH $uuid AS postUuid " +
+            MATCH_POST_OR_DELETED_POST +
+            "MATCH (u:User)-[:POSTS]->(response:Post)-[:RESPONDS]->(post)<-[:POSTS]-(respondsToUser:User) " +
+            "WHERE (datetime(response.creationDate) > datetime($afterDate) OR " +
+            "(datetime(response.creationDate) = datetime($afterDate) AND response.uuid > $afterUuid)) " +
+            "RETURN response.uuid AS uuid, response.content AS content, response.entities AS entities, " +
+            "response.creationDate AS date, u AS author, " +
+            "NULL AS quotes, post.uuid AS respondsTo, respondsToUser.username AS respondsToUsername " +
+            "ORDER BY datetime(response.creationDate) ASC, response.uuid ASC LIMIT $limit")
+    List<UserPost> getAllResponsesToPostWithUuid_After(UUID uuid, Date afterDate, UUID afterUuid, Long limit);
+
+    /*
+        Returns the post together with all posts it responds to (starting with the first post of the conversation)
+        and a page of responses to it and to its responses (oldest first), in this order. Empty result means
+        that the post doesn't exist or is marked as deleted.
+
+        Responses are found by walking down from the post, so only its own subtree is visited and every walk is
+        as long as the difference between the depths of the response and the post (instead of every response
+        of the conversation walking up to its first post). Only the requested page of responses is collected,
+        before the post is matched again (a page past the last response would otherwise leave no row to return
+        the post in). Posts marked as deleted are skipped, but their responses are not.
+     */
+    @Query( "MATCH (post:Post) WHERE post.uuid = $uuid " +
+            "OPTIONAL MATCH (post)<-[:RESPONDS*]-(descendant:Post) " +
+            "WITH descendant ORDER BY datetime(descendant.creationDate) ASC, descendant.uuid ASC " +
+            "SKIP $skip LIMIT $limit " +
+            "WITH collect(descendant) AS descendants " +
+            "MATCH (post:Post) WHERE post.uuid = $uuid " +
+            "OPTIONAL MATCH path = (post)-[:RESPONDS*1..]->(ancestor:Post) " +
+            "WITH post, descendants, ancestor ORDER BY length(path) DESC " +
+            "WITH post, descendants, collect(ancestor) AS ancestors " +
+            "WITH ancestors + [post] + descendants AS thread " +
+            "UNWIND range(0, size(thread) - 1) AS position " +
+            "WITH position, thread[position] AS p " +
+            "MATCH (u:User)-[:POSTS]->(p) " +
+            "OPTIONAL MATCH (p)-[:RESPONDS]->(respondsTo)<-[:POSTS]-(respondsToUser:User) " +
+            "OPTIONAL MATCH (p)-[:QUOTES]->(quotes) " +
+            "RETURN p.uuid AS uuid, p.content AS content, p.entities AS entities, " +
+            "p.creationDate AS date, u AS author, " +
+            "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo, respondsToUser.username AS respondsToUsername, " +
+            "coalesce(p.depth, 0) AS depth " +
+            "ORDER BY position")
+    List<UserPost> getThreadOfPostWithUuid(UUID uuid, Long skip, Long limit);
+
     // allow listing quotes even when referenced post is marked as deleted
     // but don't list quotes that are marked as deleted
-    @Query( "MATCH (post:Post) WHERE post.uuid = $uuid " +
-            "MATCH (u:User)-[:POSTS]->(quotes:QuotePost)-[:QUOTES]->(post) WHERE quotes.deleted <> true " +
-            "RETURN quotes.uuid AS uuid, quotes.content AS content, quotes.creationDate AS date, u AS author, " +
+    @Query( "WITH $uuid AS postUuid " +
+            MATCH_POST_OR_DELETED_POST +
+            "MATCH (u:User)-[:POSTS]->(quotes:Post)-[:QUOTES]->(post) " +
+            "RETURN quotes.uuid AS uuid, quotes.content AS content, quotes.entities AS entities, " +
+            "quotes.creationDate AS date, u AS author, " +
             "post.uuid AS quotes, NULL AS respondsTo, NULL AS respondsToUsername " +
-            "ORDER BY date ASC SKIP $skip LIMIT $limit")
+            "ORDER BY date ASC, uuid ASC SKIP $skip LIMIT $limit")
     List<UserPost> getAllQuotesOfPostWithUuid(UUID uuid, Long skip, Long limit);
+
+    @Query( "WITH $uuid AS postUuid " +
+            MATCH_POST_OR_DELETED_POST +
+            "MATCH (u:User)-[:POSTS]->(quotes:Post)-[:QUOTES]->(post) " +
+            "WHERE (datetime(quotes.creationDate) > datetime($afterDate) OR " +
+            "(datetime(quotes.creationDate) = datetime($afterDate) AND quotes.uuid > $afterUuid)) " +
+            "RETURN quotes.uuid AS uuid, quotes.content AS content, quotes.entities AS entities, " +
+            "quotes.creationDate AS date, u AS author, " +
+            "post.uuid AS quotes, NULL AS respondsTo, NULL AS respondsToUsername " +
+            "ORDER BY datetime(quotes.creationDate) ASC, quotes.uuid ASC LIMIT $limit")
+    List<UserPost> getAllQuotesOfPostWithUuid_After(UUID uuid, Date afterDate, UUID afterUuid, Long limit);
 }
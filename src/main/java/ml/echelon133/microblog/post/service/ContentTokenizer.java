@@ -0,0 +1,108 @@
+package ml.echelon133.microblog.post.service;
+
+import ml.echelon133.microblog.post.model.ContentEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Finds hashtags, mentions and urls in the content of a post in a single pass, without regular expressions.
+
+    Hashtags and mentions are matched exactly like the patterns '#([a-zA-Z0-9]{2,20})' and '@([A-Za-z0-9]{1,30})'
+    used to match them, i.e. only first 20 (or 30) characters of a longer word are taken.
+    The only difference is that hashtags and mentions inside of urls are not extracted.
+
+    Urls start with 'http://' or 'https://' (at the beginning of a word) and end before the first whitespace,
+    without trailing punctuation.
+ */
+public final class ContentTokenizer {
+
+    public static final int MIN_HASHTAG_LENGTH = 2;
+    public static final int MAX_HASHTAG_LENGTH = 20;
+    public static final int MIN_MENTION_LENGTH = 1;
+    public static final int MAX_MENTION_LENGTH = 30;
+
+    private static final String HTTP = "http://";
+    private static final String HTTPS = "https://";
+
+    private ContentTokenizer() {}
+
+    private static boolean isAlphanumeric(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isTrailingPunctuation(char c) {
+        return c == '.' || c == ',' || c == '!' || c == '?' || c == ':' || c == ';' || c == ')' || c == '"' || c == '\'';
+    }
+
+    // returns the index right after the last alphanumeric character that belongs to the word starting at 'from'
+    private static int scanWord(String content, int from, int maxLength) {
+        int end = from;
+        int limit = Math.min(content.length(), from + maxLength);
+        while (end < limit && isAlphanumeric(content.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    // returns the index right after the end of the url starting at 'from', or -1 if there is no url there
+    private static int scanUrl(String content, int from) {
+        int prefixLength;
+        if (content.startsWith(HTTPS, from)) {
+            prefixLength = HTTPS.length();
+        } else if (content.startsWith(HTTP, from)) {
+            prefixLength = HTTP.length();
+        } else {
+            return -1;
+        }
+
+        int end = from + prefixLength;
+        while (end < content.length() && !Character.isWhitespace(content.charAt(end))) {
+            end++;
+        }
+        while (end > from + prefixLength && isTrailingPunctuation(content.charAt(end - 1))) {
+            end--;
+        }
+        return end > from + prefixLength ? end : -1;
+    }
+
+    public static List<ContentEntity> tokenize(String content) {
+        // most posts don't contain any entities, they don't need a list of their own
+        List<ContentEntity> entities = null;
+        int length = content.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = content.charAt(i);
+            ContentEntity found = null;
+
+            if (c == '#') {
+                int end = scanWord(content, i + 1, MAX_HASHTAG_LENGTH);
+                if (end - i - 1 >= MIN_HASHTAG_LENGTH) {
+                    found = new ContentEntity(ContentEntity.HASHTAG, i, end);
+                }
+            } else if (c == '@') {
+                int end = scanWord(content, i + 1, MAX_MENTION_LENGTH);
+                if (end - i - 1 >= MIN_MENTION_LENGTH) {
+                    found = new ContentEntity(ContentEntity.MENTION, i, end);
+                }
+            } else if (c == 'h' && (i == 0 || !isAlphanumeric(content.charAt(i - 1)))) {
+                int end = scanUrl(content, i);
+                if (end != -1) {
+                    found = new ContentEntity(ContentEntity.URL, i, end);
+                }
+            }
+
+            if (found == null) {
+                i++;
+            } else {
+                if (entities == null) {
+                    entities = new ArrayList<>();
+                }
+                entities.add(found);
+                i = found.getEnd();
+            }
+        }
+        return entities == null ? List.of() : entities;
+    }
+}
@@ -0,0 +1,11 @@
+package ml.echelon133.microblog.post.service;
+
+import ml.echelon133.microblog.post.exception.PostDoesntExistException;
+
+import java.util.UUID;
+
+public interface ILikeBufferService {
+    boolean shouldBuffer(UUID postUuid);
+    boolean like(UUID userUuid, UUID postUuid) throws PostDoesntExistException;
+    boolean unlike(UUID userUuid, UUID postUuid) throws PostDoesntExistException;
+}
@@ -0,0 +1,5 @@
+package ml.echelon133.microblog.post.service;
+
+public interface IPostCounterService {
+    long reconcileCounters();
+}
@@ -0,0 +1,8 @@
+package ml.echelon133.microblog.post.service;
+
+public interface IPostMigrationService {
+    void tryMigrate();
+    void migrate();
+    long relabelDeletedPosts();
+    long storeConversationsOfResponses();
+}
@@ -0,0 +1,8 @@
+package ml.echelon133.microblog.post.service;
+
+import ml.echelon133.microblog.post.model.PipelineStats;
+
+public interface IPostPipelineService {
+    void submit(String description, Runnable action);
+    PipelineStats getStats();
+}
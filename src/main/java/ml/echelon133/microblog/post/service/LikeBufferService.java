@@ -0,0 +1,202 @@
+package ml.echelon133.microblog.post.service;
+
+import ml.echelon133.microblog.post.exception.PostDoesntExistException;
+import ml.echelon133.microblog.post.repository.PostRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/*
+    A post which is being liked by thousands of users per second turns into a write hotspot, because every like
+    locks the node of the post to update its counter. Likes and unlikes of such posts are collected for
+    FLUSH_WINDOW_MILLIS and then written with two UNWIND queries, which update the counter of every post only once.
+
+    Events of the same user and post which happen in the same window are coalesced, only the latest one is written.
+    Requests wait until the batch which contains their event is written, so the result that they
+    return (and the 404 when the post doesn't exist) is the same as the one of a single like/unlike query.
+ */
+@Service
+public class LikeBufferService implements ILikeBufferService {
+
+    // how long events are collected before they are written as a single batch
+    public static final long FLUSH_WINDOW_MILLIS = 5L;
+    // how many like/unlike events a post has to receive during BURST_WINDOW_MILLIS to have them buffered
+    public static final int BURST_THRESHOLD = 50;
+    public static final long BURST_WINDOW_MILLIS = 1000L;
+    // how long a request waits for the batch which contains its event
+    public static final long FLUSH_TIMEOUT_MILLIS = 5000L;
+
+    private static final class EventKey {
+        private final UUID userUuid;
+        private final UUID postUuid;
+
+        EventKey(UUID userUuid, UUID postUuid) {
+            this.userUuid = userUuid;
+            this.postUuid = postUuid;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            EventKey eventKey = (EventKey) o;
+            return userUuid.equals(eventKey.userUuid) && postUuid.equals(eventKey.postUuid);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userUuid, postUuid);
+        }
+    }
+
+    private static final class PendingEvent {
+        private boolean like;
+        // every waiter is completed with the information whether the user likes the post after the flush
+        private final List<CompletableFuture<Boolean>> waiters = new ArrayList<>();
+    }
+
+    private final PostRepository postRepository;
+    private final long flushWindowMillis;
+    private final int burstThreshold;
+    private final ScheduledExecutorService scheduler;
+    private Clock clock = Clock.systemDefaultZone();
+
+    private final Map<UUID, AtomicInteger> eventsInBurstWindow = new ConcurrentHashMap<>();
+    private volatile long currentBurstWindow;
+
+    private Map<EventKey, PendingEvent> pending = new LinkedHashMap<>();
+
+    @Autowired
+    public LikeBufferService(PostRepository postRepository) {
+        this(postRepository, FLUSH_WINDOW_MILLIS, BURST_THRESHOLD);
+    }
+
+    public LikeBufferService(PostRepository postRepository, long flushWindowMillis, int burstThreshold) {
+        this.postRepository = postRepository;
+        this.flushWindowMillis = flushWindowMillis;
+        this.burstThreshold = burstThreshold;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "like-buffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public boolean shouldBuffer(UUID postUuid) {
+        long window = clock.millis() / BURST_WINDOW_MILLIS;
+        if (window != currentBurstWindow) {
+            // counters are only kept for the current window, so that the map doesn't grow without bounds
+            currentBurstWindow = window;
+            eventsInBurstWindow.clear();
+        }
+        int events = eventsInBurstWindow
+                .computeIfAbsent(postUuid, uuid -> new AtomicInteger())
+                .incrementAndGet();
+        return events > burstThreshold;
+    }
+
+    @Override
+    public boolean like(UUID userUuid, UUID postUuid) throws PostDoesntExistException {
+        return submit(userUuid, postUuid, true);
+    }
+
+    @Override
+    public boolean unlike(UUID userUuid, UUID postUuid) throws PostDoesntExistException {
+        return !submit(userUuid, postUuid, false);
+    }
+
+    private boolean submit(UUID userUuid, UUID postUuid, boolean like) throws PostDoesntExistException {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                scheduler.schedule(this::flush, flushWindowMillis, TimeUnit.MILLISECONDS);
+            }
+            PendingEvent event = pending.computeIfAbsent(new EventKey(userUuid, postUuid), key -> new PendingEvent());
+            // only the latest event of the user counts, earlier ones from the same window are overridden
+            event.like = like;
+            event.waiters.add(result);
+        }
+
+        try {
+            return result.get(FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof PostDoesntExistException) {
+                throw (PostDoesntExistException) ex.getCause();
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the like to be saved", ex);
+        } catch (TimeoutException ex) {
+            throw new IllegalStateException("Like hasn't been saved in time", ex);
+        }
+    }
+
+    private static List<Map<String, Object>> toBatchParameter(Map<UUID, List<String>> usersOfPosts) {
+        return usersOfPosts
+                .entrySet()
+                .stream()
+                .map(entry -> Map.<String, Object>of("post", entry.getKey().toString(), "users", entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    void flush() {
+        Map<EventKey, PendingEvent> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+
+        try {
+            Map<UUID, List<String>> likingUsers = new LinkedHashMap<>();
+            Map<UUID, List<String>> unlikingUsers = new LinkedHashMap<>();
+            batch.forEach((key, event) -> (event.like ? likingUsers : unlikingUsers)
+                    .computeIfAbsent(key.postUuid, uuid -> new ArrayList<>())
+                    .add(key.userUuid.toString()));
+
+            Set<String> liked = likingUsers.isEmpty() ? Set.of() :
+                    new HashSet<>(postRepository.likePostsInBatch(toBatchParameter(likingUsers)));
+            Set<String> unliked = unlikingUsers.isEmpty() ? Set.of() :
+                    new HashSet<>(postRepository.unlikePostsInBatch(toBatchParameter(unlikingUsers)));
+
+            // posts which are missing from the results either don't exist or are marked as deleted,
+            // which is rare enough to be checked one by one
+            Map<UUID, Boolean> postExists = new HashMap<>();
+            batch.forEach((key, event) -> {
+                Set<String> written = event.like ? liked : unliked;
+                if (written.contains(key.postUuid.toString())) {
+                    event.waiters.forEach(waiter -> waiter.complete(event.like));
+                } else if (postExists.computeIfAbsent(key.postUuid, postRepository::postWithUuidExists)) {
+                    // deleted posts cannot be liked
+                    event.waiters.forEach(waiter -> waiter.complete(false));
+                } else {
+                    PostDoesntExistException ex = new PostDoesntExistException(key.postUuid);
+                    event.waiters.forEach(waiter -> waiter.completeExceptionally(ex));
+                }
+            });
+        } catch (RuntimeException ex) {
+            batch.values().forEach(event -> event.waiters.forEach(waiter -> waiter.completeExceptionally(ex)));
+        }
+    }
+
+    // events which are already buffered are written before the application stops
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
@@ -0,0 +1,49 @@
+package ml.echelon133.microblog.post.service;
+
+import ml.echelon133.microblog.post.repository.PostRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+    Counters of likes, responses and quotes are updated in separate statements from the changes that they count,
+    so they can drift (e.g. when one of these statements fails, or when posts had been created before counters
+    existed). This service periodically walks over all posts in batches and repairs counters that are wrong.
+
+    Walking over all posts takes long, so the scheduler has a thread for every job (see application.properties),
+    otherwise every other scheduled job would wait until the walk is over.
+ */
+@Service
+public class PostCounterService implements IPostCounterService {
+
+    public static final long RECONCILIATION_INTERVAL_MILLIS = 60 * 60 * 1000L;
+    public static final long BATCH_SIZE = 1000L;
+
+    private PostRepository postRepository;
+
+    @Autowired
+    public PostCounterService(PostRepository postRepository) {
+        this.postRepository = postRepository;
+    }
+
+    // runs right after startup as well, so that posts which don't have counters yet get them quickly
+    @Override
+    @Scheduled(initialDelay = 10_000L, fixedDelay = RECONCILIATION_INTERVAL_MILLIS)
+    public long reconcileCounters() {
+        long checked = 0;
+        // every uuid is greater than an empty string
+        String afterUuid = "";
+        List<String> batch;
+        do {
+            batch = postRepository.reconcileCountersOfPosts_After(afterUuid, BATCH_SIZE);
+            checked += batch.size();
+            if (!batch.isEmpty()) {
+                afterUuid = Collections.max(batch);
+            }
+        } while (batch.size() >= BATCH_SIZE);
+        return checked;
+    }
+}
@@ -0,0 +1,88 @@
+package ml.echelon133.microblog.post.service;
+
+import ml.echelon133.microblog.post.repository.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.function.LongSupplier;
+
+/*
+    One-off migrations of posts which had been saved before the way they are stored has changed. They run
+    in batches before the web server starts taking requests, so that no request sees posts which haven't been
+    migrated yet. Indexes used by the migrations (and by queries which read migrated posts) are created first,
+    so after all posts are migrated, every migration only runs a single index lookup which finds nothing.
+    If a migration fails (e.g. because the database is briefly unavailable), the application still starts
+    and migrations are retried until they succeed.
+
+    - posts marked as deleted still have the 'Post' label, so they would show up wherever posts are traversed
+    - responses don't know the first post of their conversation nor their depth in it, which threads return
+ */
+@Service
+public class PostMigrationService implements IPostMigrationService, SmartInitializingSingleton {
+
+    public static final long BATCH_SIZE = 1000L;
+    public static final long RETRY_INTERVAL_MILLIS = 60_000L;
+
+    private static final Logger log = LoggerFactory.getLogger(PostMigrationService.class);
+
+    private PostRepository postRepository;
+    private volatile boolean migrated;
+
+    @Autowired
+    public PostMigrationService(PostRepository postRepository) {
+        this.postRepository = postRepository;
+    }
+
+    private static long runInBatches(LongSupplier batch) {
+        long migrated = 0;
+        long batchSize;
+        do {
+            batchSize = batch.getAsLong();
+            migrated += batchSize;
+        } while (batchSize >= BATCH_SIZE);
+        return migrated;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        tryMigrate();
+    }
+
+    @Override
+    @Scheduled(initialDelay = RETRY_INTERVAL_MILLIS, fixedDelay = RETRY_INTERVAL_MILLIS)
+    public void tryMigrate() {
+        if (migrated) {
+            return;
+        }
+        try {
+            migrate();
+            migrated = true;
+        } catch (RuntimeException ex) {
+            // retried in the next interval
+            log.warn("Migration of posts failed, retrying in {} ms", RETRY_INTERVAL_MILLIS, ex);
+        }
+    }
+
+    @Override
+    public void migrate() {
+        postRepository.createIndexOnDeletedFlags();
+        postRepository.createIndexOnConversationsOfResponses();
+        postRepository.createUniqueConstraintOnUuidsOfDeletedPosts();
+        relabelDeletedPosts();
+        storeConversationsOfResponses();
+    }
+
+    @Override
+    public long relabelDeletedPosts() {
+        return runInBatches(() -> postRepository.relabelDeletedPosts(BATCH_SIZE));
+    }
+
+    @Override
+    public long storeConversationsOfResponses() {
+        return runInBatches(() -> postRepository.storeConversationsOfResponses(BATCH_SIZE));
+    }
+}
@@ -0,0 +1,185 @@
+package ml.echelon133.microblog.post.service;
+
+import ml.echelon133.microblog.post.model.PipelineStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Side effects of new posts (fan-out into timelines, notifications, counters of parent posts) are not needed
+    to answer the request which creates the post, so they are processed by a small pool of workers in the background.
+
+    The queue of tasks is bounded. When it's full, the task is run by the thread which submits it, which slows down
+    the writers instead of losing work. A failed task is retried with a growing delay, and after MAX_ATTEMPTS
+    it's written to the dead letter log. Retries wait in a separate scheduler instead of in the worker which has run
+    the failed attempt, so a failing dependency doesn't keep the workers from processing other tasks. A retry which
+    finds the queue full counts as another failed attempt, because running it in the scheduler would hold up
+    every other retry. Since a task can be run more than once, tasks should be idempotent or at least tolerate
+    being repeated (counters of posts are reconciled by PostCounterService).
+ */
+@Service
+public class PostPipelineService implements IPostPipelineService {
+
+    public static final int WORKERS = 4;
+    public static final int QUEUE_CAPACITY = 10_000;
+    public static final int MAX_ATTEMPTS = 3;
+    public static final long RETRY_BACKOFF_MILLIS = 200L;
+
+    private static final Logger deadLetterLog = LoggerFactory.getLogger("ml.echelon133.microblog.post.deadletter");
+
+    private final BlockingQueue<Runnable> queue;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService retryScheduler;
+    private final long retryBackoffMillis;
+    private Clock clock = Clock.systemDefaultZone();
+
+    private final AtomicLong lastLagMillis = new AtomicLong();
+    private final AtomicLong completedTasks = new AtomicLong();
+    private final AtomicLong retriedAttempts = new AtomicLong();
+    private final AtomicLong deadLetteredTasks = new AtomicLong();
+
+    // submitted tasks which haven't completed nor been dead lettered yet (including the ones waiting for a retry)
+    private int unfinishedTasks;
+
+    private class Task implements Runnable {
+        private final String description;
+        private final Runnable action;
+        private final long enqueuedAt;
+        private int attempt = 1;
+
+        Task(String description, Runnable action) {
+            this.description = description;
+            this.action = action;
+            this.enqueuedAt = clock.millis();
+        }
+
+        @Override
+        public void run() {
+            if (attempt == 1) {
+                lastLagMillis.set(clock.millis() - enqueuedAt);
+            }
+            try {
+                action.run();
+                completedTasks.incrementAndGet();
+                finished();
+            } catch (RuntimeException ex) {
+                retryLater(ex);
+            }
+        }
+
+        private void retryLater(RuntimeException cause) {
+            if (attempt >= MAX_ATTEMPTS) {
+                deadLetter(cause);
+                finished();
+                return;
+            }
+            retriedAttempts.incrementAndGet();
+            long delay = retryBackoffMillis * attempt;
+            attempt++;
+            try {
+                retryScheduler.schedule(this::resubmit, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException rejected) {
+                // the pipeline has been shut down, so the task is retried right away by the thread which runs it
+                run();
+            }
+        }
+
+        // runs in the retry scheduler, so it must never run the task itself
+        private void resubmit() {
+            // the retry goes through the queue again, so it waits behind tasks submitted in the meantime
+            // (workers are started with the pipeline, so a queued task is always taken by one of them)
+            if (!queue.offer(this)) {
+                retryLater(new RejectedExecutionException("Queue of the pipeline is full"));
+            }
+        }
+
+        private void deadLetter(RuntimeException ex) {
+            deadLetteredTasks.incrementAndGet();
+            deadLetterLog.error("Task '{}' failed after {} attempt(s)", description, attempt, ex);
+        }
+    }
+
+    public PostPipelineService() {
+        this(WORKERS, QUEUE_CAPACITY, RETRY_BACKOFF_MILLIS);
+    }
+
+    public PostPipelineService(int workers, int queueCapacity, long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                workers, workers, 0L, TimeUnit.MILLISECONDS, queue,
+                runnable -> {
+                    Thread thread = new Thread(runnable, "post-pipeline-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // when the queue is full (or the pipeline is being shut down) the task is run by the caller
+                (runnable, pool) -> runnable.run());
+        this.executor.prestartAllCoreThreads();
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "post-pipeline-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private synchronized void finished() {
+        unfinishedTasks--;
+        if (unfinishedTasks == 0) {
+            notifyAll();
+        }
+    }
+
+    private synchronized void awaitUnfinishedTasks(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (unfinishedTasks > 0 && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public void submit(String description, Runnable action) {
+        synchronized (this) {
+            unfinishedTasks++;
+        }
+        executor.execute(new Task(description, action));
+    }
+
+    @Override
+    public PipelineStats getStats() {
+        long oldestQueuedMillis = 0;
+        Runnable oldest = queue.peek();
+        if (oldest instanceof Task) {
+            oldestQueuedMillis = clock.millis() - ((Task) oldest).enqueuedAt;
+        }
+        return new PipelineStats(
+                queue.size(),
+                oldestQueuedMillis,
+                lastLagMillis.get(),
+                completedTasks.get(),
+                retriedAttempts.get(),
+                deadLetteredTasks.get());
+    }
+
+    // tasks which are already queued (or waiting for a retry) are finished before the application stops
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        awaitUnfinishedTasks(30_000L);
+        retryScheduler.shutdown();
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
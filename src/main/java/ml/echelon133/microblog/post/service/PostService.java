@@ -1,55 +1,74 @@
 package ml.echelon133.microblog.post.service;
 
+import ml.echelon133.microblog.feed.service.ITimelineService;
 import ml.echelon133.microblog.notification.service.INotificationService;
+import ml.echelon133.microblog.pagination.Pages;
+import ml.echelon133.microblog.pagination.PostCursor;
 import ml.echelon133.microblog.post.exception.PostDoesntExistException;
 import ml.echelon133.microblog.post.exception.UserCannotDeletePostException;
 import ml.echelon133.microblog.post.model.*;
 import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.stream.service.IStreamService;
+import ml.echelon133.microblog.tag.service.IRecentPostIndexService;
 import ml.echelon133.microblog.tag.service.ITagService;
+import ml.echelon133.microblog.tag.service.ITagSuggestionService;
+import ml.echelon133.microblog.tag.service.ITagUsageService;
 import ml.echelon133.microblog.tag.model.Tag;
-import ml.echelon133.microblog.tag.exception.TagDoesntExistException;
-import ml.echelon133.microblog.user.exception.UserDoesntExistException;
 import ml.echelon133.microblog.user.model.User;
 import ml.echelon133.microblog.user.model.UserPost;
 import ml.echelon133.microblog.user.model.UserPrincipal;
-import ml.echelon133.microblog.user.service.IUserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.Clock;
 import java.time.Instant;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static java.time.temporal.ChronoUnit.DAYS;
 
 @Service
 public class PostService implements IPostService {
 
+    // how many posts can be read with a single call of getAllWithInfoByUuids
+    public static final int MAX_POSTS_PER_MULTI_GET = 100;
+
+    private static final ContentEntitiesConverter ENTITIES_CONVERTER = new ContentEntitiesConverter();
+
     private Clock clock = Clock.systemDefaultZone();
     private PostRepository postRepository;
-    private IUserService userService;
     private INotificationService notificationService;
     private ITagService tagService;
-    private Pattern hashtagPattern = Pattern.compile("#([a-zA-Z0-9]{2,20})");
-    private Pattern usernamePattern = Pattern.compile("@([A-Za-z0-9]{1,30})");
+    private ITimelineService timelineService;
+    private IStreamService streamService;
+    private IPostPipelineService pipelineService;
+    private ILikeBufferService likeBufferService;
+    private ITagUsageService tagUsageService;
+    private IRecentPostIndexService recentPostIndexService;
+    private ITagSuggestionService tagSuggestionService;
 
     @Autowired
     public PostService(PostRepository postRepository,
                        INotificationService notificationService,
                        ITagService tagService,
-                       IUserService userService) {
+                       ITimelineService timelineService,
+                       IStreamService streamService,
+                       IPostPipelineService pipelineService,
+                       ILikeBufferService likeBufferService,
+                       ITagUsageService tagUsageService,
+                       IRecentPostIndexService recentPostIndexService,
+                       ITagSuggestionService tagSuggestionService) {
         this.postRepository = postRepository;
         this.tagService = tagService;
         this.notificationService = notificationService;
-        this.userService = userService;
-    }
-
-    private void throwIfPostDoesntExist(UUID uuid) throws PostDoesntExistException {
-        if (!postRepository.existsById(uuid)) {
-            throw new PostDoesntExistException(uuid);
-        }
+        this.timelineService = timelineService;
+        this.streamService = streamService;
+        this.pipelineService = pipelineService;
+        this.likeBufferService = likeBufferService;
+        this.tagUsageService = tagUsageService;
+        this.recentPostIndexService = recentPostIndexService;
+        this.tagSuggestionService = tagSuggestionService;
     }
 
     @Override
@@ -70,50 +89,120 @@ public class PostService implements IPostService {
         throw new PostDoesntExistException(uuid);
     }
 
+    @Override
+    public List<PostWithInfo> getAllWithInfoByUuids(List<UUID> uuids) throws IllegalArgumentException {
+        List<String> distinctUuids = uuids
+                .stream()
+                .distinct()
+                .map(UUID::toString)
+                .collect(Collectors.toList());
+        if (distinctUuids.size() > MAX_POSTS_PER_MULTI_GET) {
+            throw new IllegalArgumentException(
+                    String.format("At most %d posts can be requested at once.", MAX_POSTS_PER_MULTI_GET));
+        }
+        if (distinctUuids.isEmpty()) {
+            return List.of();
+        }
+        return postRepository
+                .getPostsWithInfoWithUuids(distinctUuids)
+                .stream()
+                .map(PostWithInfoResult::toPostWithInfo)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public List<UserPost> getAllResponsesTo(UUID uuid, Long skip, Long limit) throws PostDoesntExistException, IllegalArgumentException {
-        throwIfPostDoesntExist(uuid);
         if (skip < 0 || limit < 0) {
             throw new IllegalArgumentException("Invalid skip and/or limit values.");
         }
-        return postRepository.getAllResponsesToPostWithUuid(uuid, skip, limit);
+        return Pages.throwIfEmptyAndOwnerDoesntExist(
+                postRepository.getAllResponsesToPostWithUuid(uuid, skip, limit),
+                () -> postRepository.postWithUuidExists(uuid), () -> new PostDoesntExistException(uuid));
+    }
+
+    @Override
+    public List<UserPost> getAllResponsesTo(UUID uuid, PostCursor cursor, Long limit) throws PostDoesntExistException, IllegalArgumentException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Invalid limit value.");
+        }
+        return Pages.throwIfEmptyAndOwnerDoesntExist(
+                postRepository.getAllResponsesToPostWithUuid_After(uuid, cursor.getDate(), cursor.getUuid(), limit),
+                () -> postRepository.postWithUuidExists(uuid), () -> new PostDoesntExistException(uuid));
+    }
+
+    @Override
+    public PostThread getThread(UUID uuid, Long skip, Long limit) throws PostDoesntExistException, IllegalArgumentException {
+        if (skip < 0 || limit < 0) {
+            throw new IllegalArgumentException("Invalid skip and/or limit values.");
+        }
+        // the post is always a part of its thread, so an empty thread means that the post doesn't exist
+        List<UserPost> thread = postRepository.getThreadOfPostWithUuid(uuid, skip, limit);
+        int position = IntStream
+                .range(0, thread.size())
+                .filter(i -> thread.get(i).getUuid().equals(uuid))
+                .findFirst()
+                .orElseThrow(() -> new PostDoesntExistException(uuid));
+        return new PostThread(
+                thread.subList(0, position),
+                thread.get(position),
+                thread.subList(position + 1, thread.size()));
     }
 
     @Override
     public List<UserPost> getAllQuotesOf(UUID uuid, Long skip, Long limit) throws PostDoesntExistException, IllegalArgumentException {
-        throwIfPostDoesntExist(uuid);
         if (skip < 0 || limit < 0) {
             throw new IllegalArgumentException("Invalid skip and/or limit values.");
         }
-        return postRepository.getAllQuotesOfPostWithUuid(uuid, skip, limit);
+        return Pages.throwIfEmptyAndOwnerDoesntExist(
+                postRepository.getAllQuotesOfPostWithUuid(uuid, skip, limit),
+                () -> postRepository.postWithUuidExists(uuid), () -> new PostDoesntExistException(uuid));
+
+    }
 
+    @Override
+    public List<UserPost> getAllQuotesOf(UUID uuid, PostCursor cursor, Long limit) throws PostDoesntExistException, IllegalArgumentException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Invalid limit value.");
+        }
+        return Pages.throwIfEmptyAndOwnerDoesntExist(
+                postRepository.getAllQuotesOfPostWithUuid_After(uuid, cursor.getDate(), cursor.getUuid(), limit),
+                () -> postRepository.postWithUuidExists(uuid), () -> new PostDoesntExistException(uuid));
     }
 
     @Override
     public boolean checkIfUserWithUuidLikes(UserPrincipal user, UUID postUuid) throws PostDoesntExistException {
-        throwIfPostDoesntExist(postUuid);
-        return postRepository.checkIfUserWithUuidLikes(user.getUuid(), postUuid).isPresent();
+        Optional<Boolean> likes = postRepository.checkIfUserWithUuidLikesExistingPost(user.getUuid(), postUuid);
+        if (likes.isPresent()) {
+            return likes.get();
+        }
+        throw new PostDoesntExistException(postUuid);
     }
 
     @Override
     public boolean likePost(UserPrincipal user, UUID postUuid) throws PostDoesntExistException {
-        throwIfPostDoesntExist(postUuid);
-        Optional<Long> like = postRepository.checkIfUserWithUuidLikes(user.getUuid(), postUuid);
-
-        // only like if there is no already existing 'likes' relationship
-        // between the user and the post
-        // otherwise this will create duplicate relationships
-        if (like.isEmpty()) {
-            like = postRepository.likePostWithUuid(user.getUuid(), postUuid);
+        // likes of posts which are being liked by many users at once are written in batches
+        if (likeBufferService.shouldBuffer(postUuid)) {
+            return likeBufferService.like(user.getUuid(), postUuid);
         }
-        return like.isPresent();
+        // empty result means that the post doesn't exist, false means that it's marked as deleted
+        Optional<Boolean> liked = postRepository.likePostWithUuid(user.getUuid(), postUuid);
+        if (liked.isEmpty()) {
+            throw new PostDoesntExistException(postUuid);
+        }
+        return liked.get();
     }
 
     @Override
     public boolean unlikePost(UserPrincipal user, UUID postUuid) throws PostDoesntExistException {
-        throwIfPostDoesntExist(postUuid);
-        postRepository.unlikePostWithUuid(user.getUuid(), postUuid);
-        return postRepository.checkIfUserWithUuidLikes(user.getUuid(), postUuid).isEmpty();
+        if (likeBufferService.shouldBuffer(postUuid)) {
+            return likeBufferService.unlike(user.getUuid(), postUuid);
+        }
+        // the query removes every 'likes' relationship between the user and the post,
+        // so the post isn't liked afterwards whenever it exists
+        if (postRepository.unlikePostWithUuid(user.getUuid(), postUuid).isEmpty()) {
+            throw new PostDoesntExistException(postUuid);
+        }
+        return true;
     }
 
     @Override
@@ -121,10 +210,70 @@ public class PostService implements IPostService {
         if (limit < 0 || skip < 0) {
             throw new IllegalArgumentException("Invalid skip and/or limit values.");
         }
+
+        // precomputed timeline only holds uuids of posts, the order of posts
+        // in the timeline has to be restored after they are read
+        Optional<List<UUID>> timelinePage = timelineService.getTimelinePage(user.getUuid(), skip, limit);
+        if (timelinePage.isPresent()) {
+            return getPostsInOrder(timelinePage.get());
+        }
         return postRepository
                 .getFeedForUserWithUuid(user.getUuid(), skip, limit);
     }
 
+    @Override
+    public List<UserPost> getFeedForUser(UserPrincipal user, PostCursor cursor, Long limit) throws IllegalArgumentException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Invalid limit value.");
+        }
+
+        Optional<List<UUID>> timelinePage = timelineService.getTimelinePage(user.getUuid(), cursor, limit);
+        if (timelinePage.isPresent()) {
+            return getPostsInOrder(timelinePage.get());
+        }
+        return postRepository
+                .getFeedForUserWithUuid_Before(user.getUuid(), cursor.getDate(), cursor.getUuid(), limit);
+    }
+
+    @Override
+    public List<UserPost> getFeedForUserSince(UserPrincipal user, UUID sinceUuid, Long limit) throws IllegalArgumentException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Invalid limit value.");
+        }
+
+        Optional<List<UUID>> timelinePage = timelineService.getTimelinePageSince(user.getUuid(), sinceUuid, limit);
+        if (timelinePage.isPresent()) {
+            return getPostsInOrder(timelinePage.get());
+        }
+        // when the post doesn't exist the page is empty, which otherwise means that nothing new has been posted
+        return Pages.throwIfEmptyAndOwnerDoesntExist(
+                postRepository.getFeedForUserWithUuid_Since(user.getUuid(), sinceUuid, limit),
+                () -> postRepository.postWithUuidExists(sinceUuid),
+                () -> new IllegalArgumentException(String.format("Post with UUID %s doesn't exist", sinceUuid)));
+    }
+
+    @Override
+    public Optional<String> getFeedVersion(UserPrincipal user) {
+        return timelineService.getFeedVersion(user.getUuid());
+    }
+
+    private List<UserPost> getPostsInOrder(List<UUID> uuids) {
+        if (uuids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<String> stringUuids = new ArrayList<>(uuids.size());
+        Map<UUID, Integer> positions = new HashMap<>();
+        for (UUID uuid : uuids) {
+            stringUuids.add(uuid.toString());
+            positions.put(uuid, positions.size());
+        }
+
+        List<UserPost> posts = new ArrayList<>(postRepository.getPostsWithUuids(stringUuids));
+        posts.sort(Comparator.comparing(p -> positions.get(p.getUuid())));
+        return posts;
+    }
+
     @Override
     public List<UserPost> getFeedForUser_Popular(UserPrincipal user, Long skip, Long limit) throws IllegalArgumentException {
         if (limit < 0 || skip < 0) {
@@ -149,113 +298,154 @@ public class PostService implements IPostService {
                 .getFeedForAnonymousUser_Popular(dayAgo, skip, limit);
     }
 
-    private List<Tag> findTagsInContent(Post post) {
-        // look for the hashtag pattern in the post content
-        Matcher m = hashtagPattern.matcher(post.getContent());
+    // text of every entity of given type, without its first character ('#' or '@')
+    private static Set<String> findUniqueNames(Post post, String type) {
+        Set<String> names = new HashSet<>();
+        for (ContentEntity entity : post.getEntities()) {
+            if (entity.getType().equals(type)) {
+                names.add(post.getContent().substring(entity.getStart() + 1, entity.getEnd()));
+            }
+        }
+        return names;
+    }
 
+    private List<Tag> findTagsInContent(Post post) {
         Set<String> uniqueTags = new HashSet<>();
-
-        // find all tags that were used and save only unique ones
-        while (m.find()) {
+        for (String name : findUniqueNames(post, ContentEntity.HASHTAG)) {
             // every tag name should have all characters lower case
-            uniqueTags.add(m.group(1).toLowerCase());
-        }
-
-        List<Tag> allFoundTags = new ArrayList<>();
-        for (String tagName : uniqueTags) {
-            // for every tag name check if that tag already exists
-            // in the database
-            try {
-                Tag dbTag = tagService.findByName(tagName);
-                allFoundTags.add(dbTag);
-            } catch (TagDoesntExistException ex) {
-                // tag doesn't exist in the database
-                // create a new tag
-                allFoundTags.add(new Tag(tagName));
-            }
+            uniqueTags.add(name.toLowerCase());
         }
-        return allFoundTags;
-    }
 
-    private List<User> findMentionedUsersInContent(Post post) {
-        // look for the username pattern in the post content
-        Matcher m = usernamePattern.matcher(post.getContent());
+        if (uniqueTags.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // tags that don't exist in the database yet are created
+        return tagService.findOrCreateAllByNames(uniqueTags);
+    }
 
-        Set<String> uniqueUsernames = new HashSet<>();
+    private Set<String> findMentionedUsernamesInContent(Post post) {
+        return findUniqueNames(post, ContentEntity.MENTION);
+    }
 
-        // find all mentioned usernames
-        while (m.find()) {
-            uniqueUsernames.add(m.group(1));
-        }
+    // only the uuid of the author is needed to save the post, so the author is never loaded
+    private static User authorReference(UserPrincipal author) {
+        User reference = new User();
+        reference.setUuid(author.getUuid());
+        return reference;
+    }
 
-        List<User> allFoundUsers = new ArrayList<>();
-        for (String username : uniqueUsernames) {
-            // for every username check if that user exists in the database
-            try {
-                User u = userService.findByUsername(username);
-                allFoundUsers.add(u);
-            } catch (UserDoesntExistException ignore) {
-            }
-        }
-        return allFoundUsers;
+    private static Post postReference(UUID uuid) {
+        Post reference = new Post();
+        reference.setUuid(uuid);
+        return reference;
     }
 
+    /*
+        Only the post itself (with its tags) is saved while the request is handled,
+        everything that has to happen because of the new post is processed by the pipeline.
+
+        The post is created with a single query which only needs uuids of nodes that the post is connected to,
+        so neither the author nor the post which is responded to/quoted have to be loaded.
+        Empty result means that the post which is responded to/quoted doesn't exist or is marked as deleted.
+     */
     @Override
-    public Post processPostAndSave(Post post) {
+    public Optional<Post> processPostAndSave(Post post) {
+        // content is only parsed once, entities found in it are saved with the post
+        post.setEntities(ContentTokenizer.tokenize(post.getContent()));
         List<Tag> tags = findTagsInContent(post);
         tags.forEach(post::addTag);
-        Post savedPost = postRepository.save(post);
-        List<User> mentionedUsers = findMentionedUsersInContent(post);
-        notificationService.notifyAboutMention(savedPost, mentionedUsers);
-        return savedPost;
+
+        UUID respondsToUuid = null;
+        UUID quotedUuid = null;
+        if (post instanceof ResponsePost) {
+            respondsToUuid = ((ResponsePost) post).getRespondsTo().getUuid();
+        } else if (post instanceof QuotePost) {
+            quotedUuid = ((QuotePost) post).getQuotes().getUuid();
+        }
+
+        post.setUuid(UUID.randomUUID());
+        Optional<String> created = postRepository.createPost(
+                post.getUuid(),
+                post.getAuthor().getUuid(),
+                post.getContent(),
+                ENTITIES_CONVERTER.toGraphProperty(post.getEntities()),
+                post.getCreationDate(),
+                tags.stream().map(t -> t.getUuid().toString()).collect(Collectors.toList()),
+                respondsToUuid,
+                quotedUuid);
+        if (created.isEmpty()) {
+            return Optional.empty();
+        }
+        UUID savedUuid = post.getUuid();
+        tagUsageService.recordUsage(tags, post.getCreationDate());
+        // tags which have just been created can be suggested right away
+        tagSuggestionService.recordUsage(tags);
+
+        // the event is published after the timelines are updated, so that clients which react to it
+        // can already read the post from their timeline
+        pipelineService.submit("fan out post " + savedUuid, () -> {
+            recentPostIndexService.pushPost(post);
+            timelineService.pushPost(post);
+            streamService.publishPost(post);
+        });
+
+        // mentioned users are only notified if they exist
+        Set<String> mentionedUsernames = findMentionedUsernamesInContent(post);
+        if (!mentionedUsernames.isEmpty()) {
+            pipelineService.submit("notify about mentions in post " + savedUuid,
+                    () -> notificationService.notifyAboutMention(post, mentionedUsernames));
+        }
+        return Optional.of(post);
     }
 
     @Override
-    public Post postPost(User author, String content) {
-        Post b = new Post(author, content);
-        return processPostAndSave(b);
+    public Post postPost(UserPrincipal author, String content) {
+        Post b = new Post(authorReference(author), content);
+        // the author is logged in, so they can only be missing if they've been removed in the meantime
+        return processPostAndSave(b).orElseThrow(() ->
+                new IllegalStateException(String.format("User with UUID %s doesn't exist", author.getUuid())));
     }
 
     @Override
-    public Post postQuote(User author, String content, UUID quotedPostUuid) throws PostDoesntExistException {
-        Optional<Post> quotedPost = postRepository.findById(quotedPostUuid);
-
-        if (quotedPost.isPresent() && !quotedPost.get().isDeleted()) {
-            Post quote = new QuotePost(author, content, quotedPost.get());
-            Post savedPost = processPostAndSave(quote);
-            notificationService.notifyAboutQuote((QuotePost)savedPost, quotedPost.get().getAuthor());
-            return savedPost;
-        }
-        throw new PostDoesntExistException(quotedPostUuid);
+    public Post postQuote(UserPrincipal author, String content, UUID quotedPostUuid) throws PostDoesntExistException {
+        Post quote = new QuotePost(authorReference(author), content, postReference(quotedPostUuid));
+        Post savedPost = processPostAndSave(quote).orElseThrow(() -> new PostDoesntExistException(quotedPostUuid));
+        pipelineService.submit("count quote of post " + quotedPostUuid,
+                () -> postRepository.incrementQuotesOfPostWithUuid(quotedPostUuid));
+        pipelineService.submit("notify about quote " + savedPost.getUuid(),
+                () -> notificationService.notifyAuthorOfParentPost(savedPost));
+        return savedPost;
     }
 
     @Override
-    public Post postResponse(User author, String content, UUID parentPostUuid) throws PostDoesntExistException {
-        Optional<Post> parentPost = postRepository.findById(parentPostUuid);
-
-        if (parentPost.isPresent() && !parentPost.get().isDeleted()) {
-            Post response = new ResponsePost(author, content, parentPost.get());
-            Post savedPost = processPostAndSave(response);
-            notificationService.notifyAboutResponse((ResponsePost)savedPost, parentPost.get().getAuthor());
-            return savedPost;
-        }
-        throw new PostDoesntExistException(parentPostUuid);
+    public Post postResponse(UserPrincipal author, String content, UUID parentPostUuid) throws PostDoesntExistException {
+        Post response = new ResponsePost(authorReference(author), content, postReference(parentPostUuid));
+        Post savedPost = processPostAndSave(response).orElseThrow(() -> new PostDoesntExistException(parentPostUuid));
+        pipelineService.submit("count response to post " + parentPostUuid,
+                () -> postRepository.incrementResponsesOfPostWithUuid(parentPostUuid));
+        pipelineService.submit("notify about response " + savedPost.getUuid(),
+                () -> notificationService.notifyAuthorOfParentPost(savedPost));
+        return savedPost;
     }
 
     @Override
-    public boolean markPostAsDeleted(User loggedUser, UUID postUuid) throws PostDoesntExistException, UserCannotDeletePostException {
-        Optional<Post> postToDelete = postRepository.findById(postUuid);
-
-        if (postToDelete.isPresent()) {
-            Post b = postToDelete.get();
-            // make sure that the user has the right to delete that post
-            if (!b.getAuthor().getUuid().equals(loggedUser.getUuid())) {
-                throw new UserCannotDeletePostException(loggedUser, postUuid);
-            }
-            b.markAsDeleted();
-            return postRepository.save(b).isDeleted();
+    public boolean markPostAsDeleted(UserPrincipal loggedUser, UUID postUuid) throws PostDoesntExistException, UserCannotDeletePostException {
+        // the post is only marked as deleted by the query if the user has the right to delete it
+        Optional<PostOwnership> post = postRepository.markPostWithUuidAsDeletedByUserWithUuid(postUuid, loggedUser.getUuid());
+        if (post.isEmpty()) {
+            throw new PostDoesntExistException(postUuid);
         }
-        throw new PostDoesntExistException(postUuid);
+        if (!post.get().getAuthorUuid().equals(loggedUser.getUuid())) {
+            throw new UserCannotDeletePostException(loggedUser, postUuid);
+        }
+        // posts that had already been deleted are no longer counted by their parents nor by their tags
+        if (!post.get().isDeleted()) {
+            postRepository.decrementCountersOfParentsOfPostWithUuid(postUuid);
+            tagUsageService.recordRemoval(post.get().getTags(), post.get().getCreationDate());
+            recentPostIndexService.removePost(postUuid, post.get().getTags());
+        }
+        timelineService.removePost(loggedUser.getUuid(), postUuid);
+        return true;
     }
 
     public void setClock(Clock clock) {
@@ -0,0 +1,90 @@
+package ml.echelon133.microblog.report.model;
+
+import ml.echelon133.microblog.tag.model.Tag;
+import org.neo4j.ogm.annotation.typeconversion.Convert;
+import org.neo4j.ogm.typeconversion.UuidStringConverter;
+import org.springframework.data.neo4j.annotation.QueryResult;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/*
+    Result of accepting a report. Uuid, author, creation date and tags of the reported post are read with it,
+    so that the post can be removed from timelines and from usages and indexes of its tags when it gets deleted
+    because of the report.
+ */
+@QueryResult
+public class AcceptedReport {
+
+    // false if the report had already been checked
+    private boolean checked;
+    // false if the post had already been marked as deleted, or the report had already been checked
+    private boolean postDeleted;
+    @Convert(value = UuidStringConverter.class)
+    private UUID postUuid;
+    @Convert(value = UuidStringConverter.class)
+    private UUID postAuthorUuid;
+    private Date postCreationDate;
+    private List<Tag> postTags;
+
+    public AcceptedReport() {}
+
+    public AcceptedReport(boolean checked, boolean postDeleted, UUID postUuid, UUID postAuthorUuid,
+                          Date postCreationDate, List<Tag> postTags) {
+        this.checked = checked;
+        this.postDeleted = postDeleted;
+        this.postUuid = postUuid;
+        this.postAuthorUuid = postAuthorUuid;
+        this.postCreationDate = postCreationDate;
+        this.postTags = postTags;
+    }
+
+    public boolean isChecked() {
+        return checked;
+    }
+
+    public void setChecked(boolean checked) {
+        this.checked = checked;
+    }
+
+    public boolean isPostDeleted() {
+        return postDeleted;
+    }
+
+    public void setPostDeleted(boolean postDeleted) {
+        this.postDeleted = postDeleted;
+    }
+
+    public UUID getPostUuid() {
+        return postUuid;
+    }
+
+    public void setPostUuid(UUID postUuid) {
+        this.postUuid = postUuid;
+    }
+
+    public UUID getPostAuthorUuid() {
+        return postAuthorUuid;
+    }
+
+    public void setPostAuthorUuid(UUID postAuthorUuid) {
+        this.postAuthorUuid = postAuthorUuid;
+    }
+
+    public Date getPostCreationDate() {
+        return postCreationDate;
+    }
+
+    public void setPostCreationDate(Date postCreationDate) {
+        this.postCreationDate = postCreationDate;
+    }
+
+    public List<Tag> getPostTags() {
+        return postTags;
+    }
+
+    public void setPostTags(List<Tag> postTags) {
+        this.postTags = postTags;
+    }
+}
@@ -1,16 +1,20 @@
 package ml.echelon133.microblog.report.repository;
 
+import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.report.model.AcceptedReport;
 import ml.echelon133.microblog.report.model.Report;
 import ml.echelon133.microblog.report.model.ReportResult;
 import org.springframework.data.neo4j.repository.Neo4jRepository;
 import org.springframework.data.neo4j.annotation.Query;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface ReportRepository extends Neo4jRepository<Report, UUID> {
 
-    @Query( "MATCH (reporter:User)-[r:REPORTS]->(reported:Post)<-[:POSTS]-(u:User) " +
+    @Query( "MATCH (reporter:User)-[r:REPORTS]->(reported)<-[:POSTS]-(u:User) " +
             "WHERE r.checked = $checked " +
             "RETURN r.uuid AS uuid, reported.uuid AS reportedPostUuid, " +
             "reporter.username AS reportAuthorUsername, " +
@@ -23,17 +27,46 @@ public interface ReportRepository extends Neo4jRepository<Report, UUID> {
             "ORDER BY datetime(r.creationDate) DESC SKIP $skip LIMIT $limit ")
     List<ReportResult> findAllReports(Long skip, Long limit, boolean checked);
 
-    // set the report as 'checked' and post as 'deleted'
-    @Query( "MATCH (reporter:User)-[r:REPORTS]->(reported:Post) " +
-            "WHERE r.uuid = $reportUuid AND r.checked = false " +
-            "SET r.checked = true, reported.deleted = true " +
-            "RETURN r.checked")
-    boolean acceptReport(UUID reportUuid);
+    // set the report as 'checked' and post as 'deleted' (the post gets the 'DeletedPost' label instead of 'Post')
+    // if the post hadn't been deleted before, it's no longer counted as a response/quote of its parent
+    // empty result means that the report doesn't exist, false means that it had already been checked
+    @Query( "MATCH (reporter:User)-[r:REPORTS]->(reported) " +
+            "WHERE r.uuid = $reportUuid " +
+            "WITH r, reported, r.checked = false AS unchecked, reported:DeletedPost OR coalesce(reported.deleted, false) AS alreadyDeleted " +
+            "FOREACH (_ IN CASE WHEN unchecked THEN [1] ELSE [] END | " +
+            "SET r.checked = true, reported.deleted = true REMOVE reported:Post SET reported:DeletedPost) " +
+            "WITH r, reported, unchecked, unchecked AND NOT alreadyDeleted AS decrementParents " +
+            "OPTIONAL MATCH (reported)-[:RESPONDS]->(respondsTo:Post) WHERE decrementParents " +
+            "SET respondsTo.responses = " +
+            "CASE WHEN coalesce(respondsTo.responses, 0) > 0 THEN respondsTo.responses - 1 ELSE 0 END " +
+            "WITH r, reported, unchecked, decrementParents " +
+            "OPTIONAL MATCH (reported)-[:QUOTES]->(quoted:Post) WHERE decrementParents " +
+            "SET quoted.quotes = CASE WHEN coalesce(quoted.quotes, 0) > 0 THEN quoted.quotes - 1 ELSE 0 END " +
+            "WITH reported, unchecked, decrementParents " +
+            "OPTIONAL MATCH (author:User)-[:POSTS]->(reported) " +
+            "OPTIONAL MATCH (t:Tag)-[:TAGS]->(reported) " +
+            "RETURN unchecked AS checked, decrementParents AS postDeleted, reported.uuid AS postUuid, " +
+            "author.uuid AS postAuthorUuid, " +
+            "reported.creationDate AS postCreationDate, collect(t) AS postTags")
+    Optional<AcceptedReport> acceptReport(UUID reportUuid);
 
     // set the report as 'checked' but leave the post as it is
-    @Query( "MATCH (reporter:User)-[r:REPORTS]->(reported:Post) " +
-            "WHERE r.uuid = $reportUuid AND r.checked = false " +
+    // empty result means that the report doesn't exist, false means that it had already been checked
+    @Query( "MATCH (reporter:User)-[r:REPORTS]->(reported) " +
+            "WHERE r.uuid = $reportUuid " +
+            "WITH r, r.checked = false AS unchecked " +
             "SET r.checked = true " +
-            "RETURN r.checked")
-    boolean rejectReport(UUID reportUuid);
+            "RETURN unchecked")
+    Optional<Boolean> rejectReport(UUID reportUuid);
+
+    // properties of the created relationship are the same as properties of a saved Report,
+    // empty result means that either the user or the post doesn't exist (posts marked as deleted can be reported)
+    @Query( "MATCH (reporter:User) WHERE reporter.uuid = $reportingUserUuid " +
+            "WITH reporter, $reportedPostUuid AS postUuid " +
+            PostRepository.MATCH_POST_OR_DELETED_POST +
+            "CREATE (reporter)-[r:REPORTS {uuid: randomUUID(), creationDate: $creationDate, reason: $reason, " +
+            "checked: false, description: $description}]->(post) " +
+            "RETURN r.uuid")
+    Optional<String> createReport(UUID reportingUserUuid, UUID reportedPostUuid, String reason,
+                                  String description, Date creationDate);
 }
@@ -1,16 +1,19 @@
 package ml.echelon133.microblog.report.service;
 
-import ml.echelon133.microblog.post.model.Post;
+import ml.echelon133.microblog.feed.service.ITimelineService;
+import ml.echelon133.microblog.post.model.PostOwnership;
 import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.report.model.AcceptedReport;
 import ml.echelon133.microblog.report.model.Report;
 import ml.echelon133.microblog.report.repository.ReportRepository;
 import ml.echelon133.microblog.report.model.ReportResult;
 import ml.echelon133.microblog.report.exception.ResourceDoesNotExistException;
-import ml.echelon133.microblog.user.model.User;
-import ml.echelon133.microblog.user.repository.UserRepository;
+import ml.echelon133.microblog.tag.service.IRecentPostIndexService;
+import ml.echelon133.microblog.tag.service.ITagUsageService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -19,16 +22,22 @@ import java.util.UUID;
 public class ReportService implements IReportService {
 
     private ReportRepository reportRepository;
-    private UserRepository userRepository;
     private PostRepository postRepository;
+    private ITagUsageService tagUsageService;
+    private IRecentPostIndexService recentPostIndexService;
+    private ITimelineService timelineService;
 
     @Autowired
     public ReportService(ReportRepository reportRepository,
-                         UserRepository userRepository,
-                         PostRepository postRepository) {
+                         PostRepository postRepository,
+                         ITagUsageService tagUsageService,
+                         IRecentPostIndexService recentPostIndexService,
+                         ITimelineService timelineService) {
         this.reportRepository = reportRepository;
-        this.userRepository = userRepository;
         this.postRepository = postRepository;
+        this.tagUsageService = tagUsageService;
+        this.recentPostIndexService = recentPostIndexService;
+        this.timelineService = timelineService;
     }
 
     @Override
@@ -45,38 +54,47 @@ public class ReportService implements IReportService {
     public boolean createNewReport(UUID reportingUserUuid, UUID reportedPostUuid, String reason, String description)
             throws ResourceDoesNotExistException, IllegalArgumentException {
 
-        Optional<User> reportingUser = userRepository.findById(reportingUserUuid);
-        if (reportingUser.isEmpty()) {
-            String msg = String.format("User with UUID %s does not exist", reportingUserUuid.toString());
-            throw new ResourceDoesNotExistException(msg);
-        }
-
-        Optional<Post> reportedPost = postRepository.findById(reportedPostUuid);
+        // only the uuid of the author is needed, so the reported post isn't mapped to an entity
+        Optional<PostOwnership> reportedPost = postRepository.getOwnershipOfPostWithUuid(reportedPostUuid);
         if (reportedPost.isEmpty()) {
             String msg = String.format("Post with UUID %s does not exist", reportedPostUuid.toString());
             throw new ResourceDoesNotExistException(msg);
         }
 
-        User authorOfReportedPost = reportedPost.get().getAuthor();
-        if (authorOfReportedPost.getUuid().equals(reportingUser.get().getUuid())) {
+        if (reportedPost.get().getAuthorUuid().equals(reportingUserUuid)) {
             throw new IllegalArgumentException("User cannot report their own posts");
         }
 
         Report.Reason reason_ = Report.Reason.valueOf(reason.toUpperCase());
-        Report savedReport = reportRepository.save(new Report(reason_, description, reportedPost.get(), reportingUser.get()));
-        return savedReport.getUuid() != null;
+        // the post exists, so empty result means that the reporting user doesn't
+        Optional<String> savedReport = reportRepository.createReport(
+                reportingUserUuid, reportedPostUuid, reason_.name(), description, new Date());
+        if (savedReport.isEmpty()) {
+            String msg = String.format("User with UUID %s does not exist", reportingUserUuid.toString());
+            throw new ResourceDoesNotExistException(msg);
+        }
+        return true;
     }
 
     @Override
     public boolean checkReport(UUID reportUuid, boolean acceptReport) throws ResourceDoesNotExistException {
-        if (reportRepository.existsById(reportUuid)) {
-            boolean report;
-            if (acceptReport) {
-                report = reportRepository.acceptReport(reportUuid);
-            } else {
-                report = reportRepository.rejectReport(reportUuid);
-            }
-            return report;
+        // empty result means that the report doesn't exist, false means that it had already been checked
+        Optional<Boolean> checked;
+        if (acceptReport) {
+            Optional<AcceptedReport> accepted = reportRepository.acceptReport(reportUuid);
+            // posts deleted because of a report no longer count as usages of their tags,
+            // and they have to be removed from timelines just like posts deleted by their authors
+            accepted.filter(AcceptedReport::isPostDeleted).ifPresent(report -> {
+                tagUsageService.recordRemoval(report.getPostTags(), report.getPostCreationDate());
+                recentPostIndexService.removePost(report.getPostUuid(), report.getPostTags());
+                timelineService.removePost(report.getPostAuthorUuid(), report.getPostUuid());
+            });
+            checked = accepted.map(AcceptedReport::isChecked);
+        } else {
+            checked = reportRepository.rejectReport(reportUuid);
+        }
+        if (checked.isPresent()) {
+            return checked.get();
         }
         String msg = String.format("Report with UUID %s does not exist", reportUuid.toString());
         throw new ResourceDoesNotExistException(msg);
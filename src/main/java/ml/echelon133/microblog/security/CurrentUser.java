@@ -0,0 +1,21 @@
+package ml.echelon133.microblog.security;
+
+import ml.echelon133.microblog.user.model.UserPrincipal;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Optional;
+
+public class CurrentUser {
+
+    private CurrentUser() {}
+
+    // empty on endpoints which can be accessed without auth, when the request doesn't provide it
+    public static Optional<UserPrincipal> find() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.getPrincipal() instanceof UserPrincipal) {
+            return Optional.of((UserPrincipal) auth.getPrincipal());
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,29 @@
+package ml.echelon133.microblog.stream.controller;
+
+import ml.echelon133.microblog.stream.service.IStreamService;
+import ml.echelon133.microblog.user.model.UserPrincipal;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/stream")
+public class StreamController {
+
+    private IStreamService streamService;
+
+    @Autowired
+    public StreamController(IStreamService streamService) {
+        this.streamService = streamService;
+    }
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getStream() {
+        UserPrincipal loggedUser = (UserPrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        return streamService.connect(loggedUser);
+    }
+}
@@ -0,0 +1,53 @@
+package ml.echelon133.microblog.stream.model;
+
+import java.util.UUID;
+
+/*
+    Event which is published to every node of the application through redis, so that it can be
+    delivered to the users who are connected to the stream on that node.
+
+    The target of a 'post' event is the author of the post (the event is delivered to their followers),
+    the target of a 'notification' event is the notified user.
+    The subject is the post that the event is about.
+ */
+public class StreamEvent {
+
+    public static final String POST = "post";
+    public static final String NOTIFICATION = "notification";
+
+    private static final String SEPARATOR = " ";
+
+    private String type;
+    private UUID target;
+    private UUID subject;
+
+    public StreamEvent(String type, UUID target, UUID subject) {
+        this.type = type;
+        this.target = target;
+        this.subject = subject;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public UUID getTarget() {
+        return target;
+    }
+
+    public UUID getSubject() {
+        return subject;
+    }
+
+    public String encode() {
+        return type + SEPARATOR + target + SEPARATOR + subject;
+    }
+
+    public static StreamEvent decode(String encoded) throws IllegalArgumentException {
+        String[] parts = encoded.split(SEPARATOR);
+        if (parts.length != 3 || !(parts[0].equals(POST) || parts[0].equals(NOTIFICATION))) {
+            throw new IllegalArgumentException("Invalid stream event.");
+        }
+        return new StreamEvent(parts[0], UUID.fromString(parts[1]), UUID.fromString(parts[2]));
+    }
+}
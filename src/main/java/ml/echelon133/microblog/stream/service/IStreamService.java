@@ -0,0 +1,13 @@
+package ml.echelon133.microblog.stream.service;
+
+import ml.echelon133.microblog.post.model.Post;
+import ml.echelon133.microblog.user.model.UserPrincipal;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.UUID;
+
+public interface IStreamService {
+    SseEmitter connect(UserPrincipal user);
+    void publishPost(Post post);
+    void publishNotification(UUID notifiedUserUuid, UUID postUuid);
+}
@@ -0,0 +1,263 @@
+package ml.echelon133.microblog.stream.service;
+
+import ml.echelon133.microblog.post.model.Post;
+import ml.echelon133.microblog.stream.model.StreamEvent;
+import ml.echelon133.microblog.user.model.UserPrincipal;
+import ml.echelon133.microblog.user.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Connections to the stream are held as asynchronous requests, so an idle connection doesn't occupy
+    any thread of the server, only an emitter kept in memory.
+
+    Events are published to a single redis channel to which every node of the application is subscribed.
+    Every node delivers an event only to the users who are connected to it. To know which connected users
+    follow the author of a new post without querying the graph for every post, every node keeps an index
+    of authors followed by its connected users. The index is built when a user connects, so users who are
+    followed after that only start appearing in the stream after the client reconnects.
+
+    Writing to a connection blocks while the client doesn't read (or while a half-open connection times out), so events
+    are never written by the thread which receives them from redis nor by the scheduler. Every connection has a bounded
+    queue of pending events, which is drained by one of SENDER_THREADS threads. A connection which falls so far behind
+    that its queue is full is closed, and its client is expected to reconnect and read its feed.
+ */
+@Service
+public class StreamService implements IStreamService, MessageListener {
+
+    public static final String CHANNEL = "stream:events";
+
+    // clients are expected to reconnect when the stream times out
+    public static final long EMITTER_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+
+    public static final int SENDER_THREADS = 8;
+
+    // how many events can wait for a single connection before it's considered too slow and closed
+    public static final int MAX_PENDING_EVENTS = 64;
+
+    // a single connection of a user, together with events that haven't been written to it yet
+    private final class Connection implements Runnable {
+        private final UUID userUuid;
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> pending = new ArrayBlockingQueue<>(MAX_PENDING_EVENTS);
+        // whether a sender is draining the queue, so that events of a connection are written by one thread at a time
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Connection(UUID userUuid, SseEmitter emitter) {
+            this.userUuid = userUuid;
+            this.emitter = emitter;
+        }
+
+        private void enqueue(SseEmitter.SseEventBuilder event) {
+            if (!pending.offer(event)) {
+                close(null);
+                return;
+            }
+            drainLater();
+        }
+
+        private void drainLater() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    // the application is shutting down
+                    draining.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            SseEmitter.SseEventBuilder event;
+            while ((event = pending.poll()) != null) {
+                try {
+                    emitter.send(event);
+                } catch (IOException | IllegalStateException ex) {
+                    // the client has disconnected
+                    close(ex);
+                    return;
+                }
+            }
+            draining.set(false);
+            // an event could have been enqueued after the queue was found empty, but before draining was reset
+            if (!pending.isEmpty()) {
+                drainLater();
+            }
+        }
+
+        private void close(Throwable ex) {
+            unregister(this);
+            pending.clear();
+            if (ex == null) {
+                emitter.complete();
+            } else {
+                emitter.completeWithError(ex);
+            }
+        }
+    }
+
+    private StringRedisTemplate redisTemplate;
+    private RedisMessageListenerContainer listenerContainer;
+    private UserRepository userRepository;
+
+    private final ExecutorService senders;
+
+    // connections of every connected user, a single user can be connected multiple times
+    private final Map<UUID, Set<Connection>> connectionsOfUsers = new ConcurrentHashMap<>();
+
+    // uuids of followed users of every connected user
+    private final Map<UUID, List<UUID>> followedByUsers = new ConcurrentHashMap<>();
+
+    // uuids of connected users who follow the user which is the key
+    private final Map<UUID, Set<UUID>> connectedFollowers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public StreamService(StringRedisTemplate redisTemplate,
+                         RedisMessageListenerContainer listenerContainer,
+                         UserRepository userRepository) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.userRepository = userRepository;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(SENDER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "stream-sender-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    private synchronized void register(Connection connection, List<UUID> followed) {
+        UUID userUuid = connection.userUuid;
+        Set<Connection> connections = connectionsOfUsers.computeIfAbsent(userUuid, k -> new CopyOnWriteArraySet<>());
+        connections.add(connection);
+        // the index only needs to be updated when the first connection of the user is registered
+        if (connections.size() == 1) {
+            followedByUsers.put(userUuid, followed);
+            for (UUID followedUuid : followed) {
+                connectedFollowers.computeIfAbsent(followedUuid, k -> ConcurrentHashMap.newKeySet()).add(userUuid);
+            }
+        }
+    }
+
+    private synchronized void unregister(Connection connection) {
+        UUID userUuid = connection.userUuid;
+        Set<Connection> connections = connectionsOfUsers.get(userUuid);
+        if (connections == null || !connections.remove(connection) || !connections.isEmpty()) {
+            return;
+        }
+        connectionsOfUsers.remove(userUuid);
+        List<UUID> followed = followedByUsers.remove(userUuid);
+        if (followed != null) {
+            for (UUID followedUuid : followed) {
+                Set<UUID> followers = connectedFollowers.get(followedUuid);
+                if (followers != null) {
+                    followers.remove(userUuid);
+                    if (followers.isEmpty()) {
+                        connectedFollowers.remove(followedUuid);
+                    }
+                }
+            }
+        }
+    }
+
+    private void publish(StreamEvent event) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, event.encode());
+        } catch (DataAccessException ignore) {
+            // the stream is only a hint for clients, they still see everything when they read their feed
+        }
+    }
+
+    @Override
+    public SseEmitter connect(UserPrincipal user) {
+        UUID userUuid = user.getUuid();
+        List<UUID> followed = new ArrayList<>();
+        for (String uuid : userRepository.findAllFollowedUuidsOfUserWithUuid(userUuid)) {
+            followed.add(UUID.fromString(uuid));
+        }
+
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MILLIS);
+        Connection connection = new Connection(userUuid, emitter);
+        emitter.onCompletion(() -> unregister(connection));
+        emitter.onError(ex -> unregister(connection));
+        register(connection, followed);
+        return emitter;
+    }
+
+    @Override
+    public void publishPost(Post post) {
+        publish(new StreamEvent(StreamEvent.POST, post.getAuthor().getUuid(), post.getUuid()));
+    }
+
+    @Override
+    public void publishNotification(UUID notifiedUserUuid, UUID postUuid) {
+        publish(new StreamEvent(StreamEvent.NOTIFICATION, notifiedUserUuid, postUuid));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        StreamEvent event;
+        try {
+            event = StreamEvent.decode(new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException ex) {
+            return;
+        }
+
+        Collection<UUID> recipients;
+        if (event.getType().equals(StreamEvent.POST)) {
+            recipients = connectedFollowers.getOrDefault(event.getTarget(), Set.of());
+        } else {
+            recipients = List.of(event.getTarget());
+        }
+
+        for (UUID recipient : recipients) {
+            for (Connection connection : connectionsOfUsers.getOrDefault(recipient, Set.of())) {
+                connection.enqueue(SseEmitter.event()
+                        .name(event.getType())
+                        .data(event.getSubject().toString()));
+            }
+        }
+    }
+
+    // connections that are closed by clients are only noticed when something is written to them
+    @Scheduled(fixedDelay = 30_000L)
+    public void sendHeartbeat() {
+        for (Set<Connection> connections : connectionsOfUsers.values()) {
+            for (Connection connection : connections) {
+                connection.enqueue(SseEmitter.event().comment("heartbeat"));
+            }
+        }
+    }
+
+    public int countConnectedUsers() {
+        return connectionsOfUsers.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+}
@@ -1,8 +1,10 @@
 package ml.echelon133.microblog.tag.controller;
 
+import ml.echelon133.microblog.pagination.PostCursor;
 import ml.echelon133.microblog.tag.service.ITagService;
 import ml.echelon133.microblog.tag.model.RecentPost;
 import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.model.TagUsage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -52,11 +54,34 @@ public class TagController {
         );
     }
 
+    @GetMapping("/suggest")
+    public ResponseEntity<List<Tag>> suggestTags(@RequestParam String prefix,
+                                                 @RequestParam(defaultValue = "5") Long limit) throws IllegalArgumentException {
+        List<Tag> suggestions = tagService.findSuggestions(prefix, limit);
+        return new ResponseEntity<>(suggestions, HttpStatus.OK);
+    }
+
+    @GetMapping("/{uuid}/usage")
+    public ResponseEntity<List<TagUsage>> getUsage(@PathVariable String uuid,
+                                                   @RequestParam(defaultValue = "24") Long hours) throws Exception {
+        List<TagUsage> usage = tagService.findUsage(UUID.fromString(uuid), hours);
+        return new ResponseEntity<>(usage, HttpStatus.OK);
+    }
+
     @GetMapping("/{uuid}/recentPosts")
     public ResponseEntity<List<RecentPost>> findRecentPosts(@PathVariable String uuid,
                                                             @RequestParam(defaultValue = "0") Long skip,
-                                                            @RequestParam(defaultValue = "5") Long limit) throws Exception {
-        List<RecentPost> recent = tagService.findRecentPostsTagged(UUID.fromString(uuid), skip, limit);
-        return new ResponseEntity<>(recent, HttpStatus.OK);
+                                                            @RequestParam(defaultValue = "5") Long limit,
+                                                            @RequestParam(required = false) String cursor) throws Exception {
+        List<RecentPost> recent;
+        if (cursor != null) {
+            recent = tagService.findRecentPostsTagged(UUID.fromString(uuid), PostCursor.decode(cursor), limit);
+        } else {
+            recent = tagService.findRecentPostsTagged(UUID.fromString(uuid), skip, limit);
+        }
+        return new ResponseEntity<>(
+                recent,
+                PostCursor.nextPageHeaders(recent, limit, RecentPost::getDate, RecentPost::getUuid),
+                HttpStatus.OK);
     }
 }
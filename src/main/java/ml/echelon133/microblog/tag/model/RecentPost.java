@@ -1,11 +1,14 @@
 package ml.echelon133.microblog.tag.model;
 
 import ml.echelon133.microblog.user.model.User;
+import ml.echelon133.microblog.post.model.ContentEntitiesConverter;
+import ml.echelon133.microblog.post.model.ContentEntity;
 import org.neo4j.ogm.annotation.typeconversion.Convert;
 import org.neo4j.ogm.typeconversion.UuidStringConverter;
 import org.springframework.data.neo4j.annotation.QueryResult;
 
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
 @QueryResult
@@ -13,6 +16,8 @@ public class RecentPost {
     @Convert(value = UuidStringConverter.class)
     private UUID uuid;
     private String content;
+    @Convert(value = ContentEntitiesConverter.class)
+    private List<ContentEntity> entities;
     private Date date;
     private User author;
     @Convert(value = UuidStringConverter.class)
@@ -36,6 +41,14 @@ public class RecentPost {
         this.content = content;
     }
 
+    public List<ContentEntity> getEntities() {
+        return entities;
+    }
+
+    public void setEntities(List<ContentEntity> entities) {
+        this.entities = entities;
+    }
+
     public Date getDate() {
         return date;
     }
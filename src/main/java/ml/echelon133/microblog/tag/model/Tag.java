@@ -2,6 +2,7 @@ package ml.echelon133.microblog.tag.model;
 
 import org.neo4j.ogm.annotation.GeneratedValue;
 import org.neo4j.ogm.annotation.Id;
+import org.neo4j.ogm.annotation.Index;
 import org.neo4j.ogm.annotation.NodeEntity;
 import org.neo4j.ogm.annotation.typeconversion.Convert;
 import org.neo4j.ogm.id.UuidStrategy;
@@ -15,12 +16,19 @@ public class Tag {
     @GeneratedValue(strategy = UuidStrategy.class)
     @Convert(UuidStringConverter.class)
     private UUID uuid;
+    // unique, so that posts which introduce the same tag concurrently can't create it twice
+    // (the constraint is created by TagMigrationService, after tags with duplicate names are merged)
+    @Index(unique = true)
     private String name;
 
     public Tag() {}
     public Tag(String name) {
         this.name = name;
     }
+    public Tag(UUID uuid, String name) {
+        this.uuid = uuid;
+        this.name = name;
+    }
 
     public UUID getUuid() {
         return uuid;
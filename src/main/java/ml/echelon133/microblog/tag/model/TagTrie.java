@@ -0,0 +1,161 @@
+package ml.echelon133.microblog.tag.model;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/*
+    Compressed trie of names of tags, in which every edge is labeled with a whole chain of characters
+    that no other name branches off of, so it only has a node for every name and every place where names diverge.
+
+    Every node keeps the heaviest tags of its subtree, so completing a prefix only walks down to the node
+    of the prefix and reads its list, no matter how many tags start with it. These lists stay correct because
+    weights of tags can only grow (tries with weights that have to go down are rebuilt instead).
+ */
+public class TagTrie {
+
+    private static final class Completion {
+        private final Tag tag;
+        private final long weight;
+
+        Completion(Tag tag, long weight) {
+            this.tag = tag;
+            this.weight = weight;
+        }
+    }
+
+    // heavier tags first, tags of equal weight in alphabetical order
+    private static final Comparator<Completion> BY_WEIGHT = Comparator
+            .comparingLong((Completion c) -> -c.weight)
+            .thenComparing(c -> c.tag.getName());
+
+    private static final class Node {
+        private String label;
+        private final Map<Character, Node> children = new HashMap<>();
+        // tag which has the name that ends at this node
+        private Tag tag;
+        private long weight;
+        private List<Completion> completions = new ArrayList<>();
+
+        Node(String label) {
+            this.label = label;
+        }
+    }
+
+    private final int maxCompletions;
+    private final Node root = new Node("");
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size;
+
+    public TagTrie(int maxCompletions) {
+        this.maxCompletions = maxCompletions;
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private void offer(Node node, Tag tag, long weight) {
+        List<Completion> completions = node.completions;
+        completions.removeIf(c -> c.tag.getUuid().equals(tag.getUuid()));
+        Completion completion = new Completion(tag, weight);
+        int position = Collections.binarySearch(completions, completion, BY_WEIGHT);
+        completions.add(position < 0 ? -position - 1 : position, completion);
+        if (completions.size() > maxCompletions) {
+            completions.remove(completions.size() - 1);
+        }
+    }
+
+    // adds the tag if it's not in the trie yet, and increases its weight by 'delta'
+    public void add(Tag tag, long delta) {
+        if (delta < 0) {
+            throw new IllegalArgumentException("Weights of tags cannot decrease");
+        }
+        String rest = tag.getName();
+        if (rest == null || rest.isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            List<Node> path = new ArrayList<>();
+            path.add(root);
+            Node node = root;
+            while (!rest.isEmpty()) {
+                Node child = node.children.get(rest.charAt(0));
+                if (child == null) {
+                    child = new Node(rest);
+                    node.children.put(rest.charAt(0), child);
+                }
+                int common = commonPrefixLength(child.label, rest);
+                if (common < child.label.length()) {
+                    // the name diverges in the middle of the edge, which has to be split
+                    Node middle = new Node(child.label.substring(0, common));
+                    middle.completions = new ArrayList<>(child.completions);
+                    child.label = child.label.substring(common);
+                    middle.children.put(child.label.charAt(0), child);
+                    node.children.put(middle.label.charAt(0), middle);
+                    child = middle;
+                }
+                path.add(child);
+                node = child;
+                rest = rest.substring(common);
+            }
+
+            if (node.tag == null) {
+                size++;
+            }
+            node.tag = tag;
+            node.weight += delta;
+            for (Node n : path) {
+                offer(n, tag, node.weight);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // at most 'limit' (but never more than maxCompletions) heaviest tags which names start with the prefix
+    public List<Tag> complete(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            String rest = prefix;
+            while (!rest.isEmpty()) {
+                Node child = node.children.get(rest.charAt(0));
+                if (child == null) {
+                    return List.of();
+                }
+                int common = commonPrefixLength(child.label, rest);
+                // the prefix can end in the middle of an edge, every name below it still starts with the prefix
+                if (common < rest.length() && common < child.label.length()) {
+                    return List.of();
+                }
+                node = child;
+                rest = rest.substring(common);
+            }
+            return node.completions
+                    .stream()
+                    .limit(limit)
+                    .map(c -> c.tag)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ml.echelon133.microblog.tag.model;
+
+import java.util.Date;
+
+// how many posts have been tagged with a tag during the hour which starts at 'hour'
+public class TagUsage {
+
+    private Date hour;
+    private long count;
+
+    public TagUsage() {}
+
+    public TagUsage(Date hour, long count) {
+        this.hour = hour;
+        this.count = count;
+    }
+
+    public Date getHour() {
+        return hour;
+    }
+
+    public void setHour(Date hour) {
+        this.hour = hour;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+}
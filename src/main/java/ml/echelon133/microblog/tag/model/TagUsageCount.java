@@ -0,0 +1,59 @@
+package ml.echelon133.microblog.tag.model;
+
+import org.neo4j.ogm.annotation.typeconversion.Convert;
+import org.neo4j.ogm.typeconversion.UuidStringConverter;
+import org.springframework.data.neo4j.annotation.QueryResult;
+
+import java.util.UUID;
+
+// how many posts have been tagged with a tag during a single bucket of time (numbered from the epoch)
+@QueryResult
+public class TagUsageCount {
+
+    @Convert(value = UuidStringConverter.class)
+    private UUID uuid;
+    private String name;
+    private long bucket;
+    private long count;
+
+    public TagUsageCount() {}
+
+    public TagUsageCount(UUID uuid, String name, long bucket, long count) {
+        this.uuid = uuid;
+        this.name = name;
+        this.bucket = bucket;
+        this.count = count;
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(UUID uuid) {
+        this.uuid = uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(long bucket) {
+        this.bucket = bucket;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+}
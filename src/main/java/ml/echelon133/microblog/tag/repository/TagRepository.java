@@ -1,7 +1,9 @@
 package ml.echelon133.microblog.tag.repository;
 
+import ml.echelon133.microblog.feed.model.TimelineEntry;
 import ml.echelon133.microblog.tag.model.RecentPost;
 import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.model.TagUsageCount;
 import org.springframework.data.neo4j.annotation.Query;
 import org.springframework.data.neo4j.repository.Neo4jRepository;
 
@@ -13,17 +15,95 @@ import java.util.UUID;
 public interface TagRepository extends Neo4jRepository<Tag, UUID> {
     Optional<Tag> findByName(String name);
 
+    // finds tags with given names and creates the ones that don't exist yet in a single query
+    @Query( "UNWIND $names AS name " +
+            "MERGE (t:Tag {name: name}) " +
+            "ON CREATE SET t.uuid = randomUUID() " +
+            "RETURN t")
+    List<Tag> findOrCreateAllByNames(List<String> names);
+
+    // tags had been created without a constraint on their names, so some names could have been created more than once.
+    // For every such name (a batch of them at a time) only the tag with the lowest uuid is kept, and it tags every post
+    // that any of the removed tags did. Returns how many names have been merged
+    @Query( "MATCH (t:Tag) " +
+            "WITH t ORDER BY t.uuid " +
+            "WITH t.name AS name, collect(t) AS tags " +
+            "WHERE size(tags) > 1 " +
+            "WITH name, head(tags) AS kept, tail(tags) AS duplicates LIMIT $batchSize " +
+            "UNWIND duplicates AS duplicate " +
+            "OPTIONAL MATCH (duplicate)-[:TAGS]->(p) " +
+            "FOREACH (_ IN CASE WHEN p IS NULL THEN [] ELSE [1] END | MERGE (kept)-[:TAGS]->(p)) " +
+            "WITH DISTINCT name, duplicate " +
+            "DETACH DELETE duplicate " +
+            "RETURN count(DISTINCT name)")
+    Long mergeTagsWithDuplicateNames(Long batchSize);
+
+    // creating a constraint which already exists does nothing
+    @Query("CREATE CONSTRAINT ON (t:Tag) ASSERT t.name IS UNIQUE")
+    void createUniqueConstraintOnNames();
+
     @Query( "MATCH (t:Tag)-[r:TAGS]->(p:Post) " +
-            "WHERE p.creationDate >= $first AND p.creationDate < $second AND p.deleted <> true " +
+            "WHERE p.creationDate >= $first AND p.creationDate < $second " +
             "WITH t, count(r) as tagCounter RETURN t ORDER BY tagCounter DESC LIMIT $howManyTagsToGet")
     List<Tag> findMostPopularTags_Between(Date first, Date second, Long howManyTagsToGet);
 
+    // counts posts tagged with every tag in buckets of 'bucketMillis' milliseconds (numbered from the epoch)
+    @Query( "MATCH (t:Tag)-[:TAGS]->(p:Post) " +
+            "WHERE datetime(p.creationDate) >= datetime($from) AND datetime(p.creationDate) < datetime($to) " +
+            "RETURN t.uuid AS uuid, t.name AS name, " +
+            "datetime(p.creationDate).epochMillis / $bucketMillis AS bucket, count(p) AS count")
+    List<TagUsageCount> countUsagesOfTags_Between(Date from, Date to, Long bucketMillis);
+
+    @Query( "MATCH (t:Tag)-[:TAGS]->(p:Post) " +
+            "WHERE t.uuid = $tagUuid " +
+            "AND datetime(p.creationDate) >= datetime($from) AND datetime(p.creationDate) < datetime($to) " +
+            "RETURN t.uuid AS uuid, t.name AS name, " +
+            "datetime(p.creationDate).epochMillis / $bucketMillis AS bucket, count(p) AS count")
+    List<TagUsageCount> countUsagesOfTagWithUuid_Between(UUID tagUuid, Date from, Date to, Long bucketMillis);
+
+    // counts posts tagged with every tag since the date, tags which haven't been used since then are counted as well
+    // (the whole window is a single bucket)
+    @Query( "MATCH (t:Tag) " +
+            "OPTIONAL MATCH (t)-[:TAGS]->(p:Post) WHERE datetime(p.creationDate) >= datetime($since) " +
+            "RETURN t.uuid AS uuid, t.name AS name, 0 AS bucket, count(p) AS count")
+    List<TagUsageCount> countUsagesOfAllTags_Since(Date since);
+
+    // only reads what's needed to rebuild an index of recent posts of the tag
+    @Query( "MATCH (t:Tag)-[:TAGS]->(p:Post) " +
+            "WHERE t.uuid = $tagUuid " +
+            "RETURN p.uuid AS uuid, p.creationDate AS date " +
+            "ORDER BY datetime(p.creationDate) DESC, p.uuid DESC LIMIT $limit ")
+    List<TimelineEntry> findRecentEntriesOfTagWithUuid(UUID tagUuid, Long limit);
+
+    // results are not ordered, callers know the order in which they want these posts
+    @Query( "MATCH (u:User)-[:POSTS]->(p:Post) " +
+            "WHERE p.uuid IN $uuids " +
+            "OPTIONAL MATCH (p:Post)-[:RESPONDS]->(respondsTo) " +
+            "OPTIONAL MATCH (p:Post)-[:QUOTES]->(quotes) " +
+            "RETURN p.uuid AS uuid, p.content AS content, p.entities AS entities, " +
+            "p.creationDate AS date, u AS author, " +
+            "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo ")
+    List<RecentPost> findRecentPostsWithUuids(List<String> uuids);
+
     @Query( "MATCH (t:Tag)-[:TAGS]->(p:Post)<-[:POSTS]-(u:User) " +
-            "WHERE t.uuid = $tagUuid AND p.deleted <> true " +
-            "OPTIONAL MATCH (p:Post)-[:RESPONDS]->(respondsTo:Post) " +
-            "OPTIONAL MATCH (p:Post)-[:QUOTES]->(quotes:Post) " +
-            "RETURN p.uuid AS uuid, p.content AS content, p.creationDate AS date, u AS author, " +
+            "WHERE t.uuid = $tagUuid " +
+            "OPTIONAL MATCH (p:Post)-[:RESPONDS]->(respondsTo) " +
+            "OPTIONAL MATCH (p:Post)-[:QUOTES]->(quotes) " +
+            "RETURN p.uuid AS uuid, p.content AS content, p.entities AS entities, " +
+            "p.creationDate AS date, u AS author, " +
             "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo " +
-            "ORDER BY datetime(p.creationDate) DESC SKIP $skip LIMIT $limit ")
+            "ORDER BY datetime(p.creationDate) DESC, p.uuid DESC SKIP $skip LIMIT $limit ")
     List<RecentPost> findRecentPostsTagged(UUID tagUuid, Long skip, Long limit);
+
+    @Query( "MATCH (t:Tag)-[:TAGS]->(p:Post)<-[:POSTS]-(u:User) " +
+            "WHERE t.uuid = $tagUuid " +
+            "AND (datetime(p.creationDate) < datetime($beforeDate) OR " +
+            "(datetime(p.creationDate) = datetime($beforeDate) AND p.uuid < $beforeUuid)) " +
+            "OPTIONAL MATCH (p:Post)-[:RESPONDS]->(respondsTo) " +
+            "OPTIONAL MATCH (p:Post)-[:QUOTES]->(quotes) " +
+            "RETURN p.uuid AS uuid, p.content AS content, p.entities AS entities, " +
+            "p.creationDate AS date, u AS author, " +
+            "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo " +
+            "ORDER BY datetime(p.creationDate) DESC, p.uuid DESC LIMIT $limit ")
+    List<RecentPost> findRecentPostsTagged_Before(UUID tagUuid, Date beforeDate, UUID beforeUuid, Long limit);
 }
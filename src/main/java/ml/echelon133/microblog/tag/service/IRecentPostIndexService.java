@@ -0,0 +1,17 @@
+package ml.echelon133.microblog.tag.service;
+
+import ml.echelon133.microblog.pagination.PostCursor;
+import ml.echelon133.microblog.post.model.Post;
+import ml.echelon133.microblog.tag.model.Tag;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface IRecentPostIndexService {
+    Optional<List<UUID>> getRecentPage(UUID tagUuid, Long skip, Long limit);
+    Optional<List<UUID>> getRecentPage(UUID tagUuid, PostCursor cursor, Long limit);
+    void pushPost(Post post);
+    void removePost(UUID postUuid, Collection<Tag> tags);
+}
@@ -0,0 +1,7 @@
+package ml.echelon133.microblog.tag.service;
+
+public interface ITagMigrationService {
+    void tryMigrate();
+    void migrate();
+    long mergeTagsWithDuplicateNames();
+}
@@ -1,10 +1,13 @@
 package ml.echelon133.microblog.tag.service;
 
+import ml.echelon133.microblog.pagination.PostCursor;
 import ml.echelon133.microblog.tag.model.RecentPost;
 import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.model.TagUsage;
 import ml.echelon133.microblog.tag.exception.TagDoesntExistException;
 
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public interface ITagService {
@@ -15,7 +18,12 @@ public interface ITagService {
 
     Tag findByUuid(UUID uuid) throws TagDoesntExistException;
     Tag findByName(String name) throws TagDoesntExistException;
+    List<Tag> findOrCreateAllByNames(Set<String> names);
     List<Tag> findMostPopular(Long limit, PopularSince since) throws IllegalArgumentException;
+    List<Tag> findSuggestions(String prefix, Long limit) throws IllegalArgumentException;
+    List<TagUsage> findUsage(UUID tagUuid, Long hours) throws TagDoesntExistException, IllegalArgumentException;
     List<RecentPost> findRecentPostsTagged(UUID tagUuid, Long skip, Long limit) throws TagDoesntExistException,
             IllegalArgumentException;
+    List<RecentPost> findRecentPostsTagged(UUID tagUuid, PostCursor cursor, Long limit) throws TagDoesntExistException,
+            IllegalArgumentException;
 }
@@ -0,0 +1,13 @@
+package ml.echelon133.microblog.tag.service;
+
+import ml.echelon133.microblog.tag.model.Tag;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ITagSuggestionService {
+    List<Tag> suggest(String prefix, int limit);
+    void recordUsage(Collection<Tag> tags);
+    void rebuildIfStale();
+    void rebuild();
+}
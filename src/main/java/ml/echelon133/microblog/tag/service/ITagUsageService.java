@@ -0,0 +1,17 @@
+package ml.echelon133.microblog.tag.service;
+
+import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.model.TagUsage;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+public interface ITagUsageService {
+    void recordUsage(Collection<Tag> tags, Date date);
+    void recordRemoval(Collection<Tag> tags, Date date);
+    Optional<List<TagUsage>> getHourlyUsage(Tag tag, Long hours);
+    void flushUsage();
+    void seedUsage();
+}
@@ -0,0 +1,11 @@
+package ml.echelon133.microblog.tag.service;
+
+import ml.echelon133.microblog.tag.model.Tag;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface ITrendingTagService {
+    Optional<List<Tag>> findMostPopular(Long limit, ITagService.PopularSince since);
+    void refreshRankings();
+}
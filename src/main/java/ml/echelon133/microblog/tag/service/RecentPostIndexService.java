@@ -0,0 +1,243 @@
+package ml.echelon133.microblog.tag.service;
+
+import ml.echelon133.microblog.feed.model.TimelineEntry;
+import ml.echelon133.microblog.pagination.PostCursor;
+import ml.echelon133.microblog.post.model.Post;
+import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.repository.TagRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+    Reading recent posts of a tag from the graph sorts every post that has ever been tagged with it, which for
+    popular tags is a lot of rows per page. Instead, INDEX_CAPACITY most recent posts of every tag that is being read
+    are kept in a redis sorted set, in which members are uuids of posts and scores are their creation timestamps.
+
+    Just like timelines (see TimelineService), only indexes which already exist are updated when posts are created
+    or deleted, and an index that doesn't exist is rebuilt from the graph the first time it's needed.
+    The key of an index is created (holding only BUILDING_MARKER) before the graph is read, so that posts which are
+    pushed while the index is being rebuilt land in it instead of being missed by both the rebuild and the push.
+    Until the marker is removed, the index is incomplete and pages are read from the graph.
+    Pages which don't fit in the index, pages which the index can't fill completely (posts could have been removed
+    from the index after it had been trimmed) and failures of redis have to be read from the graph by the caller.
+ */
+@Service
+public class RecentPostIndexService implements IRecentPostIndexService {
+
+    // how many of the most recent posts of a tag are kept in its index
+    public static final long INDEX_CAPACITY = 5_000L;
+
+    // indexes of tags which are no longer read are not worth keeping up to date
+    public static final long INDEX_TTL_SECONDS = 3 * 24 * 60 * 60L;
+
+    private static final String INDEX_KEY_PREFIX = "tags:recent:";
+
+    // KEYS: index, ARGV: score and member of the pushed post
+    private static final String PUSH_TO_EXISTING_INDEX_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+            "redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2]) " +
+            // only keep INDEX_CAPACITY entries with the highest scores
+            "redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -" + (INDEX_CAPACITY + 1) + ") " +
+            "return 1";
+
+    // member of an index which is being rebuilt, it isn't a uuid, so it can't collide with any post
+    private static final String BUILDING_MARKER = "building";
+
+    // a rebuild which fails before it removes its marker doesn't keep the index incomplete for long
+    private static final long BUILDING_TTL_SECONDS = 5 * 60L;
+
+    // KEYS: index, ARGV: ttl of the marker
+    private static final String START_BUILDING_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end " +
+            "redis.call('ZADD', KEYS[1], 0, '" + BUILDING_MARKER + "') " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return 1";
+
+    private StringRedisTemplate redisTemplate;
+    private TagRepository tagRepository;
+
+    @Autowired
+    public RecentPostIndexService(StringRedisTemplate redisTemplate,
+                                  TagRepository tagRepository) {
+        this.redisTemplate = redisTemplate;
+        this.tagRepository = tagRepository;
+    }
+
+    private static String indexKey(Object tagUuid) {
+        return INDEX_KEY_PREFIX + tagUuid.toString();
+    }
+
+    private static Set<ZSetOperations.TypedTuple<String>> toTuples(List<TimelineEntry> entries) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        for (TimelineEntry entry : entries) {
+            tuples.add(new DefaultTypedTuple<>(entry.getUuid().toString(), (double) entry.getDate().getTime()));
+        }
+        return tuples;
+    }
+
+    private static List<UUID> toUuids(Collection<String> members) {
+        return members.stream().map(UUID::fromString).collect(Collectors.toList());
+    }
+
+    private boolean indexExists(UUID tagUuid) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(indexKey(tagUuid)));
+    }
+
+    // an index which is still being rebuilt exists, but it can't be read yet
+    private boolean indexIsComplete(UUID tagUuid) {
+        return indexExists(tagUuid) && redisTemplate.opsForZSet().score(indexKey(tagUuid), BUILDING_MARKER) == null;
+    }
+
+    // creates the key of the index, unless it already exists or is being rebuilt by someone else
+    private boolean startBuilding(String key) {
+        Long started = redisTemplate.execute((RedisCallback<Long>) connection ->
+                ((StringRedisConnection) connection).eval(START_BUILDING_SCRIPT, ReturnType.INTEGER, 1,
+                        key, String.valueOf(BUILDING_TTL_SECONDS)));
+        return started != null && started == 1L;
+    }
+
+    private List<UUID> readIndex(UUID tagUuid, Long skip, Long limit) {
+        String key = indexKey(tagUuid);
+        if (indexIsComplete(tagUuid)) {
+            Set<String> page = redisTemplate.opsForZSet().reverseRange(key, skip, skip + limit - 1);
+            redisTemplate.expire(key, INDEX_TTL_SECONDS, TimeUnit.SECONDS);
+            return toUuids(page == null ? Set.of() : page);
+        }
+
+        // index is cold (or another rebuild is in progress, in which case the page is only read from the graph),
+        // rebuild it with a query that only reads uuids and dates of posts
+        boolean building = startBuilding(key);
+        List<TimelineEntry> entries = tagRepository.findRecentEntriesOfTagWithUuid(tagUuid, INDEX_CAPACITY);
+        if (building) {
+            try {
+                if (!entries.isEmpty()) {
+                    redisTemplate.opsForZSet().add(key, toTuples(entries));
+                }
+                // posts pushed since the key had been created are already in the index
+                redisTemplate.opsForZSet().remove(key, BUILDING_MARKER);
+                redisTemplate.expire(key, INDEX_TTL_SECONDS, TimeUnit.SECONDS);
+            } catch (DataAccessException ex) {
+                // the page can still be served from entries that had already been read
+                dropIndexes(List.of(key));
+            }
+        }
+        return entries
+                .stream()
+                .skip(skip)
+                .limit(limit)
+                .map(TimelineEntry::getUuid)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<List<UUID>> getRecentPage(UUID tagUuid, Long skip, Long limit) {
+        // pages older than what indexes hold have to be read from the graph
+        if (skip + limit > INDEX_CAPACITY) {
+            return Optional.empty();
+        }
+
+        if (limit == 0) {
+            return Optional.of(List.of());
+        }
+
+        List<UUID> page;
+        try {
+            page = readIndex(tagUuid, skip, limit);
+        } catch (DataAccessException ex) {
+            return Optional.empty();
+        }
+        // a short page is either the last page of the tag, or the index lacks posts which had been trimmed
+        // before newer posts got deleted, and only the graph can tell which one it is
+        if (page.size() < limit) {
+            return Optional.empty();
+        }
+        return Optional.of(page);
+    }
+
+    @Override
+    public Optional<List<UUID>> getRecentPage(UUID tagUuid, PostCursor cursor, Long limit) {
+        try {
+            // cold indexes are only rebuilt when the first pages are read
+            if (!indexIsComplete(tagUuid)) {
+                return Optional.empty();
+            }
+            // posts with equal scores are ordered by their uuids, just like in the query
+            // which serves cursors when the index can't be used
+            Long rank = redisTemplate.opsForZSet().reverseRank(indexKey(tagUuid), cursor.getUuid().toString());
+            if (rank == null) {
+                return Optional.empty();
+            }
+            return getRecentPage(tagUuid, rank + 1, limit);
+        } catch (DataAccessException ex) {
+            return Optional.empty();
+        }
+    }
+
+    // drops indexes which could have missed an update, because an incomplete index would be served as complete
+    private void dropIndexes(List<String> keys) {
+        try {
+            redisTemplate.delete(keys);
+        } catch (DataAccessException ignore) {
+            // posts that are marked as deleted are skipped when pages are read
+        }
+    }
+
+    private static List<String> indexKeys(Collection<Tag> tags) {
+        return tags.stream().map(t -> indexKey(t.getUuid())).collect(Collectors.toList());
+    }
+
+    @Override
+    public void pushPost(Post post) {
+        List<String> keys = indexKeys(post.getTags());
+        if (keys.isEmpty()) {
+            return;
+        }
+        String score = String.valueOf(post.getCreationDate().getTime());
+        String member = post.getUuid().toString();
+        // indexes are checked and updated by a single script, so that an index which expires in the meantime
+        // isn't recreated with only this post in it
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String key : keys) {
+                    conn.eval(PUSH_TO_EXISTING_INDEX_SCRIPT, ReturnType.INTEGER, 1, key, score, member);
+                }
+                return null;
+            });
+        } catch (DataAccessException ex) {
+            dropIndexes(keys);
+        }
+    }
+
+    @Override
+    public void removePost(UUID postUuid, Collection<Tag> tags) {
+        List<String> keys = indexKeys(tags);
+        if (keys.isEmpty()) {
+            return;
+        }
+        String member = postUuid.toString();
+        // removing a member of a sorted set that doesn't exist doesn't create it
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String key : keys) {
+                    conn.zRem(key, member);
+                }
+                return null;
+            });
+        } catch (DataAccessException ex) {
+            dropIndexes(keys);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ml.echelon133.microblog.tag.service;
+
+import ml.echelon133.microblog.tag.repository.TagRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/*
+    Tags used to be created without a constraint on their names, so a database can hold several tags with the same name,
+    and creating the unique constraint would fail on it. Tags with duplicate names are merged first, and then
+    the constraint is created explicitly (instead of letting the mapping library create it when the application starts).
+
+    The migration runs before the web server starts taking requests, so no post gets tagged with a tag that is about
+    to be merged into another one. If it fails (e.g. because the database is briefly unavailable, or because a node
+    running an older version has created another duplicate in the meantime), the application still starts
+    and the migration is retried until it succeeds.
+ */
+@Service
+public class TagMigrationService implements ITagMigrationService, SmartInitializingSingleton {
+
+    public static final long BATCH_SIZE = 100L;
+    public static final long RETRY_INTERVAL_MILLIS = 60_000L;
+
+    private static final Logger log = LoggerFactory.getLogger(TagMigrationService.class);
+
+    private TagRepository tagRepository;
+    private volatile boolean migrated;
+
+    @Autowired
+    public TagMigrationService(TagRepository tagRepository) {
+        this.tagRepository = tagRepository;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        tryMigrate();
+    }
+
+    @Override
+    @Scheduled(initialDelay = RETRY_INTERVAL_MILLIS, fixedDelay = RETRY_INTERVAL_MILLIS)
+    public void tryMigrate() {
+        if (migrated) {
+            return;
+        }
+        try {
+            migrate();
+            migrated = true;
+        } catch (RuntimeException ex) {
+            // retried in the next interval
+            log.warn("Migration of tags failed, retrying in {} ms", RETRY_INTERVAL_MILLIS, ex);
+        }
+    }
+
+    @Override
+    public void migrate() {
+        mergeTagsWithDuplicateNames();
+        tagRepository.createUniqueConstraintOnNames();
+    }
+
+    @Override
+    public long mergeTagsWithDuplicateNames() {
+        long merged = 0;
+        long batchSize;
+        do {
+            batchSize = tagRepository.mergeTagsWithDuplicateNames(BATCH_SIZE);
+            merged += batchSize;
+        } while (batchSize >= BATCH_SIZE);
+        return merged;
+    }
+}
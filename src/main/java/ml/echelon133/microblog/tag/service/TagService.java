@@ -1,7 +1,11 @@
 package ml.echelon133.microblog.tag.service;
 
+import ml.echelon133.microblog.pagination.Pages;
+import ml.echelon133.microblog.pagination.PostCursor;
 import ml.echelon133.microblog.tag.model.RecentPost;
 import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.model.TagUsage;
+import ml.echelon133.microblog.tag.model.TagUsageCount;
 import ml.echelon133.microblog.tag.repository.TagRepository;
 import ml.echelon133.microblog.tag.exception.TagDoesntExistException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,10 +13,7 @@ import org.springframework.stereotype.Service;
 
 import java.time.Clock;
 import java.time.Instant;
-import java.util.Date;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 
 import static java.time.temporal.ChronoUnit.DAYS;
 import static java.time.temporal.ChronoUnit.HOURS;
@@ -20,12 +21,52 @@ import static java.time.temporal.ChronoUnit.HOURS;
 @Service
 public class TagService implements ITagService {
 
+    // how many uuids of the most recently used tags are remembered
+    public static final int MAX_CACHED_TAGS = 10_000;
+
     private TagRepository tagRepository;
+    private ITrendingTagService trendingTagService;
+    private ITagUsageService tagUsageService;
+    private IRecentPostIndexService recentPostIndexService;
+    private ITagSuggestionService tagSuggestionService;
     private Clock clock = Clock.systemDefaultZone();
 
+    // tags are never renamed nor deleted, so a cached uuid of a tag never becomes stale
+    private final Map<String, UUID> tagUuidsByName = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UUID> eldest) {
+            return size() > MAX_CACHED_TAGS;
+        }
+    };
+
     @Autowired
-    public TagService(TagRepository tagRepository) {
+    public TagService(TagRepository tagRepository,
+                      ITrendingTagService trendingTagService,
+                      ITagUsageService tagUsageService,
+                      IRecentPostIndexService recentPostIndexService,
+                      ITagSuggestionService tagSuggestionService) {
         this.tagRepository = tagRepository;
+        this.trendingTagService = trendingTagService;
+        this.tagUsageService = tagUsageService;
+        this.recentPostIndexService = recentPostIndexService;
+        this.tagSuggestionService = tagSuggestionService;
+    }
+
+    private List<RecentPost> getPostsInOrder(List<UUID> uuids) {
+        if (uuids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<String> stringUuids = new ArrayList<>(uuids.size());
+        Map<UUID, Integer> positions = new HashMap<>();
+        for (UUID uuid : uuids) {
+            stringUuids.add(uuid.toString());
+            positions.put(uuid, positions.size());
+        }
+
+        List<RecentPost> posts = new ArrayList<>(tagRepository.findRecentPostsWithUuids(stringUuids));
+        posts.sort(Comparator.comparing(p -> positions.get(p.getUuid())));
+        return posts;
     }
 
     @Override
@@ -46,12 +87,44 @@ public class TagService implements ITagService {
         throw new TagDoesntExistException(name);
     }
 
+    @Override
+    public List<Tag> findOrCreateAllByNames(Set<String> names) {
+        List<Tag> tags = new ArrayList<>(names.size());
+        List<String> notCached = new ArrayList<>();
+        synchronized (tagUuidsByName) {
+            for (String name : names) {
+                UUID uuid = tagUuidsByName.get(name);
+                if (uuid != null) {
+                    tags.add(new Tag(uuid, name));
+                } else {
+                    notCached.add(name);
+                }
+            }
+        }
+
+        if (!notCached.isEmpty()) {
+            List<Tag> found = tagRepository.findOrCreateAllByNames(notCached);
+            synchronized (tagUuidsByName) {
+                for (Tag tag : found) {
+                    tagUuidsByName.put(tag.getName(), tag.getUuid());
+                }
+            }
+            tags.addAll(found);
+        }
+        return tags;
+    }
+
     @Override
     public List<Tag> findMostPopular(Long limit, PopularSince since) throws IllegalArgumentException {
         if (limit < 0) {
             throw new IllegalArgumentException("Limit cannot be negative");
         }
 
+        Optional<List<Tag>> ranked = trendingTagService.findMostPopular(limit, since);
+        if (ranked.isPresent()) {
+            return ranked.get();
+        }
+
         Date before;
         Date now = Date.from(Instant.now(clock));
         switch (since) {
@@ -68,16 +141,80 @@ public class TagService implements ITagService {
     }
 
     @Override
-    public List<RecentPost> findRecentPostsTagged(UUID tagUuid, Long skip, Long limit) throws TagDoesntExistException {
-        if (!tagRepository.existsById(tagUuid)) {
-            throw new TagDoesntExistException(tagUuid);
+    public List<Tag> findSuggestions(String prefix, Long limit) throws IllegalArgumentException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative");
+        }
+        if (limit > TagSuggestionService.MAX_SUGGESTIONS) {
+            String msg = String.format("Limit cannot be greater than %d", TagSuggestionService.MAX_SUGGESTIONS);
+            throw new IllegalArgumentException(msg);
         }
+        return tagSuggestionService.suggest(prefix, limit.intValue());
+    }
+
+    // usage of the tag in every hour of the last 'hours' hours (including the current one), oldest hours first
+    @Override
+    public List<TagUsage> findUsage(UUID tagUuid, Long hours) throws TagDoesntExistException, IllegalArgumentException {
+        if (hours < 1 || hours > TagUsageService.MAX_HOURS) {
+            String msg = String.format("Hours must be between 1 and %d", TagUsageService.MAX_HOURS);
+            throw new IllegalArgumentException(msg);
+        }
+
+        Tag tag = findByUuid(tagUuid);
+        Optional<List<TagUsage>> usage = tagUsageService.getHourlyUsage(tag, hours);
+        if (usage.isPresent()) {
+            return usage.get();
+        }
+
+        // buckets can't be trusted, so posts tagged during the window have to be counted in the graph
+        long now = clock.millis();
+        long firstHour = now / TagUsageService.HOUR_MILLIS - hours + 1;
+        Map<Long, Long> counts = new HashMap<>();
+        for (TagUsageCount count : tagRepository.countUsagesOfTagWithUuid_Between(tagUuid,
+                new Date(firstHour * TagUsageService.HOUR_MILLIS), new Date(now), TagUsageService.HOUR_MILLIS)) {
+            counts.put(count.getBucket(), count.getCount());
+        }
+
+        List<TagUsage> counted = new ArrayList<>(hours.intValue());
+        for (long hour = firstHour; hour < firstHour + hours; hour++) {
+            counted.add(new TagUsage(new Date(hour * TagUsageService.HOUR_MILLIS), counts.getOrDefault(hour, 0L)));
+        }
+        return counted;
+    }
 
+    @Override
+    public List<RecentPost> findRecentPostsTagged(UUID tagUuid, Long skip, Long limit) throws TagDoesntExistException {
         if (limit < 0 || skip < 0) {
             throw new IllegalArgumentException("Invalid skip and/or limit values.");
         }
 
-        return tagRepository.findRecentPostsTagged(tagUuid, skip, limit);
+        // index only holds uuids of posts, the order of posts has to be restored after they are read
+        Optional<List<UUID>> indexPage = recentPostIndexService.getRecentPage(tagUuid, skip, limit);
+        if (indexPage.isPresent()) {
+            return Pages.throwIfEmptyAndOwnerDoesntExist(
+                    getPostsInOrder(indexPage.get()),
+                    () -> tagRepository.existsById(tagUuid), () -> new TagDoesntExistException(tagUuid));
+        }
+        return Pages.throwIfEmptyAndOwnerDoesntExist(
+                tagRepository.findRecentPostsTagged(tagUuid, skip, limit),
+                () -> tagRepository.existsById(tagUuid), () -> new TagDoesntExistException(tagUuid));
+    }
+
+    @Override
+    public List<RecentPost> findRecentPostsTagged(UUID tagUuid, PostCursor cursor, Long limit) throws TagDoesntExistException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Invalid limit value.");
+        }
+
+        Optional<List<UUID>> indexPage = recentPostIndexService.getRecentPage(tagUuid, cursor, limit);
+        if (indexPage.isPresent()) {
+            return Pages.throwIfEmptyAndOwnerDoesntExist(
+                    getPostsInOrder(indexPage.get()),
+                    () -> tagRepository.existsById(tagUuid), () -> new TagDoesntExistException(tagUuid));
+        }
+        return Pages.throwIfEmptyAndOwnerDoesntExist(
+                tagRepository.findRecentPostsTagged_Before(tagUuid, cursor.getDate(), cursor.getUuid(), limit),
+                () -> tagRepository.existsById(tagUuid), () -> new TagDoesntExistException(tagUuid));
     }
 
     public void setClock(Clock clock) {
@@ -0,0 +1,119 @@
+package ml.echelon133.microblog.tag.service;
+
+import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.model.TagTrie;
+import ml.echelon133.microblog.tag.model.TagUsageCount;
+import ml.echelon133.microblog.tag.repository.TagRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static java.time.temporal.ChronoUnit.DAYS;
+
+/*
+    Suggestions are completions of a prefix read from a trie of names of all tags held in memory, so suggesting tags
+    while users type doesn't query the graph at all. Tags are weighted by how many posts have been tagged with them
+    in the last USAGE_WINDOW_DAYS days, and the heaviest ones are suggested first.
+
+    The trie is loaded when the application starts. Tags of every created post are added to it right away (which also
+    adds tags that have just been created), and the whole trie is rebuilt every REBUILD_INTERVAL_MILLIS, so that
+    usages which have left the window no longer count. If loading or rebuilding fails (e.g. because the database
+    is briefly unavailable), the old trie is kept and the rebuild is retried every RETRY_INTERVAL_MILLIS.
+ */
+@Service
+public class TagSuggestionService implements ITagSuggestionService {
+
+    // how many suggestions can be returned at once
+    public static final int MAX_SUGGESTIONS = 10;
+    public static final long USAGE_WINDOW_DAYS = 7L;
+    public static final long REBUILD_INTERVAL_MILLIS = 60 * 60 * 1000L;
+    public static final long RETRY_INTERVAL_MILLIS = 60 * 1000L;
+
+    private Clock clock = Clock.systemDefaultZone();
+    private TagRepository tagRepository;
+
+    private volatile TagTrie trie = new TagTrie(MAX_SUGGESTIONS);
+    // date of the last successful rebuild (0 until the trie is loaded)
+    private volatile long rebuiltAt;
+    // tags used while the trie is being rebuilt, by their uuids. Their usages could already be counted
+    // by the rebuild query, so they are only added to the rebuilt trie if they're missing from it
+    private Map<UUID, Tag> usedDuringRebuild;
+
+    @Autowired
+    public TagSuggestionService(TagRepository tagRepository) {
+        this.tagRepository = tagRepository;
+    }
+
+    @Override
+    public List<Tag> suggest(String prefix, int limit) {
+        // names of tags are saved without '#' and with all characters lower case
+        String normalized = prefix.startsWith("#") ? prefix.substring(1) : prefix;
+        return trie.complete(normalized.toLowerCase(), limit);
+    }
+
+    @Override
+    public void recordUsage(Collection<Tag> tags) {
+        synchronized (this) {
+            for (Tag tag : tags) {
+                trie.add(tag, 1L);
+            }
+            if (usedDuringRebuild != null) {
+                tags.forEach(tag -> usedDuringRebuild.putIfAbsent(tag.getUuid(), tag));
+            }
+        }
+    }
+
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelay = RETRY_INTERVAL_MILLIS, fixedDelay = RETRY_INTERVAL_MILLIS)
+    public void rebuildIfStale() {
+        if (clock.millis() - rebuiltAt < REBUILD_INTERVAL_MILLIS) {
+            return;
+        }
+        try {
+            rebuild();
+        } catch (RuntimeException ignore) {
+            // retried in the next interval
+        }
+    }
+
+    @Override
+    public void rebuild() {
+        synchronized (this) {
+            usedDuringRebuild = new HashMap<>();
+        }
+        try {
+            Date since = Date.from(Instant.now(clock).minus(USAGE_WINDOW_DAYS, DAYS));
+            TagTrie rebuilt = new TagTrie(MAX_SUGGESTIONS);
+            for (TagUsageCount count : tagRepository.countUsagesOfAllTags_Since(since)) {
+                rebuilt.add(new Tag(count.getUuid(), count.getName()), count.getCount());
+            }
+            synchronized (this) {
+                // tags which have been created during the rebuild could be missing from the query results
+                // (adding a tag with no weight leaves tags which are already in the trie as they are)
+                usedDuringRebuild.values().forEach(tag -> rebuilt.add(tag, 0L));
+                trie = rebuilt;
+                rebuiltAt = clock.millis();
+            }
+        } finally {
+            synchronized (this) {
+                usedDuringRebuild = null;
+            }
+        }
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
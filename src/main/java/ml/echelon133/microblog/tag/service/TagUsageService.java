@@ -0,0 +1,320 @@
+package ml.echelon133.microblog.tag.service;
+
+import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.model.TagUsage;
+import ml.echelon133.microblog.tag.model.TagUsageCount;
+import ml.echelon133.microblog.tag.repository.TagRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Usages of tags are rolled up into buckets of minutes and hours, which are redis sorted sets shared
+    by all nodes (members are tags, scores are how many posts have been tagged with them during the bucket).
+    Minute buckets are kept for a couple of hours, hour buckets for a bit longer than a week, so popularity
+    of tags in any window of up to a week is a sum of at most 168 buckets (see TrendingTagService).
+
+    Every node counts tags of posts it creates (and subtracts tags of posts it marks as deleted) in per-minute
+    buckets held in memory, and adds them to the shared buckets every FLUSH_INTERVAL_MILLIS.
+
+    Buckets of the week before the first node had started counting are seeded once from the graph.
+    Until then (or if redis has lost the buckets) COUNTING_SINCE_KEY is missing, and buckets can't be trusted.
+    Seeded counts are written to temporary keys first, and are added to the buckets together with setting
+    COUNTING_SINCE_KEY by a single script, which only runs if the node still holds the seed lock. Because of that,
+    neither a seed which has failed halfway nor a seed which has outlived its lock can count any usage twice.
+    The seed only counts usages from before STREAMING_SINCE_KEY, which is set by nodes that count usages (on every
+    flush, even when there is nothing to flush), never by the seed itself. Otherwise usages which a node has recorded
+    before the seed has started, but hasn't flushed yet, would be counted both by the seed and by the flush.
+ */
+@Service
+public class TagUsageService implements ITagUsageService {
+
+    public static final long FLUSH_INTERVAL_MILLIS = 5_000L;
+    public static final long SEED_INTERVAL_MILLIS = 60_000L;
+
+    // the longest window that can be read from buckets
+    public static final long MAX_HOURS = 7 * 24L;
+
+    static final long MINUTE_MILLIS = 60 * 1000L;
+    static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+
+    // holds the date since which buckets contain every usage of every tag
+    static final String COUNTING_SINCE_KEY = "tags:usage:since";
+
+    private static final long MINUTE_BUCKET_TTL_SECONDS = 2 * 60 * 60L;
+    private static final long HOUR_BUCKET_TTL_SECONDS = 8 * 24 * 60 * 60L;
+    // usages which can't be flushed for longer than the longest window are dropped
+    private static final long MAX_PENDING_MINUTES = MAX_HOURS * 60;
+    // how long a node can take to seed the buckets before another node tries again
+    private static final long SEED_LOCK_TTL_MILLIS = 10 * 60 * 1000L;
+
+    private static final String MINUTE_BUCKET_KEY_PREFIX = "tags:usage:minute:";
+    private static final String HOUR_BUCKET_KEY_PREFIX = "tags:usage:hour:";
+    // holds the date of the first usage which has been counted in buckets instead of being seeded from the graph
+    private static final String STREAMING_SINCE_KEY = "tags:usage:streamingSince";
+    private static final String SEED_LOCK_KEY = "tags:usage:seed:lock";
+    private static final String SEEDED_BUCKET_KEY_PREFIX = "tags:usage:seed:";
+    // members of sorted sets are uuids of tags followed by their names
+    private static final String MEMBER_SEPARATOR = ":";
+
+    /*
+        KEYS[1] - seed lock, KEYS[2] - COUNTING_SINCE_KEY, followed by pairs of a bucket and its seeded counts
+        ARGV[1] - token of the seed, ARGV[2] - value of COUNTING_SINCE_KEY, followed by ttls of buckets
+     */
+    private static final String ADD_SEEDED_COUNTS_SCRIPT =
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then " +
+            "for i = 4, #KEYS, 2 do redis.call('DEL', KEYS[i]) end " +
+            "return 0 end " +
+            "for i = 3, #KEYS, 2 do " +
+            "redis.call('ZUNIONSTORE', KEYS[i], 2, KEYS[i], KEYS[i + 1]) " +
+            "redis.call('EXPIRE', KEYS[i], ARGV[(i + 3) / 2]) " +
+            "redis.call('DEL', KEYS[i + 1]) end " +
+            "redis.call('SET', KEYS[2], ARGV[2]) " +
+            "redis.call('DEL', KEYS[1]) " +
+            "return 1";
+
+    private Clock clock = Clock.systemDefaultZone();
+    private StringRedisTemplate redisTemplate;
+    private TagRepository tagRepository;
+
+    // usages of tags which haven't been flushed yet, by minutes in which the tags have been used
+    private Map<Long, Map<String, Long>> pending = new HashMap<>();
+
+    @Autowired
+    public TagUsageService(StringRedisTemplate redisTemplate,
+                           TagRepository tagRepository) {
+        this.redisTemplate = redisTemplate;
+        this.tagRepository = tagRepository;
+    }
+
+    static String minuteBucketKey(long minute) {
+        return MINUTE_BUCKET_KEY_PREFIX + minute;
+    }
+
+    static String hourBucketKey(long hour) {
+        return HOUR_BUCKET_KEY_PREFIX + hour;
+    }
+
+    static String toMember(Tag tag) {
+        return toMember(tag.getUuid(), tag.getName());
+    }
+
+    private static String toMember(UUID uuid, String name) {
+        return uuid + MEMBER_SEPARATOR + name;
+    }
+
+    static Tag fromMember(String member) {
+        String[] parts = member.split(MEMBER_SEPARATOR, 2);
+        return new Tag(UUID.fromString(parts[0]), parts[1]);
+    }
+
+    private void record(Collection<Tag> tags, Date date, long delta) {
+        long minute = date.getTime() / MINUTE_MILLIS;
+        synchronized (this) {
+            Map<String, Long> bucket = pending.computeIfAbsent(minute, m -> new HashMap<>());
+            for (Tag tag : tags) {
+                bucket.merge(toMember(tag), delta, Long::sum);
+            }
+        }
+    }
+
+    @Override
+    public void recordUsage(Collection<Tag> tags, Date date) {
+        record(tags, date, 1L);
+    }
+
+    // tags of posts marked as deleted are no longer counted in buckets of the hour in which the post was created
+    @Override
+    public void recordRemoval(Collection<Tag> tags, Date date) {
+        // buckets of posts older than the longest window have already expired
+        if (clock.millis() - date.getTime() < MAX_HOURS * HOUR_MILLIS) {
+            record(tags, date, -1L);
+        }
+    }
+
+    @Override
+    public Optional<List<TagUsage>> getHourlyUsage(Tag tag, Long hours) {
+        long currentHour = clock.millis() / HOUR_MILLIS;
+        long firstHour = currentHour - hours + 1;
+        String member = toMember(tag);
+
+        List<Object> scores;
+        String countingSince;
+        try {
+            countingSince = redisTemplate.opsForValue().get(COUNTING_SINCE_KEY);
+            if (countingSince == null || Long.parseLong(countingSince) > firstHour * HOUR_MILLIS) {
+                return Optional.empty();
+            }
+            scores = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (long hour = firstHour; hour <= currentHour; hour++) {
+                    conn.zScore(hourBucketKey(hour), member);
+                }
+                return null;
+            });
+        } catch (DataAccessException ex) {
+            return Optional.empty();
+        }
+
+        List<TagUsage> usage = new ArrayList<>(scores.size());
+        for (int i = 0; i < scores.size(); i++) {
+            Double score = (Double) scores.get(i);
+            usage.add(new TagUsage(new Date((firstHour + i) * HOUR_MILLIS), score == null ? 0 : score.longValue()));
+        }
+        return Optional.of(usage);
+    }
+
+    @Override
+    @Scheduled(fixedDelay = FLUSH_INTERVAL_MILLIS)
+    public void flushUsage() {
+        Map<Long, Map<String, Long>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                batch = Map.of();
+            } else {
+                batch = pending;
+                pending = new HashMap<>();
+            }
+        }
+
+        try {
+            // the seed must not count usages which are already counted here, including the ones this node
+            // hasn't recorded yet, so the key is set as soon as the node starts flushing
+            long firstMinute = clock.millis() / MINUTE_MILLIS;
+            if (!batch.isEmpty()) {
+                firstMinute = Math.min(firstMinute, Collections.min(batch.keySet()));
+            }
+            redisTemplate.opsForValue().setIfAbsent(STREAMING_SINCE_KEY, String.valueOf(firstMinute * MINUTE_MILLIS));
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                batch.forEach((minute, usages) -> {
+                    String minuteKey = minuteBucketKey(minute);
+                    String hourKey = hourBucketKey(minute * MINUTE_MILLIS / HOUR_MILLIS);
+                    usages.forEach((member, count) -> {
+                        conn.zIncrBy(minuteKey, count, member);
+                        conn.zIncrBy(hourKey, count, member);
+                    });
+                    conn.expire(minuteKey, MINUTE_BUCKET_TTL_SECONDS);
+                    conn.expire(hourKey, HOUR_BUCKET_TTL_SECONDS);
+                });
+                return null;
+            });
+        } catch (DataAccessException ex) {
+            // usages are flushed again later, unless they are too old to be a part of any window
+            long oldestMinute = clock.millis() / MINUTE_MILLIS - MAX_PENDING_MINUTES;
+            synchronized (this) {
+                batch.forEach((minute, usages) -> {
+                    if (minute > oldestMinute) {
+                        Map<String, Long> bucket = pending.computeIfAbsent(minute, m -> new HashMap<>());
+                        usages.forEach((member, count) -> bucket.merge(member, count, Long::sum));
+                    }
+                });
+            }
+        }
+    }
+
+    private static String seededBucketKey(String token, String bucketKey) {
+        return SEEDED_BUCKET_KEY_PREFIX + token + ":" + bucketKey;
+    }
+
+    // writes counts to temporary keys of the seed, and remembers ttls of buckets to which they belong
+    private void writeSeededCounts(String token, List<TagUsageCount> counts, boolean minutes,
+                                   Map<String, Long> ttlsOfBuckets) {
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            Set<String> keys = new HashSet<>();
+            for (TagUsageCount count : counts) {
+                String key = minutes ? minuteBucketKey(count.getBucket()) : hourBucketKey(count.getBucket());
+                String seededKey = seededBucketKey(token, key);
+                conn.zIncrBy(seededKey, count.getCount(), toMember(count.getUuid(), count.getName()));
+                if (keys.add(seededKey)) {
+                    ttlsOfBuckets.put(key, minutes ? MINUTE_BUCKET_TTL_SECONDS : HOUR_BUCKET_TTL_SECONDS);
+                }
+            }
+            // temporary keys of a seed which doesn't finish are removed by redis
+            for (String key : keys) {
+                conn.pExpire(key, SEED_LOCK_TTL_MILLIS);
+            }
+            return null;
+        });
+    }
+
+    private void addSeededCounts(String token, Map<String, Long> ttlsOfBuckets, long countingSince) {
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        keys.add(SEED_LOCK_KEY);
+        keys.add(COUNTING_SINCE_KEY);
+        args.add(token);
+        args.add(String.valueOf(countingSince));
+        ttlsOfBuckets.forEach((key, ttl) -> {
+            keys.add(key);
+            keys.add(seededBucketKey(token, key));
+            args.add(String.valueOf(ttl));
+        });
+
+        List<String> keysAndArgs = new ArrayList<>(keys);
+        keysAndArgs.addAll(args);
+        redisTemplate.execute((RedisCallback<Long>) connection ->
+                ((StringRedisConnection) connection).eval(ADD_SEEDED_COUNTS_SCRIPT, ReturnType.INTEGER,
+                        keys.size(), keysAndArgs.toArray(new String[0])));
+    }
+
+    /*
+        Counts usages of the week before the first usage that has been counted in buckets, so that buckets can be
+        used right away instead of a week after the first node had started counting. Runs until it succeeds once.
+     */
+    @Override
+    @Scheduled(initialDelay = 10_000L, fixedDelay = SEED_INTERVAL_MILLIS)
+    public void seedUsage() {
+        try {
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(COUNTING_SINCE_KEY))) {
+                return;
+            }
+            String streamingSinceValue = redisTemplate.opsForValue().get(STREAMING_SINCE_KEY);
+            if (streamingSinceValue == null) {
+                // no node has started counting usages yet
+                return;
+            }
+            // identifies this seed, so that it can't finish after its lock has expired and been taken by another node
+            String token = UUID.randomUUID().toString();
+            Boolean locked = redisTemplate.opsForValue()
+                    .setIfAbsent(SEED_LOCK_KEY, token, SEED_LOCK_TTL_MILLIS, TimeUnit.MILLISECONDS);
+            if (!Boolean.TRUE.equals(locked)) {
+                // another node is seeding the buckets
+                return;
+            }
+
+            long streamingSince = Long.parseLong(streamingSinceValue);
+            Date to = new Date(streamingSince);
+            Date hoursFrom = new Date((streamingSince / HOUR_MILLIS - MAX_HOURS + 1) * HOUR_MILLIS);
+            Date minutesFrom = new Date((streamingSince / MINUTE_MILLIS - 59) * MINUTE_MILLIS);
+
+            Map<String, Long> ttlsOfBuckets = new LinkedHashMap<>();
+            writeSeededCounts(token, tagRepository.countUsagesOfTags_Between(hoursFrom, to, HOUR_MILLIS),
+                    false, ttlsOfBuckets);
+            writeSeededCounts(token, tagRepository.countUsagesOfTags_Between(minutesFrom, to, MINUTE_MILLIS),
+                    true, ttlsOfBuckets);
+            // if the lock has been lost, another node seeds the buckets instead
+            addSeededCounts(token, ttlsOfBuckets, hoursFrom.getTime());
+        } catch (DataAccessException ignore) {
+            // seeding is tried again later
+        }
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
@@ -0,0 +1,150 @@
+package ml.echelon133.microblog.tag.service;
+
+import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.service.ITagService.PopularSince;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static ml.echelon133.microblog.tag.service.TagUsageService.*;
+
+/*
+    Counting tags of every post of the last week on every request for popular tags is a scan of a week of posts,
+    so instead popular tags are ranked periodically from buckets of usages of tags (see TagUsageService).
+
+    Rankings of every window are sums of these buckets, which are computed in redis by one node (whichever takes
+    the lock first) and then read by every node, so requests are answered from memory and all nodes return
+    the same tags.
+
+    ONE_HOUR is the sum of the last 60 minutes, DAY and WEEK are sums of the last 24 and 168 hours (including the current one),
+    so their windows start at a full hour.
+    Rankings are only used for windows which buckets hold every usage of, and only if they are fresh.
+    Otherwise (e.g. when redis is unavailable) popular tags have to be counted in the graph.
+ */
+@Service
+public class TrendingTagService implements ITrendingTagService {
+
+    public static final long REFRESH_INTERVAL_MILLIS = 30_000L;
+
+    // how many of the most popular tags of every window are held in memory
+    public static final long RANKING_SIZE = 100L;
+
+    // rankings which haven't been refreshed for this long are not used
+    public static final long RANKING_TTL_MILLIS = 3 * REFRESH_INTERVAL_MILLIS;
+
+    private static final String RANKING_KEY_PREFIX = "tags:trending:";
+    private static final String LOCK_KEY = "tags:trending:lock";
+
+    private Clock clock = Clock.systemDefaultZone();
+    private StringRedisTemplate redisTemplate;
+
+    private volatile Map<PopularSince, List<Tag>> rankings = Map.of();
+    private volatile long rankedAt;
+    private volatile long countingSince = Long.MAX_VALUE;
+
+    @Autowired
+    public TrendingTagService(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    private static String rankingKey(PopularSince since) {
+        return RANKING_KEY_PREFIX + since.name();
+    }
+
+    // keys of all buckets which together hold usages of tags of the window
+    private List<String> bucketKeys(PopularSince since) {
+        long now = clock.millis();
+        List<String> keys = new ArrayList<>();
+        switch (since) {
+            case ONE_HOUR:
+                for (long minute = now / MINUTE_MILLIS, i = 0; i < 60; i++) {
+                    keys.add(minuteBucketKey(minute - i));
+                }
+                break;
+            case DAY:
+                for (long hour = now / HOUR_MILLIS, i = 0; i < 24; i++) {
+                    keys.add(hourBucketKey(hour - i));
+                }
+                break;
+            default:
+                for (long hour = now / HOUR_MILLIS, i = 0; i < MAX_HOURS; i++) {
+                    keys.add(hourBucketKey(hour - i));
+                }
+        }
+        return keys;
+    }
+
+    private long windowStart(PopularSince since) {
+        long now = clock.millis();
+        switch (since) {
+            case ONE_HOUR:
+                return (now / MINUTE_MILLIS - 59) * MINUTE_MILLIS;
+            case DAY:
+                return (now / HOUR_MILLIS - 23) * HOUR_MILLIS;
+            default:
+                return (now / HOUR_MILLIS - MAX_HOURS + 1) * HOUR_MILLIS;
+        }
+    }
+
+    @Override
+    public Optional<List<Tag>> findMostPopular(Long limit, PopularSince since) {
+        List<Tag> ranking = rankings.get(since);
+        if (ranking == null || clock.millis() - rankedAt > RANKING_TTL_MILLIS || windowStart(since) < countingSince) {
+            return Optional.empty();
+        }
+        // a ranking which is shorter than RANKING_SIZE holds every tag used in the window
+        if (limit > ranking.size() && ranking.size() >= RANKING_SIZE) {
+            return Optional.empty();
+        }
+        return Optional.of(ranking.subList(0, (int) Math.min(limit, ranking.size())));
+    }
+
+    @Override
+    @Scheduled(fixedDelay = REFRESH_INTERVAL_MILLIS)
+    public void refreshRankings() {
+        try {
+            String since = redisTemplate.opsForValue().get(COUNTING_SINCE_KEY);
+            countingSince = since == null ? Long.MAX_VALUE : Long.parseLong(since);
+
+            Boolean locked = redisTemplate.opsForValue()
+                    .setIfAbsent(LOCK_KEY, "locked", REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            if (Boolean.TRUE.equals(locked)) {
+                for (PopularSince window : PopularSince.values()) {
+                    List<String> keys = bucketKeys(window);
+                    String rankingKey = rankingKey(window);
+                    redisTemplate.opsForZSet().unionAndStore(keys.get(0), keys.subList(1, keys.size()), rankingKey);
+                    redisTemplate.expire(rankingKey, RANKING_TTL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            }
+
+            // rankings computed by another node are read the same way
+            Map<PopularSince, List<Tag>> refreshed = new EnumMap<>(PopularSince.class);
+            for (PopularSince window : PopularSince.values()) {
+                // tags of posts which have all been deleted are still members, but their score is 0
+                Set<String> members = redisTemplate.opsForZSet()
+                        .reverseRangeByScore(rankingKey(window), 1, Double.POSITIVE_INFINITY, 0, RANKING_SIZE);
+                // sorted sets which would be empty don't exist, so a missing ranking could also mean
+                // that it hasn't been computed yet
+                if (members != null && !members.isEmpty()) {
+                    refreshed.put(window,
+                            members.stream().map(TagUsageService::fromMember).collect(Collectors.toList()));
+                }
+            }
+            rankings = refreshed;
+            rankedAt = clock.millis();
+        } catch (DataAccessException ignore) {
+            // rankings become stale and popular tags are counted in the graph until redis is back
+        }
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
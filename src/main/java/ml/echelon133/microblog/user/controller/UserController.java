@@ -1,5 +1,7 @@
 package ml.echelon133.microblog.user.controller;
 
+import ml.echelon133.microblog.pagination.PostCursor;
+import ml.echelon133.microblog.security.CurrentUser;
 import ml.echelon133.microblog.user.exception.InvalidUserDetailsFieldException;
 import ml.echelon133.microblog.user.exception.NewUserDataInvalidException;
 import ml.echelon133.microblog.user.exception.UserCreationFailedException;
@@ -33,9 +35,22 @@ public class UserController {
         this.userService = userService;
     }
 
+    private void applyViewerStateToUsers(boolean viewerState, List<User> users) {
+        if (viewerState) {
+            CurrentUser.find().ifPresent(viewer -> userService.applyViewerStateToUsers(viewer, users));
+        }
+    }
+
+    private void applyViewerStateToPosts(boolean viewerState, List<UserPost> posts) {
+        if (viewerState) {
+            CurrentUser.find().ifPresent(viewer -> userService.applyViewerStateToPosts(viewer, posts));
+        }
+    }
+
     @GetMapping
     public ResponseEntity<List<User>> getUserByUsername(@RequestParam(required = false) String username,
-                                                        @RequestParam(required = false) String search) throws Exception {
+                                                        @RequestParam(required = false) String search,
+                                                        @RequestParam(defaultValue = "false") boolean viewerState) throws Exception {
         List<User> users;
         if (username != null && search != null) {
             throw new IllegalArgumentException("Parameters username and search mustn't be combined");
@@ -46,6 +61,7 @@ public class UserController {
         } else {
             throw new IllegalArgumentException("Parameters username or search must be specified");
         }
+        applyViewerStateToUsers(viewerState, users);
         return new ResponseEntity<>(users, HttpStatus.OK);
     }
 
@@ -145,27 +161,39 @@ public class UserController {
     @GetMapping("/{uuid}/followers")
     public ResponseEntity<List<User>> getFollowers(@PathVariable String uuid,
                                                    @RequestParam(defaultValue = "0") Long skip,
-                                                   @RequestParam(defaultValue = "5") Long limit) throws Exception {
-        return new ResponseEntity<>(
-                userService.findAllFollowersOfUser(UUID.fromString(uuid), skip, limit),
-                HttpStatus.OK);
+                                                   @RequestParam(defaultValue = "5") Long limit,
+                                                   @RequestParam(defaultValue = "false") boolean viewerState) throws Exception {
+        List<User> followers = userService.findAllFollowersOfUser(UUID.fromString(uuid), skip, limit);
+        applyViewerStateToUsers(viewerState, followers);
+        return new ResponseEntity<>(followers, HttpStatus.OK);
     }
 
     @GetMapping("/{uuid}/follows")
     public ResponseEntity<List<User>> getFollows(@PathVariable String uuid,
                                                  @RequestParam(defaultValue = "0") Long skip,
-                                                 @RequestParam(defaultValue = "5") Long limit) throws Exception {
-        return new ResponseEntity<>(
-                userService.findAllFollowsOfUser(UUID.fromString(uuid), skip, limit),
-                HttpStatus.OK);
+                                                 @RequestParam(defaultValue = "5") Long limit,
+                                                 @RequestParam(defaultValue = "false") boolean viewerState) throws Exception {
+        List<User> follows = userService.findAllFollowsOfUser(UUID.fromString(uuid), skip, limit);
+        applyViewerStateToUsers(viewerState, follows);
+        return new ResponseEntity<>(follows, HttpStatus.OK);
     }
 
     @GetMapping("/{uuid}/recentPosts")
     public ResponseEntity<List<UserPost>> getRecentPosts(@PathVariable String uuid,
                                                          @RequestParam(defaultValue = "0") Long skip,
-                                                         @RequestParam(defaultValue = "10") Long limit) throws Exception {
+                                                         @RequestParam(defaultValue = "10") Long limit,
+                                                         @RequestParam(required = false) String cursor,
+                                                         @RequestParam(defaultValue = "false") boolean viewerState) throws Exception {
+        List<UserPost> recent;
+        if (cursor != null) {
+            recent = userService.findRecentPostsOfUser(UUID.fromString(uuid), PostCursor.decode(cursor), limit);
+        } else {
+            recent = userService.findRecentPostsOfUser(UUID.fromString(uuid), skip, limit);
+        }
+        applyViewerStateToPosts(viewerState, recent);
         return new ResponseEntity<>(
-                userService.findRecentPostsOfUser(UUID.fromString(uuid), skip, limit),
+                recent,
+                PostCursor.nextPageHeaders(recent, limit, UserPost::getDate, UserPost::getUuid),
                 HttpStatus.OK);
     }
 }
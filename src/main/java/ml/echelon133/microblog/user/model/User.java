@@ -1,10 +1,12 @@
 package ml.echelon133.microblog.user.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import org.neo4j.ogm.annotation.GeneratedValue;
 import org.neo4j.ogm.annotation.Id;
 import org.neo4j.ogm.annotation.NodeEntity;
 import org.neo4j.ogm.annotation.Relationship;
+import org.neo4j.ogm.annotation.Transient;
 import org.neo4j.ogm.annotation.typeconversion.Convert;
 import org.neo4j.ogm.id.UuidStrategy;
 import org.neo4j.ogm.typeconversion.UuidStringConverter;
@@ -33,6 +35,10 @@ public class User implements UserDetails, UserPrincipal {
     @Relationship(type = "HAS_ROLE")
     private List<Role> roles;
 
+    // whether the user who requested this user follows them, only set when it was asked for
+    @Transient
+    private Boolean viewerFollows;
+
     public User() {}
     public User(String username, String email, String password, String aviURL) {
         this();
@@ -108,6 +114,15 @@ public class User implements UserDetails, UserPrincipal {
         this.uuid = uuid;
     }
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Boolean getViewerFollows() {
+        return viewerFollows;
+    }
+
+    public void setViewerFollows(Boolean viewerFollows) {
+        this.viewerFollows = viewerFollows;
+    }
+
     public void addRole(Role role) {
         this.roles.add(role);
     }
@@ -1,10 +1,14 @@
 package ml.echelon133.microblog.user.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import ml.echelon133.microblog.post.model.ContentEntitiesConverter;
+import ml.echelon133.microblog.post.model.ContentEntity;
 import org.neo4j.ogm.annotation.typeconversion.Convert;
 import org.neo4j.ogm.typeconversion.UuidStringConverter;
 import org.springframework.data.neo4j.annotation.QueryResult;
 
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
 @QueryResult
@@ -12,6 +16,8 @@ public class UserPost {
     @Convert(value = UuidStringConverter.class)
     private UUID uuid;
     private String content;
+    @Convert(value = ContentEntitiesConverter.class)
+    private List<ContentEntity> entities;
     private Date date;
     private User author;
     @Convert(value = UuidStringConverter.class)
@@ -19,6 +25,10 @@ public class UserPost {
     @Convert(value = UuidStringConverter.class)
     private UUID respondsTo;
     private String respondsToUsername;
+    // whether the user who requested this post likes it, only set when it was asked for
+    private Boolean likedByViewer;
+    // number of responses between the first post of the conversation and this post, only set in threads
+    private Integer depth;
 
     public UUID getUuid() {
         return uuid;
@@ -36,6 +46,14 @@ public class UserPost {
         this.content = content;
     }
 
+    public List<ContentEntity> getEntities() {
+        return entities;
+    }
+
+    public void setEntities(List<ContentEntity> entities) {
+        this.entities = entities;
+    }
+
     public Date getDate() {
         return date;
     }
@@ -75,4 +93,22 @@ public class UserPost {
     public void setRespondsToUsername(String respondsToUsername) {
         this.respondsToUsername = respondsToUsername;
     }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Boolean getLikedByViewer() {
+        return likedByViewer;
+    }
+
+    public void setLikedByViewer(Boolean likedByViewer) {
+        this.likedByViewer = likedByViewer;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Integer getDepth() {
+        return depth;
+    }
+
+    public void setDepth(Integer depth) {
+        this.depth = depth;
+    }
 }
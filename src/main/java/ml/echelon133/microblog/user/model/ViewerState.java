@@ -0,0 +1,30 @@
+package ml.echelon133.microblog.user.model;
+
+import org.springframework.data.neo4j.annotation.QueryResult;
+
+import java.util.List;
+
+@QueryResult
+public class ViewerState {
+
+    private List<String> likedPosts;
+    private List<String> followedUsers;
+
+    public ViewerState() {}
+
+    public List<String> getLikedPosts() {
+        return likedPosts;
+    }
+
+    public void setLikedPosts(List<String> likedPosts) {
+        this.likedPosts = likedPosts;
+    }
+
+    public List<String> getFollowedUsers() {
+        return followedUsers;
+    }
+
+    public void setFollowedUsers(List<String> followedUsers) {
+        this.followedUsers = followedUsers;
+    }
+}
@@ -3,9 +3,11 @@ package ml.echelon133.microblog.user.repository;
 import ml.echelon133.microblog.user.model.User;
 import ml.echelon133.microblog.user.model.UserPost;
 import ml.echelon133.microblog.user.model.UserProfileInfo;
+import ml.echelon133.microblog.user.model.ViewerState;
 import org.springframework.data.neo4j.annotation.Query;
 import org.springframework.data.neo4j.repository.Neo4jRepository;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -15,21 +17,38 @@ public interface UserRepository extends Neo4jRepository<User, UUID> {
     List<User> findAllByUsernameContains(String search);
     boolean existsUserByUsername(String username);
 
-    @Query( "MATCH (u1:User), (u2:User) " +
-            "WHERE u1.uuid = $uuidOfFollower AND u2.uuid = $uuidOfFollowed " +
-            "CREATE (u1)-[f:FOLLOWS]->(u2) " +
-            "RETURN id(f)")
-    Optional<Long> followUserWithUuid(UUID uuidOfFollower, UUID uuidOfFollowed);
+    /*
+        MERGE never creates a second 'follows' relationship between the same users. Empty result means that
+        one of the users doesn't exist, true means that the relationship has just been created.
+     */
+    @Query( "MATCH (u2:User) WHERE u2.uuid = $uuidOfFollowed " +
+            "MATCH (u1:User) WHERE u1.uuid = $uuidOfFollower " +
+            "OPTIONAL MATCH (u1)-[existing:FOLLOWS]->(u2) " +
+            "WITH u1, u2, count(existing) = 0 AS isNew " +
+            "MERGE (u1)-[:FOLLOWS]->(u2) " +
+            "RETURN isNew")
+    Optional<Boolean> followUserWithUuid(UUID uuidOfFollower, UUID uuidOfFollowed);
 
     @Query( "MATCH(u1:User)-[f:FOLLOWS]->(u2:User) " +
             "WHERE u1.uuid = $uuidOfFollower AND u2.uuid = $uuidOfFollowed " +
             "RETURN id(f)")
     Optional<Long> checkIfUserWithUuidFollows(UUID uuidOfFollower, UUID uuidOfFollowed);
 
-    @Query( "MATCH (u1:User)-[f:FOLLOWS]->(u2:User) " +
-            "WHERE u1.uuid = $uuidOfFollower AND u2.uuid = $uuidOfFollowed " +
-            "DELETE f")
-    void unfollowUserWithUuid(UUID uuidOfFollower, UUID uuidOfFollowed);
+    // empty result means that the followed user doesn't exist
+    @Query( "MATCH (u2:User) WHERE u2.uuid = $uuidOfFollowed " +
+            "OPTIONAL MATCH (u1:User)-[f:FOLLOWS]->(u2) WHERE u1.uuid = $uuidOfFollower " +
+            "WITH u2, count(f) AS follows " +
+            "RETURN follows > 0")
+    Optional<Boolean> checkIfUserWithUuidFollowsExistingUser(UUID uuidOfFollower, UUID uuidOfFollowed);
+
+    // returns how many 'follows' relationships were removed, empty result means that the followed user doesn't exist
+    @Query( "MATCH (u2:User) WHERE u2.uuid = $uuidOfFollowed " +
+            "OPTIONAL MATCH (u1:User)-[f:FOLLOWS]->(u2) WHERE u1.uuid = $uuidOfFollower " +
+            "WITH u2, collect(f) AS follows " +
+            "WITH follows, size(follows) AS removed " +
+            "FOREACH (f IN follows | DELETE f) " +
+            "RETURN removed")
+    Optional<Long> unfollowUserWithUuid(UUID uuidOfFollower, UUID uuidOfFollowed);
 
     @Query( "MATCH (u:User)-[:FOLLOWS]->(followed) " +
             "WHERE u.uuid = $uuid AND followed.uuid <> $uuid " +
@@ -45,25 +64,70 @@ public interface UserRepository extends Neo4jRepository<User, UUID> {
             "LIMIT $limit")
     List<User> findAllFollowersOfUserWithUuid(UUID uuid, Long skip, Long limit);
 
+    // since every user follows themselves, the uuid of the user is also returned
+    @Query( "MATCH (follower:User)-[:FOLLOWS]->(u:User) " +
+            "WHERE u.uuid = $uuid " +
+            "RETURN follower.uuid")
+    List<String> findAllFollowerUuidsOfUserWithUuid(UUID uuid);
+
+    // counts the user as well, just like the query above, but only reads the number of relationships of the user
+    @Query( "OPTIONAL MATCH (u:User) WHERE u.uuid = $uuid " +
+            "RETURN coalesce(size((u)<-[:FOLLOWS]-()), 0)")
+    long countFollowersOfUserWithUuid(UUID uuid);
+
+    // since every user follows themselves, the uuid of the user is also returned
+    @Query( "MATCH (u:User)-[:FOLLOWS]->(followed:User) " +
+            "WHERE u.uuid = $uuid " +
+            "RETURN followed.uuid")
+    List<String> findAllFollowedUuidsOfUserWithUuid(UUID uuid);
+
+    @Query( "MATCH (u:User)-[:FOLLOWS]->(followed:User) " +
+            "WHERE u.uuid = $uuid AND followed.uuid IN $candidateUuids " +
+            "RETURN followed.uuid")
+    List<String> findFollowedUuidsAmong(UUID uuid, List<String> candidateUuids);
+
+    // which of the given posts the viewer likes and which of the given users the viewer follows
+    @Query( "MATCH (viewer:User) WHERE viewer.uuid = $viewerUuid " +
+            "OPTIONAL MATCH (liked:Post) WHERE liked.uuid IN $postUuids AND (viewer)-[:LIKES]->(liked) " +
+            "WITH viewer, collect(DISTINCT liked.uuid) AS likedPosts " +
+            "OPTIONAL MATCH (followed:User) WHERE followed.uuid IN $userUuids AND (viewer)-[:FOLLOWS]->(followed) " +
+            "RETURN likedPosts, collect(DISTINCT followed.uuid) AS followedUsers")
+    Optional<ViewerState> getViewerState(UUID viewerUuid, List<String> postUuids, List<String> userUuids);
+
     @Query( "MATCH (u1:User)-[:FOLLOWS]->(known:User)-[:FOLLOWS]->(u2:User) " +
             "WHERE u1.uuid = $u1Uuid AND u2.uuid = $u2Uuid " +
             "AND known.uuid <> $u1Uuid AND known.uuid <> $u2Uuid " +
             "RETURN known ORDER BY datetime(known.creationDate) DESC SKIP $skip LIMIT $limit")
     List<User> findFollowersUserKnows(UUID u1Uuid, UUID u2Uuid, Long skip, Long limit);
 
+    // grouped by the user, so that the result is empty when the user doesn't exist
     @Query( "MATCH (user:User) " +
             "WHERE user.uuid = $uuid " +
             "OPTIONAL MATCH (user)-[follows:FOLLOWS]->(o1:User) WHERE o1.uuid <> user.uuid " +
             "OPTIONAL MATCH (o2:User)-[followedBy:FOLLOWS]->(user) WHERE o2.uuid <> user.uuid " +
-            "RETURN count(distinct(follows)) AS follows, count(distinct(followedBy)) AS followers")
+            "WITH user, count(distinct(follows)) AS follows, count(distinct(followedBy)) AS followers " +
+            "RETURN follows, followers")
     Optional<UserProfileInfo> getUserProfileInfo(UUID uuid);
 
     @Query( "MATCH (u:User)-[:POSTS]->(p:Post) " +
-            "WHERE u.uuid = $userUuid AND p.deleted <> true " +
-            "OPTIONAL MATCH (p:Post)-[:RESPONDS]->(respondsTo:Post)<-[:POSTS]-(respondsToUser:User)  " +
-            "OPTIONAL MATCH (p:Post)-[:QUOTES]->(quotes:Post) " +
-            "RETURN p.uuid AS uuid, p.content AS content, p.creationDate AS date, u AS author, " +
+            "WHERE u.uuid = $userUuid " +
+            "OPTIONAL MATCH (p:Post)-[:RESPONDS]->(respondsTo)<-[:POSTS]-(respondsToUser:User)  " +
+            "OPTIONAL MATCH (p:Post)-[:QUOTES]->(quotes) " +
+            "RETURN p.uuid AS uuid, p.content AS content, p.entities AS entities, " +
+            "p.creationDate AS date, u AS author, " +
             "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo, respondsToUser.username AS respondsToUsername " +
-            "ORDER BY datetime(p.creationDate) DESC SKIP $skip LIMIT $limit ")
+            "ORDER BY datetime(p.creationDate) DESC, p.uuid DESC SKIP $skip LIMIT $limit ")
     List<UserPost> findRecentPostsOfUser(UUID userUuid, Long skip, Long limit);
+
+    @Query( "MATCH (u:User)-[:POSTS]->(p:Post) " +
+            "WHERE u.uuid = $userUuid " +
+            "AND (datetime(p.creationDate) < datetime($beforeDate) OR " +
+            "(datetime(p.creationDate) = datetime($beforeDate) AND p.uuid < $beforeUuid)) " +
+            "OPTIONAL MATCH (p:Post)-[:RESPONDS]->(respondsTo)<-[:POSTS]-(respondsToUser:User)  " +
+            "OPTIONAL MATCH (p:Post)-[:QUOTES]->(quotes) " +
+            "RETURN p.uuid AS uuid, p.content AS content, p.entities AS entities, " +
+            "p.creationDate AS date, u AS author, " +
+            "quotes.uuid AS quotes, respondsTo.uuid AS respondsTo, respondsToUser.username AS respondsToUsername " +
+            "ORDER BY datetime(p.creationDate) DESC, p.uuid DESC LIMIT $limit ")
+    List<UserPost> findRecentPostsOfUser_Before(UUID userUuid, Date beforeDate, UUID beforeUuid, Long limit);
 }
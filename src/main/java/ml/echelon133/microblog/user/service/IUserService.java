@@ -1,5 +1,6 @@
 package ml.echelon133.microblog.user.service;
 
+import ml.echelon133.microblog.pagination.PostCursor;
 import ml.echelon133.microblog.user.exception.UserCreationFailedException;
 import ml.echelon133.microblog.user.exception.UserDoesntExistException;
 import ml.echelon133.microblog.user.exception.UsernameAlreadyTakenException;
@@ -24,6 +25,9 @@ public interface IUserService {
     List<User> findAllFollowersOfUser(UUID uuid, Long skip, Long limit) throws UserDoesntExistException, IllegalArgumentException;
     UserProfileInfo getUserProfileInfo(UUID uuid) throws UserDoesntExistException;
     List<UserPost> findRecentPostsOfUser(UUID uuid, Long skip, Long limit) throws UserDoesntExistException, IllegalArgumentException;
+    List<UserPost> findRecentPostsOfUser(UUID uuid, PostCursor cursor, Long limit) throws UserDoesntExistException, IllegalArgumentException;
+    void applyViewerStateToPosts(UserPrincipal viewer, List<UserPost> posts);
+    void applyViewerStateToUsers(UserPrincipal viewer, List<User> users);
     User setupAndSaveUser(User newUser) throws UsernameAlreadyTakenException, UserCreationFailedException;
     User updateUser(User user, UserDetailsDto userDetailsDto);
 }
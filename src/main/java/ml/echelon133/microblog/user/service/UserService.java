@@ -1,5 +1,8 @@
 package ml.echelon133.microblog.user.service;
 
+import ml.echelon133.microblog.feed.service.ITimelineService;
+import ml.echelon133.microblog.pagination.Pages;
+import ml.echelon133.microblog.pagination.PostCursor;
 import ml.echelon133.microblog.user.exception.UserCreationFailedException;
 import ml.echelon133.microblog.user.exception.UserDoesntExistException;
 import ml.echelon133.microblog.user.exception.UsernameAlreadyTakenException;
@@ -11,9 +14,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 public class UserService implements IUserService {
@@ -21,18 +23,17 @@ public class UserService implements IUserService {
     private UserRepository userRepository;
     private RoleRepository roleRepository;
     private PasswordEncoder passwordEncoder;
+    private ITimelineService timelineService;
 
     @Autowired
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, RoleRepository roleRepository) {
+    public UserService(UserRepository userRepository,
+                       PasswordEncoder passwordEncoder,
+                       RoleRepository roleRepository,
+                       ITimelineService timelineService) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.roleRepository = roleRepository;
-    }
-
-    private void throwIfUserDoesntExist(UUID uuid) throws UserDoesntExistException {
-        if (!userRepository.existsById(uuid)) {
-            throw new UserDoesntExistException(uuid);
-        }
+        this.timelineService = timelineService;
     }
 
     private Role getDefaultRole() {
@@ -44,6 +45,45 @@ public class UserService implements IUserService {
         return defaultRole.get();
     }
 
+    /*
+        Flags which tell whether the viewer likes posts and follows users are computed for a whole page
+        with a single query, so that clients don't have to check every post and user separately.
+        Authors of posts get the 'viewerFollows' flag as well.
+     */
+    private void applyViewerState(UserPrincipal viewer, List<UserPost> posts, List<User> users) {
+        List<User> allUsers = new ArrayList<>(users);
+        posts.stream().map(UserPost::getAuthor).filter(Objects::nonNull).forEach(allUsers::add);
+        if (posts.isEmpty() && allUsers.isEmpty()) {
+            return;
+        }
+
+        List<String> postUuids = posts.stream()
+                .map(p -> p.getUuid().toString())
+                .distinct()
+                .collect(Collectors.toList());
+        List<String> userUuids = allUsers.stream()
+                .map(u -> u.getUuid().toString())
+                .distinct()
+                .collect(Collectors.toList());
+
+        Optional<ViewerState> state = userRepository.getViewerState(viewer.getUuid(), postUuids, userUuids);
+        Set<String> likedPosts = new HashSet<>(state.map(ViewerState::getLikedPosts).orElse(List.of()));
+        Set<String> followedUsers = new HashSet<>(state.map(ViewerState::getFollowedUsers).orElse(List.of()));
+
+        posts.forEach(p -> p.setLikedByViewer(likedPosts.contains(p.getUuid().toString())));
+        allUsers.forEach(u -> u.setViewerFollows(followedUsers.contains(u.getUuid().toString())));
+    }
+
+    @Override
+    public void applyViewerStateToPosts(UserPrincipal viewer, List<UserPost> posts) {
+        applyViewerState(viewer, posts, List.of());
+    }
+
+    @Override
+    public void applyViewerStateToUsers(UserPrincipal viewer, List<User> users) {
+        applyViewerState(viewer, List.of(), users);
+    }
+
     @Override
     public User setupAndSaveUser(User newUser) throws UsernameAlreadyTakenException, UserCreationFailedException {
         if (userRepository.existsUserByUsername(newUser.getUsername())) {
@@ -61,8 +101,8 @@ public class UserService implements IUserService {
         // every user must follow themselves
         // this simplifies searching for actions of users while creating
         // their feeds
-        Optional<Long> followId = userRepository.followUserWithUuid(savedUser.getUuid(), savedUser.getUuid());
-        if (followId.isEmpty()) {
+        Optional<Boolean> followed = userRepository.followUserWithUuid(savedUser.getUuid(), savedUser.getUuid());
+        if (followed.isEmpty()) {
             // if followUserWithUuid fails, delete the account
             // because it hasn't been fully setup
             userRepository.delete(savedUser);
@@ -82,7 +122,6 @@ public class UserService implements IUserService {
 
     @Override
     public User findByUuid(UUID uuid) throws UserDoesntExistException {
-        throwIfUserDoesntExist(uuid);
         Optional<User> user = userRepository.findById(uuid);
         if (user.isPresent()) {
             return user.get();
@@ -93,7 +132,6 @@ public class UserService implements IUserService {
     @Override
     public List<User> findFollowersUserKnows(UserPrincipal user, UUID otherUser, Long skip, Long limit)
             throws UserDoesntExistException, IllegalArgumentException {
-        throwIfUserDoesntExist(otherUser);
         if (skip < 0 || limit < 0) {
             throw new IllegalArgumentException("Invalid skip and/or limit values.");
         }
@@ -101,79 +139,103 @@ public class UserService implements IUserService {
         if (user.getUuid().equals(otherUser)) {
             throw new IllegalArgumentException("UUID of checked user is equal to the UUID of currently logged in user");
         }
-        return userRepository.findFollowersUserKnows(user.getUuid(), otherUser, skip, limit);
+        return Pages.throwIfEmptyAndOwnerDoesntExist(
+                userRepository.findFollowersUserKnows(user.getUuid(), otherUser, skip, limit),
+                () -> userRepository.existsById(otherUser), () -> new UserDoesntExistException(otherUser));
     }
 
     @Override
     public boolean followUserWithUuid(UserPrincipal user, UUID followUuid)
             throws UserDoesntExistException, HiddenStateModificationAttemptException {
 
-        throwIfUserDoesntExist(followUuid);
-        Optional<Long> following = userRepository.checkIfUserWithUuidFollows(user.getUuid(), followUuid);
-
         if (user.getUuid().equals(followUuid)) {
             throw new HiddenStateModificationAttemptException("Users cannot follow themselves.");
         }
 
-        // only follow if there is no already existing 'follows' relationship
-        // between these users
-        // otherwise this will create duplicate relationships
-        if (following.isEmpty()) {
-            following = userRepository.followUserWithUuid(user.getUuid(), followUuid);
+        // empty result means that the followed user doesn't exist
+        Optional<Boolean> created = userRepository.followUserWithUuid(user.getUuid(), followUuid);
+        if (created.isEmpty()) {
+            throw new UserDoesntExistException(followUuid);
+        }
+        // posts of the followed user are only added to the timeline when the user wasn't already followed
+        if (created.get()) {
+            timelineService.backfillTimeline(user.getUuid(), followUuid);
         }
-        return following.isPresent();
+        return true;
     }
 
     @Override
     public boolean unfollowUserWithUuid(UserPrincipal user, UUID unfollowUuid)
             throws UserDoesntExistException, HiddenStateModificationAttemptException {
 
-        throwIfUserDoesntExist(unfollowUuid);
-
         if (user.getUuid().equals(unfollowUuid)) {
             throw new HiddenStateModificationAttemptException("Users cannot unfollow themselves.");
         }
-        userRepository.unfollowUserWithUuid(user.getUuid(), unfollowUuid);
-        return userRepository.checkIfUserWithUuidFollows(user.getUuid(), unfollowUuid).isEmpty();
+        // the query removes every 'follows' relationship between these users,
+        // so the user isn't followed afterwards whenever they exist
+        if (userRepository.unfollowUserWithUuid(user.getUuid(), unfollowUuid).isEmpty()) {
+            throw new UserDoesntExistException(unfollowUuid);
+        }
+        timelineService.pruneTimeline(user.getUuid(), unfollowUuid);
+        return true;
     }
 
     @Override
     public List<User> findAllFollowsOfUser(UUID uuid, Long skip, Long limit) throws UserDoesntExistException, IllegalArgumentException {
-        throwIfUserDoesntExist(uuid);
         if (skip < 0 || limit < 0) {
             throw new IllegalArgumentException("Invalid skip and/or limit values.");
         }
-        return userRepository.findAllFollowsOfUserWithUuid(uuid, skip, limit);
+        return Pages.throwIfEmptyAndOwnerDoesntExist(
+                userRepository.findAllFollowsOfUserWithUuid(uuid, skip, limit),
+                () -> userRepository.existsById(uuid), () -> new UserDoesntExistException(uuid));
     }
 
     @Override
     public List<User> findAllFollowersOfUser(UUID uuid, Long skip, Long limit) throws UserDoesntExistException, IllegalArgumentException {
-        throwIfUserDoesntExist(uuid);
         if (skip < 0 || limit < 0) {
             throw new IllegalArgumentException("Invalid skip and/or limit values.");
         }
-        return userRepository.findAllFollowersOfUserWithUuid(uuid, skip, limit);
+        return Pages.throwIfEmptyAndOwnerDoesntExist(
+                userRepository.findAllFollowersOfUserWithUuid(uuid, skip, limit),
+                () -> userRepository.existsById(uuid), () -> new UserDoesntExistException(uuid));
     }
 
     @Override
     public UserProfileInfo getUserProfileInfo(UUID uuid) throws UserDoesntExistException {
-        throwIfUserDoesntExist(uuid);
-        return userRepository.getUserProfileInfo(uuid).orElse(new UserProfileInfo());
+        Optional<UserProfileInfo> info = userRepository.getUserProfileInfo(uuid);
+        if (info.isPresent()) {
+            return info.get();
+        }
+        throw new UserDoesntExistException(uuid);
     }
 
     @Override
     public boolean checkIfUserFollows(UserPrincipal user, UUID followedUuid) throws UserDoesntExistException {
-        throwIfUserDoesntExist(followedUuid);
-        return userRepository.checkIfUserWithUuidFollows(user.getUuid(), followedUuid).isPresent();
+        Optional<Boolean> follows = userRepository.checkIfUserWithUuidFollowsExistingUser(user.getUuid(), followedUuid);
+        if (follows.isPresent()) {
+            return follows.get();
+        }
+        throw new UserDoesntExistException(followedUuid);
     }
 
     @Override
     public List<UserPost> findRecentPostsOfUser(UUID uuid, Long skip, Long limit) throws UserDoesntExistException, IllegalArgumentException {
-        throwIfUserDoesntExist(uuid);
         if (skip < 0 || limit < 0) {
             throw new IllegalArgumentException("Invalid skip and/or limit values.");
         }
-        return userRepository.findRecentPostsOfUser(uuid, skip, limit);
+        return Pages.throwIfEmptyAndOwnerDoesntExist(
+                userRepository.findRecentPostsOfUser(uuid, skip, limit),
+                () -> userRepository.existsById(uuid), () -> new UserDoesntExistException(uuid));
+    }
+
+    @Override
+    public List<UserPost> findRecentPostsOfUser(UUID uuid, PostCursor cursor, Long limit) throws UserDoesntExistException, IllegalArgumentException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Invalid limit value.");
+        }
+        return Pages.throwIfEmptyAndOwnerDoesntExist(
+                userRepository.findRecentPostsOfUser_Before(uuid, cursor.getDate(), cursor.getUuid(), limit),
+                () -> userRepository.existsById(uuid), () -> new UserDoesntExistException(uuid));
     }
 
     @Override
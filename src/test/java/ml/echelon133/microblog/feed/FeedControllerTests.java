@@ -4,9 +4,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import ml.echelon133.microblog.auth.CustomAuthToken;
 import ml.echelon133.microblog.feed.controller.FeedController;
 import ml.echelon133.microblog.feed.exception.FeedExceptionHandler;
+import ml.echelon133.microblog.feed.model.PopularFeedSnapshot;
+import ml.echelon133.microblog.feed.service.PopularFeedService;
+import ml.echelon133.microblog.pagination.PostCursor;
 import ml.echelon133.microblog.post.service.PostService;
 import ml.echelon133.microblog.user.model.UserPost;
 import ml.echelon133.microblog.user.model.UserPrincipal;
+import ml.echelon133.microblog.user.service.UserService;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,6 +20,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.test.json.JacksonTester;
 import org.springframework.boot.test.json.JsonContent;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.core.Authentication;
@@ -23,7 +28,9 @@ import org.springframework.security.web.context.SecurityContextPersistenceFilter
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON;
@@ -42,6 +49,12 @@ public class FeedControllerTests {
     @Mock
     private PostService postService;
 
+    @Mock
+    private PopularFeedService popularFeedService;
+
+    @Mock
+    private UserService userService;
+
     @InjectMocks
     private FeedController feedController;
 
@@ -163,6 +176,156 @@ public class FeedControllerTests {
         assertThat(response.getContentAsString()).contains("Invalid skip and/or limit values.");
     }
 
+    @Test
+    public void getUserFeed_ProvidedCursorIsUsed() throws Exception {
+        PostCursor cursor = new PostCursor(new Date(), UUID.randomUUID());
+
+        UserPost last = new UserPost();
+        last.setUuid(UUID.randomUUID());
+        last.setDate(new Date());
+        List<UserPost> testPosts = List.of(new UserPost(), last);
+
+        // json
+        JsonContent<List<UserPost>> json = jsonUserPosts.write(testPosts);
+
+        // given
+        given(postService.getFeedForUser((UserPrincipal)testToken.getPrincipal(), cursor, 2L))
+                .willReturn(testPosts);
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/feed")
+                        .accept(APPLICATION_JSON)
+                        .with(authentication(testToken))
+                        .param("cursor", cursor.encode())
+                        .param("limit", "2")
+        ).andReturn().getResponse();
+
+        // then
+        String expectedCursor = new PostCursor(last.getDate(), last.getUuid()).encode();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(json.getJson());
+        assertThat(response.getHeader(PostCursor.NEXT_CURSOR_HEADER)).isEqualTo(expectedCursor);
+    }
+
+    @Test
+    public void getUserFeed_LastPageHasNoNextCursor() throws Exception {
+        List<UserPost> testPosts = List.of(new UserPost());
+
+        // given
+        given(postService.getFeedForUser((UserPrincipal)testToken.getPrincipal(), 0L, 20L))
+                .willReturn(testPosts);
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/feed")
+                        .accept(APPLICATION_JSON)
+                        .with(authentication(testToken))
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getHeader(PostCursor.NEXT_CURSOR_HEADER)).isNull();
+    }
+
+    @Test
+    public void getUserFeed_ProvidedSinceIsUsed() throws Exception {
+        UUID since = UUID.randomUUID();
+        List<UserPost> testPosts = List.of(new UserPost());
+
+        // json
+        JsonContent<List<UserPost>> json = jsonUserPosts.write(testPosts);
+
+        // given
+        given(postService.getFeedForUserSince((UserPrincipal)testToken.getPrincipal(), since, 20L))
+                .willReturn(testPosts);
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/feed")
+                        .accept(APPLICATION_JSON)
+                        .with(authentication(testToken))
+                        .param("since", since.toString())
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(json.getJson());
+    }
+
+    @Test
+    public void getUserFeed_HandlesCursorCombinedWithSince() throws Exception {
+        PostCursor cursor = new PostCursor(new Date(), UUID.randomUUID());
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/feed")
+                        .accept(APPLICATION_JSON)
+                        .with(authentication(testToken))
+                        .param("cursor", cursor.encode())
+                        .param("since", UUID.randomUUID().toString())
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(response.getContentAsString()).contains("Parameters cursor and since mustn't be combined");
+    }
+
+    @Test
+    public void getUserFeed_SetsETagWhenFeedVersionIsKnown() throws Exception {
+        // given
+        given(postService.getFeedVersion((UserPrincipal)testToken.getPrincipal()))
+                .willReturn(Optional.of("15.4"));
+        given(postService.getFeedForUser((UserPrincipal)testToken.getPrincipal(), 0L, 20L))
+                .willReturn(List.of(new UserPost()));
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/feed")
+                        .accept(APPLICATION_JSON)
+                        .with(authentication(testToken))
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"15.4\"");
+    }
+
+    @Test
+    public void getUserFeed_ReturnsNotModifiedWhenETagMatches() throws Exception {
+        // given
+        given(postService.getFeedVersion((UserPrincipal)testToken.getPrincipal()))
+                .willReturn(Optional.of("15.4"));
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/feed")
+                        .accept(APPLICATION_JSON)
+                        .with(authentication(testToken))
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"15.4\"")
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"15.4\"");
+        assertThat(response.getContentAsString()).isEmpty();
+    }
+
+    @Test
+    public void getUserFeed_HandlesInvalidCursor() throws Exception {
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/feed")
+                        .accept(APPLICATION_JSON)
+                        .with(authentication(testToken))
+                        .param("cursor", "invalid-cursor")
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(response.getContentAsString()).contains("Invalid cursor value.");
+    }
+
     @Test
     public void getUserFeedPopular_SetsCorrectDefaultParameters() throws Exception {
         List<UserPost> testPosts = List.of(new UserPost());
@@ -324,4 +487,55 @@ public class FeedControllerTests {
         assertThat(response2.getStatus()).isEqualTo(HttpStatus.OK.value());
         assertThat(response2.getContentAsString()).isEqualTo(json2.getJson());
     }
+
+    @Test
+    public void getUserFeedPopular_ReturnsSnapshotPageForAnonymous() throws Exception {
+        List<UserPost> testPosts = List.of(new UserPost(), new UserPost(), new UserPost());
+        PopularFeedSnapshot snapshot = new PopularFeedSnapshot(1234L, testPosts, true);
+
+        // json
+        JsonContent<List<UserPost>> json = jsonUserPosts.write(testPosts.subList(1, 3));
+
+        // given
+        given(popularFeedService.getSnapshot(1234L)).willReturn(Optional.of(snapshot));
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/feed/popular")
+                        .accept(APPLICATION_JSON)
+                        .with(anonymous())
+                        .param("skip", "1")
+                        .param("version", "1234")
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(json.getJson());
+        assertThat(response.getHeader(PopularFeedSnapshot.VERSION_HEADER)).isEqualTo("1234");
+    }
+
+    @Test
+    public void getUserFeedPopular_PagesPastIncompleteSnapshotAreQueried() throws Exception {
+        List<UserPost> testPosts = List.of(new UserPost());
+        PopularFeedSnapshot snapshot = new PopularFeedSnapshot(1234L, List.of(new UserPost()), false);
+
+        // json
+        JsonContent<List<UserPost>> json = jsonUserPosts.write(testPosts);
+
+        // given
+        given(popularFeedService.getSnapshot(null)).willReturn(Optional.of(snapshot));
+        given(postService.getFeedForAnonymousUser(0L, 20L)).willReturn(testPosts);
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/feed/popular")
+                        .accept(APPLICATION_JSON)
+                        .with(anonymous())
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(json.getJson());
+        assertThat(response.getHeader(PopularFeedSnapshot.VERSION_HEADER)).isNull();
+    }
 }
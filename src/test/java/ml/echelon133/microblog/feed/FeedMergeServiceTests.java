@@ -0,0 +1,154 @@
+package ml.echelon133.microblog.feed;
+
+import ml.echelon133.microblog.feed.model.TimelineEntry;
+import ml.echelon133.microblog.feed.service.FeedMergeService;
+import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.user.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class FeedMergeServiceTests {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private PostRepository postRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @InjectMocks
+    private FeedMergeService feedMergeService;
+
+    private TimelineEntry createEntry(UUID author, long timestamp) {
+        TimelineEntry entry = new TimelineEntry(UUID.randomUUID(), new Date(timestamp));
+        entry.setAuthor(author);
+        return entry;
+    }
+
+    private List<String> asStrings(UUID... uuids) {
+        List<String> strings = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            strings.add(uuid.toString());
+        }
+        return strings;
+    }
+
+    @Test
+    public void mergeWithBuffers_MergesPostsFromNewestToOldest() {
+        UUID celebrity = UUID.randomUUID();
+        TimelineEntry c1 = createEntry(celebrity, 5000);
+        TimelineEntry c2 = createEntry(celebrity, 2000);
+        TimelineEntry t1 = createEntry(null, 4000);
+        TimelineEntry t2 = createEntry(null, 3000);
+        TimelineEntry t3 = createEntry(null, 1000);
+
+        // given
+        given(postRepository.getTimelineEntriesOfUsersWithUuids(asStrings(celebrity),
+                (long) FeedMergeService.BUFFER_CAPACITY)).willReturn(List.of(c1, c2));
+
+        // when
+        Optional<List<UUID>> page = feedMergeService
+                .mergeWithBuffers(List.of(celebrity), List.of(t1, t2, t3), 0L, 5L);
+
+        // then
+        assertTrue(page.isPresent());
+        assertEquals(List.of(c1.getUuid(), t1.getUuid(), t2.getUuid(), c2.getUuid(), t3.getUuid()), page.get());
+    }
+
+    @Test
+    public void mergeWithBuffers_SkipsPostsOfPreviousPages() {
+        UUID celebrity = UUID.randomUUID();
+        TimelineEntry c1 = createEntry(celebrity, 5000);
+        TimelineEntry c2 = createEntry(celebrity, 2000);
+        TimelineEntry t1 = createEntry(null, 4000);
+        TimelineEntry t2 = createEntry(null, 3000);
+
+        // given
+        given(postRepository.getTimelineEntriesOfUsersWithUuids(asStrings(celebrity),
+                (long) FeedMergeService.BUFFER_CAPACITY)).willReturn(List.of(c1, c2));
+
+        // when
+        Optional<List<UUID>> page = feedMergeService
+                .mergeWithBuffers(List.of(celebrity), List.of(t1, t2), 2L, 2L);
+
+        // then
+        assertTrue(page.isPresent());
+        assertEquals(List.of(t2.getUuid(), c2.getUuid()), page.get());
+    }
+
+    @Test
+    public void mergeWithBuffers_RemovesPostsWhichAreAlsoInTimeline() {
+        UUID celebrity = UUID.randomUUID();
+        TimelineEntry c1 = createEntry(celebrity, 5000);
+        TimelineEntry t1 = createEntry(null, 4000);
+        // posted before the author became a celebrity, so it's in both sources
+        TimelineEntry pushed = new TimelineEntry(c1.getUuid(), c1.getDate());
+
+        // given
+        given(postRepository.getTimelineEntriesOfUsersWithUuids(asStrings(celebrity),
+                (long) FeedMergeService.BUFFER_CAPACITY)).willReturn(List.of(c1));
+
+        // when
+        Optional<List<UUID>> page = feedMergeService
+                .mergeWithBuffers(List.of(celebrity), List.of(pushed, t1), 0L, 10L);
+
+        // then
+        assertTrue(page.isPresent());
+        assertEquals(List.of(c1.getUuid(), t1.getUuid()), page.get());
+    }
+
+    @Test
+    public void mergeWithBuffers_ReturnsEmptyWhenTruncatedBufferRunsOut() {
+        UUID celebrity = UUID.randomUUID();
+        List<TimelineEntry> buffered = new ArrayList<>();
+        // the query returns as many posts as a buffer can hold, so the author might have more of them
+        for (int i = 0; i < FeedMergeService.BUFFER_CAPACITY; i++) {
+            buffered.add(createEntry(celebrity, 100_000L - i));
+        }
+        TimelineEntry t1 = createEntry(null, 1000);
+
+        // given
+        given(postRepository.getTimelineEntriesOfUsersWithUuids(asStrings(celebrity),
+                (long) FeedMergeService.BUFFER_CAPACITY)).willReturn(buffered);
+
+        // when
+        Optional<List<UUID>> page = feedMergeService
+                .mergeWithBuffers(List.of(celebrity), List.of(t1), 0L, FeedMergeService.BUFFER_CAPACITY + 1L);
+
+        // then
+        assertTrue(page.isEmpty());
+    }
+
+    @Test
+    public void mergeWithBuffers_ReusesFreshBuffers() {
+        UUID celebrity = UUID.randomUUID();
+        TimelineEntry c1 = createEntry(celebrity, 5000);
+
+        // given
+        given(postRepository.getTimelineEntriesOfUsersWithUuids(asStrings(celebrity),
+                (long) FeedMergeService.BUFFER_CAPACITY)).willReturn(List.of(c1));
+
+        // when
+        feedMergeService.mergeWithBuffers(List.of(celebrity), List.of(), 0L, 10L);
+        feedMergeService.removePost(celebrity, c1.getUuid());
+        Optional<List<UUID>> page = feedMergeService
+                .mergeWithBuffers(List.of(celebrity), List.of(), 0L, 10L);
+
+        // then
+        // reloading the buffer would bring the removed post back
+        assertTrue(page.isPresent());
+        assertEquals(0, page.get().size());
+    }
+}
@@ -0,0 +1,148 @@
+package ml.echelon133.microblog.feed;
+
+import ml.echelon133.microblog.feed.model.PopularFeedSnapshot;
+import ml.echelon133.microblog.feed.service.PopularFeedService;
+import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.user.model.UserPost;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class PopularFeedServiceTests {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private PostRepository postRepository;
+
+    @InjectMocks
+    private PopularFeedService popularFeedService;
+
+    private Clock clock;
+
+    @BeforeEach
+    public void beforeEach() {
+        clock = Clock.fixed(Instant.ofEpochMilli(1_000_000L), ZoneId.systemDefault());
+        popularFeedService.setClock(clock);
+    }
+
+    private UserPost createPost() {
+        UserPost post = new UserPost();
+        post.setUuid(UUID.randomUUID());
+        return post;
+    }
+
+    @Test
+    public void getSnapshot_ReturnsEmptyBeforeFirstRefresh() {
+        // when
+        Optional<PopularFeedSnapshot> snapshot = popularFeedService.getSnapshot(null);
+
+        // then
+        assertTrue(snapshot.isEmpty());
+    }
+
+    @Test
+    public void refreshSnapshot_ComputesSnapshotWhenLockIsTaken() {
+        List<UserPost> ranked = List.of(createPost(), createPost());
+
+        // given
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(valueOperations.setIfAbsent(eq("feed:popular:lock"), anyString(), anyLong(), eq(TimeUnit.MILLISECONDS)))
+                .willReturn(true);
+        given(postRepository.getFeedForAnonymousUser_Popular(any(), eq(0L), eq(PopularFeedService.SNAPSHOT_SIZE)))
+                .willReturn(ranked);
+
+        // when
+        popularFeedService.refreshSnapshot();
+        Optional<PopularFeedSnapshot> snapshot = popularFeedService.getSnapshot(null);
+
+        // then
+        assertTrue(snapshot.isPresent());
+        assertEquals(clock.millis(), snapshot.get().getVersion());
+        assertEquals(ranked, snapshot.get().getPosts());
+        assertTrue(snapshot.get().isComplete());
+    }
+
+    @Test
+    public void refreshSnapshot_LoadsSnapshotComputedByAnotherNode() {
+        UserPost p1 = createPost();
+        UserPost p2 = createPost();
+        String uuids = p1.getUuid() + "," + p2.getUuid();
+
+        // given
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(valueOperations.setIfAbsent(eq("feed:popular:lock"), anyString(), anyLong(), eq(TimeUnit.MILLISECONDS)))
+                .willReturn(false);
+        given(valueOperations.get("feed:popular:latest")).willReturn("42");
+        given(valueOperations.get("feed:popular:snapshot:42")).willReturn(uuids);
+        // posts are returned unordered
+        given(postRepository.getPostsWithUuids(List.of(p1.getUuid().toString(), p2.getUuid().toString())))
+                .willReturn(List.of(p2, p1));
+
+        // when
+        popularFeedService.refreshSnapshot();
+        Optional<PopularFeedSnapshot> snapshot = popularFeedService.getSnapshot(null);
+
+        // then
+        assertTrue(snapshot.isPresent());
+        assertEquals(42L, snapshot.get().getVersion());
+        assertEquals(List.of(p1, p2), snapshot.get().getPosts());
+    }
+
+    @Test
+    public void refreshSnapshot_ComputesSnapshotWhenRedisUnavailable() {
+        List<UserPost> ranked = List.of(createPost());
+
+        // given
+        given(redisTemplate.opsForValue()).willThrow(new RedisConnectionFailureException("connection refused"));
+        given(postRepository.getFeedForAnonymousUser_Popular(any(), eq(0L), eq(PopularFeedService.SNAPSHOT_SIZE)))
+                .willReturn(ranked);
+
+        // when
+        popularFeedService.refreshSnapshot();
+        Optional<PopularFeedSnapshot> snapshot = popularFeedService.getSnapshot(null);
+
+        // then
+        assertTrue(snapshot.isPresent());
+        assertEquals(ranked, snapshot.get().getPosts());
+    }
+
+    @Test
+    public void getSnapshot_PagesOfIncompleteSnapshotStopAtItsEnd() {
+        List<UserPost> ranked = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ranked.add(createPost());
+        }
+        PopularFeedSnapshot snapshot = new PopularFeedSnapshot(1L, ranked, false);
+
+        // when
+        Optional<List<UserPost>> inside = snapshot.getPage(2L, 3L);
+        Optional<List<UserPost>> outside = snapshot.getPage(3L, 3L);
+
+        // then
+        assertTrue(inside.isPresent());
+        assertEquals(ranked.subList(2, 5), inside.get());
+        assertTrue(outside.isEmpty());
+    }
+}
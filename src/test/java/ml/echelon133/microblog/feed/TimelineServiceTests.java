@@ -0,0 +1,299 @@
+package ml.echelon133.microblog.feed;
+
+import ml.echelon133.microblog.feed.model.TimelineEntry;
+import ml.echelon133.microblog.feed.service.IFeedMergeService;
+import ml.echelon133.microblog.feed.service.TimelineService;
+import ml.echelon133.microblog.pagination.PostCursor;
+import ml.echelon133.microblog.post.model.Post;
+import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.user.model.User;
+import ml.echelon133.microblog.user.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+
+@ExtendWith(MockitoExtension.class)
+public class TimelineServiceTests {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private PostRepository postRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private IFeedMergeService feedMergeService;
+
+    @InjectMocks
+    private TimelineService timelineService;
+
+    private List<TimelineEntry> createEntries(int howMany) {
+        List<TimelineEntry> entries = new ArrayList<>();
+        for (int i = 0; i < howMany; i++) {
+            entries.add(new TimelineEntry(UUID.randomUUID(), new Date()));
+        }
+        return entries;
+    }
+
+    @Test
+    public void getTimelinePage_ReturnsEmptyWhenPageExceedsCapacity() {
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        Optional<List<UUID>> page = timelineService
+                .getTimelinePage(uuid, TimelineService.TIMELINE_CAPACITY, 1L);
+
+        // then
+        assertTrue(page.isEmpty());
+    }
+
+    @Test
+    public void getTimelinePage_ReadsExistingTimeline() {
+        UUID uuid = UUID.randomUUID();
+        String key = "timeline:" + uuid;
+        UUID p1 = UUID.randomUUID();
+        UUID p2 = UUID.randomUUID();
+
+        // given
+        given(redisTemplate.hasKey(key)).willReturn(true);
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(zSetOperations.reverseRangeWithScores(key, 5L, 6L))
+                .willReturn(new LinkedHashSet<>(List.of(
+                        new DefaultTypedTuple<>(p1.toString(), 2000.0),
+                        new DefaultTypedTuple<>(p2.toString(), 1000.0))));
+
+        // when
+        Optional<List<UUID>> page = timelineService.getTimelinePage(uuid, 5L, 2L);
+
+        // then
+        assertTrue(page.isPresent());
+        assertEquals(List.of(p1, p2), page.get());
+    }
+
+    @Test
+    public void getTimelinePage_RebuildsColdTimeline() {
+        UUID uuid = UUID.randomUUID();
+        String key = "timeline:" + uuid;
+        List<TimelineEntry> entries = createEntries(10);
+
+        // given
+        given(redisTemplate.hasKey(key)).willReturn(false);
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(postRepository.getFeedTimelineEntriesForUserWithUuid(uuid, TimelineService.TIMELINE_CAPACITY))
+                .willReturn(entries);
+
+        // when
+        Optional<List<UUID>> page = timelineService.getTimelinePage(uuid, 2L, 3L);
+
+        // then
+        assertTrue(page.isPresent());
+        assertEquals(3, page.get().size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(entries.get(i + 2).getUuid(), page.get().get(i));
+        }
+    }
+
+    @Test
+    public void getTimelinePage_ReturnsEmptyWhenRedisUnavailable() {
+        UUID uuid = UUID.randomUUID();
+
+        // given
+        given(redisTemplate.hasKey("timeline:" + uuid))
+                .willThrow(new RedisConnectionFailureException("connection refused"));
+
+        // when
+        Optional<List<UUID>> page = timelineService.getTimelinePage(uuid, 0L, 20L);
+
+        // then
+        assertTrue(page.isEmpty());
+    }
+
+    @Test
+    public void getTimelinePage_MergesTimelineWithPostsOfFollowedCelebrities() {
+        UUID uuid = UUID.randomUUID();
+        UUID celebrity = UUID.randomUUID();
+        List<TimelineEntry> entries = createEntries(10);
+        List<UUID> merged = List.of(UUID.randomUUID(), UUID.randomUUID());
+
+        // given
+        given(feedMergeService.findFollowedCelebrities(uuid)).willReturn(List.of(celebrity));
+        given(redisTemplate.hasKey("timeline:" + uuid)).willReturn(false);
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(postRepository.getFeedTimelineEntriesForUserWithUuid(uuid, TimelineService.TIMELINE_CAPACITY))
+                .willReturn(entries);
+        // whole timeline up to the end of the page is merged
+        given(feedMergeService.mergeWithBuffers(List.of(celebrity), entries.subList(0, 5), 3L, 2L))
+                .willReturn(Optional.of(merged));
+
+        // when
+        Optional<List<UUID>> page = timelineService.getTimelinePage(uuid, 3L, 2L);
+
+        // then
+        assertTrue(page.isPresent());
+        assertEquals(merged, page.get());
+    }
+
+    @Test
+    public void getTimelinePage_CursorIsNotUsedWhenCelebritiesAreFollowed() {
+        UUID uuid = UUID.randomUUID();
+
+        // given
+        given(redisTemplate.hasKey("timeline:" + uuid)).willReturn(true);
+        given(feedMergeService.findFollowedCelebrities(uuid)).willReturn(List.of(UUID.randomUUID()));
+
+        // when
+        Optional<List<UUID>> page = timelineService
+                .getTimelinePage(uuid, new PostCursor(new Date(), UUID.randomUUID()), 20L);
+
+        // then
+        assertTrue(page.isEmpty());
+    }
+
+    @Test
+    public void getTimelinePageSince_ReadsOnlyNewerPosts() {
+        UUID uuid = UUID.randomUUID();
+        String key = "timeline:" + uuid;
+        UUID since = UUID.randomUUID();
+        UUID p1 = UUID.randomUUID();
+        UUID p2 = UUID.randomUUID();
+
+        // given
+        given(redisTemplate.hasKey(key)).willReturn(true);
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(zSetOperations.reverseRank(key, since.toString())).willReturn(2L);
+        given(zSetOperations.reverseRangeWithScores(key, 0L, 1L))
+                .willReturn(new LinkedHashSet<>(List.of(
+                        new DefaultTypedTuple<>(p1.toString(), 2000.0),
+                        new DefaultTypedTuple<>(p2.toString(), 1000.0))));
+
+        // when
+        Optional<List<UUID>> page = timelineService.getTimelinePageSince(uuid, since, 20L);
+
+        // then
+        assertTrue(page.isPresent());
+        assertEquals(List.of(p1, p2), page.get());
+    }
+
+    @Test
+    public void getTimelinePageSince_ReturnsEmptyWhenPostIsNotInTimeline() {
+        UUID uuid = UUID.randomUUID();
+        String key = "timeline:" + uuid;
+        UUID since = UUID.randomUUID();
+
+        // given
+        given(redisTemplate.hasKey(key)).willReturn(true);
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(zSetOperations.reverseRank(key, since.toString())).willReturn(null);
+
+        // when
+        Optional<List<UUID>> page = timelineService.getTimelinePageSince(uuid, since, 20L);
+
+        // then
+        assertTrue(page.isEmpty());
+    }
+
+    @Test
+    public void getFeedVersion_CombinesTimelineAndCelebrityPostsVersions() {
+        UUID uuid = UUID.randomUUID();
+        List<UUID> celebrities = List.of(UUID.randomUUID(), UUID.randomUUID());
+
+        // given
+        given(feedMergeService.findFollowedCelebrities(uuid)).willReturn(celebrities);
+        given(redisTemplate.executePipelined(any(RedisCallback.class))).willReturn(List.of(true, "15", "4", "6"));
+
+        // when
+        Optional<String> version = timelineService.getFeedVersion(uuid);
+
+        // then
+        assertTrue(version.isPresent());
+        assertEquals("15.10", version.get());
+    }
+
+    @Test
+    public void getFeedVersion_IsVersionOfTimelineWhenUserDoesntFollowCelebrities() {
+        UUID uuid = UUID.randomUUID();
+
+        // given
+        given(feedMergeService.findFollowedCelebrities(uuid)).willReturn(List.of());
+        given(redisTemplate.executePipelined(any(RedisCallback.class))).willReturn(List.of(true, "15"));
+
+        // when
+        Optional<String> version = timelineService.getFeedVersion(uuid);
+
+        // then
+        assertTrue(version.isPresent());
+        assertEquals("15", version.get());
+    }
+
+    @Test
+    public void getFeedVersion_ReturnsEmptyWhenTimelineIsCold() {
+        UUID uuid = UUID.randomUUID();
+        List<Object> results = new ArrayList<>();
+        results.add(false);
+        results.add("15");
+
+        // given
+        given(redisTemplate.executePipelined(any(RedisCallback.class))).willReturn(results);
+
+        // when
+        Optional<String> version = timelineService.getFeedVersion(uuid);
+
+        // then
+        assertTrue(version.isEmpty());
+    }
+
+    @Test
+    public void pushPost_MergesPostWhichMakesAuthorCelebrity() {
+        User author = new User("test", "", "", "");
+        author.setUuid(UUID.randomUUID());
+        Post post = new Post(author, "test");
+        List<Post> recorded = new ArrayList<>();
+        List<String> bumped = new ArrayList<>();
+
+        // given
+        given(feedMergeService.isCelebrity(author.getUuid())).willReturn(false);
+        given(userRepository.countFollowersOfUserWithUuid(author.getUuid()))
+                .willReturn(TimelineService.CELEBRITY_FOLLOWER_THRESHOLD + 1);
+        willAnswer(invocation -> recorded.add(invocation.getArgument(0))).given(feedMergeService).recordPost(post);
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(valueOperations.setIfAbsent(anyString(), anyString())).willReturn(false);
+        given(valueOperations.increment(anyString())).willAnswer(invocation -> {
+            bumped.add(invocation.getArgument(0));
+            return 1L;
+        });
+
+        // when
+        timelineService.pushPost(post);
+
+        // then
+        // the post isn't in any timeline, so it has to be merged, and feeds of followers have to change their versions
+        assertEquals(List.of(post), recorded);
+        assertEquals(List.of("feed:celebrity:version:" + author.getUuid()), bumped);
+    }
+}
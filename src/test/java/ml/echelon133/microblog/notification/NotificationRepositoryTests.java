@@ -13,9 +13,8 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.neo4j.DataNeo4jTest;
 
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -158,6 +157,33 @@ public class NotificationRepositoryTests {
         assertEquals(2, unreadCounter);
     }
 
+    @Test
+    public void countUnreadNotificationsOfUsers_CountsEveryExistingUser() {
+        Optional<User> u1 = userRepository.findByUsername("user1");
+        Optional<User> u2 = userRepository.findByUsername("user2");
+
+        // given
+        Post savedPost = postRepository.save(new Post(u1.get(), "test content of a post"));
+        ResponsePost savedResponse1 = postRepository.save(new ResponsePost(u2.get(), "response", savedPost));
+        ResponsePost savedResponse2 = postRepository.save(new ResponsePost(u2.get(), "response", savedPost));
+        notificationRepository.save(new ResponseNotification(savedResponse1, u1.get()));
+        notificationRepository.save(new ResponseNotification(savedResponse2, u1.get()));
+        notificationRepository.readSingleNotificationOfUser(u1.get().getUuid(),
+                notificationRepository.findAllNotificationsOfUser(u1.get().getUuid(), 0L, 1L).get(0).getUuid());
+
+        // when
+        List<UnreadCount> counts = notificationRepository.countUnreadNotificationsOfUsers(List.of(
+                u1.get().getUuid().toString(), u2.get().getUuid().toString(), UUID.randomUUID().toString()));
+
+        // then
+        // users who don't exist are skipped
+        assertEquals(2, counts.size());
+        Map<UUID, Long> byUser = new HashMap<>();
+        counts.forEach(c -> byUser.put(c.getUserUuid(), c.getCount()));
+        assertEquals(1L, byUser.get(u1.get().getUuid()));
+        assertEquals(0L, byUser.get(u2.get().getUuid()));
+    }
+
     @Test
     public void readAllNotificationsOfUser_SetsNotificationStateCorrectly() {
         Optional<User> u1 = userRepository.findByUsername("user1");
@@ -174,10 +200,10 @@ public class NotificationRepositoryTests {
         // when
         // should read 2 notifications
         Long readNotificationsCounter1 = notificationRepository
-                .readAllNotificationsOfUser(u1.get().getUuid());
+                .readAllNotificationsOfUser(u1.get().getUuid(), new Date());
         // since all notifications are already read, this returns 0 read
         Long readNotificationsCounter2 = notificationRepository
-                .readAllNotificationsOfUser(u1.get().getUuid());
+                .readAllNotificationsOfUser(u1.get().getUuid(), new Date());
         Long unreadCounter = notificationRepository.countUnreadNotificationsOfUser(u1.get().getUuid());
 
         // then
@@ -186,6 +212,46 @@ public class NotificationRepositoryTests {
         assertEquals(0, unreadCounter);
     }
 
+    @Test
+    public void readAllNotificationsOfUser_OnlyReadsNotificationsCreatedUpToGivenDate() {
+        Optional<User> u1 = userRepository.findByUsername("user1");
+        Optional<User> u2 = userRepository.findByUsername("user2");
+
+        // given
+        Post savedPost = postRepository.save(new Post(u1.get(), "test content of a post"));
+        ResponsePost savedResponse1 = postRepository.save(new ResponsePost(u2.get(), "response", savedPost));
+        ResponsePost savedResponse2 = postRepository.save(new ResponsePost(u2.get(), "response", savedPost));
+        ResponsePost savedResponse3 = postRepository.save(new ResponsePost(u2.get(), "response", savedPost));
+        Notification read = notificationRepository.save(new ResponseNotification(savedResponse1, u1.get()));
+        notificationRepository.save(new ResponseNotification(savedResponse2, u1.get()));
+        Date readUpTo = new Date();
+        notificationRepository.notifyAuthorOfParentOfPost(savedResponse3.getUuid(), new Date(readUpTo.getTime() + 1000L));
+
+        // when
+        // one notification had already been read on its own, so it's not counted again
+        notificationRepository.readSingleNotificationOfUser(u1.get().getUuid(), read.getUuid());
+        Long readNotificationsCounter = notificationRepository.readAllNotificationsOfUser(u1.get().getUuid(), readUpTo);
+        // a request with an older date doesn't move the watermark back
+        Long readNotificationsCounter2 = notificationRepository
+                .readAllNotificationsOfUser(u1.get().getUuid(), new Date(readUpTo.getTime() - 60_000L));
+        Long unreadCounter = notificationRepository.countUnreadNotificationsOfUser(u1.get().getUuid());
+        List<UnreadCount> unreadCounts = notificationRepository
+                .countUnreadNotificationsOfUsers(List.of(u1.get().getUuid().toString()));
+        boolean readOlder = notificationRepository.readSingleNotificationOfUser(u1.get().getUuid(), read.getUuid());
+        List<NotificationResult> notifications = notificationRepository
+                .findAllNotificationsOfUser(u1.get().getUuid(), 0L, 10L);
+
+        // then
+        assertEquals(1, readNotificationsCounter);
+        assertEquals(0, readNotificationsCounter2);
+        assertEquals(1, unreadCounter);
+        assertEquals(1L, unreadCounts.get(0).getCount());
+        assertFalse(readOlder);
+        // notifications are sorted from the newest one
+        assertEquals(List.of(false, true, true),
+                notifications.stream().map(NotificationResult::isRead).collect(Collectors.toList()));
+    }
+
     @Test
     public void readSingleNotificationOfUser_SetsNotificationStateCorrectly() {
         Optional<User> u1 = userRepository.findByUsername("user1");
@@ -208,4 +274,76 @@ public class NotificationRepositoryTests {
         assertTrue(readNotification1);
         assertFalse(readNotification2);
     }
+
+    @Test
+    public void notifyUsersWithUsernamesAboutMention_OnlyNotifiesExistingUsersOtherThanAuthor() {
+        Optional<User> u1 = userRepository.findByUsername("user1");
+        Optional<User> u2 = userRepository.findByUsername("user2");
+
+        // given
+        Post savedMention = postRepository.save(new Post(u2.get(), "@user1 @user2 @doesntexist"));
+
+        // when
+        List<String> notified = notificationRepository.notifyUsersWithUsernamesAboutMention(
+                savedMention.getUuid(), List.of("user1", "user2", "doesntexist"), new Date());
+        List<NotificationResult> notificationsOfUser1 = notificationRepository
+                .findAllNotificationsOfUser(u1.get().getUuid(), 0L, 10L);
+        List<NotificationResult> notificationsOfUser2 = notificationRepository
+                .findAllNotificationsOfUser(u2.get().getUuid(), 0L, 10L);
+
+        // then
+        assertEquals(List.of(u1.get().getUuid().toString()), notified);
+        assertEquals(1, notificationsOfUser1.size());
+        assertEquals("mention", notificationsOfUser1.get(0).getType());
+        assertEquals(savedMention.getUuid(), notificationsOfUser1.get(0).getNotificationPost());
+        assertEquals(1L, notificationRepository.countUnreadNotificationsOfUser(u1.get().getUuid()));
+        assertEquals(0, notificationsOfUser2.size());
+    }
+
+    @Test
+    public void notifyAuthorOfParentOfPost_NotifiesAuthorOfRespondedToPostOnlyOnce() {
+        Optional<User> u1 = userRepository.findByUsername("user1");
+        Optional<User> u2 = userRepository.findByUsername("user2");
+
+        // given
+        Post savedPost = postRepository.save(new Post(u1.get(), "test content of a post"));
+        ResponsePost savedResponse = postRepository.save(new ResponsePost(u2.get(), "response", savedPost));
+
+        // when
+        Optional<String> notified1 = notificationRepository.notifyAuthorOfParentOfPost(savedResponse.getUuid(), new Date());
+        // retried notification doesn't create another relationship
+        Optional<String> notified2 = notificationRepository.notifyAuthorOfParentOfPost(savedResponse.getUuid(), new Date());
+        List<NotificationResult> notificationsOfUser1 = notificationRepository
+                .findAllNotificationsOfUser(u1.get().getUuid(), 0L, 10L);
+
+        // then
+        assertEquals(Optional.of(u1.get().getUuid().toString()), notified1);
+        assertEquals(Optional.of(u1.get().getUuid().toString()), notified2);
+        assertEquals(1, notificationsOfUser1.size());
+        assertEquals("response", notificationsOfUser1.get(0).getType());
+        assertEquals(savedResponse.getUuid(), notificationsOfUser1.get(0).getNotificationPost());
+    }
+
+    @Test
+    public void notifyAuthorOfParentOfPost_DoesNotNotifyAuthorQuotingTheirOwnPost() {
+        Optional<User> u1 = userRepository.findByUsername("user1");
+        Optional<User> u2 = userRepository.findByUsername("user2");
+
+        // given
+        Post savedPost = postRepository.save(new Post(u1.get(), "test content of a post"));
+        QuotePost ownQuote = postRepository.save(new QuotePost(u1.get(), "quote", savedPost));
+        QuotePost otherQuote = postRepository.save(new QuotePost(u2.get(), "quote", savedPost));
+
+        // when
+        Optional<String> notified1 = notificationRepository.notifyAuthorOfParentOfPost(ownQuote.getUuid(), new Date());
+        Optional<String> notified2 = notificationRepository.notifyAuthorOfParentOfPost(otherQuote.getUuid(), new Date());
+        List<NotificationResult> notificationsOfUser1 = notificationRepository
+                .findAllNotificationsOfUser(u1.get().getUuid(), 0L, 10L);
+
+        // then
+        assertTrue(notified1.isEmpty());
+        assertTrue(notified2.isPresent());
+        assertEquals(1, notificationsOfUser1.size());
+        assertEquals("quote", notificationsOfUser1.get(0).getType());
+    }
 }
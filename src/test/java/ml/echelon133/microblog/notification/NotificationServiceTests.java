@@ -3,9 +3,11 @@ package ml.echelon133.microblog.notification;
 import ml.echelon133.microblog.notification.model.NotificationResult;
 import ml.echelon133.microblog.notification.repository.NotificationRepository;
 import ml.echelon133.microblog.notification.service.NotificationService;
+import ml.echelon133.microblog.notification.service.UnreadCounterService;
 import ml.echelon133.microblog.post.model.Post;
 import ml.echelon133.microblog.post.model.QuotePost;
 import ml.echelon133.microblog.post.model.ResponsePost;
+import ml.echelon133.microblog.stream.service.StreamService;
 import ml.echelon133.microblog.user.model.User;
 import ml.echelon133.microblog.user.model.UserPrincipal;
 import org.junit.jupiter.api.Test;
@@ -15,11 +17,10 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.core.GrantedAuthority;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.BDDMockito.given;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,6 +29,12 @@ public class NotificationServiceTests {
     @Mock
     private NotificationRepository notificationRepository;
 
+    @Mock
+    private StreamService streamService;
+
+    @Mock
+    private UnreadCounterService unreadCounterService;
+
     @InjectMocks
     private NotificationService notificationService;
 
@@ -83,7 +90,7 @@ public class NotificationServiceTests {
     @Test
     public void countUnreadNotificationsOfUser_Works() {
         // given
-        given(notificationRepository.countUnreadNotificationsOfUser(mockUser.getUuid()))
+        given(unreadCounterService.getUnreadCount(mockUser.getUuid()))
                 .willReturn(10L);
 
         // when
@@ -96,7 +103,7 @@ public class NotificationServiceTests {
     @Test
     public void readAllNotificationsOfUser_Works() {
         // given
-        given(notificationRepository.readAllNotificationsOfUser(mockUser.getUuid()))
+        given(notificationRepository.readAllNotificationsOfUser(eq(mockUser.getUuid()), any(Date.class)))
                 .willReturn(10L);
 
         // when
@@ -122,83 +129,72 @@ public class NotificationServiceTests {
     }
 
     @Test
-    public void notifyAboutResponse_DoesNotNotifyAboutUserRespondingToTheirOwnPosts() {
+    public void notifyAuthorOfParentPost_ReturnsFalseWhenNobodyNotified() {
         User author = new User();
         author.setUuid(UUID.randomUUID());
 
         ResponsePost responsePost = new ResponsePost(author, "", null);
+        responsePost.setUuid(UUID.randomUUID());
 
-        // when
-        boolean notified = notificationService.notifyAboutResponse(responsePost, author);
-
-        // then
-        assertFalse(notified);
-    }
-
-    @Test
-    public void notifyAboutResponse_NotifiesAboutUserRespondingToAnotherUserPost() {
-        User author = new User();
-        author.setUuid(UUID.randomUUID());
-        User notifyUser = new User();
-        notifyUser.setUuid(UUID.randomUUID());
-
-        ResponsePost responsePost = new ResponsePost(author, "", null);
+        // given
+        given(notificationRepository.notifyAuthorOfParentOfPost(eq(responsePost.getUuid()), any()))
+                .willReturn(Optional.empty());
 
         // when
-        boolean notified = notificationService.notifyAboutResponse(responsePost, notifyUser);
+        boolean notified = notificationService.notifyAuthorOfParentPost(responsePost);
 
         // then
-        assertTrue(notified);
+        assertFalse(notified);
     }
 
     @Test
-    public void notifyAboutQuote_DoesNotNotifyAboutUserQuotingTheirOwnPosts() {
+    public void notifyAuthorOfParentPost_ReturnsTrueWhenAuthorNotified() {
         User author = new User();
         author.setUuid(UUID.randomUUID());
+        UUID notifiedUserUuid = UUID.randomUUID();
 
         QuotePost quotePost = new QuotePost(author, "", null);
+        quotePost.setUuid(UUID.randomUUID());
+
+        // given
+        given(notificationRepository.notifyAuthorOfParentOfPost(eq(quotePost.getUuid()), any()))
+                .willReturn(Optional.of(notifiedUserUuid.toString()));
 
         // when
-        boolean notified = notificationService.notifyAboutQuote(quotePost, author);
+        boolean notified = notificationService.notifyAuthorOfParentPost(quotePost);
 
         // then
-        assertFalse(notified);
+        assertTrue(notified);
     }
 
     @Test
-    public void notifyAboutQuote_NotifiesAboutUserQuotingAnotherUserPost() {
-        User author = new User();
+    public void notifyAboutMention_ReturnsNumberOfNotifiedUsers() {
+        User author = new User("author", "", "", "");
         author.setUuid(UUID.randomUUID());
-        User notifyUser = new User();
-        notifyUser.setUuid(UUID.randomUUID());
+        Post post = new Post(author, "testtest");
+        post.setUuid(UUID.randomUUID());
 
-        QuotePost quotePost = new QuotePost(author, "", null);
+        // given
+        // one mentioned user is the author of the post, so they are not notified
+        given(notificationRepository.notifyUsersWithUsernamesAboutMention(
+                eq(post.getUuid()), argThat(usernames -> usernames.size() == 3), any(Date.class)))
+                .willReturn(List.of(UUID.randomUUID().toString(), UUID.randomUUID().toString()));
 
         // when
-        boolean notified = notificationService.notifyAboutQuote(quotePost, notifyUser);
+        Long notifiedCounter = notificationService.notifyAboutMention(post, Set.of("author", "user1", "user2"));
 
         // then
-        assertTrue(notified);
+        assertEquals(2, notifiedCounter);
     }
 
     @Test
-    public void notifyAboutMention_NotifiesAllUsersWhoAreNotAuthorsOfPost() {
-        User author = new User();
-        author.setUuid(UUID.randomUUID());
-        User notifyUser1 = new User();
-        notifyUser1.setUuid(UUID.randomUUID());
-        User notifyUser2 = new User();
-        notifyUser2.setUuid(UUID.randomUUID());
-
-        Post post = new Post(author, "testtest");
-
-        List<User> mentionedUsers = List.of(author, notifyUser1, notifyUser2);
+    public void notifyAboutMention_DoesNothingWhenNobodyIsMentioned() {
+        Post post = new Post(new User(), "testtest");
 
         // when
-        // should return 2, because one mentioned user is the author of the post
-        Long notifiedCounter = notificationService.notifyAboutMention(post, mentionedUsers);
+        Long notifiedCounter = notificationService.notifyAboutMention(post, Set.of());
 
         // then
-        assertEquals(2, notifiedCounter);
+        assertEquals(0, notifiedCounter);
     }
 }
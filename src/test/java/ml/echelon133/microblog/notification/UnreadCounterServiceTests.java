@@ -0,0 +1,176 @@
+package ml.echelon133.microblog.notification;
+
+import ml.echelon133.microblog.notification.model.UnreadCount;
+import ml.echelon133.microblog.notification.repository.NotificationRepository;
+import ml.echelon133.microblog.notification.service.UnreadCounterService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class UnreadCounterServiceTests {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private StringRedisConnection connection;
+
+    @Mock
+    private NotificationRepository notificationRepository;
+
+    @InjectMocks
+    private UnreadCounterService unreadCounterService;
+
+    // the first pipeline returns given results, every next pipeline runs its commands against the mocked connection
+    private void givenPipelines(List<Object> firstResults) {
+        given(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .willReturn(firstResults)
+                .willAnswer(invocation -> {
+                    RedisCallback<?> callback = invocation.getArgument(0);
+                    callback.doInRedis(connection);
+                    return List.of();
+                });
+    }
+
+    @Test
+    public void getUnreadCount_ReadsExistingCounter() {
+        UUID uuid = UUID.randomUUID();
+
+        // given
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(valueOperations.get("notifications:unread:" + uuid)).willReturn("7");
+
+        // when
+        Long count = unreadCounterService.getUnreadCount(uuid);
+
+        // then
+        assertEquals(7L, count);
+    }
+
+    @Test
+    public void getUnreadCount_NeverReturnsNegativeCount() {
+        UUID uuid = UUID.randomUUID();
+
+        // given
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(valueOperations.get("notifications:unread:" + uuid)).willReturn("-1");
+
+        // when
+        Long count = unreadCounterService.getUnreadCount(uuid);
+
+        // then
+        assertEquals(0L, count);
+    }
+
+    @Test
+    public void getUnreadCount_InitializesColdCounter() {
+        UUID uuid = UUID.randomUUID();
+        String key = "notifications:unread:" + uuid;
+
+        // given
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(valueOperations.get(key)).willReturn(null);
+        given(notificationRepository.countUnreadNotificationsOfUser(uuid)).willReturn(3L);
+        given(valueOperations.setIfAbsent(key, "3", UnreadCounterService.COUNTER_TTL_SECONDS, TimeUnit.SECONDS))
+                .willReturn(true);
+
+        // when
+        Long count = unreadCounterService.getUnreadCount(uuid);
+
+        // then
+        assertEquals(3L, count);
+    }
+
+    @Test
+    public void getUnreadCount_CountsInGraphWhenRedisUnavailable() {
+        UUID uuid = UUID.randomUUID();
+
+        // given
+        given(redisTemplate.opsForValue()).willThrow(new RedisConnectionFailureException("connection refused"));
+        given(notificationRepository.countUnreadNotificationsOfUser(uuid)).willReturn(5L);
+
+        // when
+        Long count = unreadCounterService.getUnreadCount(uuid);
+
+        // then
+        assertEquals(5L, count);
+    }
+
+    @Test
+    public void increment_UpdatesCounterOfEveryUserWithScript() {
+        UUID u1 = UUID.randomUUID();
+        UUID u2 = UUID.randomUUID();
+        List<String> increments = new ArrayList<>();
+
+        // given
+        given(redisTemplate.executePipelined(any(RedisCallback.class))).willAnswer(invocation -> {
+            RedisCallback<?> callback = invocation.getArgument(0);
+            callback.doInRedis(connection);
+            return List.of();
+        });
+        // the script itself skips counters which don't exist
+        given(connection.eval(anyString(), eq(ReturnType.INTEGER), eq(1), anyString(), anyString()))
+                .willAnswer(invocation -> {
+                    increments.add(invocation.getArgument(3) + " " + invocation.getArgument(4));
+                    return 1L;
+                });
+
+        // when
+        unreadCounterService.increment(List.of(u1, u2));
+
+        // then
+        assertEquals(List.of("notifications:unread:" + u1 + " 1", "notifications:unread:" + u2 + " 1"), increments);
+    }
+
+    @Test
+    public void reconcile_OverwritesExistingCountersWithCountsFromGraph() {
+        UUID u1 = UUID.randomUUID();
+        UUID u2 = UUID.randomUUID();
+        List<String> writes = new ArrayList<>();
+
+        // given
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(valueOperations.setIfAbsent(eq("notifications:unread:reconcile:lock"), eq("locked"),
+                anyLong(), eq(TimeUnit.MILLISECONDS))).willReturn(true);
+        given(redisTemplate.execute(any(RedisCallback.class)))
+                .willReturn(List.of("notifications:unread:" + u1, "notifications:unread:" + u2));
+        given(notificationRepository.countUnreadNotificationsOfUsers(List.of(u1.toString(), u2.toString())))
+                .willReturn(List.of(new UnreadCount(u1, 4L), new UnreadCount(u2, 0L)));
+        // the counter of the second user has expired since it was scanned
+        givenPipelines(List.of(600L, -2L));
+        given(connection.set(anyString(), anyString(), any(Expiration.class), eq(SetOption.SET_IF_PRESENT)))
+                .willAnswer(invocation -> {
+                    Expiration expiration = invocation.getArgument(2);
+                    writes.add(invocation.getArgument(0) + " " + invocation.getArgument(1) +
+                            " " + expiration.getExpirationTimeInSeconds());
+                    return true;
+                });
+
+        // when
+        unreadCounterService.reconcile();
+
+        // then
+        assertEquals(List.of("notifications:unread:" + u1 + " 4 600"), writes);
+    }
+}
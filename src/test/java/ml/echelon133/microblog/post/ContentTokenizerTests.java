@@ -0,0 +1,91 @@
+package ml.echelon133.microblog.post;
+
+import ml.echelon133.microblog.post.model.ContentEntitiesConverter;
+import ml.echelon133.microblog.post.model.ContentEntity;
+import ml.echelon133.microblog.post.service.ContentTokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentTokenizerTests {
+
+    private static List<String> textsOfType(String content, List<ContentEntity> entities, String type) {
+        return entities
+                .stream()
+                .filter(e -> e.getType().equals(type))
+                .map(e -> e.textIn(content))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void tokenize_ReturnsEmptyListWhenThereAreNoEntities() {
+        // when
+        List<ContentEntity> entities = ContentTokenizer.tokenize("Just some text # @ http:// and https://");
+
+        // then
+        assertTrue(entities.isEmpty());
+    }
+
+    @Test
+    public void tokenize_FindsEntitiesWithTheirOffsets() {
+        String content = "Hi @user1, see https://example.com/a?b=c. #tag1 #x";
+
+        // when
+        List<ContentEntity> entities = ContentTokenizer.tokenize(content);
+
+        // then
+        assertEquals(List.of(
+                new ContentEntity(ContentEntity.MENTION, 3, 9),
+                new ContentEntity(ContentEntity.URL, 15, 40),
+                new ContentEntity(ContentEntity.HASHTAG, 42, 47)), entities);
+        assertEquals("https://example.com/a?b=c", entities.get(1).textIn(content));
+    }
+
+    @Test
+    public void tokenize_MatchesHashtagsAndMentionsLikeRegularExpressions() {
+        String content = "#C1 and #DDDDDDDDDDdddddddddd. Also #a and #bbbbbbbbbbbbbbbbbbbbbbbb, ##ab, " +
+                "@x @aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa mail@test @";
+
+        // when
+        List<ContentEntity> entities = ContentTokenizer.tokenize(content);
+
+        // then
+        Matcher hashtags = Pattern.compile("#([a-zA-Z0-9]{2,20})").matcher(content);
+        Matcher mentions = Pattern.compile("@([A-Za-z0-9]{1,30})").matcher(content);
+        List<String> expectedHashtags = hashtags.results().map(r -> r.group()).collect(Collectors.toList());
+        List<String> expectedMentions = mentions.results().map(r -> r.group()).collect(Collectors.toList());
+
+        assertEquals(expectedHashtags, textsOfType(content, entities, ContentEntity.HASHTAG));
+        assertEquals(expectedMentions, textsOfType(content, entities, ContentEntity.MENTION));
+    }
+
+    @Test
+    public void tokenize_DoesNotFindHashtagsAndMentionsInUrls() {
+        String content = "http://example.com/@user#anchor";
+
+        // when
+        List<ContentEntity> entities = ContentTokenizer.tokenize(content);
+
+        // then
+        assertEquals(List.of(new ContentEntity(ContentEntity.URL, 0, content.length())), entities);
+    }
+
+    @Test
+    public void contentEntitiesConverter_ConvertedEntitiesCanBeRestored() {
+        ContentEntitiesConverter converter = new ContentEntitiesConverter();
+        List<ContentEntity> entities = ContentTokenizer.tokenize("#test @user http://example.com");
+
+        // when
+        String property = converter.toGraphProperty(entities);
+        List<ContentEntity> restored = converter.toEntityAttribute(property);
+
+        // then
+        assertEquals("hashtag:0:5,mention:6:11,url:12:30", property);
+        assertEquals(entities, restored);
+    }
+}
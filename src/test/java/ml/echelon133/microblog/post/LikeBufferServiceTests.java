@@ -0,0 +1,154 @@
+package ml.echelon133.microblog.post;
+
+import ml.echelon133.microblog.post.exception.PostDoesntExistException;
+import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.post.service.LikeBufferService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class LikeBufferServiceTests {
+
+    @Mock
+    private PostRepository postRepository;
+
+    private LikeBufferService likeBufferService;
+
+    @BeforeEach
+    public void beforeEach() {
+        // long enough window for all events of a test to end up in a single batch
+        likeBufferService = new LikeBufferService(postRepository, 200L, 2);
+    }
+
+    @Test
+    public void shouldBuffer_OnlyWhenPostExceedsThreshold() {
+        UUID hotPost = UUID.randomUUID();
+        UUID otherPost = UUID.randomUUID();
+        likeBufferService.setClock(Clock.fixed(Instant.ofEpochMilli(1000L), ZoneId.systemDefault()));
+
+        // when
+        boolean first = likeBufferService.shouldBuffer(hotPost);
+        boolean second = likeBufferService.shouldBuffer(hotPost);
+        boolean third = likeBufferService.shouldBuffer(hotPost);
+        boolean other = likeBufferService.shouldBuffer(otherPost);
+
+        // events from the previous window are not counted
+        likeBufferService.setClock(Clock.fixed(Instant.ofEpochMilli(2000L), ZoneId.systemDefault()));
+        boolean nextWindow = likeBufferService.shouldBuffer(hotPost);
+
+        // then
+        assertFalse(first);
+        assertFalse(second);
+        assertTrue(third);
+        assertFalse(other);
+        assertFalse(nextWindow);
+    }
+
+    @Test
+    public void like_WritesConcurrentLikesInSingleBatch() throws Exception {
+        UUID postUuid = UUID.randomUUID();
+        List<List<Map<String, Object>>> batches = Collections.synchronizedList(new ArrayList<>());
+
+        // given
+        given(postRepository.likePostsInBatch(anyList())).willAnswer(invocation -> {
+            batches.add(invocation.getArgument(0));
+            return List.of(postUuid.toString());
+        });
+
+        // when
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            UUID userUuid = UUID.randomUUID();
+            results.add(executor.submit(() -> likeBufferService.like(userUuid, postUuid)));
+        }
+
+        // then
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(1, batches.size());
+        assertEquals(1, batches.get(0).size());
+        assertEquals(postUuid.toString(), batches.get(0).get(0).get("post"));
+        assertEquals(3, ((List<?>) batches.get(0).get(0).get("users")).size());
+    }
+
+    @Test
+    public void like_ThrowsWhenPostDoesntExist() {
+        UUID postUuid = UUID.randomUUID();
+
+        // given
+        given(postRepository.likePostsInBatch(anyList())).willReturn(List.of());
+        given(postRepository.postWithUuidExists(postUuid)).willReturn(false);
+
+        // when
+        String message = assertThrows(PostDoesntExistException.class, () -> {
+            likeBufferService.like(UUID.randomUUID(), postUuid);
+        }).getMessage();
+
+        // then
+        assertEquals(String.format("Post with UUID %s doesn't exist", postUuid), message);
+    }
+
+    @Test
+    public void like_ReturnsFalseWhenPostMarkedAsDeleted() throws Exception {
+        UUID postUuid = UUID.randomUUID();
+
+        // given
+        given(postRepository.likePostsInBatch(anyList())).willReturn(List.of());
+        given(postRepository.postWithUuidExists(postUuid)).willReturn(true);
+
+        // when
+        boolean result = likeBufferService.like(UUID.randomUUID(), postUuid);
+
+        // then
+        assertFalse(result);
+    }
+
+    @Test
+    public void unlike_ReturnsTrueWhenPostExists() throws Exception {
+        UUID postUuid = UUID.randomUUID();
+
+        // given
+        given(postRepository.unlikePostsInBatch(anyList())).willReturn(List.of(postUuid.toString()));
+
+        // when
+        boolean result = likeBufferService.unlike(UUID.randomUUID(), postUuid);
+
+        // then
+        assertTrue(result);
+    }
+
+    @Test
+    public void like_RethrowsFailureOfBatch() {
+        // given
+        given(postRepository.likePostsInBatch(anyList())).willThrow(new IllegalStateException("test failure"));
+
+        // when
+        String message = assertThrows(IllegalStateException.class, () -> {
+            likeBufferService.like(UUID.randomUUID(), UUID.randomUUID());
+        }).getMessage();
+
+        // then
+        assertEquals("test failure", message);
+    }
+}
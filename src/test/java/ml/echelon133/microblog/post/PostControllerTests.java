@@ -6,6 +6,7 @@ import ml.echelon133.microblog.post.exception.PostDoesntExistException;
 import ml.echelon133.microblog.post.exception.PostExceptionHandler;
 import ml.echelon133.microblog.post.exception.UserCannotDeletePostException;
 import ml.echelon133.microblog.post.model.*;
+import ml.echelon133.microblog.post.service.PostPipelineService;
 import ml.echelon133.microblog.post.service.PostService;
 import ml.echelon133.microblog.user.model.User;
 import ml.echelon133.microblog.user.model.UserPost;
@@ -25,6 +26,7 @@ import org.springframework.security.web.context.SecurityContextPersistenceFilter
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -48,6 +50,9 @@ public class PostControllerTests {
     @Mock
     private UserService userService;
 
+    @Mock
+    private PostPipelineService pipelineService;
+
     @InjectMocks
     private PostController postController;
 
@@ -58,8 +63,12 @@ public class PostControllerTests {
 
     private JacksonTester<PostInfo> jsonPostInfo;
 
+    private JacksonTester<List<PostWithInfo>> jsonPostWithInfoList;
+
     private JacksonTester<List<UserPost>> jsonUserPostList;
 
+    private JacksonTester<PostThread> jsonPostThread;
+
     private JacksonTester<PostDto> jsonPostDto;
 
     private JacksonTester<ResponseDto> jsonResponseDto;
@@ -91,6 +100,64 @@ public class PostControllerTests {
                 .build();
     }
 
+    @Test
+    public void getPostsWithUuids_HandlesInvalidUuid() throws Exception {
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/posts")
+                        .accept(APPLICATION_JSON)
+                        .param("uuids", UUID.randomUUID() + ",asdf")
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(response.getContentAsString()).contains("Invalid UUID string");
+    }
+
+    @Test
+    public void getPostsWithUuids_RejectsTooManyUuidsBeforeParsingThem() throws Exception {
+        List<String> uuids = new ArrayList<>();
+        for (int i = 0; i <= PostService.MAX_POSTS_PER_MULTI_GET; i++) {
+            uuids.add("invalid" + i);
+        }
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/posts")
+                        .accept(APPLICATION_JSON)
+                        .param("uuids", String.join(",", uuids))
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(response.getContentAsString())
+                .contains(String.format("At most %d posts can be requested at once.", PostService.MAX_POSTS_PER_MULTI_GET));
+    }
+
+    @Test
+    public void getPostsWithUuids_ReturnsPosts() throws Exception {
+        UUID uuid1 = UUID.randomUUID();
+        UUID uuid2 = UUID.randomUUID();
+        List<PostWithInfo> posts = List.of(new PostWithInfo(new UserPost(), new PostInfo()));
+
+        // json
+        JsonContent<List<PostWithInfo>> json = jsonPostWithInfoList.write(posts);
+
+        // given
+        given(postService.getAllWithInfoByUuids(List.of(uuid1, uuid2))).willReturn(posts);
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/posts")
+                        .accept(APPLICATION_JSON)
+                        .param("uuids", uuid1 + "," + uuid2)
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(json.getJson());
+    }
+
     @Test
     public void getPostWithUuid_HandlesInvalidUuid() throws Exception {
         String invalidUuid = "asdf";
@@ -210,6 +277,54 @@ public class PostControllerTests {
         assertThat(response.getContentAsString()).isEqualTo(json.getJson());
     }
 
+    @Test
+    public void getThreadOfPost_DoesntExist() throws Exception {
+        UUID uuid = UUID.randomUUID();
+
+        // given
+        given(postService.getThread(uuid, 0L, 20L))
+                .willThrow(new PostDoesntExistException(uuid));
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/posts/" + uuid + "/thread")
+                        .accept(APPLICATION_JSON)
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_FOUND.value());
+        assertThat(response.getContentAsString())
+                .contains(String.format("Post with UUID %s doesn't exist", uuid.toString()));
+    }
+
+    @Test
+    public void getThreadOfPost_ReturnsThread() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        UserPost post = new UserPost();
+        post.setUuid(uuid);
+        post.setDepth(1);
+        PostThread thread = new PostThread(List.of(new UserPost()), post, List.of(new UserPost(), new UserPost()));
+
+        // expected json
+        JsonContent<PostThread> json = jsonPostThread.write(thread);
+
+        // given
+        given(postService.getThread(uuid, 5L, 10L))
+                .willReturn(thread);
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/posts/" + uuid + "/thread")
+                        .accept(APPLICATION_JSON)
+                        .param("skip", "5")
+                        .param("limit", "10")
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(json.getJson());
+    }
+
     @Test
     public void getResponsesToPost_HandlesInvalidUuid() throws Exception {
         String invalidUuid = "asdf";
@@ -785,8 +900,6 @@ public class PostControllerTests {
 
         // given
         given(postService.postPost(testUser, dto1.getContent())).willReturn(b);
-        given(userService.findByUsername(testUser.getUsername()))
-                .willReturn(testUser);
 
         // when
         MockHttpServletResponse response = mockMvc.perform(
@@ -862,8 +975,6 @@ public class PostControllerTests {
 
         // given
         given(postService.postResponse(testUser, dto1.getContent(), postUuid)).willReturn(b);
-        given(userService.findByUsername(testUser.getUsername()))
-                .willReturn(testUser);
 
         // when
         MockHttpServletResponse response = mockMvc.perform(
@@ -889,10 +1000,6 @@ public class PostControllerTests {
         // json
         JsonContent<ResponseDto> json = jsonResponseDto.write(dto1);
 
-        // given
-        given(userService.findByUsername(testUser.getUsername()))
-                .willReturn(testUser);
-
         // when
         MockHttpServletResponse response = mockMvc.perform(
                 post("/api/posts/" + invalidUuid + "/responses")
@@ -967,8 +1074,6 @@ public class PostControllerTests {
 
         // given
         given(postService.postQuote(testUser, dto1.getContent(), postUuid)).willReturn(b1);
-        given(userService.findByUsername(testUser.getUsername()))
-                .willReturn(testUser);
 
         // when
         MockHttpServletResponse response1 = mockMvc.perform(
@@ -994,10 +1099,6 @@ public class PostControllerTests {
         // json
         JsonContent<QuotePostDto> json = jsonQuotesDto.write(dto1);
 
-        // given
-        given(userService.findByUsername(testUser.getUsername()))
-                .willReturn(testUser);
-
         // when
         MockHttpServletResponse response = mockMvc.perform(
                 post("/api/posts/" + invalidUuid + "/quotes")
@@ -1016,10 +1117,6 @@ public class PostControllerTests {
     public void deletePost_HandlesInvalidUuid() throws Exception {
         String invalidUuid = "test";
 
-        // given
-        given(userService.findByUsername(testUser.getUsername()))
-                .willReturn(testUser);
-
         // when
         MockHttpServletResponse response = mockMvc.perform(
                 delete("/api/posts/" + invalidUuid)
@@ -1039,8 +1136,6 @@ public class PostControllerTests {
         // given
         given(postService.markPostAsDeleted(testUser, uuid))
                 .willThrow(new UserCannotDeletePostException(testUser, uuid));
-        given(userService.findByUsername(testUser.getUsername()))
-                .willReturn(testUser);
 
         // when
         MockHttpServletResponse response = mockMvc.perform(
@@ -1063,8 +1158,6 @@ public class PostControllerTests {
         // given
         given(postService.markPostAsDeleted(testUser, uuid))
                 .willReturn(true);
-        given(userService.findByUsername(testUser.getUsername()))
-                .willReturn(testUser);
 
         // when
         MockHttpServletResponse response = mockMvc.perform(
@@ -1086,8 +1179,6 @@ public class PostControllerTests {
         // given
         given(postService.markPostAsDeleted(testUser, uuid))
                 .willReturn(false);
-        given(userService.findByUsername(testUser.getUsername()))
-                .willReturn(testUser);
 
         // when
         MockHttpServletResponse response = mockMvc.perform(
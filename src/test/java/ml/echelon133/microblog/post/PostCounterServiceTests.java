@@ -0,0 +1,52 @@
+package ml.echelon133.microblog.post;
+
+import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.post.service.PostCounterService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class PostCounterServiceTests {
+
+    @Mock
+    private PostRepository postRepository;
+
+    @InjectMocks
+    private PostCounterService postCounterService;
+
+    private List<String> createBatch(long size, int prefix) {
+        List<String> batch = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            batch.add(String.format("%d-%05d", prefix, i));
+        }
+        return batch;
+    }
+
+    @Test
+    public void reconcileCounters_ContinuesAfterLastUuidOfEveryFullBatch() {
+        List<String> firstBatch = createBatch(PostCounterService.BATCH_SIZE, 1);
+        List<String> secondBatch = createBatch(10, 2);
+        String lastOfFirstBatch = firstBatch.get(firstBatch.size() - 1);
+
+        // given
+        given(postRepository.reconcileCountersOfPosts_After("", PostCounterService.BATCH_SIZE))
+                .willReturn(firstBatch);
+        given(postRepository.reconcileCountersOfPosts_After(lastOfFirstBatch, PostCounterService.BATCH_SIZE))
+                .willReturn(secondBatch);
+
+        // when
+        long checked = postCounterService.reconcileCounters();
+
+        // then
+        assertEquals(PostCounterService.BATCH_SIZE + 10, checked);
+    }
+}
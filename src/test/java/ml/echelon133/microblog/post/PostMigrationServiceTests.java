@@ -0,0 +1,60 @@
+package ml.echelon133.microblog.post;
+
+import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.post.service.PostMigrationService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+
+@ExtendWith(MockitoExtension.class)
+public class PostMigrationServiceTests {
+
+    @Mock
+    private PostRepository postRepository;
+
+    @InjectMocks
+    private PostMigrationService postMigrationService;
+
+    @Test
+    public void relabelDeletedPosts_RunsUntilBatchIsNotFull() {
+        // given
+        given(postRepository.relabelDeletedPosts(PostMigrationService.BATCH_SIZE))
+                .willReturn(PostMigrationService.BATCH_SIZE, PostMigrationService.BATCH_SIZE, 10L);
+
+        // when
+        long relabeled = postMigrationService.relabelDeletedPosts();
+
+        // then
+        assertEquals(PostMigrationService.BATCH_SIZE * 2 + 10, relabeled);
+    }
+
+    @Test
+    public void storeConversationsOfResponses_RunsUntilBatchIsNotFull() {
+        // given
+        given(postRepository.storeConversationsOfResponses(PostMigrationService.BATCH_SIZE))
+                .willReturn(PostMigrationService.BATCH_SIZE, 0L);
+
+        // when
+        long updated = postMigrationService.storeConversationsOfResponses();
+
+        // then
+        assertEquals(PostMigrationService.BATCH_SIZE, updated);
+    }
+
+    @Test
+    public void tryMigrate_DoesNotThrowWhenDatabaseIsUnavailable() {
+        // given
+        willThrow(new DataAccessResourceFailureException("connection refused"))
+                .given(postRepository).createIndexOnDeletedFlags();
+
+        // then
+        assertDoesNotThrow(() -> postMigrationService.tryMigrate());
+    }
+}
@@ -0,0 +1,129 @@
+package ml.echelon133.microblog.post;
+
+import ml.echelon133.microblog.post.model.PipelineStats;
+import ml.echelon133.microblog.post.service.PostPipelineService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PostPipelineServiceTests {
+
+    private PostPipelineService pipelineService;
+
+    @BeforeEach
+    public void beforeEach() {
+        pipelineService = new PostPipelineService(2, 10, 1L);
+    }
+
+    @Test
+    public void submit_RunsSubmittedTasks() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+
+        // when
+        for (int i = 0; i < 5; i++) {
+            pipelineService.submit("increment", counter::incrementAndGet);
+        }
+        // waits until all queued tasks are finished
+        pipelineService.shutdown();
+
+        // then
+        PipelineStats stats = pipelineService.getStats();
+        assertEquals(5, counter.get());
+        assertEquals(5, stats.getCompletedTasks());
+        assertEquals(0, stats.getQueueDepth());
+    }
+
+    @Test
+    public void submit_RetriesFailedTasks() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        // when
+        pipelineService.submit("fails once", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("first attempt fails");
+            }
+        });
+        pipelineService.shutdown();
+
+        // then
+        PipelineStats stats = pipelineService.getStats();
+        assertEquals(2, attempts.get());
+        assertEquals(1, stats.getCompletedTasks());
+        assertEquals(1, stats.getRetriedAttempts());
+        assertEquals(0, stats.getDeadLetteredTasks());
+    }
+
+    @Test
+    public void submit_DeadLettersTasksWhichKeepFailing() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        // when
+        pipelineService.submit("always fails", () -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("every attempt fails");
+        });
+        pipelineService.shutdown();
+
+        // then
+        PipelineStats stats = pipelineService.getStats();
+        assertEquals(PostPipelineService.MAX_ATTEMPTS, attempts.get());
+        assertEquals(0, stats.getCompletedTasks());
+        assertEquals(1, stats.getDeadLetteredTasks());
+    }
+
+    @Test
+    public void submit_DeadLettersRetriesWhichFindQueueFull() throws Exception {
+        PostPipelineService pipeline = new PostPipelineService(1, 1, 50L);
+        CountDownLatch blockerStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // when
+        pipeline.submit("fails once", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                // keeps the only worker busy, so that the queue stays full until every retry has been rejected
+                pipeline.submit("blocker", () -> {
+                    blockerStarted.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                throw new IllegalStateException("first attempt fails");
+            }
+        });
+        blockerStarted.await();
+        pipeline.submit("fills the queue", () -> {});
+        while (pipeline.getStats().getDeadLetteredTasks() == 0) {
+            Thread.sleep(10L);
+        }
+        release.countDown();
+        pipeline.shutdown();
+
+        // then
+        // retries weren't run by the retry scheduler while the queue was full
+        PipelineStats stats = pipeline.getStats();
+        assertEquals(1, attempts.get());
+        assertEquals(1, stats.getDeadLetteredTasks());
+        assertEquals(2, stats.getCompletedTasks());
+    }
+
+    @Test
+    public void submit_RunsTasksSubmittedAfterShutdownInCaller() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+
+        // given
+        pipelineService.shutdown();
+
+        // when
+        pipelineService.submit("increment", counter::incrementAndGet);
+
+        // then
+        assertEquals(1, counter.get());
+    }
+}
@@ -2,6 +2,9 @@ package ml.echelon133.microblog.post;
 
 import ml.echelon133.microblog.post.model.*;
 import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.post.service.ContentTokenizer;
+import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.repository.TagRepository;
 import ml.echelon133.microblog.user.model.User;
 import ml.echelon133.microblog.user.model.UserPost;
 import ml.echelon133.microblog.user.repository.UserRepository;
@@ -25,10 +28,13 @@ public class PostRepositoryTests {
 
     private PostRepository postRepository;
 
+    private TagRepository tagRepository;
+
     @Autowired
-    public PostRepositoryTests(UserRepository userRepository, PostRepository postRepository) {
+    public PostRepositoryTests(UserRepository userRepository, PostRepository postRepository, TagRepository tagRepository) {
         this.userRepository = userRepository;
         this.postRepository = postRepository;
+        this.tagRepository = tagRepository;
     }
 
     private User createTestUser(String username) {
@@ -39,6 +45,11 @@ public class PostRepositoryTests {
         return u;
     }
 
+    // posts saved with the 'deleted' property set still have the 'Post' label, marking a post as deleted swaps it
+    private void relabelDeletedPosts() {
+        postRepository.relabelDeletedPosts(100L);
+    }
+
     private Post createTestPost(User user, String content, Long minutesAgo) {
         /*
             Sometimes when createTestPost is called from a loop,
@@ -151,6 +162,282 @@ public class PostRepositoryTests {
         assertNotNull(savedPost.getUuid());
     }
 
+    @Test
+    public void getPostWithUuid_ReturnsEntitiesOfPost() {
+        User user = userRepository.findByUsername("test1").get();
+        Post post = new Post(user, "#test @test1");
+        post.setEntities(ContentTokenizer.tokenize(post.getContent()));
+        Post savedPost = postRepository.save(post);
+
+        // when
+        Optional<UserPost> found = postRepository.getPostWithUuid(savedPost.getUuid());
+
+        // then
+        assertTrue(found.isPresent());
+        assertEquals(post.getEntities(), found.get().getEntities());
+    }
+
+    @Test
+    public void createPost_CreatesResponseWithTagsInSingleQuery() {
+        User u1 = userRepository.findByUsername("test1").get();
+        User u2 = userRepository.findByUsername("test2").get();
+        Post parent = postRepository.save(new Post(u1, "parent"));
+        Tag tag = tagRepository.save(new Tag("test"));
+        UUID uuid = UUID.randomUUID();
+        String entities = new ContentEntitiesConverter().toGraphProperty(ContentTokenizer.tokenize("#test"));
+
+        // when
+        Optional<String> created = postRepository.createPost(uuid, u2.getUuid(), "#test", entities, new Date(),
+                List.of(tag.getUuid().toString()), parent.getUuid(), null);
+        Optional<UserPost> found = postRepository.getPostWithUuid(uuid);
+        Optional<Post> loaded = postRepository.findById(uuid);
+
+        // then
+        assertEquals(Optional.of(uuid.toString()), created);
+        assertTrue(found.isPresent());
+        assertEquals(u2.getUuid(), found.get().getAuthor().getUuid());
+        assertEquals(parent.getUuid(), found.get().getRespondsTo());
+        assertEquals(1, found.get().getEntities().size());
+        assertTrue(loaded.isPresent());
+        assertTrue(loaded.get() instanceof ResponsePost);
+        assertFalse(loaded.get().isDeleted());
+        assertEquals(Set.of("test"), loaded.get().getTags().stream().map(Tag::getName).collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void createPost_IsEmptyWhenQuotedPostMarkedAsDeleted() {
+        User u1 = userRepository.findByUsername("test1").get();
+        Post quoted = new Post(u1, "quoted");
+        quoted.markAsDeleted();
+        postRepository.save(quoted);
+        relabelDeletedPosts();
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        Optional<String> created1 = postRepository.createPost(uuid, u1.getUuid(), "quote", "", new Date(),
+                List.of(), null, quoted.getUuid());
+        Optional<String> created2 = postRepository.createPost(uuid, u1.getUuid(), "quote", "", new Date(),
+                List.of(), null, UUID.randomUUID());
+
+        // then
+        assertTrue(created1.isEmpty());
+        assertTrue(created2.isEmpty());
+        assertFalse(postRepository.existsById(uuid));
+    }
+
+    // creates a response with a creation date that's 'millis' after the epoch, so that the order of responses is known
+    private UUID createTestResponse(User author, UUID respondsToUuid, long millis) {
+        UUID uuid = UUID.randomUUID();
+        postRepository.createPost(uuid, author.getUuid(), "response", "", new Date(millis),
+                List.of(), respondsToUuid, null);
+        return uuid;
+    }
+
+    @Test
+    public void createPost_StoresConversationOfResponse() {
+        User u1 = userRepository.findByUsername("test1").get();
+        Post root = postRepository.save(new Post(u1, "root"));
+
+        // when
+        UUID r1 = createTestResponse(u1, root.getUuid(), 1L);
+        UUID r2 = createTestResponse(u1, r1, 2L);
+        ResponsePost loaded1 = (ResponsePost) postRepository.findById(r1).get();
+        ResponsePost loaded2 = (ResponsePost) postRepository.findById(r2).get();
+
+        // then
+        assertEquals(root.getUuid(), loaded1.getRootUuid());
+        assertEquals(1, loaded1.getDepth());
+        assertEquals(root.getUuid(), loaded2.getRootUuid());
+        assertEquals(2, loaded2.getDepth());
+    }
+
+    @Test
+    public void createPost_FindsConversationOfResponseWhichHasNotBeenMigrated() {
+        User u1 = userRepository.findByUsername("test1").get();
+        Post root = postRepository.save(new Post(u1, "root"));
+        // responses which are saved don't know their conversation, just like the ones created before it was stored
+        Post r1 = postRepository.save(new ResponsePost(u1, "r1", root));
+        Post r2 = postRepository.save(new ResponsePost(u1, "r2", r1));
+
+        // when
+        UUID r3 = createTestResponse(u1, r2.getUuid(), 3L);
+        ResponsePost loaded3 = (ResponsePost) postRepository.findById(r3).get();
+
+        // then
+        assertEquals(root.getUuid(), loaded3.getRootUuid());
+        assertEquals(3, loaded3.getDepth());
+    }
+
+    @Test
+    public void getThreadOfPostWithUuid_ReturnsAncestorsPostAndDescendants() {
+        User u1 = userRepository.findByUsername("test1").get();
+        Post root = postRepository.save(new Post(u1, "root"));
+        UUID r1 = createTestResponse(u1, root.getUuid(), 1L);
+        UUID r2 = createTestResponse(u1, r1, 2L);
+        UUID r3 = createTestResponse(u1, root.getUuid(), 3L);
+        UUID r4 = createTestResponse(u1, r2, 4L);
+        UUID r5 = createTestResponse(u1, r1, 5L);
+
+        // when
+        List<UUID> threadOfRoot = postRepository.getThreadOfPostWithUuid(root.getUuid(), 0L, 10L)
+                .stream().map(UserPost::getUuid).collect(Collectors.toList());
+        List<UserPost> threadOfR2 = postRepository.getThreadOfPostWithUuid(r2, 0L, 10L);
+        List<UUID> pageOfThreadOfR1 = postRepository.getThreadOfPostWithUuid(r1, 1L, 1L)
+                .stream().map(UserPost::getUuid).collect(Collectors.toList());
+
+        // then
+        assertEquals(List.of(root.getUuid(), r1, r2, r3, r4, r5), threadOfRoot);
+        // responses to other posts of the conversation are not descendants of r2
+        assertEquals(List.of(root.getUuid(), r1, r2, r4),
+                threadOfR2.stream().map(UserPost::getUuid).collect(Collectors.toList()));
+        assertEquals(List.of(0, 1, 2, 3),
+                threadOfR2.stream().map(UserPost::getDepth).collect(Collectors.toList()));
+        assertEquals(r1, threadOfR2.get(2).getRespondsTo());
+        // skip and limit only apply to descendants
+        assertEquals(List.of(root.getUuid(), r1, r4), pageOfThreadOfR1);
+    }
+
+    @Test
+    public void getThreadOfPostWithUuid_ReturnsPostWhenPageIsPastLastDescendant() {
+        User u1 = userRepository.findByUsername("test1").get();
+        Post root = postRepository.save(new Post(u1, "root"));
+        UUID r1 = createTestResponse(u1, root.getUuid(), 1L);
+        createTestResponse(u1, r1, 2L);
+
+        // when
+        List<UUID> thread = postRepository.getThreadOfPostWithUuid(r1, 5L, 10L)
+                .stream().map(UserPost::getUuid).collect(Collectors.toList());
+
+        // then
+        assertEquals(List.of(root.getUuid(), r1), thread);
+    }
+
+    @Test
+    public void getThreadOfPostWithUuid_SkipsPostsMarkedAsDeleted() {
+        User u1 = userRepository.findByUsername("test1").get();
+        Post root = postRepository.save(new Post(u1, "root"));
+        UUID r1 = createTestResponse(u1, root.getUuid(), 1L);
+        UUID r2 = createTestResponse(u1, r1, 2L);
+        UUID r3 = createTestResponse(u1, r2, 3L);
+        postRepository.markPostWithUuidAsDeletedByUserWithUuid(r1, u1.getUuid());
+
+        // when
+        List<UUID> threadOfR3 = postRepository.getThreadOfPostWithUuid(r3, 0L, 10L)
+                .stream().map(UserPost::getUuid).collect(Collectors.toList());
+        List<UUID> threadOfRoot = postRepository.getThreadOfPostWithUuid(root.getUuid(), 0L, 10L)
+                .stream().map(UserPost::getUuid).collect(Collectors.toList());
+        List<UserPost> threadOfR1 = postRepository.getThreadOfPostWithUuid(r1, 0L, 10L);
+
+        // then
+        assertEquals(List.of(root.getUuid(), r2, r3), threadOfR3);
+        assertEquals(List.of(root.getUuid(), r2, r3), threadOfRoot);
+        assertTrue(threadOfR1.isEmpty());
+    }
+
+    @Test
+    public void storeConversationsOfResponses_UpdatesResponsesWithoutConversation() {
+        User u1 = userRepository.findByUsername("test1").get();
+        Post root = postRepository.save(new Post(u1, "root"));
+        Post r1 = new ResponsePost(u1, "r1", root);
+        Post r2 = new ResponsePost(u1, "r2", r1);
+        r1.setCreationDate(new Date(1L));
+        r2.setCreationDate(new Date(2L));
+        postRepository.save(r1);
+        postRepository.save(r2);
+
+        // when
+        long updated = postRepository.storeConversationsOfResponses(100L);
+        long updatedAgain = postRepository.storeConversationsOfResponses(100L);
+        List<UUID> thread = postRepository.getThreadOfPostWithUuid(root.getUuid(), 0L, 10L)
+                .stream().map(UserPost::getUuid).collect(Collectors.toList());
+
+        // then
+        assertEquals(2L, updated);
+        assertEquals(0L, updatedAgain);
+        assertEquals(List.of(root.getUuid(), r1.getUuid(), r2.getUuid()), thread);
+    }
+
+    @Test
+    public void markPostWithUuidAsDeletedByUserWithUuid_OnlyDeletesPostsOfUser() {
+        User u1 = userRepository.findByUsername("test1").get();
+        User u2 = userRepository.findByUsername("test2").get();
+        Post post = postRepository.save(new Post(u1, "test"));
+
+        // when
+        Optional<PostOwnership> notDeleted = postRepository.markPostWithUuidAsDeletedByUserWithUuid(post.getUuid(), u2.getUuid());
+        Optional<PostOwnership> afterOtherUser = postRepository.getOwnershipOfPostWithUuid(post.getUuid());
+        Optional<PostOwnership> deleted = postRepository.markPostWithUuidAsDeletedByUserWithUuid(post.getUuid(), u1.getUuid());
+        Optional<PostOwnership> alreadyDeleted = postRepository.markPostWithUuidAsDeletedByUserWithUuid(post.getUuid(), u1.getUuid());
+        Optional<PostOwnership> doesntExist = postRepository.markPostWithUuidAsDeletedByUserWithUuid(UUID.randomUUID(), u1.getUuid());
+
+        // then
+        assertEquals(u1.getUuid(), notDeleted.get().getAuthorUuid());
+        assertFalse(afterOtherUser.get().isDeleted());
+        // returned state is the one from before the post had been marked as deleted
+        assertFalse(deleted.get().isDeleted());
+        assertTrue(alreadyDeleted.get().isDeleted());
+        assertTrue(doesntExist.isEmpty());
+        assertTrue(postRepository.getOwnershipOfPostWithUuid(post.getUuid()).get().isDeleted());
+    }
+
+    @Test
+    public void markPostWithUuidAsDeletedByUserWithUuid_ReturnsTagsAndCreationDate() {
+        User u1 = userRepository.findByUsername("test1").get();
+        Post post = new Post(u1, "test");
+        post.addTag(new Tag("#test"));
+        post = postRepository.save(post);
+
+        // when
+        PostOwnership deleted = postRepository.markPostWithUuidAsDeletedByUserWithUuid(post.getUuid(), u1.getUuid()).get();
+
+        // then
+        assertEquals(post.getCreationDate(), deleted.getCreationDate());
+        assertEquals(1, deleted.getTags().size());
+        assertEquals("#test", deleted.getTags().get(0).getName());
+    }
+
+    @Test
+    public void markPostWithUuidAsDeletedByUserWithUuid_SwapsLabelOfPost() {
+        User u1 = userRepository.findByUsername("test1").get();
+        Post post = postRepository.save(new Post(u1, "test"));
+
+        // when
+        postRepository.markPostWithUuidAsDeletedByUserWithUuid(post.getUuid(), u1.getUuid());
+
+        // then
+        // post is skipped by queries which match the 'Post' label, but can still be told apart from a missing post
+        assertTrue(postRepository.getPostWithUuid(post.getUuid()).isEmpty());
+        assertFalse(postRepository.existsById(post.getUuid()));
+        assertTrue(postRepository.postWithUuidExists(post.getUuid()));
+        assertFalse(postRepository.postWithUuidExists(UUID.randomUUID()));
+        assertTrue(postRepository.getOwnershipOfPostWithUuid(post.getUuid()).get().isDeleted());
+    }
+
+    @Test
+    public void relabelDeletedPosts_OnlyRelabelsPostsMarkedAsDeleted() {
+        User u1 = userRepository.findByUsername("test1").get();
+        Post post = postRepository.save(new Post(u1, "test"));
+        Post deleted1 = new Post(u1, "test");
+        Post deleted2 = new Post(u1, "test");
+        deleted1.markAsDeleted();
+        deleted2.markAsDeleted();
+        postRepository.save(deleted1);
+        postRepository.save(deleted2);
+
+        // when
+        long firstBatch = postRepository.relabelDeletedPosts(1L);
+        long secondBatch = postRepository.relabelDeletedPosts(1L);
+        long thirdBatch = postRepository.relabelDeletedPosts(1L);
+
+        // then
+        assertEquals(1L, firstBatch);
+        assertEquals(1L, secondBatch);
+        assertEquals(0L, thirdBatch);
+        assertTrue(postRepository.getPostWithUuid(post.getUuid()).isPresent());
+        assertTrue(postRepository.getPostWithUuid(deleted1.getUuid()).isEmpty());
+        assertTrue(postRepository.postWithUuidExists(deleted2.getUuid()));
+    }
+
     @Test
     public void getFeedForUserWithUuid_IsEmptyWhenUserDoesntExist() {
         List<UserPost> posts = postRepository
@@ -178,6 +465,48 @@ public class PostRepositoryTests {
         });
     }
 
+    @Test
+    public void getFeedForUserWithUuid_Before_ContinuesAfterCursorPost() {
+        User user = userRepository.findByUsername("test1").orElse(new User());
+
+        List<UserPost> firstPage = postRepository
+                .getFeedForUserWithUuid(user.getUuid(), 0L, 5L);
+        List<UserPost> secondPage = postRepository
+                .getFeedForUserWithUuid(user.getUuid(), 5L, 5L);
+        UserPost last = firstPage.get(firstPage.size() - 1);
+
+        // when
+        List<UserPost> posts = postRepository
+                .getFeedForUserWithUuid_Before(user.getUuid(), last.getDate(), last.getUuid(), 5L);
+
+        // then
+        List<String> expected = secondPage.stream().map(UserPost::getContent).collect(Collectors.toList());
+        List<String> contents = posts.stream().map(UserPost::getContent).collect(Collectors.toList());
+        assertEquals(expected, contents);
+    }
+
+    @Test
+    public void getFeedForUserWithUuid_Since_ReadsPostsNewerThanDeletedPost() {
+        User user = userRepository.findByUsername("test1").orElse(new User());
+        User test3 = userRepository.findByUsername("test3").orElse(new User());
+
+        // the newest post that the client has seen gets deleted
+        Post since = createTestPost(test3, "200", 5L);
+        postRepository.markPostWithUuidAsDeletedByUserWithUuid(since.getUuid(), test3.getUuid());
+
+        // when
+        List<UserPost> posts = postRepository
+                .getFeedForUserWithUuid_Since(user.getUuid(), since.getUuid(), 10L);
+        List<UserPost> unknown = postRepository
+                .getFeedForUserWithUuid_Since(user.getUuid(), UUID.randomUUID(), 10L);
+
+        // then
+        // expect posts with content 15, 16, 17, 18, 19 (made 1 min ago), newest first
+        List<String> contents = posts.stream().map(UserPost::getContent).collect(Collectors.toList());
+        assertEquals(List.of("19", "18", "17", "16", "15"), contents);
+        assertTrue(unknown.isEmpty());
+    }
+
     @Test
     public void getFeedForUserWithUuid_DoesNotContainDeletedPosts() {
         User user = userRepository.findByUsername("test1").orElse(new User());
@@ -186,6 +515,7 @@ public class PostRepositoryTests {
         Post post = createTestPost(user, "200", 0L);
         post.markAsDeleted(); // mark as deleted even before saving it
         postRepository.save(post);
+        relabelDeletedPosts();
 
         // when
         List<UserPost> posts = postRepository
@@ -348,6 +678,7 @@ public class PostRepositoryTests {
         Post b = createTestPost(test1, "test post", 0L);
         b.markAsDeleted();
         postRepository.save(b);
+        relabelDeletedPosts();
 
         // when
         Optional<UserPost> post = postRepository.getPostWithUuid(b.getUuid());
@@ -448,25 +779,45 @@ public class PostRepositoryTests {
     @Test
     public void likePostWithUuid_IsEmptyWhenUuidInvalid() {
         // when
-        Optional<Long> result = postRepository.likePostWithUuid(UUID.randomUUID(), UUID.randomUUID());
+        Optional<Boolean> result = postRepository.likePostWithUuid(UUID.randomUUID(), UUID.randomUUID());
 
         // then
         assertTrue(result.isEmpty());
     }
 
     @Test
-    public void likePostWithUuid_IsEmptyWhenPostMarkedAsDeleted() {
+    public void likePostWithUuid_IsFalseWhenPostMarkedAsDeleted() {
         User test1 = userRepository.findByUsername("test1").orElse(new User());
 
         Post b = createTestPost(test1, "test post", 0L);
         b.markAsDeleted();
         postRepository.save(b);
+        relabelDeletedPosts();
 
         // when
-        Optional<Long> result = postRepository.likePostWithUuid(test1.getUuid(), b.getUuid());
+        Optional<Boolean> result = postRepository.likePostWithUuid(test1.getUuid(), b.getUuid());
 
         // then
-        assertTrue(result.isEmpty());
+        assertTrue(result.isPresent());
+        assertFalse(result.get());
+        assertTrue(postRepository.checkIfUserWithUuidLikes(test1.getUuid(), b.getUuid()).isEmpty());
+    }
+
+    @Test
+    public void likePostWithUuid_DoesntDuplicateLikes() {
+        User u1 = createTestUser("u1");
+        User u2 = createTestUser("u2");
+        Post b = createTestPost(u2, "test", 0L);
+
+        // when
+        Optional<Boolean> first = postRepository.likePostWithUuid(u1.getUuid(), b.getUuid());
+        Optional<Boolean> second = postRepository.likePostWithUuid(u1.getUuid(), b.getUuid());
+        PostInfo info = postRepository.getInfoAboutPostWithUuid(b.getUuid()).orElseThrow();
+
+        // then
+        assertTrue(first.orElseThrow());
+        assertTrue(second.orElseThrow());
+        assertEquals(1L, info.getLikes());
     }
 
     @Test
@@ -513,7 +864,8 @@ public class PostRepositoryTests {
         assertTrue(result.isPresent());
 
         // now unlike that post
-        postRepository.unlikePostWithUuid(u1.getUuid(), b.getUuid());
+        Optional<Long> removed = postRepository.unlikePostWithUuid(u1.getUuid(), b.getUuid());
+        assertEquals(1L, removed.orElseThrow());
 
         // check if the unlike was registered
         result = postRepository
@@ -538,6 +890,7 @@ public class PostRepositoryTests {
         Post b = createTestPost(test1, "test post", 0L);
         b.markAsDeleted();
         postRepository.save(b);
+        relabelDeletedPosts();
 
         // when
         Optional<PostInfo> bInfo = postRepository
@@ -566,6 +919,7 @@ public class PostRepositoryTests {
         postRepository.save(u2Response2);
         u2Response3.markAsDeleted(); // mark this response as deleted before saving
         postRepository.save(u2Response3);
+        relabelDeletedPosts();
 
         // create two quotes (and delete one)
         Post u2Quote1 = new QuotePost(u2, "test", u1Post);
@@ -573,12 +927,17 @@ public class PostRepositoryTests {
         postRepository.save(u2Quote1);
         u2Quote2.markAsDeleted(); // mark this quote as deleted before saving
         postRepository.save(u2Quote2);
+        relabelDeletedPosts();
 
         // like the initial post as u2, u3, u4
         postRepository.likePostWithUuid(u2.getUuid(), u1Post.getUuid());
         postRepository.likePostWithUuid(u3.getUuid(), u1Post.getUuid());
         postRepository.likePostWithUuid(u4.getUuid(), u1Post.getUuid());
 
+        // responses and quotes have been saved directly, so counters
+        // only get their values after they are reconciled
+        postRepository.reconcileCountersOfPosts_After("", 1000L);
+
         // when
         Optional<PostInfo> bInfo = postRepository.getInfoAboutPostWithUuid(u1Post.getUuid());
 
@@ -592,6 +951,194 @@ public class PostRepositoryTests {
         assertEquals(3L, bInfo.get().getLikes());
     }
 
+    @Test
+    public void checkIfUserWithUuidLikesExistingPost_Works() {
+        User u1 = createTestUser("u1");
+        User u2 = createTestUser("u2");
+        Post b = createTestPost(u2, "test", 0L);
+
+        // when
+        Optional<Boolean> before = postRepository.checkIfUserWithUuidLikesExistingPost(u1.getUuid(), b.getUuid());
+        postRepository.likePostWithUuid(u1.getUuid(), b.getUuid());
+        Optional<Boolean> after = postRepository.checkIfUserWithUuidLikesExistingPost(u1.getUuid(), b.getUuid());
+        Optional<Boolean> missing = postRepository.checkIfUserWithUuidLikesExistingPost(u1.getUuid(), UUID.randomUUID());
+
+        // then
+        assertFalse(before.orElseThrow());
+        assertTrue(after.orElseThrow());
+        assertTrue(missing.isEmpty());
+    }
+
+    @Test
+    public void unlikePostWithUuid_IsEmptyWhenUuidInvalid() {
+        // when
+        Optional<Long> result = postRepository.unlikePostWithUuid(UUID.randomUUID(), UUID.randomUUID());
+
+        // then
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void likePostsInBatch_UpdatesCounterOncePerPost() {
+        User u1 = createTestUser("u1");
+        User u2 = createTestUser("u2");
+        User u3 = createTestUser("u3");
+        Post p1 = createTestPost(u1, "test", 0L);
+        Post p2 = createTestPost(u1, "test", 1L);
+        Post deleted = createTestPost(u1, "test", 2L);
+        deleted.markAsDeleted();
+        postRepository.save(deleted);
+        relabelDeletedPosts();
+
+        // u2 already likes p1, so liking it again in the batch doesn't change its counter
+        postRepository.likePostWithUuid(u2.getUuid(), p1.getUuid());
+
+        // when
+        List<String> liked = postRepository.likePostsInBatch(List.of(
+                Map.of("post", p1.getUuid().toString(),
+                        "users", List.of(u2.getUuid().toString(), u3.getUuid().toString())),
+                Map.of("post", p2.getUuid().toString(),
+                        "users", List.of(u2.getUuid().toString())),
+                Map.of("post", deleted.getUuid().toString(),
+                        "users", List.of(u2.getUuid().toString())),
+                Map.of("post", UUID.randomUUID().toString(),
+                        "users", List.of(u2.getUuid().toString()))
+        ));
+
+        // then
+        assertEquals(2, liked.size());
+        assertTrue(liked.containsAll(List.of(p1.getUuid().toString(), p2.getUuid().toString())));
+        assertEquals(2L, postRepository.getInfoAboutPostWithUuid(p1.getUuid()).orElseThrow().getLikes());
+        assertEquals(1L, postRepository.getInfoAboutPostWithUuid(p2.getUuid()).orElseThrow().getLikes());
+        assertTrue(postRepository.checkIfUserWithUuidLikes(u3.getUuid(), p1.getUuid()).isPresent());
+    }
+
+    @Test
+    public void likePostsInBatch_CountsUserWhoIsRepeatedInBatchOnce() {
+        User u1 = createTestUser("u1");
+        User u2 = createTestUser("u2");
+        Post p1 = createTestPost(u1, "test", 0L);
+
+        // when
+        postRepository.likePostsInBatch(List.of(
+                Map.of("post", p1.getUuid().toString(),
+                        "users", List.of(u2.getUuid().toString(), u2.getUuid().toString()))
+        ));
+        postRepository.likePostsInBatch(List.of(
+                Map.of("post", p1.getUuid().toString(),
+                        "users", List.of(u2.getUuid().toString()))
+        ));
+
+        // then
+        assertEquals(1L, postRepository.getInfoAboutPostWithUuid(p1.getUuid()).orElseThrow().getLikes());
+    }
+
+    @Test
+    public void unlikePostsInBatch_UpdatesCounterOncePerPost() {
+        User u1 = createTestUser("u1");
+        User u2 = createTestUser("u2");
+        User u3 = createTestUser("u3");
+        Post p1 = createTestPost(u1, "test", 0L);
+        postRepository.likePostWithUuid(u1.getUuid(), p1.getUuid());
+        postRepository.likePostWithUuid(u2.getUuid(), p1.getUuid());
+
+        // when
+        List<String> unliked = postRepository.unlikePostsInBatch(List.of(
+                Map.of("post", p1.getUuid().toString(),
+                        "users", List.of(u2.getUuid().toString(), u3.getUuid().toString())),
+                Map.of("post", UUID.randomUUID().toString(),
+                        "users", List.of(u2.getUuid().toString()))
+        ));
+
+        // then
+        assertEquals(List.of(p1.getUuid().toString()), unliked);
+        assertEquals(1L, postRepository.getInfoAboutPostWithUuid(p1.getUuid()).orElseThrow().getLikes());
+        assertTrue(postRepository.checkIfUserWithUuidLikes(u1.getUuid(), p1.getUuid()).isPresent());
+        assertTrue(postRepository.checkIfUserWithUuidLikes(u2.getUuid(), p1.getUuid()).isEmpty());
+    }
+
+    @Test
+    public void getInfoAboutPostWithUuid_CountersFollowLikesResponsesAndQuotes() {
+        User u1 = createTestUser("u1");
+        User u2 = createTestUser("u2");
+        Post u1Post = createTestPost(u1, "test", 0L);
+
+        Post response = postRepository.save(new ResponsePost(u2, "test", u1Post));
+        postRepository.incrementResponsesOfPostWithUuid(u1Post.getUuid());
+        Post quote = postRepository.save(new QuotePost(u2, "test", u1Post));
+        postRepository.incrementQuotesOfPostWithUuid(u1Post.getUuid());
+        postRepository.likePostWithUuid(u1.getUuid(), u1Post.getUuid());
+        postRepository.likePostWithUuid(u2.getUuid(), u1Post.getUuid());
+
+        // when
+        PostInfo before = postRepository.getInfoAboutPostWithUuid(u1Post.getUuid()).orElseThrow();
+
+        postRepository.unlikePostWithUuid(u1.getUuid(), u1Post.getUuid());
+        // unliking a post that isn't liked doesn't change the counter
+        postRepository.unlikePostWithUuid(u1.getUuid(), u1Post.getUuid());
+        postRepository.decrementCountersOfParentsOfPostWithUuid(response.getUuid());
+        postRepository.decrementCountersOfParentsOfPostWithUuid(quote.getUuid());
+
+        PostInfo after = postRepository.getInfoAboutPostWithUuid(u1Post.getUuid()).orElseThrow();
+
+        // then
+        assertEquals(1L, before.getResponses());
+        assertEquals(1L, before.getQuotes());
+        assertEquals(2L, before.getLikes());
+
+        assertEquals(0L, after.getResponses());
+        assertEquals(0L, after.getQuotes());
+        assertEquals(1L, after.getLikes());
+    }
+
+    @Test
+    public void reconcileCountersOfPosts_After_RepairsDriftedCounters() {
+        User u1 = createTestUser("u1");
+        User u2 = createTestUser("u2");
+        Post u1Post = createTestPost(u1, "test", 0L);
+        postRepository.likePostWithUuid(u2.getUuid(), u1Post.getUuid());
+
+        // counter drifts, because the response is saved without incrementing it
+        postRepository.save(new ResponsePost(u2, "test", u1Post));
+
+        // when
+        postRepository.reconcileCountersOfPosts_After("", 1000L);
+        PostInfo info = postRepository.getInfoAboutPostWithUuid(u1Post.getUuid()).orElseThrow();
+
+        // then
+        assertEquals(1L, info.getResponses());
+        assertEquals(0L, info.getQuotes());
+        assertEquals(1L, info.getLikes());
+    }
+
+    @Test
+    public void getPostsWithInfoWithUuids_KeepsOrderAndSkipsDeletedPosts() {
+        User u1 = createTestUser("u1");
+        User u2 = createTestUser("u2");
+        Post p1 = createTestPost(u1, "first", 0L);
+        Post p2 = createTestPost(u1, "second", 0L);
+        Post deleted = createTestPost(u1, "deleted", 0L);
+        deleted.markAsDeleted();
+        postRepository.save(deleted);
+        relabelDeletedPosts();
+        postRepository.likePostWithUuid(u2.getUuid(), p1.getUuid());
+
+        // when
+        List<PostWithInfoResult> results = postRepository.getPostsWithInfoWithUuids(List.of(
+                p2.getUuid().toString(),
+                deleted.getUuid().toString(),
+                UUID.randomUUID().toString(),
+                p1.getUuid().toString()));
+
+        // then
+        assertEquals(2, results.size());
+        assertEquals(p2.getUuid(), results.get(0).getUuid());
+        assertEquals(0L, results.get(0).getLikesCount());
+        assertEquals(p1.getUuid(), results.get(1).getUuid());
+        assertEquals(1L, results.get(1).getLikesCount());
+        assertEquals("u1", results.get(1).getAuthor().getUsername());
+    }
+
     @Test
     public void getAllResponsesToPostWithUuid_IsEmptyWhenNoResponses() {
         // create a user
@@ -619,6 +1166,7 @@ public class PostRepositoryTests {
         r2.markAsDeleted(); // mark second response as deleted right away
         postRepository.save(r1);
         postRepository.save(r2);
+        relabelDeletedPosts();
 
         // when
         List<UserPost> posts = postRepository.getAllResponsesToPostWithUuid(b.getUuid(), 0L, 10L);
@@ -748,6 +1296,7 @@ public class PostRepositoryTests {
         r2.markAsDeleted(); // mark second quote as deleted right away
         postRepository.save(r1);
         postRepository.save(r2);
+        relabelDeletedPosts();
 
         // when
         List<UserPost> posts = postRepository.getAllQuotesOfPostWithUuid(b.getUuid(), 0L, 10L);
@@ -847,6 +1396,7 @@ public class PostRepositoryTests {
         Post post = createTestPost(user, "200", 0L);
         post.markAsDeleted(); // mark as deleted even before saving it
         postRepository.save(post);
+        relabelDeletedPosts();
 
         // when
         List<UserPost> posts = postRepository
@@ -1050,6 +1600,7 @@ public class PostRepositoryTests {
         Post post = createTestPost(user, "200", 0L);
         post.markAsDeleted(); // mark as deleted even before saving it
         postRepository.save(post);
+        relabelDeletedPosts();
 
         // when
         List<UserPost> posts = postRepository
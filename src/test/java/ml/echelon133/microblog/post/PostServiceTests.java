@@ -1,15 +1,28 @@
 package ml.echelon133.microblog.post;
 
+import ml.echelon133.microblog.feed.service.TimelineService;
 import ml.echelon133.microblog.notification.service.NotificationService;
+import ml.echelon133.microblog.pagination.PostCursor;
 import ml.echelon133.microblog.post.exception.PostDoesntExistException;
 import ml.echelon133.microblog.post.exception.UserCannotDeletePostException;
 import ml.echelon133.microblog.post.model.Post;
 import ml.echelon133.microblog.post.model.PostInfo;
+import ml.echelon133.microblog.post.model.PostOwnership;
+import ml.echelon133.microblog.post.model.PostThread;
+import ml.echelon133.microblog.post.model.PostWithInfo;
+import ml.echelon133.microblog.post.model.PostWithInfoResult;
+import ml.echelon133.microblog.post.model.QuotePost;
+import ml.echelon133.microblog.post.model.ResponsePost;
 import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.post.service.LikeBufferService;
+import ml.echelon133.microblog.post.service.PostPipelineService;
 import ml.echelon133.microblog.post.service.PostService;
+import ml.echelon133.microblog.stream.service.StreamService;
 import ml.echelon133.microblog.tag.model.Tag;
-import ml.echelon133.microblog.tag.exception.TagDoesntExistException;
 import ml.echelon133.microblog.tag.service.TagService;
+import ml.echelon133.microblog.tag.service.RecentPostIndexService;
+import ml.echelon133.microblog.tag.service.TagSuggestionService;
+import ml.echelon133.microblog.tag.service.TagUsageService;
 import ml.echelon133.microblog.user.model.User;
 import ml.echelon133.microblog.user.model.UserPost;
 import org.junit.jupiter.api.AfterEach;
@@ -27,7 +40,7 @@ import java.util.stream.Collectors;
 import static java.time.temporal.ChronoUnit.DAYS;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.BDDMockito.given;
 
 @ExtendWith(MockitoExtension.class)
@@ -42,6 +55,27 @@ public class PostServiceTests {
     @Mock
     private NotificationService notificationService;
 
+    @Mock
+    private TimelineService timelineService;
+
+    @Mock
+    private StreamService streamService;
+
+    @Mock
+    private PostPipelineService pipelineService;
+
+    @Mock
+    private LikeBufferService likeBufferService;
+
+    @Mock
+    private TagUsageService tagUsageService;
+
+    @Mock
+    private RecentPostIndexService recentPostIndexService;
+
+    @Mock
+    private TagSuggestionService tagSuggestionService;
+
     @InjectMocks
     private PostService postService;
 
@@ -114,12 +148,48 @@ public class PostServiceTests {
         assertEquals(info, receivedInfo);
     }
 
+    @Test
+    public void getAllWithInfoByUuids_ThrowsWhenTooManyUuids() {
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i <= PostService.MAX_POSTS_PER_MULTI_GET; i++) {
+            uuids.add(UUID.randomUUID());
+        }
+
+        // when
+        String message = assertThrows(IllegalArgumentException.class, () -> {
+            postService.getAllWithInfoByUuids(uuids);
+        }).getMessage();
+
+        // then
+        assertEquals("At most 100 posts can be requested at once.", message);
+    }
+
+    @Test
+    public void getAllWithInfoByUuids_QueriesDistinctUuids() {
+        UUID uuid = UUID.randomUUID();
+        PostWithInfoResult result = new PostWithInfoResult();
+        result.setUuid(uuid);
+        result.setLikesCount(3L);
+
+        // given
+        given(postRepository.getPostsWithInfoWithUuids(List.of(uuid.toString())))
+                .willReturn(List.of(result));
+
+        // when
+        List<PostWithInfo> posts = postService.getAllWithInfoByUuids(List.of(uuid, uuid));
+
+        // then
+        assertEquals(1, posts.size());
+        assertEquals(uuid, posts.get(0).getPost().getUuid());
+        assertEquals(3L, posts.get(0).getInfo().getLikes());
+    }
+
     @Test
     public void getAllResponsesTo_ThrowsWhenPostDoesntExist() {
         UUID uuid = UUID.randomUUID();
 
         // given
-        given(postRepository.existsById(uuid)).willReturn(false);
+        given(postRepository.postWithUuidExists(uuid)).willReturn(false);
 
         // when
         String message = assertThrows(PostDoesntExistException.class, () -> {
@@ -134,9 +204,6 @@ public class PostServiceTests {
     public void getAllResponsesTo_ThrowsWhenSkipAndLimitArgumentsNegative() {
         UUID uuid = UUID.randomUUID();
 
-        // given
-        given(postRepository.existsById(uuid)).willReturn(true);
-
         // then
         Exception ex = assertThrows(IllegalArgumentException.class, () -> {
             postService.getAllResponsesTo(uuid, -1L, 5L);
@@ -156,7 +223,7 @@ public class PostServiceTests {
         UUID uuid = UUID.randomUUID();
 
         // given
-        given(postRepository.existsById(uuid)).willReturn(true);
+        given(postRepository.postWithUuidExists(uuid)).willReturn(true);
         given(postRepository.getAllResponsesToPostWithUuid(uuid, 0L, 5L))
                 .willReturn(List.of());
 
@@ -174,7 +241,6 @@ public class PostServiceTests {
         List<UserPost> mockList = List.of(new UserPost(), new UserPost());
 
         // given
-        given(postRepository.existsById(uuid)).willReturn(true);
         given(postRepository.getAllResponsesToPostWithUuid(uuid, 0L, 5L))
                 .willReturn(mockList);
 
@@ -185,12 +251,59 @@ public class PostServiceTests {
         assertEquals(2, responses.size());
     }
 
+    @Test
+    public void getThread_ThrowsWhenPostDoesntExist() {
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        String message = assertThrows(PostDoesntExistException.class, () -> {
+            postService.getThread(uuid, 0L, 5L);
+        }).getMessage();
+
+        // then
+        assertEquals(String.format("Post with UUID %s doesn't exist", uuid), message);
+    }
+
+    @Test
+    public void getThread_ThrowsWhenSkipAndLimitArgumentsNegative() {
+        UUID uuid = UUID.randomUUID();
+
+        // then
+        Exception ex = assertThrows(IllegalArgumentException.class, () -> {
+            postService.getThread(uuid, -1L, 5L);
+        });
+
+        assertEquals("Invalid skip and/or limit values.", ex.getMessage());
+    }
+
+    @Test
+    public void getThread_SplitsThreadAroundPost() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        List<UserPost> thread = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            UserPost post = new UserPost();
+            post.setUuid(i == 2 ? uuid : UUID.randomUUID());
+            thread.add(post);
+        }
+
+        // given
+        given(postRepository.getThreadOfPostWithUuid(uuid, 0L, 5L)).willReturn(thread);
+
+        // when
+        PostThread result = postService.getThread(uuid, 0L, 5L);
+
+        // then
+        assertEquals(thread.subList(0, 2), result.getAncestors());
+        assertEquals(uuid, result.getPost().getUuid());
+        assertEquals(thread.subList(3, 5), result.getDescendants());
+    }
+
     @Test
     public void getAllQuotesOf_ThrowsWhenPostDoesntExist() {
         UUID uuid = UUID.randomUUID();
 
         // given
-        given(postRepository.existsById(uuid)).willReturn(false);
+        given(postRepository.postWithUuidExists(uuid)).willReturn(false);
 
         // when
         String message = assertThrows(PostDoesntExistException.class, () -> {
@@ -205,9 +318,6 @@ public class PostServiceTests {
     public void getAllQuotesOf_ThrowsWhenSkipAndLimitArgumentsNegative() {
         UUID uuid = UUID.randomUUID();
 
-        // given
-        given(postRepository.existsById(uuid)).willReturn(true);
-
         // then
         Exception ex = assertThrows(IllegalArgumentException.class, () -> {
             postService.getAllQuotesOf(uuid, -1L, 5L);
@@ -227,7 +337,7 @@ public class PostServiceTests {
         UUID uuid = UUID.randomUUID();
 
         // given
-        given(postRepository.existsById(uuid)).willReturn(true);
+        given(postRepository.postWithUuidExists(uuid)).willReturn(true);
         given(postRepository.getAllQuotesOfPostWithUuid(uuid, 0L, 5L))
                 .willReturn(List.of());
 
@@ -245,7 +355,6 @@ public class PostServiceTests {
         List<UserPost> mockList = List.of(new UserPost(), new UserPost());
 
         // given
-        given(postRepository.existsById(uuid)).willReturn(true);
         given(postRepository.getAllQuotesOfPostWithUuid(uuid, 0L, 5L))
                 .willReturn(mockList);
 
@@ -259,13 +368,15 @@ public class PostServiceTests {
     @Test
     public void checkIfUserWithUuidLikes_ThrowsWhenPostDoesntExist() {
         UUID uuid = UUID.randomUUID();
+        User user = new User("test1", "mail@test.com", "", "");
 
         // given
-        given(postRepository.existsById(uuid)).willReturn(false);
+        given(postRepository.checkIfUserWithUuidLikesExistingPost(user.getUuid(), uuid))
+                .willReturn(Optional.empty());
 
         // then
         String message = assertThrows(PostDoesntExistException.class, () -> {
-            postService.checkIfUserWithUuidLikes(any(User.class), uuid);
+            postService.checkIfUserWithUuidLikes(user, uuid);
         }).getMessage();
 
         assertEquals(String.format("Post with UUID %s doesn't exist", uuid), message);
@@ -277,9 +388,8 @@ public class PostServiceTests {
         User user = new User("test1", "mail@test.com", "", "");
 
         // given
-        given(postRepository.existsById(uuid)).willReturn(true);
-        given(postRepository.checkIfUserWithUuidLikes(user.getUuid(), uuid))
-                .willReturn(Optional.empty());
+        given(postRepository.checkIfUserWithUuidLikesExistingPost(user.getUuid(), uuid))
+                .willReturn(Optional.of(false));
 
         // when
         boolean result = postService.checkIfUserWithUuidLikes(user, uuid);
@@ -294,9 +404,8 @@ public class PostServiceTests {
         User user = new User("test1", "mail@test.com", "", "");
 
         // given
-        given(postRepository.existsById(uuid)).willReturn(true);
-        given(postRepository.checkIfUserWithUuidLikes(user.getUuid(), uuid))
-                .willReturn(Optional.of(1L));
+        given(postRepository.checkIfUserWithUuidLikesExistingPost(user.getUuid(), uuid))
+                .willReturn(Optional.of(true));
         // when
         boolean result = postService.checkIfUserWithUuidLikes(user, uuid);
 
@@ -306,11 +415,13 @@ public class PostServiceTests {
 
     @Test
     public void likePost_ThrowsWhenPostDoesntExist() {
+        UUID u1Uuid = UUID.randomUUID();
         User user = new User("test1", "mail@test.com", "", "");
         UUID postUuid = UUID.randomUUID();
+        user.setUuid(u1Uuid);
 
         // given
-        given(postRepository.existsById(postUuid)).willReturn(false);
+        given(postRepository.likePostWithUuid(u1Uuid, postUuid)).willReturn(Optional.empty());
 
         // when
         String message = assertThrows(PostDoesntExistException.class, () -> {
@@ -321,18 +432,15 @@ public class PostServiceTests {
     }
 
     @Test
-    public void likePost_WhenUserDoesntAlreadyLike() throws Exception {
+    public void likePost_WhenLikeSucceeds() throws Exception {
         UUID u1Uuid = UUID.randomUUID();
         User user = new User("test1", "mail@test.com", "", "");
         UUID postUuid = UUID.randomUUID();
         user.setUuid(u1Uuid);
 
         // given
-        given(postRepository.existsById(postUuid)).willReturn(true);
-        given(postRepository.checkIfUserWithUuidLikes(u1Uuid, postUuid))
-                .willReturn(Optional.empty());
         given(postRepository.likePostWithUuid(u1Uuid, postUuid))
-                .willReturn(Optional.of(1L));
+                .willReturn(Optional.of(true));
 
         // when
         boolean result = postService.likePost(user, postUuid);
@@ -342,52 +450,50 @@ public class PostServiceTests {
     }
 
     @Test
-    public void likePost_WhenUserAlreadyLikes() throws Exception {
+    public void likePost_WhenPostMarkedAsDeleted() throws Exception {
         UUID u1Uuid = UUID.randomUUID();
         User user = new User("test1", "mail@test.com", "", "");
         UUID postUuid = UUID.randomUUID();
         user.setUuid(u1Uuid);
 
         // given
-        given(postRepository.existsById(postUuid)).willReturn(true);
-        given(postRepository.checkIfUserWithUuidLikes(u1Uuid, postUuid))
-                .willReturn(Optional.of(1L));
+        given(postRepository.likePostWithUuid(u1Uuid, postUuid))
+                .willReturn(Optional.of(false));
 
         // when
         boolean result = postService.likePost(user, postUuid);
 
         // then
-        assertTrue(result);
+        assertFalse(result);
     }
 
     @Test
-    public void likePost_WhenLikeFails() throws Exception {
+    public void likePost_UsesBufferWhenPostIsBursting() throws Exception {
         UUID u1Uuid = UUID.randomUUID();
         User user = new User("test1", "mail@test.com", "", "");
         UUID postUuid = UUID.randomUUID();
         user.setUuid(u1Uuid);
 
         // given
-        given(postRepository.existsById(postUuid)).willReturn(true);
-        given(postRepository.checkIfUserWithUuidLikes(u1Uuid, postUuid))
-                .willReturn(Optional.empty());
-        given(postRepository.likePostWithUuid(u1Uuid, postUuid))
-                .willReturn(Optional.empty());
+        given(likeBufferService.shouldBuffer(postUuid)).willReturn(true);
+        given(likeBufferService.like(u1Uuid, postUuid)).willReturn(true);
 
         // when
         boolean result = postService.likePost(user, postUuid);
 
         // then
-        assertFalse(result);
+        assertTrue(result);
     }
 
     @Test
     public void unlikePost_ThrowsWhenPostDoesntExist() {
+        UUID u1Uuid = UUID.randomUUID();
         User user = new User("test1", "mail@test.com", "", "");
         UUID postUuid = UUID.randomUUID();
+        user.setUuid(u1Uuid);
 
         // given
-        given(postRepository.existsById(postUuid)).willReturn(false);
+        given(postRepository.unlikePostWithUuid(u1Uuid, postUuid)).willReturn(Optional.empty());
 
         // when
         String message = assertThrows(PostDoesntExistException.class, () -> {
@@ -405,9 +511,8 @@ public class PostServiceTests {
         user.setUuid(u1Uuid);
 
         // given
-        given(postRepository.existsById(postUuid)).willReturn(true);
-        given(postRepository.checkIfUserWithUuidLikes(u1Uuid, postUuid))
-                .willReturn(Optional.empty());
+        given(postRepository.unlikePostWithUuid(u1Uuid, postUuid))
+                .willReturn(Optional.of(1L));
 
         // when
         boolean result = postService.unlikePost(user, postUuid);
@@ -417,22 +522,21 @@ public class PostServiceTests {
     }
 
     @Test
-    public void unlikePost_WhenUnlikeFails() throws Exception {
+    public void unlikePost_UsesBufferWhenPostIsBursting() throws Exception {
         UUID u1Uuid = UUID.randomUUID();
         User user = new User("test1", "mail@test.com", "", "");
         UUID postUuid = UUID.randomUUID();
         user.setUuid(u1Uuid);
 
         // given
-        given(postRepository.existsById(postUuid)).willReturn(true);
-        given(postRepository.checkIfUserWithUuidLikes(u1Uuid, postUuid))
-                .willReturn(Optional.of(1L));
+        given(likeBufferService.shouldBuffer(postUuid)).willReturn(true);
+        given(likeBufferService.unlike(u1Uuid, postUuid)).willReturn(true);
 
         // when
         boolean result = postService.unlikePost(user, postUuid);
 
         // then
-        assertFalse(result);
+        assertTrue(result);
     }
 
     @Test
@@ -472,6 +576,88 @@ public class PostServiceTests {
         assertEquals(1, oneHourResults.size());
     }
 
+    @Test
+    public void getFeedForUser_ReturnsPostsInTimelineOrder() {
+        UUID uuid = UUID.randomUUID();
+        User u = new User();
+        u.setUuid(uuid);
+
+        List<UUID> timeline = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        List<String> stringTimeline = timeline.stream().map(UUID::toString).collect(Collectors.toList());
+
+        // posts are returned in a different order than the one in the timeline
+        List<UserPost> posts = new ArrayList<>();
+        for (int i = timeline.size() - 1; i >= 0; i--) {
+            UserPost p = new UserPost();
+            p.setUuid(timeline.get(i));
+            posts.add(p);
+        }
+
+        // given
+        given(timelineService.getTimelinePage(uuid, 0L, 3L)).willReturn(Optional.of(timeline));
+        given(postRepository.getPostsWithUuids(stringTimeline)).willReturn(posts);
+
+        // when
+        List<UserPost> feed = postService.getFeedForUser(u, 0L, 3L);
+
+        // then
+        assertEquals(timeline, feed.stream().map(UserPost::getUuid).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void getFeedForUserSince_ThrowsWhenSincePostDoesntExist() {
+        UUID uuid = UUID.randomUUID();
+        UUID sinceUuid = UUID.randomUUID();
+        User u = new User();
+        u.setUuid(uuid);
+
+        // given
+        given(timelineService.getTimelinePageSince(uuid, sinceUuid, 5L)).willReturn(Optional.empty());
+        given(postRepository.getFeedForUserWithUuid_Since(uuid, sinceUuid, 5L)).willReturn(List.of());
+        given(postRepository.postWithUuidExists(sinceUuid)).willReturn(false);
+
+        // then
+        String message = assertThrows(IllegalArgumentException.class, () -> {
+            postService.getFeedForUserSince(u, sinceUuid, 5L);
+        }).getMessage();
+        assertEquals(String.format("Post with UUID %s doesn't exist", sinceUuid), message);
+    }
+
+    @Test
+    public void getFeedForUser_EmptyTimelineDoesNotQueryPosts() {
+        UUID uuid = UUID.randomUUID();
+        User u = new User();
+        u.setUuid(uuid);
+
+        // given
+        given(timelineService.getTimelinePage(uuid, 0L, 5L)).willReturn(Optional.of(List.of()));
+
+        // when
+        List<UserPost> feed = postService.getFeedForUser(u, 0L, 5L);
+
+        // then
+        assertEquals(0, feed.size());
+    }
+
+    @Test
+    public void getFeedForUser_CursorFallsBackToQueryWhenTimelineUnavailable() {
+        UUID uuid = UUID.randomUUID();
+        User u = new User();
+        u.setUuid(uuid);
+        PostCursor cursor = new PostCursor(new Date(), UUID.randomUUID());
+
+        // given
+        given(timelineService.getTimelinePage(uuid, cursor, 5L)).willReturn(Optional.empty());
+        given(postRepository.getFeedForUserWithUuid_Before(uuid, cursor.getDate(), cursor.getUuid(), 5L))
+                .willReturn(List.of(new UserPost()));
+
+        // when
+        List<UserPost> feed = postService.getFeedForUser(u, cursor, 5L);
+
+        // then
+        assertEquals(1, feed.size());
+    }
+
     @Test
     public void processPostAndSave_FindsNewTagsInContent() throws Exception {
         String expected1 = "test";
@@ -481,14 +667,13 @@ public class PostServiceTests {
         Post post = new Post(new User(), content);
 
         // given
-        given(tagService.findByName(expected1))
-                .willThrow(new TagDoesntExistException(expected1));
-        given(tagService.findByName(expected2))
-                .willThrow(new TagDoesntExistException(expected2));
-        given(postRepository.save(post)).willReturn(post);
+        given(tagService.findOrCreateAllByNames(Set.of(expected1, expected2)))
+                .willReturn(List.of(new Tag(UUID.randomUUID(), expected1), new Tag(UUID.randomUUID(), expected2)));
+        given(postRepository.createPost(any(), any(), any(), any(), any(), any(), any(), any()))
+                .willReturn(Optional.of(UUID.randomUUID().toString()));
 
         // when
-        Post processed = postService.processPostAndSave(post);
+        Post processed = postService.processPostAndSave(post).orElseThrow();
 
         // then
         assertEquals(2, processed.getTags().size());
@@ -503,20 +688,21 @@ public class PostServiceTests {
     public void processPostAndSave_FindsExistingTagsInContent() throws Exception {
         String expected1 = "test";
         String expected2 = "anothertest";
-        Tag tag1 = new Tag(expected1);
-        Tag tag2 = new Tag(expected2);
+        Tag tag1 = new Tag(UUID.randomUUID(), expected1);
+        Tag tag2 = new Tag(UUID.randomUUID(), expected2);
 
         String content = String.format("This is #%s and #%s", expected1, expected2);
 
         Post post = new Post(new User(), content);
 
         // given
-        given(tagService.findByName(expected1)).willReturn(tag1);
-        given(tagService.findByName(expected2)).willReturn(tag2);
-        given(postRepository.save(post)).willReturn(post);
+        given(tagService.findOrCreateAllByNames(Set.of(expected1, expected2))).willReturn(List.of(tag1, tag2));
+        given(postRepository.createPost(any(), any(), any(), any(), any(),
+                eq(List.of(tag1.getUuid().toString(), tag2.getUuid().toString())), any(), any()))
+                .willReturn(Optional.of(UUID.randomUUID().toString()));
 
         // when
-        Post processed = postService.processPostAndSave(post);
+        Post processed = postService.processPostAndSave(post).orElseThrow();
 
         // then
         assertEquals(2, processed.getTags().size());
@@ -543,16 +729,17 @@ public class PostServiceTests {
         Post post = new Post(new User(), content);
 
         // given
-        given(tagService.findByName(expected1.toLowerCase()))
-                .willThrow(new TagDoesntExistException(expected1));
-        given(tagService.findByName(expected2.toLowerCase()))
-                .willThrow(new TagDoesntExistException(expected2));
-        given(tagService.findByName(expected3.toLowerCase()))
-                .willThrow(new TagDoesntExistException(expected3));
-        given(postRepository.save(post)).willReturn(post);
+        given(tagService.findOrCreateAllByNames(
+                Set.of(expected1.toLowerCase(), expected2.toLowerCase(), expected3.toLowerCase())))
+                .willReturn(List.of(
+                        new Tag(UUID.randomUUID(), expected1.toLowerCase()),
+                        new Tag(UUID.randomUUID(), expected2.toLowerCase()),
+                        new Tag(UUID.randomUUID(), expected3.toLowerCase())));
+        given(postRepository.createPost(any(), any(), any(), any(), any(), any(), any(), any()))
+                .willReturn(Optional.of(UUID.randomUUID().toString()));
 
         // when
-        Post processed = postService.processPostAndSave(post);
+        Post processed = postService.processPostAndSave(post).orElseThrow();
 
         // then
         assertEquals(3, processed.getTags().size());
@@ -575,12 +762,13 @@ public class PostServiceTests {
         Post post = new Post(new User(), content);
 
         // given
-        given(tagService.findByName(expected1.toLowerCase()))
-                .willThrow(new TagDoesntExistException(expected1));
-        given(postRepository.save(post)).willReturn(post);
+        given(tagService.findOrCreateAllByNames(Set.of(expected1.toLowerCase())))
+                .willReturn(List.of(new Tag(UUID.randomUUID(), expected1.toLowerCase())));
+        given(postRepository.createPost(any(), any(), any(), any(), any(), any(), any(), any()))
+                .willReturn(Optional.of(UUID.randomUUID().toString()));
 
         // when
-        Post processed = postService.processPostAndSave(post);
+        Post processed = postService.processPostAndSave(post).orElseThrow();
 
         // then
         assertEquals(1, processed.getTags().size());
@@ -590,15 +778,37 @@ public class PostServiceTests {
         assertTrue(tagNames.contains(expected1.toLowerCase()));
     }
 
+    @Test
+    public void postPost_SavesPostOfAuthorWithGivenUuid() {
+        User author = new User("test1", "", "" ,"");
+        author.setUuid(UUID.randomUUID());
+
+        String content = "Test";
+
+        // given
+        given(postRepository.createPost(any(), eq(author.getUuid()), eq(content), any(), any(), any(), isNull(), isNull()))
+                .willReturn(Optional.of(UUID.randomUUID().toString()));
+
+        // when
+        Post saved = postService.postPost(author, content);
+
+        // then
+        assertNotNull(saved.getUuid());
+        assertEquals(author.getUuid(), saved.getAuthor().getUuid());
+        assertEquals(content, saved.getContent());
+    }
+
     @Test
     public void postQuote_ThrowsWhenPostDoesntExist() {
         User author = new User("test1", "", "" ,"");
+        author.setUuid(UUID.randomUUID());
         UUID postUuid = UUID.randomUUID();
 
         String content = "Test";
 
         // given
-        given(postRepository.findById(postUuid)).willReturn(Optional.empty());
+        given(postRepository.createPost(any(), eq(author.getUuid()), eq(content), any(), any(), any(), isNull(), eq(postUuid)))
+                .willReturn(Optional.empty());
 
         // then
         String message = assertThrows(PostDoesntExistException.class, () -> {
@@ -609,34 +819,36 @@ public class PostServiceTests {
     }
 
     @Test
-    public void postQuote_ThrowsWhenPostMarkedAsDeleted() {
+    public void postQuote_SavesQuoteOfPostWithGivenUuid() throws Exception {
         User author = new User("test1", "", "" ,"");
+        author.setUuid(UUID.randomUUID());
         UUID postUuid = UUID.randomUUID();
 
-        Post parentPost = new Post(author, "test");
-        parentPost.setUuid(postUuid);
-        parentPost.markAsDeleted();
+        String content = "Test";
 
         // given
-        given(postRepository.findById(postUuid)).willReturn(Optional.of(parentPost));
+        given(postRepository.createPost(any(), eq(author.getUuid()), eq(content), any(), any(), any(), isNull(), eq(postUuid)))
+                .willReturn(Optional.of(UUID.randomUUID().toString()));
 
-        // then
-        String message = assertThrows(PostDoesntExistException.class, () -> {
-            postService.postQuote(author, "test", postUuid);
-        }).getMessage();
+        // when
+        Post saved = postService.postQuote(author, content, postUuid);
 
-        assertEquals(String.format("Post with UUID %s doesn't exist", postUuid), message);
+        // then
+        assertTrue(saved instanceof QuotePost);
+        assertEquals(postUuid, ((QuotePost) saved).getQuotes().getUuid());
     }
 
     @Test
     public void postResponse_ThrowsWhenPostDoesntExist() {
         User author = new User("test1", "", "" ,"");
+        author.setUuid(UUID.randomUUID());
         UUID postUuid = UUID.randomUUID();
 
         String content = "Test";
 
         // given
-        given(postRepository.findById(postUuid)).willReturn(Optional.empty());
+        given(postRepository.createPost(any(), eq(author.getUuid()), eq(content), any(), any(), any(), eq(postUuid), isNull()))
+                .willReturn(Optional.empty());
 
         // then
         String message = assertThrows(PostDoesntExistException.class, () -> {
@@ -647,32 +859,34 @@ public class PostServiceTests {
     }
 
     @Test
-    public void postResponse_ThrowsWhenPostMarkedAsDeleted() {
+    public void postResponse_SavesResponseToPostWithGivenUuid() throws Exception {
         User author = new User("test1", "", "" ,"");
+        author.setUuid(UUID.randomUUID());
         UUID postUuid = UUID.randomUUID();
 
-        Post post = new Post(author, "test");
-        post.setUuid(postUuid);
-        post.markAsDeleted();
+        String content = "Test";
 
         // given
-        given(postRepository.findById(postUuid)).willReturn(Optional.of(post));
+        given(postRepository.createPost(any(), eq(author.getUuid()), eq(content), any(), any(), any(), eq(postUuid), isNull()))
+                .willReturn(Optional.of(UUID.randomUUID().toString()));
 
-        // then
-        String message = assertThrows(PostDoesntExistException.class, () -> {
-            postService.postResponse(author, "test", postUuid);
-        }).getMessage();
+        // when
+        Post saved = postService.postResponse(author, content, postUuid);
 
-        assertEquals(String.format("Post with UUID %s doesn't exist", postUuid), message);
+        // then
+        assertTrue(saved instanceof ResponsePost);
+        assertEquals(postUuid, ((ResponsePost) saved).getRespondsTo().getUuid());
     }
 
     @Test
     public void markPostAsDeleted_ThrowsWhenPostDoesntExist() {
         User author = new User("test1", "", "" ,"");
+        author.setUuid(UUID.randomUUID());
         UUID postUuid = UUID.randomUUID();
 
         // given
-        given(postRepository.findById(postUuid)).willReturn(Optional.empty());
+        given(postRepository.markPostWithUuidAsDeletedByUserWithUuid(postUuid, author.getUuid()))
+                .willReturn(Optional.empty());
 
         // then
         String message = assertThrows(PostDoesntExistException.class, () -> {
@@ -694,11 +908,9 @@ public class PostServiceTests {
 
         UUID postUuid = UUID.randomUUID();
 
-        Post post = new Post(author, "test");
-        post.setUuid(postUuid);
-
         // given
-        given(postRepository.findById(postUuid)).willReturn(Optional.of(post));
+        given(postRepository.markPostWithUuidAsDeletedByUserWithUuid(postUuid, u1.getUuid()))
+                .willReturn(Optional.of(new PostOwnership(postUuid, author.getUuid(), false)));
 
         // then
         String message = assertThrows(UserCannotDeletePostException.class, () -> {
@@ -720,12 +932,9 @@ public class PostServiceTests {
         User loggedUser = new User("u1", "", "", "");
         loggedUser.setUuid(UUID.fromString(author.getUuid().toString()));
 
-        Post post = new Post(author, "test");
-        post.setUuid(postUuid);
-
         // given
-        given(postRepository.findById(postUuid)).willReturn(Optional.of(post));
-        given(postRepository.save(post)).willReturn(post);
+        given(postRepository.markPostWithUuidAsDeletedByUserWithUuid(postUuid, loggedUser.getUuid()))
+                .willReturn(Optional.of(new PostOwnership(postUuid, author.getUuid(), false)));
 
         // when
         boolean response = postService.markPostAsDeleted(loggedUser, postUuid);
@@ -2,6 +2,7 @@ package ml.echelon133.microblog.report;
 
 import ml.echelon133.microblog.post.model.Post;
 import ml.echelon133.microblog.post.repository.PostRepository;
+import ml.echelon133.microblog.report.model.AcceptedReport;
 import ml.echelon133.microblog.report.model.Report;
 import ml.echelon133.microblog.report.model.ReportResult;
 import ml.echelon133.microblog.report.repository.ReportRepository;
@@ -12,7 +13,10 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.neo4j.DataNeo4jTest;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -212,13 +216,17 @@ public class ReportRepositoryTests {
         reportRepository.save(r);
 
         // when
-        boolean checked = reportRepository.acceptReport(r.getUuid());
+        AcceptedReport accepted = reportRepository.acceptReport(r.getUuid()).orElseThrow();
         List<ReportResult> results = reportRepository.findAllReports(0L, 10L, true);
 
         // then
         ReportResult rr = results.get(0);
         assertEquals(1, results.size());
-        assertTrue(checked);
+        assertTrue(accepted.isChecked());
+        assertTrue(accepted.isPostDeleted());
+        assertEquals(reportedPost.getUuid(), accepted.getPostUuid());
+        assertEquals(reportedPost.getAuthor().getUuid(), accepted.getPostAuthorUuid());
+        assertEquals(reportedPost.getCreationDate(), accepted.getPostCreationDate());
         assertTrue(rr.isChecked());
         assertTrue(rr.isPostDeleted());
     }
@@ -231,7 +239,7 @@ public class ReportRepositoryTests {
         reportRepository.save(r);
 
         // when
-        boolean checked = reportRepository.rejectReport(r.getUuid());
+        boolean checked = reportRepository.rejectReport(r.getUuid()).orElseThrow();
         List<ReportResult> results = reportRepository.findAllReports(0L, 10L, true);
 
         // then
@@ -241,4 +249,61 @@ public class ReportRepositoryTests {
         assertTrue(rr.isChecked());
         assertFalse(rr.isPostDeleted());
     }
+
+    @Test
+    public void acceptReport_IsEmptyWhenReportDoesntExist() {
+        // when
+        Optional<AcceptedReport> checked = reportRepository.acceptReport(UUID.randomUUID());
+
+        // then
+        assertTrue(checked.isEmpty());
+    }
+
+    @Test
+    public void acceptReport_IsFalseWhenReportAlreadyChecked() {
+        User reportingUser = users.get(1); // report as 'user2'
+        Post reportedPost = posts.get(0);
+        Report r = new Report(Report.Reason.SPAM, "", reportedPost, reportingUser);
+        reportRepository.save(r);
+        reportRepository.rejectReport(r.getUuid());
+
+        // when
+        AcceptedReport accepted = reportRepository.acceptReport(r.getUuid()).orElseThrow();
+        List<ReportResult> results = reportRepository.findAllReports(0L, 10L, true);
+
+        // then
+        assertFalse(accepted.isChecked());
+        assertFalse(accepted.isPostDeleted());
+        assertFalse(results.get(0).isPostDeleted());
+    }
+
+    @Test
+    public void createReport_CreatesUncheckedReport() {
+        User reportingUser = users.get(1);
+        Post reportedPost = posts.get(0);
+
+        // when
+        Optional<String> created = reportRepository.createReport(
+                reportingUser.getUuid(), reportedPost.getUuid(), "SPAM", "test", new Date());
+        List<ReportResult> unchecked = reportRepository.findAllReports(0L, 10L, false);
+
+        // then
+        assertTrue(created.isPresent());
+        assertEquals(1, unchecked.size());
+        assertEquals(UUID.fromString(created.get()), unchecked.get(0).getUuid());
+        assertEquals(reportedPost.getUuid(), unchecked.get(0).getReportedPostUuid());
+        assertEquals("user2", unchecked.get(0).getReportAuthorUsername());
+        assertEquals("test", unchecked.get(0).getDescription());
+    }
+
+    @Test
+    public void createReport_IsEmptyWhenUserDoesntExist() {
+        // when
+        Optional<String> created = reportRepository.createReport(
+                UUID.randomUUID(), posts.get(0).getUuid(), "SPAM", "", new Date());
+
+        // then
+        assertTrue(created.isEmpty());
+        assertEquals(0, reportRepository.findAllReports(0L, 10L, false).size());
+    }
 }
@@ -1,26 +1,29 @@
 package ml.echelon133.microblog.report;
 
-import ml.echelon133.microblog.post.model.Post;
+import ml.echelon133.microblog.feed.service.TimelineService;
+import ml.echelon133.microblog.post.model.PostOwnership;
 import ml.echelon133.microblog.post.repository.PostRepository;
 import ml.echelon133.microblog.report.exception.ResourceDoesNotExistException;
-import ml.echelon133.microblog.report.model.Report;
+import ml.echelon133.microblog.report.model.AcceptedReport;
 import ml.echelon133.microblog.report.model.ReportResult;
 import ml.echelon133.microblog.report.repository.ReportRepository;
 import ml.echelon133.microblog.report.service.ReportService;
-import ml.echelon133.microblog.user.model.User;
-import ml.echelon133.microblog.user.repository.UserRepository;
+import ml.echelon133.microblog.tag.service.RecentPostIndexService;
+import ml.echelon133.microblog.tag.service.TagUsageService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,10 +33,16 @@ public class ReportServiceTests {
     private ReportRepository reportRepository;
 
     @Mock
-    private UserRepository userRepository;
+    private PostRepository postRepository;
 
     @Mock
-    private PostRepository postRepository;
+    private TagUsageService tagUsageService;
+
+    @Mock
+    private RecentPostIndexService recentPostIndexService;
+
+    @Mock
+    private TimelineService timelineService;
 
     @InjectMocks
     private ReportService reportService;
@@ -87,11 +96,14 @@ public class ReportServiceTests {
         UUID reportedPostUuid = UUID.randomUUID();
 
         // given
-        given(userRepository.findById(reportingUserUuid)).willReturn(Optional.empty());
+        given(postRepository.getOwnershipOfPostWithUuid(reportedPostUuid))
+                .willReturn(Optional.of(new PostOwnership(reportedPostUuid, UUID.randomUUID(), false)));
+        given(reportRepository.createReport(eq(reportingUserUuid), eq(reportedPostUuid), eq("SPAM"), eq(""), any()))
+                .willReturn(Optional.empty());
 
         // when
         String ex = assertThrows(ResourceDoesNotExistException.class, () -> {
-            reportService.createNewReport(reportingUserUuid, reportedPostUuid, "", "");
+            reportService.createNewReport(reportingUserUuid, reportedPostUuid, "spam", "");
         }).getMessage();
 
         // then
@@ -105,8 +117,7 @@ public class ReportServiceTests {
         UUID reportedPostUuid = UUID.randomUUID();
 
         // given
-        given(userRepository.findById(reportingUserUuid)).willReturn(Optional.of(new User()));
-        given(postRepository.findById(reportedPostUuid)).willReturn(Optional.empty());
+        given(postRepository.getOwnershipOfPostWithUuid(reportedPostUuid)).willReturn(Optional.empty());
 
         // when
         String ex = assertThrows(ResourceDoesNotExistException.class, () -> {
@@ -123,14 +134,9 @@ public class ReportServiceTests {
         UUID reportingUserUuid = UUID.randomUUID();
         UUID reportedPostUuid = UUID.randomUUID();
 
-        User author = new User();
-        author.setUuid(reportingUserUuid);
-        Post post = new Post(author, "test content");
-        post.setUuid(reportedPostUuid);
-
         // given
-        given(userRepository.findById(reportingUserUuid)).willReturn(Optional.of(author));
-        given(postRepository.findById(reportedPostUuid)).willReturn(Optional.of(post));
+        given(postRepository.getOwnershipOfPostWithUuid(reportedPostUuid))
+                .willReturn(Optional.of(new PostOwnership(reportedPostUuid, reportingUserUuid, false)));
 
         // when
         String ex = assertThrows(IllegalArgumentException.class, () -> {
@@ -146,20 +152,11 @@ public class ReportServiceTests {
         UUID reportingUserUuid = UUID.randomUUID();
         UUID reportedPostUuid = UUID.randomUUID();
 
-        User reportingUser = new User();
-        reportingUser.setUuid(reportingUserUuid);
-        User author = new User();
-        author.setUuid(UUID.randomUUID());
-        Post reportedPost = new Post(author, "test content");
-        reportedPost.setUuid(reportedPostUuid);
-
-        Report report = new Report(Report.Reason.SPAM, "", reportedPost, reportingUser);
-        report.setUuid(UUID.randomUUID());
-
         // given
-        given(userRepository.findById(reportingUserUuid)).willReturn(Optional.of(reportingUser));
-        given(postRepository.findById(reportedPostUuid)).willReturn(Optional.of(reportedPost));
-        given(reportRepository.save(any())).willReturn(report);
+        given(postRepository.getOwnershipOfPostWithUuid(reportedPostUuid))
+                .willReturn(Optional.of(new PostOwnership(reportedPostUuid, UUID.randomUUID(), false)));
+        given(reportRepository.createReport(eq(reportingUserUuid), eq(reportedPostUuid), eq("SPAM"), eq(""), any()))
+                .willReturn(Optional.of(UUID.randomUUID().toString()));
 
         // when
         boolean result = reportService.createNewReport(reportingUserUuid, reportedPostUuid, "spam", "");
@@ -173,8 +170,8 @@ public class ReportServiceTests {
         UUID reportUuid = UUID.randomUUID();
 
         // given
-        given(reportRepository.acceptReport(reportUuid)).willReturn(true);
-        given(reportRepository.existsById(reportUuid)).willReturn(true);
+        given(reportRepository.acceptReport(reportUuid))
+                .willReturn(Optional.of(new AcceptedReport(true, true, UUID.randomUUID(), UUID.randomUUID(), new Date(), List.of())));
 
         // when
         boolean result = reportService.checkReport(reportUuid, true);
@@ -188,8 +185,7 @@ public class ReportServiceTests {
         UUID reportUuid = UUID.randomUUID();
 
         // given
-        given(reportRepository.rejectReport(reportUuid)).willReturn(true);
-        given(reportRepository.existsById(reportUuid)).willReturn(true);
+        given(reportRepository.rejectReport(reportUuid)).willReturn(Optional.of(true));
 
         // when
         boolean result = reportService.checkReport(reportUuid, false);
@@ -198,12 +194,28 @@ public class ReportServiceTests {
         assertTrue(result);
     }
 
+    @Test
+    public void checkReport_ReturnsFalseWhenReportAlreadyChecked() throws Exception {
+        UUID reportUuid = UUID.randomUUID();
+
+        // given
+        given(reportRepository.acceptReport(reportUuid))
+                .willReturn(Optional.of(new AcceptedReport(false, false, null, null, null, List.of())));
+
+        // when
+        boolean result = reportService.checkReport(reportUuid, true);
+
+        // then
+        assertFalse(result);
+    }
+
     @Test
     public void checkReport_ThrowsWhenReportDoesNotExist() throws Exception {
         UUID reportUuid = UUID.randomUUID();
 
         // given
-        given(reportRepository.existsById(reportUuid)).willReturn(false);
+        given(reportRepository.acceptReport(reportUuid)).willReturn(Optional.empty());
+        given(reportRepository.rejectReport(reportUuid)).willReturn(Optional.empty());
 
         // when
         String ex1 = assertThrows(ResourceDoesNotExistException.class, () -> {
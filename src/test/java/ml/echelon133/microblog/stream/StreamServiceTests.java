@@ -0,0 +1,112 @@
+package ml.echelon133.microblog.stream;
+
+import ml.echelon133.microblog.post.model.Post;
+import ml.echelon133.microblog.stream.model.StreamEvent;
+import ml.echelon133.microblog.stream.service.StreamService;
+import ml.echelon133.microblog.user.model.User;
+import ml.echelon133.microblog.user.model.UserPrincipal;
+import ml.echelon133.microblog.user.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class StreamServiceTests {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @InjectMocks
+    private StreamService streamService;
+
+    private UserPrincipal createPrincipal() {
+        User user = new User("test1", "", "", "");
+        user.setUuid(UUID.randomUUID());
+        return user;
+    }
+
+    @Test
+    public void streamEvent_EncodedEventCanBeDecoded() {
+        StreamEvent event = new StreamEvent(StreamEvent.POST, UUID.randomUUID(), UUID.randomUUID());
+
+        // when
+        StreamEvent decoded = StreamEvent.decode(event.encode());
+
+        // then
+        assertEquals(event.getType(), decoded.getType());
+        assertEquals(event.getTarget(), decoded.getTarget());
+        assertEquals(event.getSubject(), decoded.getSubject());
+    }
+
+    @Test
+    public void streamEvent_DecodeThrowsWhenEventIsInvalid() {
+        // when
+        String message = assertThrows(IllegalArgumentException.class, () -> {
+            StreamEvent.decode("unknown " + UUID.randomUUID() + " " + UUID.randomUUID());
+        }).getMessage();
+
+        // then
+        assertEquals("Invalid stream event.", message);
+    }
+
+    @Test
+    public void connect_RegistersConnectionOfUser() {
+        UserPrincipal principal = createPrincipal();
+
+        // given
+        given(userRepository.findAllFollowedUuidsOfUserWithUuid(principal.getUuid()))
+                .willReturn(List.of(principal.getUuid().toString()));
+
+        // when
+        SseEmitter emitter = streamService.connect(principal);
+
+        // then
+        assertEquals(StreamService.EMITTER_TIMEOUT_MILLIS, emitter.getTimeout());
+        assertEquals(1, streamService.countConnectedUsers());
+    }
+
+    @Test
+    public void onMessage_IgnoresInvalidMessages() {
+        byte[] body = "invalid".getBytes(StandardCharsets.UTF_8);
+        byte[] channel = StreamService.CHANNEL.getBytes(StandardCharsets.UTF_8);
+
+        // when
+        assertDoesNotThrow(() -> streamService.onMessage(new DefaultMessage(channel, body), null));
+    }
+
+    @Test
+    public void publishPost_IgnoresRedisFailures() {
+        User author = new User("test1", "", "", "");
+        author.setUuid(UUID.randomUUID());
+        Post post = new Post(author, "test");
+
+        // given
+        given(redisTemplate.convertAndSend(eq(StreamService.CHANNEL), anyString()))
+                .willThrow(new RedisConnectionFailureException("connection refused"));
+
+        // when
+        assertDoesNotThrow(() -> streamService.publishPost(post));
+    }
+}
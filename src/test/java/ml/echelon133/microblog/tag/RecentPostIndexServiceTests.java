@@ -0,0 +1,235 @@
+package ml.echelon133.microblog.tag;
+
+import ml.echelon133.microblog.feed.model.TimelineEntry;
+import ml.echelon133.microblog.pagination.PostCursor;
+import ml.echelon133.microblog.tag.repository.TagRepository;
+import ml.echelon133.microblog.tag.service.RecentPostIndexService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class RecentPostIndexServiceTests {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
+    @Mock
+    private TagRepository tagRepository;
+
+    @InjectMocks
+    private RecentPostIndexService recentPostIndexService;
+
+    private List<TimelineEntry> createEntries(int howMany) {
+        List<TimelineEntry> entries = new ArrayList<>();
+        for (int i = 0; i < howMany; i++) {
+            entries.add(new TimelineEntry(UUID.randomUUID(), new Date()));
+        }
+        return entries;
+    }
+
+    @Test
+    public void getRecentPage_ReturnsEmptyWhenPageExceedsCapacity() {
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        Optional<List<UUID>> page = recentPostIndexService
+                .getRecentPage(uuid, RecentPostIndexService.INDEX_CAPACITY, 1L);
+
+        // then
+        assertTrue(page.isEmpty());
+    }
+
+    @Test
+    public void getRecentPage_ReadsExistingIndex() {
+        UUID uuid = UUID.randomUUID();
+        String key = "tags:recent:" + uuid;
+        UUID p1 = UUID.randomUUID();
+        UUID p2 = UUID.randomUUID();
+
+        // given
+        given(redisTemplate.hasKey(key)).willReturn(true);
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(zSetOperations.reverseRange(key, 5L, 6L))
+                .willReturn(new LinkedHashSet<>(List.of(p1.toString(), p2.toString())));
+
+        // when
+        Optional<List<UUID>> page = recentPostIndexService.getRecentPage(uuid, 5L, 2L);
+
+        // then
+        assertTrue(page.isPresent());
+        assertEquals(List.of(p1, p2), page.get());
+    }
+
+    @Test
+    public void getRecentPage_RebuildsColdIndex() {
+        UUID uuid = UUID.randomUUID();
+        String key = "tags:recent:" + uuid;
+        List<TimelineEntry> entries = createEntries(10);
+
+        List<String> writes = new ArrayList<>();
+
+        // given
+        given(redisTemplate.hasKey(key)).willReturn(false);
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(redisTemplate.execute(any(RedisCallback.class))).willAnswer(invocation -> {
+            writes.add("start");
+            return 1L;
+        });
+        given(tagRepository.findRecentEntriesOfTagWithUuid(uuid, RecentPostIndexService.INDEX_CAPACITY))
+                .willAnswer(invocation -> {
+                    writes.add("read");
+                    return entries;
+                });
+        given(zSetOperations.add(eq(key), anySet())).willAnswer(invocation -> {
+            writes.add("add");
+            return 10L;
+        });
+        given(zSetOperations.remove(key, "building")).willAnswer(invocation -> {
+            writes.add("complete");
+            return 1L;
+        });
+
+        // when
+        Optional<List<UUID>> page = recentPostIndexService.getRecentPage(uuid, 2L, 3L);
+
+        // then
+        assertTrue(page.isPresent());
+        assertEquals(3, page.get().size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(entries.get(i + 2).getUuid(), page.get().get(i));
+        }
+        // the key exists before the graph is read, so that posts pushed in the meantime land in it
+        assertEquals(List.of("start", "read", "add", "complete"), writes);
+    }
+
+    @Test
+    public void getRecentPage_DoesntWriteIndexWhichIsBeingRebuilt() {
+        UUID uuid = UUID.randomUUID();
+        String key = "tags:recent:" + uuid;
+        List<TimelineEntry> entries = createEntries(10);
+
+        // given
+        given(redisTemplate.hasKey(key)).willReturn(true);
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(zSetOperations.score(key, "building")).willReturn(0.0);
+        given(redisTemplate.execute(any(RedisCallback.class))).willReturn(0L);
+        given(tagRepository.findRecentEntriesOfTagWithUuid(uuid, RecentPostIndexService.INDEX_CAPACITY))
+                .willReturn(entries);
+
+        // when
+        Optional<List<UUID>> page = recentPostIndexService.getRecentPage(uuid, 0L, 3L);
+
+        // then
+        // the page is served from the graph, and the index is left to the rebuild which has created it
+        assertEquals(List.of(entries.get(0).getUuid(), entries.get(1).getUuid(), entries.get(2).getUuid()),
+                page.orElseThrow());
+    }
+
+    @Test
+    public void getRecentPage_ReturnsEmptyWhenPageIsShort() {
+        UUID uuid = UUID.randomUUID();
+        String key = "tags:recent:" + uuid;
+
+        // given
+        given(redisTemplate.hasKey(key)).willReturn(true);
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(zSetOperations.reverseRange(key, 0L, 9L))
+                .willReturn(new LinkedHashSet<>(List.of(UUID.randomUUID().toString())));
+
+        // when
+        Optional<List<UUID>> page = recentPostIndexService.getRecentPage(uuid, 0L, 10L);
+
+        // then
+        // only the graph knows whether there are any older posts
+        assertTrue(page.isEmpty());
+    }
+
+    @Test
+    public void getRecentPage_ReturnsEmptyWhenRedisUnavailable() {
+        UUID uuid = UUID.randomUUID();
+
+        // given
+        given(redisTemplate.hasKey("tags:recent:" + uuid))
+                .willThrow(new RedisConnectionFailureException("connection refused"));
+
+        // when
+        Optional<List<UUID>> page = recentPostIndexService.getRecentPage(uuid, 0L, 20L);
+
+        // then
+        assertTrue(page.isEmpty());
+    }
+
+    @Test
+    public void getRecentPage_StartsRightAfterPostOfCursor() {
+        UUID uuid = UUID.randomUUID();
+        String key = "tags:recent:" + uuid;
+        PostCursor cursor = new PostCursor(new Date(), UUID.randomUUID());
+        UUID p1 = UUID.randomUUID();
+
+        // given
+        given(redisTemplate.hasKey(key)).willReturn(true);
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(zSetOperations.reverseRank(key, cursor.getUuid().toString())).willReturn(4L);
+        given(zSetOperations.reverseRange(key, 5L, 5L)).willReturn(new LinkedHashSet<>(List.of(p1.toString())));
+
+        // when
+        Optional<List<UUID>> page = recentPostIndexService.getRecentPage(uuid, cursor, 1L);
+
+        // then
+        assertEquals(List.of(p1), page.orElseThrow());
+    }
+
+    @Test
+    public void getRecentPage_CursorIsNotUsedWhenIndexIsBeingRebuilt() {
+        UUID uuid = UUID.randomUUID();
+        String key = "tags:recent:" + uuid;
+        PostCursor cursor = new PostCursor(new Date(), UUID.randomUUID());
+
+        // given
+        given(redisTemplate.hasKey(key)).willReturn(true);
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(zSetOperations.score(key, "building")).willReturn(0.0);
+
+        // when
+        Optional<List<UUID>> page = recentPostIndexService.getRecentPage(uuid, cursor, 10L);
+
+        // then
+        assertTrue(page.isEmpty());
+    }
+
+    @Test
+    public void getRecentPage_ReturnsEmptyWhenPostOfCursorIsNotInIndex() {
+        UUID uuid = UUID.randomUUID();
+        String key = "tags:recent:" + uuid;
+        PostCursor cursor = new PostCursor(new Date(), UUID.randomUUID());
+
+        // given
+        given(redisTemplate.hasKey(key)).willReturn(true);
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(zSetOperations.reverseRank(key, cursor.getUuid().toString())).willReturn(null);
+
+        // when
+        Optional<List<UUID>> page = recentPostIndexService.getRecentPage(uuid, cursor, 10L);
+
+        // then
+        assertTrue(page.isEmpty());
+    }
+}
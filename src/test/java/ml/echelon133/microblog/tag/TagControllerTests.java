@@ -6,6 +6,7 @@ import ml.echelon133.microblog.tag.exception.TagDoesntExistException;
 import ml.echelon133.microblog.tag.exception.TagExceptionHandler;
 import ml.echelon133.microblog.tag.model.RecentPost;
 import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.model.TagUsage;
 import ml.echelon133.microblog.tag.service.ITagService;
 import ml.echelon133.microblog.tag.service.TagService;
 import org.junit.jupiter.api.BeforeEach;
@@ -21,6 +22,7 @@ import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
@@ -49,6 +51,8 @@ public class TagControllerTests {
 
     private JacksonTester<List<RecentPost>> jsonRecentPosts;
 
+    private JacksonTester<List<TagUsage>> jsonUsage;
+
     @BeforeEach
     public void beforeEach() {
         JacksonTester.initFields(this, new ObjectMapper());
@@ -231,6 +235,83 @@ public class TagControllerTests {
                 .contains("Limit cannot be negative");
     }
 
+    @Test
+    public void suggestTags_NotProvidedLimitSetToDefault() throws Exception {
+        List<Tag> suggestions = List.of(new Tag(UUID.randomUUID(), "test"), new Tag(UUID.randomUUID(), "tests"));
+
+        // json
+        JsonContent<List<Tag>> json = jsonListTags.write(suggestions);
+
+        // given
+        given(tagService.findSuggestions("te", 5L)).willReturn(suggestions);
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/tags/suggest")
+                        .accept(APPLICATION_JSON)
+                        .param("prefix", "te")
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(json.getJson());
+    }
+
+    @Test
+    public void suggestTags_NoRequiredParameter() throws Exception {
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/tags/suggest")
+                        .accept(APPLICATION_JSON)
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    public void getUsage_NotProvidedParametersSetToDefault() throws Exception {
+        UUID uuid = UUID.randomUUID();
+
+        List<TagUsage> usage = List.of(new TagUsage(new Date(), 3L));
+
+        // json
+        JsonContent<List<TagUsage>> json = jsonUsage.write(usage);
+
+        // given
+        given(tagService.findUsage(uuid, 24L)).willReturn(usage);
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/tags/" + uuid + "/usage")
+                        .accept(APPLICATION_JSON)
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(json.getJson());
+    }
+
+    @Test
+    public void getUsage_CorrectResponseWhenHoursOutOfRange() throws Exception {
+        UUID uuid = UUID.randomUUID();
+
+        // given
+        given(tagService.findUsage(uuid, 500L))
+                .willThrow(new IllegalArgumentException("Hours must be between 1 and 168"));
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/api/tags/" + uuid + "/usage")
+                        .accept(APPLICATION_JSON)
+                        .param("hours", "500")
+        ).andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(response.getContentAsString()).contains("Hours must be between 1 and 168");
+    }
+
     @Test
     public void findRecentPosts_HandlesInvalidUuid() throws Exception {
         String invalidUuid = "asdf";
@@ -0,0 +1,46 @@
+package ml.echelon133.microblog.tag;
+
+import ml.echelon133.microblog.tag.repository.TagRepository;
+import ml.echelon133.microblog.tag.service.TagMigrationService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class TagMigrationServiceTests {
+
+    @Mock
+    private TagRepository tagRepository;
+
+    @InjectMocks
+    private TagMigrationService tagMigrationService;
+
+    @Test
+    public void mergeTagsWithDuplicateNames_RunsUntilBatchIsNotFull() {
+        // given
+        given(tagRepository.mergeTagsWithDuplicateNames(TagMigrationService.BATCH_SIZE))
+                .willReturn(TagMigrationService.BATCH_SIZE, 3L);
+
+        // when
+        long merged = tagMigrationService.mergeTagsWithDuplicateNames();
+
+        // then
+        assertEquals(TagMigrationService.BATCH_SIZE + 3, merged);
+    }
+
+    @Test
+    public void tryMigrate_DoesNotThrowWhenDatabaseIsUnavailable() {
+        // given
+        given(tagRepository.mergeTagsWithDuplicateNames(TagMigrationService.BATCH_SIZE))
+                .willThrow(new DataAccessResourceFailureException("connection refused"));
+
+        // then
+        assertDoesNotThrow(() -> tagMigrationService.tryMigrate());
+    }
+}
@@ -1,9 +1,11 @@
 package ml.echelon133.microblog.tag;
 
+import ml.echelon133.microblog.feed.model.TimelineEntry;
 import ml.echelon133.microblog.post.model.Post;
 import ml.echelon133.microblog.post.repository.PostRepository;
 import ml.echelon133.microblog.tag.model.RecentPost;
 import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.model.TagUsageCount;
 import ml.echelon133.microblog.tag.repository.TagRepository;
 import ml.echelon133.microblog.user.model.User;
 import org.junit.jupiter.api.BeforeEach;
@@ -86,6 +88,8 @@ public class TagRepositoryTests {
         // create another post tagged '#asdf' and don't delete it
         Post b2 = createPost(u1, "test", createTag("#asdf"));
         postRepository.save(b2);
+        // posts saved with the 'deleted' property set keep the 'Post' label until they are relabeled
+        postRepository.relabelDeletedPosts(100L);
 
         // when
         Date hourAgo = Date.from(Instant.now().minus(1, HOURS));
@@ -212,6 +216,45 @@ public class TagRepositoryTests {
         }
     }
 
+    @Test
+    public void countUsagesOfTags_Between_CountsPostsInBuckets() {
+        long hourMillis = 60 * 60 * 1000L;
+        long firstHour = System.currentTimeMillis() / hourMillis - 5;
+        Date inFirstHour = new Date(firstHour * hourMillis + 60 * 1000L);
+        Date inSecondHour = new Date((firstHour + 1) * hourMillis + 60 * 1000L);
+        Date beforeFirstHour = new Date(firstHour * hourMillis - 60 * 1000L);
+
+        User u1 = createTestUser();
+        Tag test = tagRepository.save(createTag("#test"));
+
+        for (Date date : List.of(inFirstHour, inFirstHour, inSecondHour, beforeFirstHour)) {
+            Post b = createPost(u1, "content", test);
+            b.setCreationDate(date);
+            postRepository.save(b);
+        }
+        // deleted posts are not counted
+        Post deleted = createPost(u1, "content", test);
+        deleted.setCreationDate(inFirstHour);
+        deleted.markAsDeleted();
+        postRepository.save(deleted);
+        postRepository.relabelDeletedPosts(100L);
+
+        // when
+        List<TagUsageCount> counts = tagRepository
+                .countUsagesOfTags_Between(new Date(firstHour * hourMillis), new Date(), hourMillis);
+        List<TagUsageCount> countsOfTag = tagRepository
+                .countUsagesOfTagWithUuid_Between(test.getUuid(), new Date(firstHour * hourMillis), new Date(), hourMillis);
+
+        // then
+        assertEquals(2, counts.size());
+        Map<Long, Long> countsByHour = counts.stream()
+                .collect(Collectors.toMap(TagUsageCount::getBucket, TagUsageCount::getCount));
+        assertEquals(Map.of(firstHour, 2L, firstHour + 1, 1L), countsByHour);
+        assertEquals("#test", counts.get(0).getName());
+        assertEquals(test.getUuid(), counts.get(0).getUuid());
+        assertEquals(2, countsOfTag.size());
+    }
+
     @Test
     public void findMostPopularTags_LimitsNumberOfResults() {
         User u1 = createTestUser();
@@ -260,6 +303,54 @@ public class TagRepositoryTests {
         }
     }
 
+    @Test
+    public void findRecentEntriesOfTagWithUuid_SkipsDeletedPostsAndLimitsResults() {
+        Tag savedTag = tagRepository.save(createTag("#test"));
+
+        Post b1 = createPost(createTestUser(), "content1", savedTag);
+        b1.setCreationDate(Date.from(Instant.now().minus(2, HOURS)));
+        Post b2 = createPost(createTestUser(), "content2", savedTag);
+        b2.setCreationDate(Date.from(Instant.now().minus(1, HOURS)));
+        Post b3 = createPost(createTestUser(), "content3", savedTag);
+        Post deleted = createPost(createTestUser(), "deleted", savedTag);
+        deleted.markAsDeleted();
+
+        postRepository.save(b1);
+        postRepository.save(b2);
+        postRepository.save(b3);
+        postRepository.save(deleted);
+        postRepository.relabelDeletedPosts(100L);
+
+        // when
+        List<TimelineEntry> entries = tagRepository.findRecentEntriesOfTagWithUuid(savedTag.getUuid(), 2L);
+
+        // then
+        assertEquals(2, entries.size());
+        assertEquals(b3.getUuid(), entries.get(0).getUuid());
+        assertEquals(b2.getUuid(), entries.get(1).getUuid());
+        assertEquals(b2.getCreationDate(), entries.get(1).getDate());
+    }
+
+    @Test
+    public void findRecentPostsWithUuids_SkipsDeletedPosts() {
+        Tag savedTag = tagRepository.save(createTag("#test"));
+
+        Post b1 = postRepository.save(createPost(createTestUser(), "content1", savedTag));
+        Post deleted = createPost(createTestUser(), "deleted", savedTag);
+        deleted.markAsDeleted();
+        postRepository.save(deleted);
+        postRepository.relabelDeletedPosts(100L);
+
+        // when
+        List<RecentPost> recent = tagRepository.findRecentPostsWithUuids(
+                List.of(b1.getUuid().toString(), deleted.getUuid().toString()));
+
+        // then
+        assertEquals(1, recent.size());
+        assertEquals("content1", recent.get(0).getContent());
+        assertEquals("test", recent.get(0).getAuthor().getUsername());
+    }
+
     @Test
     public void findRecentPostsTagged_IsEmptyWhenNoPostsMade() {
         Tag t = createTag("#tag");
@@ -382,4 +473,46 @@ public class TagRepositoryTests {
             assertEquals(expectedOrder.get(i), recentContents.get(i));
         }
     }
+
+    @Test
+    public void mergeTagsWithDuplicateNames_KeepsOneTagWhichTagsEveryPost() {
+        User user = createTestUser();
+        Tag duplicate1 = createTag("#test");
+        Tag duplicate2 = createTag("#test");
+        Tag other = createTag("#other");
+        Post p1 = postRepository.save(createPost(user, "#test", duplicate1));
+        Post p2 = postRepository.save(createPost(user, "#test #other", duplicate2, other));
+        // the post is already tagged by both duplicates, so it must not end up being tagged twice
+        Post p3 = postRepository.save(createPost(user, "#test", duplicate1, duplicate2));
+
+        // when
+        Long merged = tagRepository.mergeTagsWithDuplicateNames(10L);
+        Long mergedAgain = tagRepository.mergeTagsWithDuplicateNames(10L);
+        Tag kept = tagRepository.findByName("#test").orElseThrow();
+        List<TimelineEntry> tagged = tagRepository.findRecentEntriesOfTagWithUuid(kept.getUuid(), 10L);
+
+        // then
+        assertEquals(1L, merged);
+        assertEquals(0L, mergedAgain);
+        assertEquals(2, tagRepository.count());
+        assertEquals(Set.of(p1.getUuid(), p2.getUuid(), p3.getUuid()),
+                tagged.stream().map(TimelineEntry::getUuid).collect(Collectors.toSet()));
+        assertEquals(3, tagged.size());
+    }
+
+    @Test
+    public void findOrCreateAllByNames_OnlyCreatesMissingTags() {
+        Tag existing = tagRepository.save(createTag("#test1"));
+
+        // when
+        List<Tag> tags = tagRepository.findOrCreateAllByNames(List.of("#test1", "#test2"));
+
+        // then
+        assertEquals(2, tags.size());
+        assertEquals(2, tagRepository.count());
+        tags.forEach(t -> assertNotNull(t.getUuid()));
+
+        Tag found = tags.stream().filter(t -> t.getName().equals("#test1")).findFirst().orElseThrow();
+        assertEquals(existing.getUuid(), found.getUuid());
+    }
 }
@@ -1,11 +1,18 @@
 package ml.echelon133.microblog.tag;
 
+import ml.echelon133.microblog.pagination.PostCursor;
 import ml.echelon133.microblog.tag.exception.TagDoesntExistException;
 import ml.echelon133.microblog.tag.model.RecentPost;
 import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.model.TagUsage;
+import ml.echelon133.microblog.tag.model.TagUsageCount;
 import ml.echelon133.microblog.tag.repository.TagRepository;
 import ml.echelon133.microblog.tag.service.ITagService;
+import ml.echelon133.microblog.tag.service.RecentPostIndexService;
 import ml.echelon133.microblog.tag.service.TagService;
+import ml.echelon133.microblog.tag.service.TagSuggestionService;
+import ml.echelon133.microblog.tag.service.TagUsageService;
+import ml.echelon133.microblog.tag.service.TrendingTagService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -13,10 +20,12 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.Clock;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static java.time.temporal.ChronoUnit.DAYS;
@@ -31,6 +40,18 @@ public class TagServiceTests {
     @Mock
     private TagRepository tagRepository;
 
+    @Mock
+    private TrendingTagService trendingTagService;
+
+    @Mock
+    private TagUsageService tagUsageService;
+
+    @Mock
+    private RecentPostIndexService recentPostIndexService;
+
+    @Mock
+    private TagSuggestionService tagSuggestionService;
+
     @InjectMocks
     private TagService tagService;
 
@@ -140,6 +161,127 @@ public class TagServiceTests {
         assertEquals(3L, popularWeekAgo.size());
     }
 
+    @Test
+    public void findMostPopular_ReturnsRankedTagsWhenAvailable() {
+        List<Tag> ranked = List.of(new Tag(UUID.randomUUID(), "test"));
+
+        // given
+        given(trendingTagService.findMostPopular(10L, ITagService.PopularSince.WEEK))
+                .willReturn(Optional.of(ranked));
+
+        // when
+        List<Tag> popular = tagService.findMostPopular(10L, ITagService.PopularSince.WEEK);
+
+        // then
+        assertEquals(ranked, popular);
+    }
+
+    @Test
+    public void findSuggestions_ThrowsWhenLimitOutOfRange() {
+        // when
+        String negative = assertThrows(IllegalArgumentException.class, () -> {
+            tagService.findSuggestions("te", -1L);
+        }).getMessage();
+        String tooMany = assertThrows(IllegalArgumentException.class, () -> {
+            tagService.findSuggestions("te", TagSuggestionService.MAX_SUGGESTIONS + 1L);
+        }).getMessage();
+
+        // then
+        assertEquals("Limit cannot be negative", negative);
+        assertEquals("Limit cannot be greater than 10", tooMany);
+    }
+
+    @Test
+    public void findSuggestions_ReturnsSuggestedTags() {
+        List<Tag> suggested = List.of(new Tag(UUID.randomUUID(), "test"));
+
+        // given
+        given(tagSuggestionService.suggest("te", 5)).willReturn(suggested);
+
+        // when
+        List<Tag> suggestions = tagService.findSuggestions("te", 5L);
+
+        // then
+        assertEquals(suggested, suggestions);
+    }
+
+    @Test
+    public void findUsage_ThrowsWhenHoursOutOfRange() {
+        UUID uuid = UUID.randomUUID();
+
+        // when
+        String tooFew = assertThrows(IllegalArgumentException.class, () -> {
+            tagService.findUsage(uuid, 0L);
+        }).getMessage();
+        String tooMany = assertThrows(IllegalArgumentException.class, () -> {
+            tagService.findUsage(uuid, TagUsageService.MAX_HOURS + 1);
+        }).getMessage();
+
+        // then
+        assertEquals("Hours must be between 1 and 168", tooFew);
+        assertEquals("Hours must be between 1 and 168", tooMany);
+    }
+
+    @Test
+    public void findUsage_ThrowsWhenTagDoesntExist() {
+        UUID uuid = UUID.randomUUID();
+
+        // given
+        given(tagRepository.findById(uuid)).willReturn(Optional.empty());
+
+        // when
+        String message = assertThrows(TagDoesntExistException.class, () -> {
+            tagService.findUsage(uuid, 24L);
+        }).getMessage();
+
+        // then
+        assertEquals(String.format("Tag with UUID %s doesn't exist", uuid), message);
+    }
+
+    @Test
+    public void findUsage_ReturnsUsageFromBucketsWhenAvailable() throws Exception {
+        Tag tag = new Tag(UUID.randomUUID(), "test");
+        List<TagUsage> usage = List.of(new TagUsage(new Date(), 5L));
+
+        // given
+        given(tagRepository.findById(tag.getUuid())).willReturn(Optional.of(tag));
+        given(tagUsageService.getHourlyUsage(tag, 1L)).willReturn(Optional.of(usage));
+
+        // when
+        List<TagUsage> result = tagService.findUsage(tag.getUuid(), 1L);
+
+        // then
+        assertEquals(usage, result);
+    }
+
+    @Test
+    public void findUsage_CountsUsageInGraphWhenBucketsUnavailable() throws Exception {
+        long hourMillis = 60 * 60 * 1000L;
+        Instant now = Instant.ofEpochMilli(10 * hourMillis + 30 * 60 * 1000L);
+        Tag tag = new Tag(UUID.randomUUID(), "test");
+
+        tagService.setClock(Clock.fixed(now, ZoneId.systemDefault()));
+
+        // given
+        given(tagRepository.findById(tag.getUuid())).willReturn(Optional.of(tag));
+        given(tagRepository.countUsagesOfTagWithUuid_Between(
+                tag.getUuid(), new Date(8 * hourMillis), Date.from(now), hourMillis))
+                .willReturn(List.of(new TagUsageCount(tag.getUuid(), "test", 9L, 4L)));
+
+        // when
+        List<TagUsage> usage = tagService.findUsage(tag.getUuid(), 3L);
+
+        // then
+        // hours without any usages are filled with zeros
+        assertEquals(3, usage.size());
+        assertEquals(new Date(8 * hourMillis), usage.get(0).getHour());
+        assertEquals(0L, usage.get(0).getCount());
+        assertEquals(new Date(9 * hourMillis), usage.get(1).getHour());
+        assertEquals(4L, usage.get(1).getCount());
+        assertEquals(new Date(10 * hourMillis), usage.get(2).getHour());
+        assertEquals(0L, usage.get(2).getCount());
+    }
+
     @Test
     public void findRecentPostsTagged_ThrowsIfTagDoesntExist() {
         UUID uuid = UUID.randomUUID();
@@ -159,9 +301,6 @@ public class TagServiceTests {
     public void findRecentPostsTagged_ThrowsIfSkipIsNegative() {
         UUID uuid = UUID.randomUUID();
 
-        // given
-        given(tagRepository.existsById(uuid)).willReturn(true);
-
         // then
         String message = assertThrows(IllegalArgumentException.class, () -> {
             tagService.findRecentPostsTagged(uuid, -1L, 10L);
@@ -174,9 +313,6 @@ public class TagServiceTests {
     public void findRecentPostsTagged_ThrowsIfLimitIsNegative() {
         UUID uuid = UUID.randomUUID();
 
-        // given
-        given(tagRepository.existsById(uuid)).willReturn(true);
-
         // then
         String message = assertThrows(IllegalArgumentException.class, () -> {
             tagService.findRecentPostsTagged(uuid, 0L, -10L);
@@ -185,12 +321,52 @@ public class TagServiceTests {
         assertEquals("Invalid skip and/or limit values.", message);
     }
 
+    @Test
+    public void findRecentPostsTagged_RestoresOrderOfPostsFromIndex() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        RecentPost p1 = new RecentPost();
+        p1.setUuid(UUID.randomUUID());
+        RecentPost p2 = new RecentPost();
+        p2.setUuid(UUID.randomUUID());
+
+        // given
+        given(recentPostIndexService.getRecentPage(uuid, 0L, 2L))
+                .willReturn(Optional.of(List.of(p1.getUuid(), p2.getUuid())));
+        given(tagRepository.findRecentPostsWithUuids(List.of(p1.getUuid().toString(), p2.getUuid().toString())))
+                .willReturn(List.of(p2, p1));
+
+        // when
+        List<RecentPost> recent = tagService.findRecentPostsTagged(uuid, 0L, 2L);
+
+        // then
+        assertEquals(List.of(p1, p2), recent);
+    }
+
+    @Test
+    public void findRecentPostsTagged_ReadsPageAfterCursorFromIndex() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        PostCursor cursor = new PostCursor(new Date(), UUID.randomUUID());
+        RecentPost p1 = new RecentPost();
+        p1.setUuid(UUID.randomUUID());
+
+        // given
+        given(recentPostIndexService.getRecentPage(uuid, cursor, 1L))
+                .willReturn(Optional.of(List.of(p1.getUuid())));
+        given(tagRepository.findRecentPostsWithUuids(List.of(p1.getUuid().toString())))
+                .willReturn(List.of(p1));
+
+        // when
+        List<RecentPost> recent = tagService.findRecentPostsTagged(uuid, cursor, 1L);
+
+        // then
+        assertEquals(List.of(p1), recent);
+    }
+
     @Test
     public void findRecentPostsTagged_ReturnsObjects() throws Exception {
         UUID uuid = UUID.randomUUID();
 
         // given
-        given(tagRepository.existsById(uuid)).willReturn(true);
         given(tagRepository.findRecentPostsTagged(uuid, 0L, 10L))
                 .willReturn(List.of(new RecentPost(), new RecentPost()));
 
@@ -200,4 +376,39 @@ public class TagServiceTests {
         // then
         assertEquals(2, recent.size());
     }
+
+    @Test
+    public void findRecentPostsTagged_ReturnsEmptyListIfTagExists() throws Exception {
+        UUID uuid = UUID.randomUUID();
+
+        // given
+        given(tagRepository.findRecentPostsTagged(uuid, 0L, 10L)).willReturn(List.of());
+        given(tagRepository.existsById(uuid)).willReturn(true);
+
+        // when
+        List<RecentPost> recent = tagService.findRecentPostsTagged(uuid, 0L, 10L);
+
+        // then
+        assertEquals(0, recent.size());
+    }
+
+    @Test
+    public void findOrCreateAllByNames_CachesUuidsOfTags() {
+        Tag tag = new Tag(UUID.randomUUID(), "test");
+
+        // given
+        given(tagRepository.findOrCreateAllByNames(List.of("test")))
+                .willReturn(List.of(tag))
+                .willReturn(List.of());
+
+        // when
+        List<Tag> first = tagService.findOrCreateAllByNames(Set.of("test"));
+        List<Tag> second = tagService.findOrCreateAllByNames(Set.of("test"));
+
+        // then
+        assertEquals(1, first.size());
+        assertEquals(1, second.size());
+        assertEquals(tag.getUuid(), second.get(0).getUuid());
+        assertEquals("test", second.get(0).getName());
+    }
 }
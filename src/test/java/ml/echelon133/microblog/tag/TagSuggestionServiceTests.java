@@ -0,0 +1,167 @@
+package ml.echelon133.microblog.tag;
+
+import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.model.TagUsageCount;
+import ml.echelon133.microblog.tag.repository.TagRepository;
+import ml.echelon133.microblog.tag.service.TagSuggestionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static java.time.temporal.ChronoUnit.DAYS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class TagSuggestionServiceTests {
+
+    private static final Instant NOW = Instant.ofEpochMilli(30 * 24 * 60 * 60 * 1000L);
+
+    @Mock
+    private TagRepository tagRepository;
+
+    @InjectMocks
+    private TagSuggestionService tagSuggestionService;
+
+    @BeforeEach
+    public void beforeEach() {
+        tagSuggestionService.setClock(Clock.fixed(NOW, ZoneId.systemDefault()));
+    }
+
+    private static List<String> names(List<Tag> tags) {
+        return tags.stream().map(Tag::getName).collect(Collectors.toList());
+    }
+
+    private void givenTags(TagUsageCount... counts) {
+        given(tagRepository.countUsagesOfAllTags_Since(Date.from(NOW.minus(7, DAYS))))
+                .willReturn(List.of(counts));
+    }
+
+    private static TagUsageCount count(String name, long count) {
+        return new TagUsageCount(UUID.randomUUID(), name, 0L, count);
+    }
+
+    @Test
+    public void suggest_IsEmptyBeforeTagsAreLoaded() {
+        // when
+        List<Tag> suggestions = tagSuggestionService.suggest("te", 5);
+
+        // then
+        assertTrue(suggestions.isEmpty());
+    }
+
+    @Test
+    public void suggest_ReturnsMostUsedTagsStartingWithPrefix() {
+        // given
+        givenTags(count("test", 5L), count("team", 10L), count("tea", 1L),
+                count("teapot", 3L), count("other", 100L), count("t", 0L));
+
+        // when
+        tagSuggestionService.rebuild();
+        List<Tag> te = tagSuggestionService.suggest("te", 10);
+        List<Tag> tea = tagSuggestionService.suggest("tea", 10);
+        List<Tag> teap = tagSuggestionService.suggest("teap", 10);
+        List<Tag> t = tagSuggestionService.suggest("t", 2);
+        List<Tag> missing = tagSuggestionService.suggest("tex", 10);
+
+        // then
+        assertEquals(List.of("team", "test", "teapot", "tea"), names(te));
+        assertEquals(List.of("team", "teapot", "tea"), names(tea));
+        // the prefix ends in the middle of a compressed edge
+        assertEquals(List.of("teapot"), names(teap));
+        assertEquals(List.of("team", "test"), names(t));
+        assertTrue(missing.isEmpty());
+    }
+
+    @Test
+    public void suggest_IgnoresHashAndCaseOfPrefix() {
+        // given
+        givenTags(count("test", 1L));
+
+        // when
+        tagSuggestionService.rebuild();
+        List<Tag> suggestions = tagSuggestionService.suggest("#TE", 5);
+
+        // then
+        assertEquals(List.of("test"), names(suggestions));
+    }
+
+    @Test
+    public void recordUsage_AddsNewTagsAndReordersSuggestions() {
+        // given
+        givenTags(count("test", 2L), count("team", 1L));
+
+        // when
+        tagSuggestionService.rebuild();
+        Tag team = tagSuggestionService.suggest("team", 1).get(0);
+        tagSuggestionService.recordUsage(List.of(team, new Tag(UUID.randomUUID(), "tech")));
+        tagSuggestionService.recordUsage(List.of(team));
+        List<Tag> suggestions = tagSuggestionService.suggest("te", 5);
+
+        // then
+        assertEquals(List.of("team", "test", "tech"), names(suggestions));
+        assertEquals(team.getUuid(), suggestions.get(0).getUuid());
+    }
+
+    @Test
+    public void suggest_NeverReturnsMoreThanMaxSuggestions() {
+        TagUsageCount[] counts = new TagUsageCount[TagSuggestionService.MAX_SUGGESTIONS + 5];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = count("tag" + i, i);
+        }
+
+        // given
+        givenTags(counts);
+
+        // when
+        tagSuggestionService.rebuild();
+        List<Tag> suggestions = tagSuggestionService.suggest("tag", 100);
+
+        // then
+        assertEquals(TagSuggestionService.MAX_SUGGESTIONS, suggestions.size());
+        assertEquals("tag" + (counts.length - 1), suggestions.get(0).getName());
+    }
+
+    @Test
+    public void rebuild_DoesNotCountUsagesRecordedDuringRebuildTwice() {
+        Tag test = new Tag(UUID.randomUUID(), "test");
+        Tag tech = new Tag(UUID.randomUUID(), "tech");
+
+        // given
+        given(tagRepository.countUsagesOfAllTags_Since(Date.from(NOW.minus(7, DAYS)))).willAnswer(invocation -> {
+            // usages of 'test' recorded while the query runs are already counted by it
+            tagSuggestionService.recordUsage(List.of(test));
+            tagSuggestionService.recordUsage(List.of(test, tech));
+            return List.of(new TagUsageCount(test.getUuid(), "test", 0L, 2L), count("team", 3L));
+        });
+
+        // when
+        tagSuggestionService.rebuild();
+        List<Tag> suggestions = tagSuggestionService.suggest("te", 5);
+
+        // then
+        assertEquals(List.of("team", "test", "tech"), names(suggestions));
+    }
+
+    @Test
+    public void rebuildIfStale_DoesNotThrowWhenDatabaseIsUnavailable() {
+        // given
+        given(tagRepository.countUsagesOfAllTags_Since(Date.from(NOW.minus(7, DAYS))))
+                .willThrow(new DataAccessResourceFailureException("connection refused"));
+
+        // then
+        assertDoesNotThrow(() -> tagSuggestionService.rebuildIfStale());
+    }
+}
@@ -0,0 +1,240 @@
+package ml.echelon133.microblog.tag;
+
+import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.model.TagUsage;
+import ml.echelon133.microblog.tag.model.TagUsageCount;
+import ml.echelon133.microblog.tag.repository.TagRepository;
+import ml.echelon133.microblog.tag.service.TagUsageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class TagUsageServiceTests {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+    // a month after the epoch, in the middle of an hour
+    private static final long NOW = 30 * 24 * HOUR_MILLIS + HOUR_MILLIS / 2;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private StringRedisConnection connection;
+
+    @Mock
+    private TagRepository tagRepository;
+
+    @InjectMocks
+    private TagUsageService tagUsageService;
+
+    @BeforeEach
+    public void beforeEach() {
+        tagUsageService.setClock(Clock.fixed(Instant.ofEpochMilli(NOW), ZoneId.systemDefault()));
+    }
+
+    // runs pipelined commands against the mocked connection, and records every increment of a bucket
+    private List<String> givenPipelinedIncrements() {
+        List<String> increments = new ArrayList<>();
+        given(redisTemplate.executePipelined(any(RedisCallback.class))).willAnswer(invocation -> {
+            RedisCallback<?> callback = invocation.getArgument(0);
+            callback.doInRedis(connection);
+            return List.of();
+        });
+        given(connection.zIncrBy(anyString(), anyDouble(), anyString())).willAnswer(invocation -> {
+            increments.add(invocation.getArgument(0) + " " + invocation.getArgument(2) + " " + invocation.getArgument(1));
+            return 1.0;
+        });
+        return increments;
+    }
+
+    @Test
+    public void getHourlyUsage_IsEmptyWhenBucketsAreNotSeeded() {
+        // given
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(valueOperations.get("tags:usage:since")).willReturn(null);
+
+        // when
+        Optional<List<TagUsage>> usage = tagUsageService.getHourlyUsage(new Tag(UUID.randomUUID(), "test"), 24L);
+
+        // then
+        assertTrue(usage.isEmpty());
+    }
+
+    @Test
+    public void getHourlyUsage_IsEmptyWhenWindowStartedBeforeCounting() {
+        // given
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(valueOperations.get("tags:usage:since")).willReturn(String.valueOf(NOW - HOUR_MILLIS));
+
+        // when
+        Optional<List<TagUsage>> usage = tagUsageService.getHourlyUsage(new Tag(UUID.randomUUID(), "test"), 24L);
+
+        // then
+        assertTrue(usage.isEmpty());
+    }
+
+    @Test
+    public void getHourlyUsage_ReturnsScoresOfHourBuckets() {
+        long currentHour = NOW / HOUR_MILLIS;
+
+        // given
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(valueOperations.get("tags:usage:since")).willReturn("0");
+        // the tag hasn't been used in the second hour, so it's missing from its bucket
+        given(redisTemplate.executePipelined(any(RedisCallback.class))).willReturn(Arrays.asList(2.0, null, 5.0));
+
+        // when
+        List<TagUsage> usage = tagUsageService.getHourlyUsage(new Tag(UUID.randomUUID(), "test"), 3L).orElseThrow();
+
+        // then
+        assertEquals(3, usage.size());
+        assertEquals(new Date((currentHour - 2) * HOUR_MILLIS), usage.get(0).getHour());
+        assertEquals(2L, usage.get(0).getCount());
+        assertEquals(0L, usage.get(1).getCount());
+        assertEquals(new Date(currentHour * HOUR_MILLIS), usage.get(2).getHour());
+        assertEquals(5L, usage.get(2).getCount());
+    }
+
+    @Test
+    public void getHourlyUsage_IsEmptyWhenRedisUnavailable() {
+        // given
+        given(redisTemplate.opsForValue()).willThrow(new RedisConnectionFailureException("connection refused"));
+
+        // when
+        Optional<List<TagUsage>> usage = tagUsageService.getHourlyUsage(new Tag(UUID.randomUUID(), "test"), 24L);
+
+        // then
+        assertTrue(usage.isEmpty());
+    }
+
+    @Test
+    public void flushUsage_AddsUsagesAndRemovalsToBuckets() {
+        Tag tag = new Tag(UUID.randomUUID(), "test");
+        Date date = new Date(NOW);
+        long minute = NOW / (60 * 1000L);
+        String member = tag.getUuid() + ":test";
+
+        // given
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        List<String> increments = givenPipelinedIncrements();
+
+        // when
+        tagUsageService.recordUsage(List.of(tag), date);
+        tagUsageService.recordUsage(List.of(tag), date);
+        tagUsageService.recordRemoval(List.of(tag), date);
+        // buckets of posts older than a week have expired, so their removal is ignored
+        tagUsageService.recordRemoval(List.of(tag), new Date(NOW - 8 * 24 * HOUR_MILLIS));
+        tagUsageService.flushUsage();
+
+        // then
+        assertEquals(List.of(
+                "tags:usage:minute:" + minute + " " + member + " 1.0",
+                "tags:usage:hour:" + NOW / HOUR_MILLIS + " " + member + " 1.0"), increments);
+    }
+
+    @Test
+    public void flushUsage_KeepsUsagesWhenRedisUnavailable() {
+        Tag tag = new Tag(UUID.randomUUID(), "test");
+
+        // given
+        given(redisTemplate.opsForValue())
+                .willThrow(new RedisConnectionFailureException("connection refused"))
+                .willReturn(valueOperations);
+        List<String> increments = givenPipelinedIncrements();
+
+        // when
+        tagUsageService.recordUsage(List.of(tag), new Date(NOW));
+        tagUsageService.flushUsage();
+        tagUsageService.flushUsage();
+
+        // then
+        assertEquals(2, increments.size());
+    }
+
+    @Test
+    public void seedUsage_WritesSeededCountsToTemporaryKeys() {
+        Tag tag = new Tag(UUID.randomUUID(), "test");
+        long hour = NOW / HOUR_MILLIS;
+
+        // given
+        given(redisTemplate.hasKey("tags:usage:since")).willReturn(false);
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(valueOperations.setIfAbsent(eq("tags:usage:seed:lock"), anyString(), anyLong(), eq(TimeUnit.MILLISECONDS)))
+                .willReturn(true);
+        given(valueOperations.get("tags:usage:streamingSince")).willReturn(String.valueOf(NOW));
+        given(tagRepository.countUsagesOfTags_Between(any(), any(), eq(HOUR_MILLIS)))
+                .willReturn(List.of(new TagUsageCount(tag.getUuid(), tag.getName(), hour, 3L)));
+        given(tagRepository.countUsagesOfTags_Between(any(), any(), eq(60 * 1000L))).willReturn(List.of());
+        List<String> increments = givenPipelinedIncrements();
+        given(redisTemplate.execute(any(RedisCallback.class))).willReturn(1L);
+
+        // when
+        tagUsageService.seedUsage();
+
+        // then
+        // buckets themselves are only updated by the script which checks that the seed still holds the lock
+        assertEquals(1, increments.size());
+        assertTrue(increments.get(0).startsWith("tags:usage:seed:"));
+        assertTrue(increments.get(0).endsWith(":tags:usage:hour:" + hour + " " + tag.getUuid() + ":test 3.0"));
+    }
+
+    @Test
+    public void seedUsage_WaitsUntilNodesStartCounting() {
+        List<String> calls = new ArrayList<>();
+
+        // given
+        given(redisTemplate.hasKey("tags:usage:since")).willReturn(false);
+        given(redisTemplate.opsForValue()).willAnswer(invocation -> {
+            calls.add("opsForValue");
+            return valueOperations;
+        });
+        given(valueOperations.get("tags:usage:streamingSince")).willReturn(null);
+
+        // when
+        tagUsageService.seedUsage();
+
+        // then
+        // the seed neither takes the lock nor decides since when usages are counted in buckets
+        assertEquals(List.of("opsForValue"), calls);
+    }
+
+    @Test
+    public void flushUsage_SetsStreamingSinceEvenWithoutUsages() {
+        List<String> stored = new ArrayList<>();
+
+        // given
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(valueOperations.setIfAbsent(eq("tags:usage:streamingSince"), anyString())).willAnswer(invocation -> {
+            stored.add(invocation.getArgument(1));
+            return true;
+        });
+
+        // when
+        tagUsageService.flushUsage();
+
+        // then
+        assertEquals(List.of(String.valueOf(NOW / (60 * 1000L) * 60 * 1000L)), stored);
+    }
+}
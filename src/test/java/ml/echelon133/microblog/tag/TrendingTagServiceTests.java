@@ -0,0 +1,139 @@
+package ml.echelon133.microblog.tag;
+
+import ml.echelon133.microblog.tag.model.Tag;
+import ml.echelon133.microblog.tag.service.ITagService;
+import ml.echelon133.microblog.tag.service.TrendingTagService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class TrendingTagServiceTests {
+
+    // a month after the epoch, so that every window starts after the date since which usages are counted
+    private static final long NOW = 30 * 24 * 60 * 60 * 1000L;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
+    @InjectMocks
+    private TrendingTagService trendingTagService;
+
+    @BeforeEach
+    public void beforeEach() {
+        trendingTagService.setClock(Clock.fixed(Instant.ofEpochMilli(NOW), ZoneId.systemDefault()));
+    }
+
+    private void givenRankingOfWeek(String countingSince, Tag... ranked) {
+        Set<String> members = new LinkedHashSet<>();
+        for (Tag tag : ranked) {
+            members.add(tag.getUuid() + ":" + tag.getName());
+        }
+        given(redisTemplate.opsForValue()).willReturn(valueOperations);
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(valueOperations.get("tags:usage:since")).willReturn(countingSince);
+        given(valueOperations.setIfAbsent(eq("tags:trending:lock"), anyString(), anyLong(), eq(TimeUnit.MILLISECONDS)))
+                .willReturn(false);
+        // other windows don't have rankings
+        given(zSetOperations.reverseRangeByScore(anyString(), eq(1.0), eq(Double.POSITIVE_INFINITY),
+                eq(0L), eq(TrendingTagService.RANKING_SIZE)))
+                .willAnswer(invocation -> "tags:trending:WEEK".equals(invocation.getArgument(0)) ? members : null);
+    }
+
+    @Test
+    public void findMostPopular_IsEmptyBeforeFirstRefresh() {
+        // when
+        Optional<List<Tag>> popular = trendingTagService.findMostPopular(10L, ITagService.PopularSince.ONE_HOUR);
+
+        // then
+        assertTrue(popular.isEmpty());
+    }
+
+    @Test
+    public void refreshRankings_ReadsRankingsComputedByAnotherNode() {
+        Tag t1 = new Tag(UUID.randomUUID(), "first");
+        Tag t2 = new Tag(UUID.randomUUID(), "second");
+
+        // given
+        givenRankingOfWeek("0", t1, t2);
+
+        // when
+        trendingTagService.refreshRankings();
+        Optional<List<Tag>> week = trendingTagService.findMostPopular(1L, ITagService.PopularSince.WEEK);
+        Optional<List<Tag>> wholeWeek = trendingTagService.findMostPopular(10L, ITagService.PopularSince.WEEK);
+        Optional<List<Tag>> hour = trendingTagService.findMostPopular(10L, ITagService.PopularSince.ONE_HOUR);
+
+        // then
+        assertEquals(1, week.get().size());
+        assertEquals(t1.getUuid(), week.get().get(0).getUuid());
+        assertEquals("first", week.get().get(0).getName());
+        // ranking which is shorter than RANKING_SIZE holds every tag of the window
+        assertEquals(2, wholeWeek.get().size());
+        // nothing has been ranked in the last hour
+        assertTrue(hour.isEmpty());
+    }
+
+    @Test
+    public void findMostPopular_IsEmptyWhenWindowStartedBeforeCounting() {
+        // given
+        givenRankingOfWeek(String.valueOf(NOW - 60 * 60 * 1000L), new Tag(UUID.randomUUID(), "test"));
+
+        // when
+        trendingTagService.refreshRankings();
+        Optional<List<Tag>> week = trendingTagService.findMostPopular(10L, ITagService.PopularSince.WEEK);
+
+        // then
+        assertTrue(week.isEmpty());
+    }
+
+    @Test
+    public void findMostPopular_IsEmptyWhenRankingIsStale() {
+        // given
+        givenRankingOfWeek("0", new Tag(UUID.randomUUID(), "test"));
+
+        // when
+        trendingTagService.refreshRankings();
+        trendingTagService.setClock(
+                Clock.fixed(Instant.ofEpochMilli(NOW + TrendingTagService.RANKING_TTL_MILLIS + 1), ZoneId.systemDefault()));
+        Optional<List<Tag>> week = trendingTagService.findMostPopular(10L, ITagService.PopularSince.WEEK);
+
+        // then
+        assertTrue(week.isEmpty());
+    }
+
+    @Test
+    public void refreshRankings_LeavesRankingsEmptyWhenRedisUnavailable() {
+        // given
+        given(redisTemplate.opsForValue()).willThrow(new RedisConnectionFailureException("connection refused"));
+
+        // when
+        trendingTagService.refreshRankings();
+        Optional<List<Tag>> week = trendingTagService.findMostPopular(10L, ITagService.PopularSince.WEEK);
+
+        // then
+        assertTrue(week.isEmpty());
+    }
+}
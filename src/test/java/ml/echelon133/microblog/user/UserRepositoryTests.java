@@ -6,6 +6,7 @@ import ml.echelon133.microblog.post.repository.PostRepository;
 import ml.echelon133.microblog.user.model.User;
 import ml.echelon133.microblog.user.model.UserPost;
 import ml.echelon133.microblog.user.model.UserProfileInfo;
+import ml.echelon133.microblog.user.model.ViewerState;
 import ml.echelon133.microblog.user.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -154,6 +155,80 @@ public class UserRepositoryTests {
         assertEquals(1, usersFollowingU1.stream().filter(u -> u.getUuid() == u2.getUuid()).count());
     }
 
+    @Test
+    public void countFollowersOfUserWithUuid_CountsUserThemselves() {
+        User u1 = userRepository.findByUsername("user1").orElse(null);
+        User u2 = userRepository.findByUsername("user2").orElse(null);
+        User u3 = userRepository.findByUsername("user3").orElse(null);
+
+        // given
+        userRepository.followUserWithUuid(u2.getUuid(), u1.getUuid());
+        userRepository.followUserWithUuid(u3.getUuid(), u1.getUuid());
+
+        // when
+        long followers = userRepository.countFollowersOfUserWithUuid(u1.getUuid());
+        long missing = userRepository.countFollowersOfUserWithUuid(UUID.randomUUID());
+
+        // then
+        assertEquals(userRepository.findAllFollowerUuidsOfUserWithUuid(u1.getUuid()).size(), followers);
+        assertEquals(3, followers);
+        assertEquals(0, missing);
+    }
+
+    @Test
+    public void followUserWithUuid_DoesntDuplicateFollows() {
+        User u1 = userRepository.findByUsername("user1").orElse(null);
+        User u2 = userRepository.findByUsername("user2").orElse(null);
+
+        // when
+        Optional<Boolean> first = userRepository.followUserWithUuid(u1.getUuid(), u2.getUuid());
+        Optional<Boolean> second = userRepository.followUserWithUuid(u1.getUuid(), u2.getUuid());
+        Optional<Boolean> missing = userRepository.followUserWithUuid(u1.getUuid(), UUID.randomUUID());
+
+        // then
+        assertTrue(first.orElseThrow());
+        assertFalse(second.orElseThrow());
+        assertTrue(missing.isEmpty());
+        assertEquals(1, userRepository.findAllFollowersOfUserWithUuid(u2.getUuid(), 0L, 5L).size());
+    }
+
+    @Test
+    public void unfollowUserWithUuid_IsEmptyWhenUserDoesntExist() {
+        User u1 = userRepository.findByUsername("user1").orElse(null);
+
+        // when
+        Optional<Long> removed = userRepository.unfollowUserWithUuid(u1.getUuid(), UUID.randomUUID());
+
+        // then
+        assertTrue(removed.isEmpty());
+    }
+
+    @Test
+    public void checkIfUserWithUuidFollowsExistingUser_Works() {
+        User u1 = userRepository.findByUsername("user1").orElse(null);
+        User u2 = userRepository.findByUsername("user2").orElse(null);
+
+        // when
+        Optional<Boolean> before = userRepository.checkIfUserWithUuidFollowsExistingUser(u1.getUuid(), u2.getUuid());
+        userRepository.followUserWithUuid(u1.getUuid(), u2.getUuid());
+        Optional<Boolean> after = userRepository.checkIfUserWithUuidFollowsExistingUser(u1.getUuid(), u2.getUuid());
+        Optional<Boolean> missing = userRepository.checkIfUserWithUuidFollowsExistingUser(u1.getUuid(), UUID.randomUUID());
+
+        // then
+        assertFalse(before.orElseThrow());
+        assertTrue(after.orElseThrow());
+        assertTrue(missing.isEmpty());
+    }
+
+    @Test
+    public void getUserProfileInfo_IsEmptyWhenUserDoesntExist() {
+        // when
+        Optional<UserProfileInfo> info = userRepository.getUserProfileInfo(UUID.randomUUID());
+
+        // then
+        assertTrue(info.isEmpty());
+    }
+
     @Test
     public void getUserProfileInfo_ReturnsCorrectCounterValues() {
         User u1 = userRepository.findByUsername("user1").orElse(null);
@@ -492,4 +567,27 @@ public class UserRepositoryTests {
         // then
         assertEquals(1, common.size());
     }
+
+    @Test
+    public void getViewerState_ReturnsLikedPostsAndFollowedUsers() {
+        User u1 = userRepository.findByUsername("user1").orElse(null);
+        User u2 = userRepository.findByUsername("user2").orElse(null);
+        User u3 = userRepository.findByUsername("user3").orElse(null);
+
+        Post liked = postRepository.save(new Post(u2, "liked"));
+        Post notLiked = postRepository.save(new Post(u3, "not liked"));
+        postRepository.likePostWithUuid(u1.getUuid(), liked.getUuid());
+        userRepository.followUserWithUuid(u1.getUuid(), u2.getUuid());
+
+        // when
+        Optional<ViewerState> state = userRepository.getViewerState(
+                u1.getUuid(),
+                List.of(liked.getUuid().toString(), notLiked.getUuid().toString()),
+                List.of(u2.getUuid().toString(), u3.getUuid().toString()));
+
+        // then
+        assertTrue(state.isPresent());
+        assertEquals(List.of(liked.getUuid().toString()), state.get().getLikedPosts());
+        assertEquals(List.of(u2.getUuid().toString()), state.get().getFollowedUsers());
+    }
 }
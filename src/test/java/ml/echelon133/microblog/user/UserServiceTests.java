@@ -1,5 +1,6 @@
 package ml.echelon133.microblog.user;
 
+import ml.echelon133.microblog.feed.service.TimelineService;
 import ml.echelon133.microblog.user.exception.HiddenStateModificationAttemptException;
 import ml.echelon133.microblog.user.exception.UserCreationFailedException;
 import ml.echelon133.microblog.user.exception.UserDoesntExistException;
@@ -19,7 +20,6 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -35,6 +35,9 @@ public class UserServiceTests {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private TimelineService timelineService;
+
     @InjectMocks
     private UserService userService;
 
@@ -69,7 +72,7 @@ public class UserServiceTests {
         given(userRepository.existsUserByUsername(user.getUsername())).willReturn(false);
         given(passwordEncoder.encode(user.getPassword())).willReturn(expectedPassword);
         given(userRepository.save(user)).willReturn(user);
-        given(userRepository.followUserWithUuid(user.getUuid(), user.getUuid())).willReturn(Optional.of(1L));
+        given(userRepository.followUserWithUuid(user.getUuid(), user.getUuid())).willReturn(Optional.of(true));
         given(roleRepository.findByName("ROLE_USER"))
                 .willReturn(Optional.of(new Role("ROLE_USER")));
 
@@ -108,7 +111,7 @@ public class UserServiceTests {
         UUID u2Uuid = UUID.randomUUID();
 
         // given
-        given(userRepository.existsById(u2Uuid)).willReturn(false);
+        given(userRepository.followUserWithUuid(user.getUuid(), u2Uuid)).willReturn(Optional.empty());
 
         // when
         String message = assertThrows(UserDoesntExistException.class, () -> {
@@ -124,9 +127,7 @@ public class UserServiceTests {
         UUID u2Uuid = UUID.randomUUID();
 
         // given
-        given(userRepository.existsById(u2Uuid)).willReturn(true);
-        given(userRepository.checkIfUserWithUuidFollows(user.getUuid(), u2Uuid)).willReturn(Optional.empty());
-        given(userRepository.followUserWithUuid(user.getUuid(), u2Uuid)).willReturn(Optional.of(1L));
+        given(userRepository.followUserWithUuid(user.getUuid(), u2Uuid)).willReturn(Optional.of(true));
 
         // when
         boolean result = userService.followUserWithUuid(user, u2Uuid);
@@ -141,8 +142,7 @@ public class UserServiceTests {
         UUID u2Uuid = UUID.randomUUID();
 
         // given
-        given(userRepository.existsById(u2Uuid)).willReturn(true);
-        given(userRepository.checkIfUserWithUuidFollows(user.getUuid(), u2Uuid)).willReturn(Optional.of(1L));
+        given(userRepository.followUserWithUuid(user.getUuid(), u2Uuid)).willReturn(Optional.of(false));
 
         // when
         boolean result = userService.followUserWithUuid(user, u2Uuid);
@@ -151,31 +151,10 @@ public class UserServiceTests {
         assertTrue(result);
     }
 
-    @Test
-    public void followUserWithUuid_WhenFollowingFails() throws Exception {
-        User user = getTestUser();
-        UUID u2Uuid = UUID.randomUUID();
-
-        // given
-        given(userRepository.existsById(u2Uuid)).willReturn(true);
-        given(userRepository.checkIfUserWithUuidFollows(user.getUuid(), u2Uuid)).willReturn(Optional.empty());
-        given(userRepository.followUserWithUuid(user.getUuid(), u2Uuid)).willReturn(Optional.empty());
-
-        // when
-        boolean result = userService.followUserWithUuid(user, u2Uuid);
-
-        // then
-        assertFalse(result);
-    }
-
     @Test
     public void followUserWithUuid_ThrowsWhenUserFollowsThemselves() {
         User user = getTestUser();
 
-        // given
-        given(userRepository.existsById(user.getUuid())).willReturn(true);
-        given(userRepository.checkIfUserWithUuidFollows(user.getUuid(), user.getUuid())).willReturn(Optional.empty());
-
         // then
         String message = assertThrows(HiddenStateModificationAttemptException.class, () -> {
             userService.followUserWithUuid(user, user.getUuid());
@@ -190,7 +169,7 @@ public class UserServiceTests {
         UUID u2Uuid = UUID.randomUUID();
 
         // given
-        given(userRepository.existsById(u2Uuid)).willReturn(false);
+        given(userRepository.unfollowUserWithUuid(user.getUuid(), u2Uuid)).willReturn(Optional.empty());
 
         // when
         String message = assertThrows(UserDoesntExistException.class, () -> {
@@ -207,8 +186,7 @@ public class UserServiceTests {
         UUID u2Uuid = UUID.randomUUID();
 
         // given
-        given(userRepository.existsById(u2Uuid)).willReturn(true);
-        given(userRepository.checkIfUserWithUuidFollows(user.getUuid(), u2Uuid)).willReturn(Optional.empty());
+        given(userRepository.unfollowUserWithUuid(user.getUuid(), u2Uuid)).willReturn(Optional.of(1L));
 
         // when
         boolean result = userService.unfollowUserWithUuid(user, u2Uuid);
@@ -217,30 +195,11 @@ public class UserServiceTests {
         assertTrue(result);
     }
 
-    @Test
-    public void unfollowUserWithUuid_WhenUnfollowFails() throws Exception {
-        User user = getTestUser();
-        UUID u2Uuid = UUID.randomUUID();
-
-        // given
-        given(userRepository.existsById(u2Uuid)).willReturn(true);
-        given(userRepository.checkIfUserWithUuidFollows(user.getUuid(), u2Uuid)).willReturn(Optional.of(1L));
-
-        // when
-        boolean result = userService.unfollowUserWithUuid(user, u2Uuid);
-
-        // then
-        assertFalse(result);
-    }
-
     @Test
     public void unfollowUserWithUuid_ThrowsWhenUserTriesToUnfollowThemselves() {
         User user = getTestUser();
         UUID u2Uuid = user.getUuid();
 
-        // given
-        given(userRepository.existsById(u2Uuid)).willReturn(true);
-
         // then
         String message = assertThrows(HiddenStateModificationAttemptException.class, () -> {
             userService.unfollowUserWithUuid(user, user.getUuid());
@@ -269,9 +228,6 @@ public class UserServiceTests {
     public void findAllFollowsOfUser_ThrowsWhenSkipAndLimitArgumentsNegative() {
         UUID uUuid = UUID.randomUUID();
 
-        // given
-        given(userRepository.existsById(uUuid)).willReturn(true);
-
         // then
         Exception ex = assertThrows(IllegalArgumentException.class, () -> {
             userService.findAllFollowsOfUser(uUuid, -1L, 0L);
@@ -308,7 +264,6 @@ public class UserServiceTests {
         List<User> mockList = List.of(new User(), new User(), new User());
 
         // given
-        given(userRepository.existsById(uUuid)).willReturn(true);
         given(userRepository.findAllFollowsOfUserWithUuid(uUuid, 0L, 5L)).willReturn(mockList);
 
         // when
@@ -338,9 +293,6 @@ public class UserServiceTests {
     public void findAllFollowersOfUser_ThrowsWhenSkipAndLimitArgumentsNegative() {
         UUID uUuid = UUID.randomUUID();
 
-        // given
-        given(userRepository.existsById(uUuid)).willReturn(true);
-
         // then
         Exception ex = assertThrows(IllegalArgumentException.class, () -> {
             userService.findAllFollowersOfUser(uUuid, -1L, 0L);
@@ -362,7 +314,6 @@ public class UserServiceTests {
         List<User> mockList = List.of(getTestUser(), getTestUser(), getTestUser());
 
         // given
-        given(userRepository.existsById(uUuid)).willReturn(true);
         given(userRepository.findAllFollowersOfUserWithUuid(uUuid, 0L, 5L)).willReturn(mockList);
 
         // when
@@ -392,7 +343,7 @@ public class UserServiceTests {
         UUID uUuid = UUID.randomUUID();
 
         // given
-        given(userRepository.existsById(uUuid)).willReturn(false);
+        given(userRepository.getUserProfileInfo(uUuid)).willReturn(Optional.empty());
 
         // then
         String message = assertThrows(UserDoesntExistException.class, () -> {
@@ -402,22 +353,6 @@ public class UserServiceTests {
         assertEquals(String.format("User with UUID %s doesn't exist", uUuid), message);
     }
 
-    @Test
-    public void getUserProfileInfo_ReturnsPlaceholderObjectWhenFails() throws Exception {
-        UUID uUuid = UUID.randomUUID();
-
-        // given
-        given(userRepository.existsById(uUuid)).willReturn(true);
-        given(userRepository.getUserProfileInfo(uUuid)).willReturn(Optional.empty());
-
-        // when
-        UserProfileInfo profileInfo = userService.getUserProfileInfo(uUuid);
-
-        // then
-        assertNull(profileInfo.getFollows());
-        assertNull(profileInfo.getFollowers());
-    }
-
     @Test
     public void getUserProfileInfo_ReturnsObject() throws Exception {
         UUID uUuid = UUID.randomUUID();
@@ -427,7 +362,6 @@ public class UserServiceTests {
         mockProfileInfo.setFollows(20L);
 
         // given
-        given(userRepository.existsById(uUuid)).willReturn(true);
         given(userRepository.getUserProfileInfo(uUuid)).willReturn(Optional.of(mockProfileInfo));
 
         // when
@@ -443,22 +377,6 @@ public class UserServiceTests {
         UUID uuid = UUID.randomUUID();
 
         // given
-        given(userRepository.existsById(uuid)).willReturn(false);
-
-        // then
-        String message = assertThrows(UserDoesntExistException.class, () -> {
-            userService.findByUuid(uuid);
-        }).getMessage();
-
-        assertEquals(String.format("User with UUID %s doesn't exist", uuid), message);
-    }
-
-    @Test
-    public void findByUuid_ThrowsWhenDatabaseFails() {
-        UUID uuid = UUID.randomUUID();
-
-        // given
-        given(userRepository.existsById(uuid)).willReturn(true);
         given(userRepository.findById(uuid)).willReturn(Optional.empty());
 
         // then
@@ -474,7 +392,6 @@ public class UserServiceTests {
         User user = getTestUser();
 
         // given
-        given(userRepository.existsById(user.getUuid())).willReturn(true);
         given(userRepository.findById(user.getUuid())).willReturn(Optional.of(user));
 
         // when
@@ -488,13 +405,14 @@ public class UserServiceTests {
     @Test
     public void checkIfUserFollows_ThrowsWhenUserDoesntExist() {
         UUID uuid = UUID.randomUUID();
+        User user = getTestUser();
 
         // given
-        given(userRepository.existsById(uuid)).willReturn(false);
+        given(userRepository.checkIfUserWithUuidFollowsExistingUser(user.getUuid(), uuid)).willReturn(Optional.empty());
 
         // then
         String message = assertThrows(UserDoesntExistException.class, () -> {
-            userService.checkIfUserFollows(any(User.class), uuid);
+            userService.checkIfUserFollows(user, uuid);
         }).getMessage();
 
         assertEquals(String.format("User with UUID %s doesn't exist", uuid), message);
@@ -506,8 +424,7 @@ public class UserServiceTests {
         User user = getTestUser();
 
         // given
-        given(userRepository.existsById(uuid)).willReturn(true);
-        given(userRepository.checkIfUserWithUuidFollows(user.getUuid(), uuid)).willReturn(Optional.empty());
+        given(userRepository.checkIfUserWithUuidFollowsExistingUser(user.getUuid(), uuid)).willReturn(Optional.of(false));
 
         // when
         boolean result = userService.checkIfUserFollows(user, uuid);
@@ -522,8 +439,7 @@ public class UserServiceTests {
         User user = getTestUser();
 
         // given
-        given(userRepository.existsById(uuid)).willReturn(true);
-        given(userRepository.checkIfUserWithUuidFollows(user.getUuid(), uuid)).willReturn(Optional.of(1L));
+        given(userRepository.checkIfUserWithUuidFollowsExistingUser(user.getUuid(), uuid)).willReturn(Optional.of(true));
 
         // when
         boolean result = userService.checkIfUserFollows(user, uuid);
@@ -582,9 +498,6 @@ public class UserServiceTests {
     public void findRecentPostsOfUser_ThrowsWhenSkipAndLimitArgumentsNegative() {
         UUID uUuid = UUID.randomUUID();
 
-        // given
-        given(userRepository.existsById(uUuid)).willReturn(true);
-
         // then
         Exception ex = assertThrows(IllegalArgumentException.class, () -> {
             userService.findRecentPostsOfUser(uUuid, -1L, 0L);
@@ -606,7 +519,6 @@ public class UserServiceTests {
         List<UserPost> recent = List.of(new UserPost(), new UserPost());
 
         // given
-        given(userRepository.existsById(uUuid)).willReturn(true);
         given(userRepository.findRecentPostsOfUser(uUuid, 0L, 5L))
                 .willReturn(recent);
 
@@ -661,9 +573,6 @@ public class UserServiceTests {
         User testUser = getTestUser();
         UUID otherUserUuid = UUID.randomUUID();
 
-        // given
-        given(userRepository.existsById(otherUserUuid)).willReturn(true);
-
         // then
         String ex = assertThrows(IllegalArgumentException.class, () -> {
             userService.findFollowersUserKnows(testUser, otherUserUuid, -1L, 5L);
@@ -683,9 +592,6 @@ public class UserServiceTests {
         User testUser = getTestUser();
         UUID otherUserUuid = testUser.getUuid();
 
-        // given
-        given(userRepository.existsById(otherUserUuid)).willReturn(true);
-
         // when
         String msg = assertThrows(IllegalArgumentException.class, () -> {
             userService.findFollowersUserKnows(testUser, otherUserUuid, 0L, 5L);
@@ -701,7 +607,6 @@ public class UserServiceTests {
         UUID otherUserUuid = UUID.randomUUID();
 
         // given
-        given(userRepository.existsById(otherUserUuid)).willReturn(true);
         given(userRepository.findFollowersUserKnows(testUser.getUuid(), otherUserUuid, 0L, 5L))
                 .willReturn(List.of(new User(), new User()));
 
@@ -711,4 +616,40 @@ public class UserServiceTests {
         // then
         assertEquals(2, common.size());
     }
+
+    @Test
+    public void applyViewerStateToPosts_SetsFlagsOfPostsAndAuthors() {
+        User viewer = getTestUser();
+        User author1 = new User("author1", "", "", "");
+        author1.setUuid(UUID.randomUUID());
+        User author2 = new User("author2", "", "", "");
+        author2.setUuid(UUID.randomUUID());
+
+        UserPost p1 = new UserPost();
+        p1.setUuid(UUID.randomUUID());
+        p1.setAuthor(author1);
+        UserPost p2 = new UserPost();
+        p2.setUuid(UUID.randomUUID());
+        p2.setAuthor(author2);
+
+        ViewerState state = new ViewerState();
+        state.setLikedPosts(List.of(p2.getUuid().toString()));
+        state.setFollowedUsers(List.of(author1.getUuid().toString()));
+
+        // given
+        given(userRepository.getViewerState(
+                viewer.getUuid(),
+                List.of(p1.getUuid().toString(), p2.getUuid().toString()),
+                List.of(author1.getUuid().toString(), author2.getUuid().toString())
+        )).willReturn(Optional.of(state));
+
+        // when
+        userService.applyViewerStateToPosts(viewer, List.of(p1, p2));
+
+        // then
+        assertFalse(p1.getLikedByViewer());
+        assertTrue(p2.getLikedByViewer());
+        assertTrue(author1.getViewerFollows());
+        assertFalse(author2.getViewerFollows());
+    }
 }